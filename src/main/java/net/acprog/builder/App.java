@@ -2,6 +2,7 @@ package net.acprog.builder;
 
 import java.awt.EventQueue;
 import javax.swing.UIManager;
+import net.acprog.builder.cli.CommandLine;
 import net.acprog.builder.gui.MainFrame;
 
 /**
@@ -11,6 +12,12 @@ import net.acprog.builder.gui.MainFrame;
 public class App {
 
     public static void main(String[] args) {
+	// Run command in headless mode
+	if (args.length > 0) {
+	    System.setProperty("java.awt.headless", "true");
+	    System.exit(new CommandLine(System.out, System.err).execute(args));
+	}
+
 	// Start gui
 	EventQueue.invokeLater(new Runnable() {
 	    public void run() {
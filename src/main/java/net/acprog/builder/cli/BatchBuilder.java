@@ -0,0 +1,356 @@
+package net.acprog.builder.cli;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import net.acprog.builder.compilation.ACPCompiler;
+import net.acprog.builder.compilation.CompilationException;
+import net.acprog.builder.compilation.CompilationMonitor;
+import net.acprog.builder.compilation.CompilationResult;
+import net.acprog.builder.compilation.FileSystemOutputSink;
+
+/**
+ * Executor of build jobs from a build manifest. All jobs are compiled
+ * concurrently by a single compiler, hence modules loaded by a job are reused
+ * by all other jobs. The status of each job is reported as soon as the job is
+ * completed.
+ */
+public class BatchBuilder {
+
+    // ---------------------------------------------------------------------------
+    // Job report
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Report of a completed build job.
+     */
+    public static class JobReport {
+	/**
+	 * Build job.
+	 */
+	private final BuildManifest.Job job;
+
+	/**
+	 * Report of compilation (null, if the job failed).
+	 */
+	private final CompilationResult result;
+
+	/**
+	 * Failure of the job (null, if the job succeeded).
+	 */
+	private final Throwable failure;
+
+	/**
+	 * Duration of the job in milliseconds.
+	 */
+	private final long duration;
+
+	public BuildManifest.Job getJob() {
+	    return job;
+	}
+
+	public CompilationResult getResult() {
+	    return result;
+	}
+
+	public Throwable getFailure() {
+	    return failure;
+	}
+
+	public long getDuration() {
+	    return duration;
+	}
+
+	public boolean isSuccessful() {
+	    return failure == null;
+	}
+
+	JobReport(BuildManifest.Job job, CompilationResult result, Throwable failure, long duration) {
+	    this.job = job;
+	    this.result = result;
+	    this.failure = failure;
+	    this.duration = duration;
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Job listener
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Listener notified about completed build jobs.
+     */
+    public interface JobListener {
+	/**
+	 * Invoked when a build job is completed. The method is invoked by the
+	 * thread that executed the job.
+	 *
+	 * @param report
+	 *            the report of job.
+	 */
+	void jobCompleted(JobReport report);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Compiler shared by all jobs.
+     */
+    private final ACPCompiler compiler;
+
+    /**
+     * Number of concurrently executed jobs.
+     */
+    private final int threads;
+
+    /**
+     * Output stream for reports of completed jobs (null, if reports are not
+     * printed).
+     */
+    private final PrintStream out;
+
+    /**
+     * Listener notified about completed jobs (null, if not set).
+     */
+    private volatile JobListener jobListener;
+
+    /**
+     * Time limit (in milliseconds) of a job (0, if jobs are not limited).
+     */
+    private volatile long jobTimeout;
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the batch builder.
+     *
+     * @param compiler
+     *            the compiler shared by all jobs.
+     * @param threads
+     *            the number of concurrently executed jobs.
+     * @param out
+     *            the output stream for reports of completed jobs (null, if
+     *            reports are not printed).
+     */
+    public BatchBuilder(ACPCompiler compiler, int threads, PrintStream out) {
+	this.compiler = compiler;
+	this.threads = Math.max(threads, 1);
+	this.out = out;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public JobListener getJobListener() {
+	return jobListener;
+    }
+
+    public void setJobListener(JobListener jobListener) {
+	this.jobListener = jobListener;
+    }
+
+    public long getJobTimeout() {
+	return jobTimeout;
+    }
+
+    /**
+     * Sets the time limit of a job. A job that exceeds the limit fails and
+     * its library is left untouched.
+     *
+     * @param jobTimeout
+     *            the time limit in milliseconds (0, if jobs are not limited).
+     */
+    public void setJobTimeout(long jobTimeout) {
+	this.jobTimeout = Math.max(jobTimeout, 0);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Build methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Executes build jobs and waits for their completion.
+     *
+     * @param jobs
+     *            the build jobs.
+     * @return the reports of jobs (in order of jobs).
+     */
+    public List<JobReport> build(List<BuildManifest.Job> jobs) {
+	ExecutorService executor = Executors.newFixedThreadPool(threads);
+	try {
+	    List<Future<JobReport>> builds = new ArrayList<Future<JobReport>>(jobs.size());
+	    for (final BuildManifest.Job job : jobs) {
+		builds.add(executor.submit(new Callable<JobReport>() {
+		    @Override
+		    public JobReport call() {
+			JobReport report = buildJob(job);
+			printReport(report);
+			JobListener listener = jobListener;
+			if (listener != null) {
+			    listener.jobCompleted(report);
+			}
+			return report;
+		    }
+		}));
+	    }
+
+	    List<JobReport> reports = new ArrayList<JobReport>(jobs.size());
+	    for (Future<JobReport> build : builds) {
+		try {
+		    reports.add(build.get());
+		} catch (ExecutionException e) {
+		    throw new IllegalStateException("Build job failed unexpectedly.", e.getCause());
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    throw new IllegalStateException("Build has been interrupted.", e);
+		}
+	    }
+
+	    return reports;
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+
+    /**
+     * Executes a build job.
+     *
+     * @param job
+     *            the build job.
+     * @return the report of job.
+     */
+    private JobReport buildJob(BuildManifest.Job job) {
+	long startTime = System.nanoTime();
+	try {
+	    CompilationMonitor monitor = null;
+	    if (jobTimeout > 0) {
+		monitor = new CompilationMonitor();
+		monitor.setTimeout(jobTimeout);
+	    }
+
+	    CompilationResult result = (job.getArchiveFile() != null) ? buildArchive(job, monitor) : compiler
+		    .compile(job.getSettings(), new FileSystemOutputSink(), monitor);
+	    return new JobReport(job, result, null, (System.nanoTime() - startTime) / 1000000);
+	} catch (RuntimeException e) {
+	    return new JobReport(job, null, e, (System.nanoTime() - startTime) / 1000000);
+	}
+    }
+
+    /**
+     * Compiles the library of a build job directly to its zip archive. The
+     * archive is written to a temporary file that replaces the archive after
+     * successful compilation.
+     *
+     * @param job
+     *            the build job with an archive.
+     * @param monitor
+     *            the compilation monitor (null, if the compilation is not
+     *            monitored).
+     * @return the report of compilation.
+     */
+    private CompilationResult buildArchive(BuildManifest.Job job, CompilationMonitor monitor) {
+	File archiveFile = job.getArchiveFile();
+	try {
+	    Path archiveDirectory = Files.createDirectories(archiveFile.getAbsoluteFile().getParentFile().toPath());
+	    Path tmpFile = Files.createTempFile(archiveDirectory, archiveFile.getName(), ".tmp");
+	    try {
+		CompilationResult result;
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmpFile))) {
+		    result = compiler.compileToZip(job.getSettings(), out, monitor);
+		}
+
+		Files.move(tmpFile, archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+		return result;
+	    } finally {
+		Files.deleteIfExists(tmpFile);
+	    }
+	} catch (IOException e) {
+	    throw new CompilationException("Archive " + archiveFile.getPath() + " cannot be written.", e);
+	}
+    }
+
+    /**
+     * Prints report of a completed job.
+     *
+     * @param report
+     *            the report of job.
+     */
+    private void printReport(JobReport report) {
+	if (out == null) {
+	    return;
+	}
+
+	StringBuilder message = new StringBuilder();
+	message.append(report.isSuccessful() ? "[OK]     " : "[FAILED] ");
+	message.append(report.getJob().getName()).append(" (").append(report.getDuration()).append(" ms)");
+	if (report.isSuccessful()) {
+	    message.append(": ").append(report.getResult());
+	} else {
+	    message.append(": ").append(describeFailure(report.getFailure()));
+	}
+
+	synchronized (out) {
+	    out.println(message);
+	}
+    }
+
+    /**
+     * Creates a description of a failure including messages of all its
+     * causes.
+     *
+     * @param failure
+     *            the failure.
+     * @return the description.
+     */
+    static String describeFailure(Throwable failure) {
+	StringBuilder description = new StringBuilder();
+	for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+	    if (cause != failure) {
+		description.append(" <- ");
+	    }
+	    description.append(cause.getMessage());
+	}
+
+	return description.toString();
+    }
+
+    /**
+     * Creates a summary of completed jobs.
+     *
+     * @param reports
+     *            the reports of jobs.
+     * @param duration
+     *            the total duration of the build in milliseconds.
+     * @return the summary.
+     */
+    public static String createSummary(List<JobReport> reports, long duration) {
+	int failedJobs = 0;
+	long totalJobTime = 0;
+	for (JobReport report : reports) {
+	    if (!report.isSuccessful()) {
+		failedJobs++;
+	    }
+	    totalJobTime += report.getDuration();
+	}
+
+	double throughput = (duration > 0) ? reports.size() * 1000.0 / duration : 0;
+	return String.format("%d job(s) completed in %d ms: %d succeeded, %d failed, %.1f job(s)/s"
+		+ " (%d ms of job time)", reports.size(), duration, reports.size() - failedJobs, failedJobs,
+		throughput, totalJobTime);
+    }
+}
@@ -0,0 +1,256 @@
+package net.acprog.builder.cli;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import net.acprog.builder.compilation.CompilationSettings;
+import net.acprog.builder.components.ConfigurationException;
+import net.acprog.builder.utils.XmlUtils;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Manifest of a batch build. The manifest is an xml file with root element
+ * "builds" that lists build jobs. Each job (element "build") defines a project
+ * configuration file, the name and the output path of the library (or a zip
+ * archive where the library is written) and optional compilation settings.
+ * Relative paths are resolved with respect to the directory of the manifest.
+ */
+public class BuildManifest {
+
+    // ---------------------------------------------------------------------------
+    // Build job
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Build job of the manifest.
+     */
+    public static class Job {
+	/**
+	 * Name of the job.
+	 */
+	private final String name;
+
+	/**
+	 * Compilation settings of the job.
+	 */
+	private final CompilationSettings settings;
+
+	/**
+	 * Zip archive where the library is written (null, if the library is
+	 * written to the output library path).
+	 */
+	private final File archiveFile;
+
+	public String getName() {
+	    return name;
+	}
+
+	public CompilationSettings getSettings() {
+	    return settings;
+	}
+
+	public File getArchiveFile() {
+	    return archiveFile;
+	}
+
+	/**
+	 * Constructs a build job.
+	 *
+	 * @param name
+	 *            the name of job.
+	 * @param settings
+	 *            the compilation settings.
+	 */
+	public Job(String name, CompilationSettings settings) {
+	    this(name, settings, null);
+	}
+
+	/**
+	 * Constructs a build job.
+	 *
+	 * @param name
+	 *            the name of job.
+	 * @param settings
+	 *            the compilation settings.
+	 * @param archiveFile
+	 *            the zip archive where the library is written (null, if the
+	 *            library is written to the output library path).
+	 */
+	public Job(String name, CompilationSettings settings, File archiveFile) {
+	    this.name = name;
+	    this.settings = settings;
+	    this.archiveFile = archiveFile;
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Directory or archive with modules (null, if not defined in the
+     * manifest).
+     */
+    private File modulesPath;
+
+    /**
+     * Build jobs.
+     */
+    private final List<Job> jobs = new ArrayList<Job>();
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public File getModulesPath() {
+	return modulesPath;
+    }
+
+    public List<Job> getJobs() {
+	return Collections.unmodifiableList(jobs);
+    }
+
+    // ---------------------------------------------------------------------------
+    // XML parsing
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Reads the manifest from an xml element.
+     *
+     * @param xmlBuilds
+     *            the root element of the manifest.
+     * @param baseDirectory
+     *            the directory used to resolve relative paths.
+     * @throws ConfigurationException
+     *             if the manifest is misconfigured.
+     */
+    public void readConfiguration(Element xmlBuilds, File baseDirectory) throws ConfigurationException {
+	String modules = xmlBuilds.getAttribute("modules").trim();
+	modulesPath = modules.isEmpty() ? null : resolve(baseDirectory, modules);
+
+	jobs.clear();
+	Set<String> jobNames = new HashSet<String>();
+	for (Element xmlBuild : XmlUtils.getChildElements(xmlBuilds, "build")) {
+	    Job job = readJob(xmlBuild, baseDirectory);
+	    if (!jobNames.add(job.getName())) {
+		throw new ConfigurationException("Duplicated build job name: " + job.getName());
+	    }
+
+	    jobs.add(job);
+	}
+    }
+
+    /**
+     * Reads a build job from an xml element.
+     *
+     * @param xmlBuild
+     *            the xml element with the job.
+     * @param baseDirectory
+     *            the directory used to resolve relative paths.
+     * @return the build job.
+     * @throws ConfigurationException
+     *             if the job is misconfigured.
+     */
+    private static Job readJob(Element xmlBuild, File baseDirectory) throws ConfigurationException {
+	String project = XmlUtils.getSimplePropertyValue(xmlBuild, "project", "").trim();
+	String libraryName = XmlUtils.getSimplePropertyValue(xmlBuild, "library-name", "").trim();
+	String output = XmlUtils.getSimplePropertyValue(xmlBuild, "output", "").trim();
+	String archive = XmlUtils.getSimplePropertyValue(xmlBuild, "archive", "").trim();
+	if (project.isEmpty() || libraryName.isEmpty() || (output.isEmpty() && archive.isEmpty())) {
+	    throw new ConfigurationException("Each build job must define elements \"project\", \"library-name\""
+		    + " and \"output\" or \"archive\".");
+	}
+
+	// Files of a library written to an archive are located relatively to
+	// the directory of archive
+	File archiveFile = archive.isEmpty() ? null : resolve(baseDirectory, archive);
+	CompilationSettings settings = new CompilationSettings();
+	settings.setProjectConfigurationFile(resolve(baseDirectory, project));
+	settings.setLibraryName(libraryName);
+	settings.setOutputLibraryPath(output.isEmpty() ? archiveFile.getAbsoluteFile().getParentFile() : resolve(
+		baseDirectory, output));
+	settings.setSourceFilesDirectoryMerging(readBoolean(xmlBuild, "merge-sources"));
+	settings.setDebugMode(readBoolean(xmlBuild, "debug"));
+	settings.setIncrementalExport(readBoolean(xmlBuild, "incremental-export"));
+
+	String exportMode = XmlUtils.getSimplePropertyValue(xmlBuild, "export-mode", "").trim();
+	if (!exportMode.isEmpty()) {
+	    try {
+		settings.setExportMode(CompilationSettings.ExportMode.valueOf(exportMode.toUpperCase()));
+	    } catch (IllegalArgumentException e) {
+		throw new ConfigurationException("Unknown export mode " + exportMode + " of build job "
+			+ libraryName + ".");
+	    }
+	}
+
+	String name = xmlBuild.getAttribute("name").trim();
+	return new Job(name.isEmpty() ? libraryName : name, settings, archiveFile);
+    }
+
+    /**
+     * Reads a boolean property of a build job.
+     *
+     * @param xmlBuild
+     *            the xml element with the job.
+     * @param propertyName
+     *            the name of property.
+     * @return the value of property (false, if the property is not defined).
+     */
+    private static boolean readBoolean(Element xmlBuild, String propertyName) {
+	return Boolean.parseBoolean(XmlUtils.getSimplePropertyValue(xmlBuild, propertyName, "false").trim());
+    }
+
+    /**
+     * Resolves a path with respect to a base directory.
+     *
+     * @param baseDirectory
+     *            the base directory.
+     * @param path
+     *            the absolute or relative path.
+     * @return the resolved file.
+     */
+    private static File resolve(File baseDirectory, String path) {
+	File file = new File(path);
+	return file.isAbsolute() ? file : new File(baseDirectory, path);
+    }
+
+    /**
+     * Loads the build manifest from an xml file.
+     *
+     * @param xmlFile
+     *            the xml file with the manifest.
+     * @return the loaded manifest.
+     */
+    public static BuildManifest loadFromFile(File xmlFile) {
+	DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+	dbf.setIgnoringComments(true);
+	dbf.setCoalescing(true);
+
+	try {
+	    DocumentBuilder db = dbf.newDocumentBuilder();
+	    Document doc = db.parse(xmlFile);
+
+	    BuildManifest result = new BuildManifest();
+	    Element xmlRoot = doc.getDocumentElement();
+	    if (!"builds".equals(xmlRoot.getNodeName())) {
+		throw new ConfigurationException(
+			"Root element of a build manifest must be an element with name 'builds'.");
+	    }
+	    result.readConfiguration(xmlRoot, xmlFile.getAbsoluteFile().getParentFile());
+	    return result;
+	} catch (ConfigurationException e) {
+	    throw e;
+	} catch (Exception e) {
+	    throw new ConfigurationException("Loading of build manifest failed.", e);
+	}
+    }
+}
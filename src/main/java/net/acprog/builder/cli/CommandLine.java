@@ -0,0 +1,884 @@
+package net.acprog.builder.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.*;
+
+import net.acprog.builder.compilation.ACPCompiler;
+import net.acprog.builder.compilation.BuildCache;
+import net.acprog.builder.compilation.BuildCacheServer;
+import net.acprog.builder.compilation.BuildService;
+import net.acprog.builder.compilation.CompilationSettings;
+import net.acprog.builder.compilation.ProjectWatcher;
+import net.acprog.builder.compilation.RemoteBuildCache;
+import net.acprog.builder.compilation.ValidationReport;
+import net.acprog.builder.modules.ModuleDescriptorCache;
+import net.acprog.builder.modules.ModuleRepositoryIndex;
+
+/**
+ * Headless command line interface of the builder.
+ */
+public class CommandLine {
+
+    /**
+     * Output stream for reports.
+     */
+    private final PrintStream out;
+
+    /**
+     * Output stream for error messages.
+     */
+    private final PrintStream err;
+
+    /**
+     * Directory used to resolve relative paths (null, if the working directory
+     * of the process is used).
+     */
+    private final File workingDirectory;
+
+    /**
+     * Compiler shared by all executed commands (null, if each command creates
+     * its own compiler).
+     */
+    private final ACPCompiler sharedCompiler;
+
+    /**
+     * Constructs the command line interface.
+     *
+     * @param out
+     *            the output stream for reports.
+     * @param err
+     *            the output stream for error messages.
+     */
+    public CommandLine(PrintStream out, PrintStream err) {
+	this(out, err, null, null);
+    }
+
+    /**
+     * Constructs the command line interface that executes commands on behalf
+     * of another process, e.g., of a client of the compile daemon.
+     *
+     * @param out
+     *            the output stream for reports.
+     * @param err
+     *            the output stream for error messages.
+     * @param workingDirectory
+     *            the directory used to resolve relative paths (null, if the
+     *            working directory of the process is used).
+     * @param sharedCompiler
+     *            the compiler shared by all executed commands (null, if each
+     *            command creates its own compiler).
+     */
+    public CommandLine(PrintStream out, PrintStream err, File workingDirectory, ACPCompiler sharedCompiler) {
+	this.out = out;
+	this.err = err;
+	this.workingDirectory = workingDirectory;
+	this.sharedCompiler = sharedCompiler;
+    }
+
+    /**
+     * Executes a command given by command line arguments.
+     *
+     * @param args
+     *            the command line arguments, the first argument is the name of
+     *            command.
+     * @return the exit code.
+     */
+    public int execute(String[] args) {
+	if (args.length == 0) {
+	    printUsage();
+	    return 1;
+	}
+
+	String command = args[0];
+	List<String> commandArgs = new ArrayList<String>(Arrays.asList(args).subList(1, args.length));
+	try {
+	    if ("index".equals(command)) {
+		return executeIndex(commandArgs);
+	    }
+
+	    if ("cache-server".equals(command)) {
+		return executeCacheServer(commandArgs);
+	    }
+
+	    if ("build".equals(command)) {
+		return executeBuild(commandArgs);
+	    }
+
+	    if ("validate".equals(command)) {
+		return executeValidate(commandArgs);
+	    }
+
+	    if ("watch".equals(command)) {
+		return executeWatch(commandArgs);
+	    }
+
+	    if ("service".equals(command)) {
+		return executeService(commandArgs);
+	    }
+
+	    if ("daemon".equals(command)) {
+		return executeDaemon(commandArgs);
+	    }
+
+	    if ("client".equals(command)) {
+		return executeClient(commandArgs);
+	    }
+
+	    if ("farm-init".equals(command)) {
+		return executeFarmInit(commandArgs);
+	    }
+
+	    if ("farm-worker".equals(command)) {
+		return executeFarmWorker(commandArgs);
+	    }
+
+	    if ("farm-status".equals(command)) {
+		return executeFarmStatus(commandArgs);
+	    }
+	} catch (IllegalArgumentException e) {
+	    err.println(e.getMessage());
+	    printUsage();
+	    return 1;
+	} catch (Exception e) {
+	    err.println("Command " + command + " failed: " + e.getMessage());
+	    return 1;
+	}
+
+	err.println("Unknown command: " + command);
+	printUsage();
+	return 1;
+    }
+
+    /**
+     * Prints usage of commands.
+     */
+    private void printUsage() {
+	err.println("Usage:");
+	err.println("  index <modules-dir> [--incremental] [--index-file <file>]");
+	err.println("      Builds the index of a module repository.");
+	err.println("  cache-server <cache-dir> [--host <host>] [--port <port>] [--max-size <bytes>]");
+	err.println("      Runs a shared build cache server.");
+	err.println("  build <manifest> [--modules <modules-dir>] [--threads <n>] [--cache-dir <dir>]"
+		+ " [--remote-cache <url>] [--index-file <file>] [--descriptor-cache <dir>] [--timeout <s>]");
+	err.println("      Compiles all projects listed in a build manifest.");
+	err.println("  validate <modules-dir> <project>");
+	err.println("      Checks a project configuration and prints all problems with their locations.");
+	err.println("  watch <modules-dir> <project> <output-dir> [--library-name <name>] [--debounce <ms>] [--merge]"
+		+ " [--index-file <file>] [--descriptor-cache <dir>]");
+	err.println("      Rebuilds a project whenever its configuration or a used module changes.");
+	err.println("  service <modules-dir> [--host <host>] [--port <port>] [--threads <n>] [--queue <n>]"
+		+ " [--build-timeout <s>] [--index-file <file>] [--descriptor-cache <dir>]");
+	err.println("      Runs an HTTP service that compiles posted projects to zipped libraries.");
+	err.println("  daemon <modules-dir> [--port <port>] [--threads <n>] [--idle-timeout <s>]"
+		+ " [--index-file <file>] [--descriptor-cache <dir>]");
+	err.println("      Runs a compile daemon that keeps loaded modules in memory.");
+	err.println("  client [--port <port>] <command> [<args>]");
+	err.println("      Executes a command (index, build, validate, farm-*, daemon-status or daemon-stop)"
+		+ " in the daemon.");
+	err.println("  farm-init <manifest> <work-dir> [--shard-size <n>]");
+	err.println("      Splits jobs of a build manifest into shards of a build farm work queue.");
+	err.println("  farm-worker <work-dir> [--modules <modules-dir>] [--threads <n>] [--lease <ms>]"
+		+ " [--cache-dir <dir>] [--remote-cache <url>] [--index-file <file>] [--descriptor-cache <dir>]");
+	err.println("      Compiles shards of a build farm work queue until the queue is empty.");
+	err.println("  farm-status <work-dir>");
+	err.println("      Prints the state of a build farm work queue.");
+    }
+
+    // ---------------------------------------------------------------------------
+    // Commands
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Executes the command that (re)builds the index of a module repository.
+     *
+     * @param args
+     *            the command arguments.
+     * @return the exit code.
+     */
+    private int executeIndex(List<String> args) throws Exception {
+	boolean incremental = removeFlag(args, "--incremental");
+	String indexFilePath = removeOption(args, "--index-file");
+	File modulesDir = resolveFile(requireSingleArgument(args, "modules-dir"));
+	if (!modulesDir.isDirectory()) {
+	    throw new IllegalArgumentException("Directory with ACP modules does not exist: " + modulesDir);
+	}
+
+	File indexFile = (indexFilePath != null) ? resolveFile(indexFilePath) : new File(modulesDir,
+		ModuleRepositoryIndex.DEFAULT_INDEX_FILE);
+
+	long startTime = System.nanoTime();
+	ModuleRepositoryIndex.ScanStatistics statistics = ModuleRepositoryIndex.build(modulesDir, indexFile,
+		incremental);
+	long duration = (System.nanoTime() - startTime) / 1000000;
+
+	out.println("Index " + indexFile.getPath() + " created in " + duration + " ms: "
+		+ statistics.getScannedModules() + " module(s) scanned, " + statistics.getReusedModules()
+		+ " module(s) unchanged.");
+	return 0;
+    }
+
+    /**
+     * Executes the command that runs a shared build cache server. The server
+     * runs until the process is terminated.
+     *
+     * @param args
+     *            the command arguments.
+     * @return the exit code.
+     */
+    private int executeCacheServer(List<String> args) throws Exception {
+	String host = removeOption(args, "--host");
+	String port = removeOption(args, "--port");
+	String maxSize = removeOption(args, "--max-size");
+	File cacheDir = resolveFile(requireSingleArgument(args, "cache-dir"));
+
+	BuildCache cache = new BuildCache(cacheDir);
+	if (maxSize != null) {
+	    cache.setMaxSize(parseNumber(maxSize, "--max-size"));
+	}
+
+	InetSocketAddress address = new InetSocketAddress((host != null) ? host : "127.0.0.1",
+		(port != null) ? (int) parseNumber(port, "--port") : BuildCacheServer.DEFAULT_PORT);
+	BuildCacheServer server = new BuildCacheServer(cache, address, Runtime.getRuntime().availableProcessors());
+	server.start();
+	out.println("Build cache server is listening on http://" + server.getAddress().getHostString() + ":"
+		+ server.getAddress().getPort() + "/");
+
+	// Wait until the process is terminated
+	Thread.sleep(Long.MAX_VALUE);
+	return 0;
+    }
+
+    /**
+     * Executes the command that compiles all build jobs of a build manifest.
+     *
+     * @param args
+     *            the command arguments.
+     * @return the exit code.
+     */
+    private int executeBuild(List<String> args) throws Exception {
+	String modules = removeOption(args, "--modules");
+	String threads = removeOption(args, "--threads");
+	String cacheDir = removeOption(args, "--cache-dir");
+	String remoteCache = removeOption(args, "--remote-cache");
+	String indexFile = removeOption(args, "--index-file");
+	String descriptorCache = removeOption(args, "--descriptor-cache");
+	String timeout = removeOption(args, "--timeout");
+	BuildManifest manifest = BuildManifest.loadFromFile(resolveFile(requireSingleArgument(args, "manifest")));
+	File modulesPath = (modules != null) ? resolveFile(modules) : manifest.getModulesPath();
+	int jobThreads = (threads != null) ? (int) parseNumber(threads, "--threads") : Runtime.getRuntime()
+		.availableProcessors();
+
+	ACPCompiler compiler = openCompiler(modulesPath);
+	try {
+	    configureRepositoryIndex(compiler, indexFile);
+	    configureDescriptorCache(compiler, descriptorCache);
+	    configureBuildCache(compiler, cacheDir, remoteCache);
+	    long startTime = System.nanoTime();
+	    BatchBuilder builder = new BatchBuilder(compiler, jobThreads, out);
+	    if (timeout != null) {
+		builder.setJobTimeout(parseNumber(timeout, "--timeout") * 1000);
+	    }
+	    List<BatchBuilder.JobReport> reports = builder.build(manifest.getJobs());
+	    long duration = (System.nanoTime() - startTime) / 1000000;
+	    out.println(BatchBuilder.createSummary(reports, duration));
+	    printDescriptorCacheStatistics(compiler);
+	    printBuildCacheStatistics(compiler);
+
+	    for (BatchBuilder.JobReport report : reports) {
+		if (!report.isSuccessful()) {
+		    return 2;
+		}
+	    }
+	} finally {
+	    releaseCompiler(compiler);
+	}
+
+	return 0;
+    }
+
+    /**
+     * Executes the command that validates a project configuration without
+     * compiling it. Each problem is printed on a separate line prefixed by
+     * the project file, line and column.
+     *
+     * @param args
+     *            the command arguments.
+     * @return the exit code.
+     */
+    private int executeValidate(List<String> args) throws Exception {
+	if (args.size() != 2) {
+	    throw new IllegalArgumentException("Expected arguments <modules-dir> <project>, found: " + args);
+	}
+
+	File projectFile = resolveFile(args.get(1));
+	if (!projectFile.isFile()) {
+	    throw new IllegalArgumentException("File with project configuration does not exist: " + projectFile);
+	}
+
+	ACPCompiler compiler = openCompiler(resolveFile(args.get(0)));
+	try {
+	    ValidationReport report = compiler.validate(Files.readAllBytes(projectFile.toPath()));
+	    for (ValidationReport.Problem problem : report.getProblems()) {
+		out.println(projectFile.getPath() + ":" + problem);
+	    }
+
+	    out.println("Project " + projectFile.getPath() + " validated in " + report.getValidationTime() + " us: "
+		    + report.getProblems().size() + " problem(s) found.");
+	    return report.isValid() ? 0 : 2;
+	} finally {
+	    releaseCompiler(compiler);
+	}
+    }
+
+    /**
+     * Executes the command that watches a project and rebuilds it after each
+     * change. The command runs until the process is terminated.
+     *
+     * @param args
+     *            the command arguments.
+     * @return the exit code.
+     */
+    private int executeWatch(List<String> args) throws Exception {
+	boolean merge = removeFlag(args, "--merge");
+	String libraryName = removeOption(args, "--library-name");
+	String debounce = removeOption(args, "--debounce");
+	String indexFile = removeOption(args, "--index-file");
+	String descriptorCache = removeOption(args, "--descriptor-cache");
+	if (args.size() != 3) {
+	    throw new IllegalArgumentException("Expected arguments <modules-dir> <project> <output-dir>, found: "
+		    + args);
+	}
+
+	File projectFile = resolveFile(args.get(1));
+	if (!projectFile.isFile()) {
+	    throw new IllegalArgumentException("File with project configuration does not exist: " + projectFile);
+	}
+
+	if (libraryName == null) {
+	    libraryName = projectFile.getName();
+	    int dotPos = libraryName.indexOf('.');
+	    if (dotPos > 0) {
+		libraryName = libraryName.substring(0, dotPos);
+	    }
+	}
+
+	CompilationSettings settings = new CompilationSettings();
+	settings.setProjectConfigurationFile(projectFile);
+	settings.setLibraryName(libraryName);
+	settings.setOutputLibraryPath(resolveFile(args.get(2)));
+	settings.setSourceFilesDirectoryMerging(merge);
+
+	final ACPCompiler compiler = openCompiler(resolveFile(args.get(0)));
+	try {
+	    configureRepositoryIndex(compiler, indexFile);
+	    configureDescriptorCache(compiler, descriptorCache);
+	    try (ProjectWatcher watcher = new ProjectWatcher(compiler, settings, new ProjectWatcher.RebuildListener() {
+		@Override
+		public void rebuildCompleted(ProjectWatcher.RebuildReport report) {
+		    out.println(report);
+		    printDescriptorCacheStatistics(compiler);
+		}
+	    })) {
+		if (debounce != null) {
+		    watcher.setDebounceDelay(parseNumber(debounce, "--debounce"));
+		}
+
+		out.println("Watching project " + projectFile.getPath() + " (press Ctrl+C to stop).");
+		watcher.start();
+
+		// Wait until the process is terminated
+		Thread.sleep(Long.MAX_VALUE);
+	    }
+	} finally {
+	    releaseCompiler(compiler);
+	}
+
+	return 0;
+    }
+
+    /**
+     * Executes the command that runs an HTTP build service. The service runs
+     * until the process is terminated.
+     *
+     * @param args
+     *            the command arguments.
+     * @return the exit code.
+     */
+    private int executeService(List<String> args) throws Exception {
+	String host = removeOption(args, "--host");
+	String port = removeOption(args, "--port");
+	String threads = removeOption(args, "--threads");
+	String queue = removeOption(args, "--queue");
+	String buildTimeout = removeOption(args, "--build-timeout");
+	String indexFile = removeOption(args, "--index-file");
+	String descriptorCache = removeOption(args, "--descriptor-cache");
+	File modulesPath = resolveFile(requireSingleArgument(args, "modules-dir"));
+
+	int maxConcurrentBuilds = (threads != null) ? (int) parseNumber(threads, "--threads") : Runtime.getRuntime()
+		.availableProcessors();
+	int queueCapacity = (queue != null) ? (int) parseNumber(queue, "--queue") : 4 * maxConcurrentBuilds;
+	InetSocketAddress address = new InetSocketAddress((host != null) ? host : "127.0.0.1",
+		(port != null) ? (int) parseNumber(port, "--port") : BuildService.DEFAULT_PORT);
+
+	ACPCompiler compiler = openCompiler(modulesPath);
+	try {
+	    configureRepositoryIndex(compiler, indexFile);
+	    configureDescriptorCache(compiler, descriptorCache);
+	    BuildService service = new BuildService(compiler, address, maxConcurrentBuilds, queueCapacity);
+	    if (buildTimeout != null) {
+		service.setBuildTimeout(parseNumber(buildTimeout, "--build-timeout") * 1000);
+	    }
+	    service.start();
+	    out.println("Build service is listening on http://" + service.getAddress().getHostString() + ":"
+		    + service.getAddress().getPort() + "/build");
+
+	    // Wait until the process is terminated
+	    Thread.sleep(Long.MAX_VALUE);
+	} finally {
+	    releaseCompiler(compiler);
+	}
+
+	return 0;
+    }
+
+    /**
+     * Executes the command that runs a compile daemon. The daemon runs until
+     * it is stopped or the idle timeout expires.
+     *
+     * @param args
+     *            the command arguments.
+     * @return the exit code.
+     */
+    private int executeDaemon(List<String> args) throws Exception {
+	String port = removeOption(args, "--port");
+	String threads = removeOption(args, "--threads");
+	String idleTimeout = removeOption(args, "--idle-timeout");
+	String indexFile = removeOption(args, "--index-file");
+	String descriptorCache = removeOption(args, "--descriptor-cache");
+	File modulesPath = resolveFile(requireSingleArgument(args, "modules-dir"));
+
+	ACPCompiler compiler = openCompiler(modulesPath);
+	try {
+	    configureRepositoryIndex(compiler, indexFile);
+	    configureDescriptorCache(compiler, descriptorCache);
+	    CompileDaemon daemon = new CompileDaemon(compiler, (port != null) ? (int) parseNumber(port, "--port")
+		    : CompileDaemon.DEFAULT_PORT, (threads != null) ? (int) parseNumber(threads, "--threads")
+		    : Runtime.getRuntime().availableProcessors());
+	    if (idleTimeout != null) {
+		daemon.setIdleTimeout(parseNumber(idleTimeout, "--idle-timeout") * 1000);
+	    }
+
+	    out.println("Compile daemon is listening on port " + daemon.getPort() + ".");
+	    out.println("Access token of the daemon is stored in " + CompileDaemon.getTokenFile(daemon.getPort()) + ".");
+	    daemon.run();
+	    out.println("Compile daemon stopped.");
+	    printDescriptorCacheStatistics(compiler);
+	} finally {
+	    releaseCompiler(compiler);
+	}
+
+	return 0;
+    }
+
+    /**
+     * Executes the command that forwards a command to the compile daemon.
+     *
+     * @param args
+     *            the command arguments.
+     * @return the exit code of the forwarded command.
+     */
+    private int executeClient(List<String> args) throws Exception {
+	// Only the leading option belongs to the client, other arguments are
+	// forwarded
+	int port = CompileDaemon.DEFAULT_PORT;
+	if (!args.isEmpty() && "--port".equals(args.get(0))) {
+	    port = (int) parseNumber(removeOption(args, "--port"), "--port");
+	}
+
+	if (args.isEmpty()) {
+	    throw new IllegalArgumentException("Expected a command to be executed by the compile daemon.");
+	}
+
+	try {
+	    return new DaemonClient(port).execute(args.toArray(new String[args.size()]), out, err);
+	} catch (ConnectException e) {
+	    err.println("Compile daemon is not running on port " + port + ".");
+	    return 1;
+	}
+    }
+
+    /**
+     * Executes the command that initializes the work queue of a build farm.
+     * Jobs that have been already successfully completed in the work
+     * directory are not added to the queue.
+     *
+     * @param args
+     *            the command arguments.
+     * @return the exit code.
+     */
+    private int executeFarmInit(List<String> args) throws Exception {
+	String shardSize = removeOption(args, "--shard-size");
+	if (args.size() != 2) {
+	    throw new IllegalArgumentException("Expected arguments <manifest> <work-dir>, found: " + args);
+	}
+
+	File manifestFile = resolveFile(args.get(0));
+	BuildManifest manifest = BuildManifest.loadFromFile(manifestFile);
+	List<String> jobNames = new ArrayList<String>();
+	for (BuildManifest.Job job : manifest.getJobs()) {
+	    jobNames.add(job.getName());
+	}
+
+	WorkQueue queue = new WorkQueue(resolveFile(args.get(1)));
+	int shards = queue.initialize(manifestFile, jobNames, (shardSize != null) ? (int) parseNumber(shardSize,
+		"--shard-size") : 1);
+	out.println("Work queue " + args.get(1) + " initialized with " + shards + " shard(s).");
+	return 0;
+    }
+
+    /**
+     * Executes the command that runs a worker of a build farm.
+     *
+     * @param args
+     *            the command arguments.
+     * @return the exit code.
+     */
+    private int executeFarmWorker(List<String> args) throws Exception {
+	String modules = removeOption(args, "--modules");
+	String threads = removeOption(args, "--threads");
+	String lease = removeOption(args, "--lease");
+	String cacheDir = removeOption(args, "--cache-dir");
+	String remoteCache = removeOption(args, "--remote-cache");
+	String indexFile = removeOption(args, "--index-file");
+	String descriptorCache = removeOption(args, "--descriptor-cache");
+	WorkQueue queue = new WorkQueue(resolveFile(requireSingleArgument(args, "work-dir")));
+	BuildManifest manifest = BuildManifest.loadFromFile(queue.getManifestFile());
+	File modulesPath = (modules != null) ? resolveFile(modules) : manifest.getModulesPath();
+	int jobThreads = (threads != null) ? (int) parseNumber(threads, "--threads") : Runtime.getRuntime()
+		.availableProcessors();
+
+	ACPCompiler compiler = openCompiler(modulesPath);
+	try {
+	    configureRepositoryIndex(compiler, indexFile);
+	    configureDescriptorCache(compiler, descriptorCache);
+	    configureBuildCache(compiler, cacheDir, remoteCache);
+	    FarmWorker worker = new FarmWorker(queue, manifest, compiler, jobThreads, out);
+	    if (lease != null) {
+		worker.setLease(parseNumber(lease, "--lease"));
+	    }
+
+	    long startTime = System.nanoTime();
+	    int failedJobs = worker.run();
+	    long duration = (System.nanoTime() - startTime) / 1000000;
+	    out.println("Worker " + worker.getWorkerId() + " finished in " + duration + " ms, " + failedJobs
+		    + " job(s) failed.");
+	    printDescriptorCacheStatistics(compiler);
+	    printBuildCacheStatistics(compiler);
+	    return (failedJobs > 0) ? 2 : 0;
+	} finally {
+	    releaseCompiler(compiler);
+	}
+    }
+
+    /**
+     * Executes the command that prints the state of a build farm work queue.
+     *
+     * @param args
+     *            the command arguments.
+     * @return the exit code.
+     */
+    private int executeFarmStatus(List<String> args) throws Exception {
+	WorkQueue queue = new WorkQueue(resolveFile(requireSingleArgument(args, "work-dir")));
+	BuildManifest manifest = BuildManifest.loadFromFile(queue.getManifestFile());
+
+	out.println("Shards: " + queue.getPendingShards() + " pending, " + queue.getClaimedShards() + " claimed, "
+		+ queue.getCompletedShards() + " done.");
+
+	int succeededJobs = 0;
+	int remainingJobs = 0;
+	List<WorkQueue.JobResult> failedJobs = new ArrayList<WorkQueue.JobResult>();
+	for (BuildManifest.Job job : manifest.getJobs()) {
+	    WorkQueue.JobResult result = queue.readResult(job.getName());
+	    if (result == null) {
+		remainingJobs++;
+	    } else if (result.isSuccessful()) {
+		succeededJobs++;
+	    } else {
+		failedJobs.add(result);
+	    }
+	}
+
+	out.println("Jobs: " + succeededJobs + " succeeded, " + failedJobs.size() + " failed, " + remainingJobs
+		+ " not completed.");
+	for (WorkQueue.JobResult result : failedJobs) {
+	    out.println("[FAILED] " + result.getJobName() + " (" + result.getWorkerId() + "): " + result.getMessage());
+	}
+
+	return (failedJobs.isEmpty() && (remainingJobs == 0)) ? 0 : 2;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Helper methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Resolves a path given as a command argument.
+     *
+     * @param path
+     *            the absolute or relative path.
+     * @return the resolved file.
+     */
+    private File resolveFile(String path) {
+	File file = new File(path);
+	if (file.isAbsolute() || (workingDirectory == null)) {
+	    return file;
+	}
+
+	return new File(workingDirectory, path);
+    }
+
+    /**
+     * Returns a compiler for a module repository. The shared compiler is
+     * returned, if it compiles with the same module repository.
+     *
+     * @param modulesPath
+     *            the directory or archive with modules.
+     * @return the compiler.
+     */
+    private ACPCompiler openCompiler(File modulesPath) throws IOException {
+	if ((modulesPath == null) || !ACPCompiler.isModuleRepository(modulesPath)) {
+	    throw new IllegalArgumentException("Directory or archive with ACP modules does not exist: " + modulesPath);
+	}
+
+	if (sharedCompiler == null) {
+	    return new ACPCompiler(modulesPath);
+	}
+
+	if (!sharedCompiler.getModulesPath().getCanonicalFile().equals(modulesPath.getCanonicalFile())) {
+	    throw new IllegalArgumentException("Modules " + modulesPath
+		    + " differ from modules of the shared compiler: " + sharedCompiler.getModulesPath());
+	}
+
+	return sharedCompiler;
+    }
+
+    /**
+     * Sets the repository index of a compiler. Without option --index-file,
+     * the default index file of the module directory is used, if it exists.
+     * The shared compiler keeps the index loaded when it was created.
+     *
+     * @param compiler
+     *            the compiler.
+     * @param indexFile
+     *            the value of option --index-file (null, if the option is not
+     *            present).
+     */
+    private void configureRepositoryIndex(ACPCompiler compiler, String indexFile) throws IOException {
+	if (compiler == sharedCompiler) {
+	    if (indexFile != null) {
+		throw new IllegalArgumentException("Option --index-file cannot be used with a shared compiler.");
+	    }
+	    return;
+	}
+
+	ModuleRepositoryIndex repositoryIndex;
+	if (indexFile != null) {
+	    repositoryIndex = ModuleRepositoryIndex.open(resolveFile(indexFile));
+	} else {
+	    repositoryIndex = ModuleRepositoryIndex.openDefault(compiler.getModulesPath());
+	}
+
+	if (repositoryIndex != null) {
+	    compiler.setRepositoryIndex(repositoryIndex);
+	}
+    }
+
+    /**
+     * Sets the cache of parsed module descriptions of a compiler.
+     *
+     * @param compiler
+     *            the compiler.
+     * @param cacheDir
+     *            the value of option --descriptor-cache (null, if the option
+     *            is not present).
+     */
+    private void configureDescriptorCache(ACPCompiler compiler, String cacheDir) {
+	if (cacheDir == null) {
+	    return;
+	}
+
+	if (compiler == sharedCompiler) {
+	    throw new IllegalArgumentException("Option --descriptor-cache cannot be used with a shared compiler.");
+	}
+
+	compiler.setDescriptorCache(new ModuleDescriptorCache(resolveFile(cacheDir)));
+    }
+
+    /**
+     * Prints statistics of the descriptor cache of a compiler (if any).
+     *
+     * @param compiler
+     *            the compiler.
+     */
+    private void printDescriptorCacheStatistics(ACPCompiler compiler) {
+	ModuleDescriptorCache descriptorCache = compiler.getDescriptorCache();
+	if ((descriptorCache == null) || (compiler == sharedCompiler)) {
+	    return;
+	}
+
+	out.println("Descriptor cache: " + descriptorCache.getHits() + " hit(s), " + descriptorCache.getMisses()
+		+ " miss(es), " + descriptorCache.getParseTime() / 1000000 + " ms of parsing, "
+		+ descriptorCache.getSavedParseTime() / 1000000 + " ms saved.");
+    }
+
+    /**
+     * Sets the build cache of a compiler given by command options. The
+     * remote cache is used only together with a local cache.
+     *
+     * @param compiler
+     *            the compiler.
+     * @param cacheDir
+     *            the value of option --cache-dir (null, if the option is not
+     *            present).
+     * @param remoteCache
+     *            the value of option --remote-cache (null, if the option is
+     *            not present).
+     */
+    private void configureBuildCache(ACPCompiler compiler, String cacheDir, String remoteCache) {
+	if (cacheDir == null) {
+	    if (remoteCache != null) {
+		throw new IllegalArgumentException("Option --remote-cache requires option --cache-dir.");
+	    }
+	    return;
+	}
+
+	if (compiler == sharedCompiler) {
+	    throw new IllegalArgumentException("Option --cache-dir cannot be used with a shared compiler.");
+	}
+
+	BuildCache buildCache = new BuildCache(resolveFile(cacheDir));
+	if (remoteCache != null) {
+	    buildCache.setRemoteCache(new RemoteBuildCache(remoteCache));
+	}
+	compiler.setBuildCache(buildCache);
+    }
+
+    /**
+     * Prints statistics of the build cache of a compiler (if any).
+     *
+     * @param compiler
+     *            the compiler.
+     */
+    private void printBuildCacheStatistics(ACPCompiler compiler) {
+	BuildCache buildCache = compiler.getBuildCache();
+	if ((buildCache == null) || (compiler == sharedCompiler)) {
+	    return;
+	}
+
+	StringBuilder statistics = new StringBuilder("Build cache: ");
+	statistics.append(buildCache.getHits()).append(" hit(s) (").append(buildCache.getRemoteHits())
+		.append(" remote), ").append(buildCache.getMisses()).append(" miss(es), ")
+		.append(buildCache.getEvictions()).append(" eviction(s)");
+	RemoteBuildCache remoteCache = buildCache.getRemoteCache();
+	if (remoteCache != null) {
+	    statistics.append(", ").append(remoteCache.getDownloads()).append(" download(s), ")
+		    .append(remoteCache.getUploads()).append(" upload(s), ").append(remoteCache.getFailures())
+		    .append(" failed request(s)");
+	}
+
+	out.println(statistics.append('.'));
+    }
+
+    /**
+     * Releases a compiler returned by {@link #openCompiler(File)}.
+     *
+     * @param compiler
+     *            the compiler.
+     */
+    private void releaseCompiler(ACPCompiler compiler) {
+	if (compiler != sharedCompiler) {
+	    compiler.close();
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Argument parsing
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Removes a flag from the list of arguments.
+     *
+     * @param args
+     *            the list of arguments.
+     * @param flag
+     *            the flag.
+     * @return true, if the flag was present, false otherwise.
+     */
+    static boolean removeFlag(List<String> args, String flag) {
+	return args.remove(flag);
+    }
+
+    /**
+     * Removes an option with value from the list of arguments.
+     *
+     * @param args
+     *            the list of arguments.
+     * @param option
+     *            the name of option.
+     * @return the value of option or null, if the option was not present.
+     */
+    static String removeOption(List<String> args, String option) {
+	int idx = args.indexOf(option);
+	if (idx < 0) {
+	    return null;
+	}
+
+	if (idx + 1 >= args.size()) {
+	    throw new IllegalArgumentException("Missing value of option " + option + ".");
+	}
+
+	String value = args.get(idx + 1);
+	args.remove(idx + 1);
+	args.remove(idx);
+	return value;
+    }
+
+    /**
+     * Parses a numeric value of an option.
+     *
+     * @param value
+     *            the value.
+     * @param option
+     *            the name of option (used in error messages).
+     * @return the parsed value.
+     */
+    static long parseNumber(String value, String option) {
+	try {
+	    return Long.parseLong(value);
+	} catch (NumberFormatException e) {
+	    throw new IllegalArgumentException("Invalid value of option " + option + ": " + value);
+	}
+    }
+
+    /**
+     * Returns the only remaining argument.
+     *
+     * @param args
+     *            the list of arguments.
+     * @param name
+     *            the name of argument (used in error messages).
+     * @return the argument.
+     */
+    static String requireSingleArgument(List<String> args, String name) {
+	if (args.size() != 1) {
+	    throw new IllegalArgumentException("Expected a single argument <" + name + ">, found: " + args);
+	}
+
+	return args.get(0);
+    }
+}
@@ -0,0 +1,619 @@
+package net.acprog.builder.cli;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.acprog.builder.compilation.ACPCompiler;
+import net.acprog.builder.modules.ModuleDescriptorCache;
+import net.acprog.builder.utils.HashUtils;
+
+/**
+ * Compile daemon that executes commands of the command line interface on
+ * behalf of thin clients connected via a loopback socket. All commands share
+ * a single compiler, hence loaded modules and templates stay in memory
+ * between commands and commands do not pay the startup of a new process.
+ * The daemon watches the module repository and removes changed modules from
+ * the module cache. The daemon terminates when it does not receive any
+ * request within the idle timeout.
+ * <p>
+ * At start, the daemon writes a random access token to a file readable only
+ * by the user (see {@link #getTokenFile(int)}). A request consists of the
+ * access token, the working directory of the client and command arguments
+ * (all written by {@link DataOutputStream#writeUTF(String)}, the arguments
+ * are preceded by their count). Requests with a wrong token are rejected
+ * before any command is executed, hence other users of the machine cannot
+ * run commands in the daemon. The response is a sequence of frames: output
+ * and error frames with a chunk of text and the final exit frame with the
+ * exit code of the command.
+ */
+public class CompileDaemon implements Closeable {
+
+    // ---------------------------------------------------------------------------
+    // Configuration constants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Default port of the daemon.
+     */
+    public static final int DEFAULT_PORT = 7342;
+
+    /**
+     * Default idle timeout in milliseconds.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30 * 60 * 1000;
+
+    /**
+     * Frame with a chunk of standard output.
+     */
+    static final int OUTPUT_FRAME = 'O';
+
+    /**
+     * Frame with a chunk of error output.
+     */
+    static final int ERROR_FRAME = 'E';
+
+    /**
+     * Final frame with the exit code.
+     */
+    static final int EXIT_FRAME = 'X';
+
+    /**
+     * Commands of the command line interface that can be executed by the
+     * daemon.
+     */
+    private static final Set<String> DAEMON_COMMANDS = new HashSet<String>(Arrays.asList("index", "build",
+	    "validate", "farm-init", "farm-worker", "farm-status"));
+
+    /**
+     * Command that prints the state of the daemon.
+     */
+    public static final String STATUS_COMMAND = "daemon-status";
+
+    /**
+     * Command that stops the daemon.
+     */
+    public static final String STOP_COMMAND = "daemon-stop";
+
+    /**
+     * Interval (in milliseconds) in which the idle timeout is checked.
+     */
+    private static final int IDLE_CHECK_INTERVAL = 1000;
+
+    /**
+     * Directory (relative to the home directory of the user) with access
+     * tokens of running daemons.
+     */
+    private static final String TOKEN_DIRECTORY = ".acp";
+
+    /**
+     * Number of random bytes of an access token.
+     */
+    private static final int TOKEN_LENGTH = 32;
+
+    // ---------------------------------------------------------------------------
+    // Framed output stream
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Output stream that writes data as frames of a response.
+     */
+    private static class FrameOutputStream extends OutputStream {
+	/**
+	 * Response stream shared by all frame streams of the response.
+	 */
+	private final DataOutputStream response;
+
+	/**
+	 * Type of frames.
+	 */
+	private final int frameType;
+
+	FrameOutputStream(DataOutputStream response, int frameType) {
+	    this.response = response;
+	    this.frameType = frameType;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+	    write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+	    if (len == 0) {
+		return;
+	    }
+
+	    synchronized (response) {
+		response.writeByte(frameType);
+		response.writeInt(len);
+		response.write(b, off, len);
+	    }
+	}
+
+	@Override
+	public void flush() throws IOException {
+	    synchronized (response) {
+		response.flush();
+	    }
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Compiler shared by all requests.
+     */
+    private final ACPCompiler compiler;
+
+    /**
+     * Server socket accepting connections of clients.
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * Executor of requests.
+     */
+    private final ExecutorService requestExecutor;
+
+    /**
+     * Access token required in each request.
+     */
+    private final String token;
+
+    /**
+     * File with the access token.
+     */
+    private final File tokenFile;
+
+    /**
+     * Watch service of the module repository (null, if modules are read from
+     * an archive).
+     */
+    private final WatchService watchService;
+
+    /**
+     * Directories registered in the watch service.
+     */
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<WatchKey, Path>();
+
+    /**
+     * Idle timeout in milliseconds.
+     */
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /**
+     * Time (in milliseconds) of the last completed request.
+     */
+    private final AtomicLong lastActivity = new AtomicLong();
+
+    /**
+     * Number of requests in progress.
+     */
+    private final AtomicInteger activeRequests = new AtomicInteger();
+
+    /**
+     * Number of served requests.
+     */
+    private final AtomicLong servedRequests = new AtomicLong();
+
+    /**
+     * Number of module cache invalidations caused by changes of the module
+     * repository.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Time (in milliseconds) when the daemon was started.
+     */
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * Indicates whether the daemon has been stopped.
+     */
+    private volatile boolean stopped;
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the compile daemon listening on a loopback port.
+     *
+     * @param compiler
+     *            the compiler shared by all requests.
+     * @param port
+     *            the port (0 for an ephemeral port).
+     * @param threads
+     *            the number of concurrently executed requests.
+     * @throws IOException
+     *             if the daemon cannot be created.
+     */
+    public CompileDaemon(ACPCompiler compiler, int port, int threads) throws IOException {
+	this.compiler = compiler;
+	this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+	this.serverSocket.setSoTimeout(IDLE_CHECK_INTERVAL);
+	this.requestExecutor = Executors.newFixedThreadPool(Math.max(threads, 1));
+	this.lastActivity.set(System.currentTimeMillis());
+
+	byte[] tokenBytes = new byte[TOKEN_LENGTH];
+	new SecureRandom().nextBytes(tokenBytes);
+	this.token = HashUtils.toHex(tokenBytes);
+	this.tokenFile = getTokenFile(getPort());
+	try {
+	    writeTokenFile(tokenFile, token);
+	} catch (IOException e) {
+	    serverSocket.close();
+	    throw new IOException("Access token of the compile daemon cannot be written to " + tokenFile + ".", e);
+	}
+
+	if (compiler.getModulesPath().isDirectory()) {
+	    watchService = FileSystems.getDefault().newWatchService();
+	    registerDirectories(compiler.getModulesPath().toPath());
+	} else {
+	    watchService = null;
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public int getPort() {
+	return serverSocket.getLocalPort();
+    }
+
+    public long getIdleTimeout() {
+	return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+	this.idleTimeout = idleTimeout;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Daemon methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Serves requests until the daemon is stopped or the idle timeout
+     * expires.
+     */
+    public void run() {
+	Thread watcher = null;
+	if (watchService != null) {
+	    watcher = new Thread(new Runnable() {
+		@Override
+		public void run() {
+		    watchModules();
+		}
+	    }, "acp-module-watcher");
+	    watcher.setDaemon(true);
+	    watcher.start();
+	}
+
+	try {
+	    while (!stopped) {
+		final Socket socket;
+		try {
+		    socket = serverSocket.accept();
+		} catch (SocketTimeoutException e) {
+		    if ((activeRequests.get() == 0)
+			    && (System.currentTimeMillis() - lastActivity.get() > idleTimeout)) {
+			break;
+		    }
+		    continue;
+		} catch (IOException e) {
+		    if (stopped) {
+			break;
+		    }
+		    throw new IllegalStateException("Compile daemon cannot accept connections.", e);
+		}
+
+		activeRequests.incrementAndGet();
+		requestExecutor.execute(new Runnable() {
+		    @Override
+		    public void run() {
+			try {
+			    serveRequest(socket);
+			} finally {
+			    lastActivity.set(System.currentTimeMillis());
+			    activeRequests.decrementAndGet();
+			}
+		    }
+		});
+	    }
+	} finally {
+	    close();
+	    if (watcher != null) {
+		watcher.interrupt();
+	    }
+	}
+    }
+
+    /**
+     * Stops the daemon. Requests in progress are completed.
+     */
+    @Override
+    public void close() {
+	stopped = true;
+	requestExecutor.shutdown();
+	try {
+	    serverSocket.close();
+	} catch (IOException ignore) {
+	    // Nothing to do
+	}
+
+	if (watchService != null) {
+	    try {
+		watchService.close();
+	    } catch (IOException ignore) {
+		// Nothing to do
+	    }
+	}
+
+	tokenFile.delete();
+    }
+
+    /**
+     * Serves a request of a client.
+     *
+     * @param socket
+     *            the socket connected to the client.
+     */
+    private void serveRequest(Socket socket) {
+	try (Socket s = socket) {
+	    DataInputStream request = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+	    DataOutputStream response = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+	    PrintStream out = new PrintStream(new FrameOutputStream(response, OUTPUT_FRAME), true, "UTF-8");
+	    PrintStream err = new PrintStream(new FrameOutputStream(response, ERROR_FRAME), true, "UTF-8");
+
+	    // Reject requests without the access token
+	    String requestToken = request.readUTF();
+	    if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+		    requestToken.getBytes(StandardCharsets.UTF_8))) {
+		err.println("Request rejected: invalid access token of the compile daemon.");
+		synchronized (response) {
+		    response.writeByte(EXIT_FRAME);
+		    response.writeInt(1);
+		    response.flush();
+		}
+		return;
+	    }
+
+	    String workingDirectory = request.readUTF();
+	    int argCount = request.readInt();
+	    String[] args = new String[argCount];
+	    for (int i = 0; i < argCount; i++) {
+		args[i] = request.readUTF();
+	    }
+
+	    int exitCode;
+	    try {
+		exitCode = executeCommand(args, new File(workingDirectory), out, err);
+	    } catch (RuntimeException e) {
+		err.println("Command failed: " + e.getMessage());
+		exitCode = 1;
+	    }
+
+	    out.flush();
+	    err.flush();
+	    synchronized (response) {
+		response.writeByte(EXIT_FRAME);
+		response.writeInt(exitCode);
+		response.flush();
+	    }
+	    servedRequests.incrementAndGet();
+	} catch (IOException e) {
+	    // The client disconnected, output of the command is lost
+	}
+    }
+
+    /**
+     * Executes a command of a request.
+     *
+     * @param args
+     *            the command arguments, the first argument is the name of
+     *            command.
+     * @param workingDirectory
+     *            the working directory of the client.
+     * @param out
+     *            the output stream for reports.
+     * @param err
+     *            the output stream for error messages.
+     * @return the exit code.
+     */
+    private int executeCommand(String[] args, File workingDirectory, PrintStream out, PrintStream err) {
+	String command = (args.length > 0) ? args[0] : "";
+	if (STATUS_COMMAND.equals(command)) {
+	    StringBuilder status = new StringBuilder("Compile daemon for modules ");
+	    status.append(compiler.getModulesPath()).append(" running for ")
+		    .append((System.currentTimeMillis() - startTime) / 1000).append(" s: ")
+		    .append(servedRequests.get()).append(" request(s) served, ").append(activeRequests.get())
+		    .append(" in progress, ").append(invalidations.get()).append(" module cache invalidation(s)");
+	    ModuleDescriptorCache descriptorCache = compiler.getDescriptorCache();
+	    if (descriptorCache != null) {
+		status.append(", descriptor cache: ").append(descriptorCache.getHits()).append(" hit(s), ")
+			.append(descriptorCache.getMisses()).append(" miss(es)");
+	    }
+	    out.println(status.append('.'));
+	    return 0;
+	}
+
+	if (STOP_COMMAND.equals(command)) {
+	    stopped = true;
+	    out.println("Compile daemon is stopping.");
+	    return 0;
+	}
+
+	if (!DAEMON_COMMANDS.contains(command)) {
+	    err.println("Command " + command + " cannot be executed by the compile daemon.");
+	    return 1;
+	}
+
+	return new CommandLine(out, err, workingDirectory, compiler).execute(args);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Access token
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Returns the file with the access token of the daemon listening on a
+     * port.
+     *
+     * @param port
+     *            the port of the daemon.
+     * @return the token file in the home directory of the user.
+     */
+    public static File getTokenFile(int port) {
+	return new File(new File(System.getProperty("user.home"), TOKEN_DIRECTORY), "daemon-" + port + ".token");
+    }
+
+    /**
+     * Reads the access token of the daemon listening on a port.
+     *
+     * @param port
+     *            the port of the daemon.
+     * @return the access token.
+     * @throws IOException
+     *             if the token file cannot be read.
+     */
+    public static String readToken(int port) throws IOException {
+	return new String(Files.readAllBytes(getTokenFile(port).toPath()), StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Writes an access token to a file readable and writable only by the
+     * owner. The token is written to a temporary file that replaces the
+     * token file, hence clients never read a partially written token.
+     *
+     * @param tokenFile
+     *            the token file.
+     * @param token
+     *            the access token.
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    private static void writeTokenFile(File tokenFile, String token) throws IOException {
+	Path directory = tokenFile.getParentFile().toPath();
+	Files.createDirectories(directory);
+	Path tmpFile;
+	if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+	    tmpFile = Files.createTempFile(directory, "daemon", ".tmp",
+		    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+	} else {
+	    tmpFile = Files.createTempFile(directory, "daemon", ".tmp");
+	    File file = tmpFile.toFile();
+	    file.setReadable(false, false);
+	    file.setReadable(true, true);
+	    file.setWritable(false, false);
+	    file.setWritable(true, true);
+	}
+
+	try {
+	    Files.write(tmpFile, token.getBytes(StandardCharsets.UTF_8));
+	    Files.move(tmpFile, tokenFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+		    StandardCopyOption.ATOMIC_MOVE);
+	} finally {
+	    Files.deleteIfExists(tmpFile);
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Watching the module repository
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Registers a directory and all its subdirectories in the watch service.
+     *
+     * @param directory
+     *            the directory.
+     * @throws IOException
+     *             if the directories cannot be registered.
+     */
+    private void registerDirectories(Path directory) throws IOException {
+	Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+	    @Override
+	    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+		WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+			StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+		watchedDirectories.put(key, dir);
+		return FileVisitResult.CONTINUE;
+	    }
+	});
+    }
+
+    /**
+     * Processes changes of the module repository until the daemon is
+     * stopped.
+     */
+    private void watchModules() {
+	Path modulesRoot = compiler.getModulesPath().toPath();
+	while (!stopped) {
+	    WatchKey key;
+	    try {
+		key = watchService.take();
+	    } catch (InterruptedException | ClosedWatchServiceException e) {
+		return;
+	    }
+
+	    Path directory = watchedDirectories.get(key);
+	    for (WatchEvent<?> event : key.pollEvents()) {
+		if ((directory == null) || (event.kind() == StandardWatchEventKinds.OVERFLOW)) {
+		    compiler.clearModuleCache();
+		    invalidations.incrementAndGet();
+		    continue;
+		}
+
+		Path changedPath = directory.resolve((Path) event.context());
+		if ((event.kind() == StandardWatchEventKinds.ENTRY_CREATE) && Files.isDirectory(changedPath)) {
+		    try {
+			registerDirectories(changedPath);
+		    } catch (IOException e) {
+			// New files in the directory will not be observed
+		    }
+		}
+
+		invalidateModules(modulesRoot.relativize(changedPath));
+		invalidations.incrementAndGet();
+	    }
+
+	    if (!key.reset()) {
+		watchedDirectories.remove(key);
+	    }
+	}
+    }
+
+    /**
+     * Removes all modules that can contain a changed file from the module
+     * cache. A module with name "a.b.c" is stored in directory "a/b/c", hence
+     * each prefix of the relative path of the changed file can be the
+     * directory of a module.
+     *
+     * @param relativePath
+     *            the path of changed file relative to the root of modules.
+     */
+    private void invalidateModules(Path relativePath) {
+	StringBuilder moduleName = new StringBuilder();
+	for (Path name : relativePath) {
+	    if (moduleName.length() > 0) {
+		moduleName.append('.');
+	    }
+	    moduleName.append(name.toString());
+	    compiler.invalidateModule(moduleName.toString());
+	}
+    }
+}
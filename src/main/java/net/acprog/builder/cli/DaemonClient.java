@@ -0,0 +1,110 @@
+package net.acprog.builder.cli;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Thin client of the compile daemon. The client forwards command arguments
+ * and its working directory to the daemon and streams back the output of the
+ * command. Each request starts with the access token that the daemon wrote
+ * to its token file.
+ */
+public class DaemonClient {
+
+    // ---------------------------------------------------------------------------
+    // Configuration constants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Timeout (in milliseconds) for connecting to the daemon.
+     */
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Port of the daemon.
+     */
+    private final int port;
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the client of the compile daemon.
+     *
+     * @param port
+     *            the loopback port of the daemon.
+     */
+    public DaemonClient(int port) {
+	this.port = port;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Client methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Executes a command in the daemon.
+     *
+     * @param args
+     *            the command arguments, the first argument is the name of
+     *            command.
+     * @param out
+     *            the output stream for reports.
+     * @param err
+     *            the output stream for error messages.
+     * @return the exit code of the command.
+     * @throws IOException
+     *             if the daemon is not running, its access token cannot be
+     *             read or the connection failed.
+     */
+    public int execute(String[] args, OutputStream out, OutputStream err) throws IOException {
+	try (Socket socket = new Socket()) {
+	    socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT);
+
+	    String token;
+	    try {
+		token = CompileDaemon.readToken(port);
+	    } catch (IOException e) {
+		throw new IOException("Access token of the compile daemon cannot be read from "
+			+ CompileDaemon.getTokenFile(port) + ".", e);
+	    }
+
+	    DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	    request.writeUTF(token);
+	    request.writeUTF(new File("").getAbsolutePath());
+	    request.writeInt(args.length);
+	    for (String arg : args) {
+		request.writeUTF(arg);
+	    }
+	    request.flush();
+
+	    DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+	    byte[] buffer = new byte[8192];
+	    while (true) {
+		int frameType = response.readUnsignedByte();
+		if (frameType == CompileDaemon.EXIT_FRAME) {
+		    return response.readInt();
+		}
+
+		OutputStream target = (frameType == CompileDaemon.ERROR_FRAME) ? err : out;
+		int remaining = response.readInt();
+		while (remaining > 0) {
+		    int len = Math.min(remaining, buffer.length);
+		    response.readFully(buffer, 0, len);
+		    target.write(buffer, 0, len);
+		    remaining -= len;
+		}
+		target.flush();
+	    }
+	} catch (EOFException e) {
+	    throw new IOException("Compile daemon closed the connection.", e);
+	}
+    }
+}
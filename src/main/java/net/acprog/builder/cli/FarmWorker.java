@@ -0,0 +1,256 @@
+package net.acprog.builder.cli;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import net.acprog.builder.compilation.ACPCompiler;
+
+/**
+ * Worker of a build farm. The worker repeatedly claims shards from a work
+ * queue and executes their build jobs until all shards are completed. Any
+ * number of workers (processes on the same or different machines sharing the
+ * work directory) can process the same work queue. Shards claimed by crashed
+ * workers are returned to the queue after expiration of their lease and jobs
+ * of these shards that have been already completed are not rebuilt.
+ */
+public class FarmWorker {
+
+    // ---------------------------------------------------------------------------
+    // Configuration constants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Default lease of claimed shards in milliseconds.
+     */
+    public static final long DEFAULT_LEASE = 60000;
+
+    /**
+     * Initial interval (in milliseconds) of polling the work queue while all
+     * remaining shards are claimed by other workers.
+     */
+    private static final long MIN_POLL_INTERVAL = 500;
+
+    /**
+     * Maximal interval (in milliseconds) of polling the work queue. The
+     * interval doubles after each poll that finds no shard to claim.
+     */
+    private static final long MAX_POLL_INTERVAL = 5000;
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Work queue with shards of jobs.
+     */
+    private final WorkQueue queue;
+
+    /**
+     * Build jobs of the manifest (map from names of jobs to jobs).
+     */
+    private final Map<String, BuildManifest.Job> jobs = new HashMap<String, BuildManifest.Job>();
+
+    /**
+     * Builder that executes jobs of claimed shards.
+     */
+    private final BatchBuilder builder;
+
+    /**
+     * Identifier of the worker.
+     */
+    private final String workerId;
+
+    /**
+     * Output stream for reports (null, if reports are not printed).
+     */
+    private final PrintStream out;
+
+    /**
+     * Lease of claimed shards in milliseconds.
+     */
+    private long lease = DEFAULT_LEASE;
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the worker of a build farm.
+     *
+     * @param queue
+     *            the work queue.
+     * @param manifest
+     *            the build manifest of the work queue.
+     * @param compiler
+     *            the compiler shared by all jobs of the worker.
+     * @param threads
+     *            the number of concurrently executed jobs.
+     * @param out
+     *            the output stream for reports (null, if reports are not
+     *            printed).
+     */
+    public FarmWorker(WorkQueue queue, BuildManifest manifest, ACPCompiler compiler, int threads, PrintStream out) {
+	this.queue = queue;
+	this.out = out;
+	this.workerId = createWorkerId();
+	this.builder = new BatchBuilder(compiler, threads, out);
+	for (BuildManifest.Job job : manifest.getJobs()) {
+	    jobs.put(job.getName(), job);
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public String getWorkerId() {
+	return workerId;
+    }
+
+    public long getLease() {
+	return lease;
+    }
+
+    public void setLease(long lease) {
+	this.lease = Math.max(lease, 1000);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Worker methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Processes shards of the work queue until there is no pending or claimed
+     * shard.
+     *
+     * @return the number of failed jobs executed by this worker.
+     * @throws IOException
+     *             if the work queue cannot be updated.
+     * @throws InterruptedException
+     *             if the worker has been interrupted.
+     */
+    public int run() throws IOException, InterruptedException {
+	int failedJobs = 0;
+	long pollInterval = MIN_POLL_INTERVAL;
+	while (true) {
+	    String shardName = queue.claimShard(workerId);
+	    if (shardName == null) {
+		if (queue.reclaimStaleShards(lease) > 0) {
+		    pollInterval = MIN_POLL_INTERVAL;
+		    continue;
+		}
+
+		if (queue.getClaimedShards() == 0) {
+		    return failedJobs;
+		}
+
+		// Shards claimed by other workers can be returned to the queue,
+		// if the workers crash, and the queue is completed as soon as
+		// the last shard is completed
+		Thread.sleep(pollInterval);
+		pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL);
+		continue;
+	    }
+
+	    pollInterval = MIN_POLL_INTERVAL;
+	    failedJobs += processShard(shardName);
+	}
+    }
+
+    /**
+     * Executes jobs of a claimed shard.
+     *
+     * @param shardName
+     *            the name of claimed shard.
+     * @return the number of failed jobs.
+     * @throws IOException
+     *             if the work queue cannot be updated.
+     */
+    private int processShard(final String shardName) throws IOException {
+	ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+	try {
+	    heartbeat.scheduleWithFixedDelay(new Runnable() {
+		@Override
+		public void run() {
+		    queue.renewClaim(shardName, workerId);
+		}
+	    }, lease / 4, lease / 4, TimeUnit.MILLISECONDS);
+
+	    int failedJobs = 0;
+	    List<BuildManifest.Job> shardJobs = new ArrayList<BuildManifest.Job>();
+	    for (String jobName : queue.readShard(shardName, workerId)) {
+		WorkQueue.JobResult result = queue.readResult(jobName);
+		if ((result != null) && result.isSuccessful()) {
+		    // The job has been completed before a crash of worker
+		    continue;
+		}
+
+		BuildManifest.Job job = jobs.get(jobName);
+		if (job == null) {
+		    queue.writeResult(new WorkQueue.JobResult(jobName, false, 0, workerId,
+			    "Build job is not defined in the build manifest."));
+		    failedJobs++;
+		} else {
+		    shardJobs.add(job);
+		}
+	    }
+
+	    if (out != null) {
+		out.println("Worker " + workerId + " claimed " + shardName + " with " + shardJobs.size()
+			+ " job(s) to build.");
+	    }
+
+	    final List<IOException> writeFailures = Collections.synchronizedList(new ArrayList<IOException>());
+	    builder.setJobListener(new BatchBuilder.JobListener() {
+		@Override
+		public void jobCompleted(BatchBuilder.JobReport report) {
+		    String message;
+		    if (report.isSuccessful()) {
+			message = report.getResult().toString();
+		    } else {
+			message = BatchBuilder.describeFailure(report.getFailure());
+		    }
+
+		    try {
+			queue.writeResult(new WorkQueue.JobResult(report.getJob().getName(), report.isSuccessful(),
+				report.getDuration(), workerId, message));
+		    } catch (IOException e) {
+			writeFailures.add(e);
+		    }
+		}
+	    });
+
+	    for (BatchBuilder.JobReport report : builder.build(shardJobs)) {
+		if (!report.isSuccessful()) {
+		    failedJobs++;
+		}
+	    }
+
+	    if (!writeFailures.isEmpty()) {
+		throw writeFailures.get(0);
+	    }
+
+	    queue.completeShard(shardName, workerId);
+	    return failedJobs;
+	} finally {
+	    heartbeat.shutdownNow();
+	    builder.setJobListener(null);
+	}
+    }
+
+    /**
+     * Creates an identifier of the worker that is unique among processes of
+     * the build farm.
+     *
+     * @return the identifier of worker.
+     */
+    private static String createWorkerId() {
+	String processName = ManagementFactory.getRuntimeMXBean().getName();
+	return processName.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + Long.toHexString(System.nanoTime() & 0xffff);
+    }
+}
@@ -0,0 +1,557 @@
+package net.acprog.builder.cli;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import net.acprog.builder.utils.FileUtils;
+import net.acprog.builder.utils.HashUtils;
+
+/**
+ * Work queue of a build farm stored in a work directory on a local or shared
+ * file system. The coordinator splits build jobs into shards that are stored
+ * as files in the directory "pending". A worker claims a shard by an atomic
+ * rename of the shard file to the directory "claimed" (the name of claimed
+ * file contains the worker identifier). While the shard is processed, the
+ * worker periodically touches the claimed file. Claims that are not touched
+ * within a lease are considered to be stale (the worker crashed) and they can
+ * be returned to the pending shards. Results of jobs are stored in the
+ * directory "results" as soon as jobs are completed, completed shards are
+ * moved to the directory "done".
+ */
+public class WorkQueue {
+
+    // ---------------------------------------------------------------------------
+    // Job result
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Result of a build job stored in the work queue.
+     */
+    public static class JobResult {
+	/**
+	 * Name of the job.
+	 */
+	private final String jobName;
+
+	/**
+	 * Indicates whether the job succeeded.
+	 */
+	private final boolean successful;
+
+	/**
+	 * Duration of the job in milliseconds.
+	 */
+	private final long duration;
+
+	/**
+	 * Identifier of worker that executed the job.
+	 */
+	private final String workerId;
+
+	/**
+	 * Report of compilation or description of failure.
+	 */
+	private final String message;
+
+	public String getJobName() {
+	    return jobName;
+	}
+
+	public boolean isSuccessful() {
+	    return successful;
+	}
+
+	public long getDuration() {
+	    return duration;
+	}
+
+	public String getWorkerId() {
+	    return workerId;
+	}
+
+	public String getMessage() {
+	    return message;
+	}
+
+	/**
+	 * Constructs the job result.
+	 *
+	 * @param jobName
+	 *            the name of job.
+	 * @param successful
+	 *            true, if the job succeeded, false otherwise.
+	 * @param duration
+	 *            the duration of the job in milliseconds.
+	 * @param workerId
+	 *            the identifier of worker that executed the job.
+	 * @param message
+	 *            the report of compilation or description of failure.
+	 */
+	public JobResult(String jobName, boolean successful, long duration, String workerId, String message) {
+	    this.jobName = jobName;
+	    this.successful = successful;
+	    this.duration = duration;
+	    this.workerId = workerId;
+	    this.message = message;
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Configuration constants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Name of file with properties of the work queue.
+     */
+    public static final String QUEUE_FILE = "queue.properties";
+
+    /**
+     * Directory with pending shards.
+     */
+    private static final String PENDING_DIR = "pending";
+
+    /**
+     * Directory with claimed shards.
+     */
+    private static final String CLAIMED_DIR = "claimed";
+
+    /**
+     * Directory with completed shards.
+     */
+    private static final String DONE_DIR = "done";
+
+    /**
+     * Directory with results of jobs.
+     */
+    private static final String RESULTS_DIR = "results";
+
+    /**
+     * Extension of shard files.
+     */
+    private static final String SHARD_EXTENSION = ".shard";
+
+    /**
+     * Extension of files with results of jobs.
+     */
+    private static final String RESULT_EXTENSION = ".result";
+
+    /**
+     * Separator of shard name and worker identifier in names of claimed
+     * files.
+     */
+    private static final String CLAIM_SEPARATOR = "@";
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Work directory of the queue.
+     */
+    private final File workDirectory;
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the work queue stored in a work directory.
+     *
+     * @param workDirectory
+     *            the work directory.
+     */
+    public WorkQueue(File workDirectory) {
+	this.workDirectory = workDirectory;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Coordinator methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Initializes the work queue for jobs of a build manifest. Existing pending,
+     * claimed and completed shards are removed and jobs are split into new
+     * shards. Jobs that have been already successfully completed are skipped,
+     * hence the build can be restarted without rebuilding completed jobs. The
+     * method must not be invoked while workers are running.
+     *
+     * @param manifestFile
+     *            the build manifest.
+     * @param jobNames
+     *            the names of jobs of the manifest.
+     * @param shardSize
+     *            the maximal number of jobs in a shard.
+     * @return the number of created shards.
+     * @throws IOException
+     *             if the work queue cannot be initialized.
+     */
+    public int initialize(File manifestFile, List<String> jobNames, int shardSize) throws IOException {
+	for (String dir : new String[] { PENDING_DIR, CLAIMED_DIR, DONE_DIR }) {
+	    File[] files = getDirectory(dir).listFiles();
+	    if (files != null) {
+		for (File file : files) {
+		    Files.deleteIfExists(file.toPath());
+		}
+	    }
+	}
+
+	for (String dir : new String[] { PENDING_DIR, CLAIMED_DIR, DONE_DIR, RESULTS_DIR }) {
+	    Files.createDirectories(getDirectory(dir).toPath());
+	}
+
+	Properties properties = new Properties();
+	properties.setProperty("manifest", manifestFile.getAbsolutePath());
+	writeProperties(new File(workDirectory, QUEUE_FILE), properties);
+
+	// Create shards with jobs that have not been successfully completed
+	List<String> remainingJobs = new ArrayList<String>();
+	for (String jobName : jobNames) {
+	    JobResult result = readResult(jobName);
+	    if ((result == null) || !result.isSuccessful()) {
+		remainingJobs.add(jobName);
+	    }
+	}
+
+	shardSize = Math.max(shardSize, 1);
+	int shards = 0;
+	for (int i = 0; i < remainingJobs.size(); i += shardSize) {
+	    List<String> shardJobs = remainingJobs.subList(i, Math.min(i + shardSize, remainingJobs.size()));
+	    String shardName = String.format("shard-%05d", shards) + SHARD_EXTENSION;
+	    writeAtomically(new File(getDirectory(PENDING_DIR), shardName),
+		    FileUtils.mergeLines(shardJobs).getBytes(StandardCharsets.UTF_8));
+	    shards++;
+	}
+
+	return shards;
+    }
+
+    /**
+     * Returns the build manifest of the work queue.
+     *
+     * @return the manifest file.
+     * @throws IOException
+     *             if the work queue is not initialized.
+     */
+    public File getManifestFile() throws IOException {
+	Properties properties = readProperties(new File(workDirectory, QUEUE_FILE));
+	if ((properties == null) || (properties.getProperty("manifest") == null)) {
+	    throw new IOException("Directory " + workDirectory.getPath() + " does not contain a work queue.");
+	}
+
+	return new File(properties.getProperty("manifest"));
+    }
+
+    // ---------------------------------------------------------------------------
+    // Worker methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Claims a pending shard.
+     *
+     * @param workerId
+     *            the identifier of worker.
+     * @return the name of claimed shard or null, if there is no pending
+     *         shard.
+     */
+    public String claimShard(String workerId) {
+	for (String shardName : listShards(PENDING_DIR)) {
+	    // The shard is touched before the move so that the claim is never
+	    // seen with the modification time of a stale claim
+	    File shardFile = new File(getDirectory(PENDING_DIR), shardName);
+	    if (!shardFile.setLastModified(System.currentTimeMillis())) {
+		// The shard has been claimed by another worker
+		continue;
+	    }
+
+	    try {
+		Files.move(shardFile.toPath(), getClaimFile(shardName, workerId).toPath(),
+			StandardCopyOption.ATOMIC_MOVE);
+		return shardName;
+	    } catch (IOException e) {
+		// The shard has been claimed by another worker
+	    }
+	}
+
+	return null;
+    }
+
+    /**
+     * Reads names of jobs of a claimed shard.
+     *
+     * @param shardName
+     *            the name of shard.
+     * @param workerId
+     *            the identifier of worker that claimed the shard.
+     * @return the names of jobs.
+     * @throws IOException
+     *             if the shard cannot be read.
+     */
+    public List<String> readShard(String shardName, String workerId) throws IOException {
+	List<String> jobNames = new ArrayList<String>();
+	for (String line : Files.readAllLines(getClaimFile(shardName, workerId).toPath(), StandardCharsets.UTF_8)) {
+	    if (!line.isEmpty()) {
+		jobNames.add(line);
+	    }
+	}
+
+	return jobNames;
+    }
+
+    /**
+     * Renews the claim of a shard.
+     *
+     * @param shardName
+     *            the name of shard.
+     * @param workerId
+     *            the identifier of worker that claimed the shard.
+     */
+    public void renewClaim(String shardName, String workerId) {
+	getClaimFile(shardName, workerId).setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Marks a claimed shard as completed.
+     *
+     * @param shardName
+     *            the name of shard.
+     * @param workerId
+     *            the identifier of worker that claimed the shard.
+     * @throws IOException
+     *             if the shard cannot be marked as completed.
+     */
+    public void completeShard(String shardName, String workerId) throws IOException {
+	try {
+	    Files.move(getClaimFile(shardName, workerId).toPath(), new File(getDirectory(DONE_DIR), shardName)
+		    .toPath(), StandardCopyOption.ATOMIC_MOVE);
+	} catch (NoSuchFileException e) {
+	    // The claim has expired and the shard has been returned to the
+	    // pending shards, results of completed jobs are preserved
+	}
+    }
+
+    /**
+     * Returns shards with stale claims to the pending shards.
+     *
+     * @param lease
+     *            the time (in milliseconds) after which a claim that has not
+     *            been renewed is stale.
+     * @return the number of returned shards.
+     */
+    public int reclaimStaleShards(long lease) {
+	int reclaimedShards = 0;
+	long now = System.currentTimeMillis();
+	for (String claimName : listShards(CLAIMED_DIR)) {
+	    File claimFile = new File(getDirectory(CLAIMED_DIR), claimName);
+	    long lastModified = claimFile.lastModified();
+	    if ((lastModified == 0) || (now - lastModified < lease)) {
+		continue;
+	    }
+
+	    String shardName = claimName.substring(0, claimName.lastIndexOf(CLAIM_SEPARATOR));
+	    try {
+		Files.move(claimFile.toPath(), new File(getDirectory(PENDING_DIR), shardName).toPath(),
+			StandardCopyOption.ATOMIC_MOVE);
+		reclaimedShards++;
+	    } catch (IOException e) {
+		// The shard has been completed or reclaimed by another worker
+	    }
+	}
+
+	return reclaimedShards;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Results and state
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Stores the result of a job.
+     *
+     * @param result
+     *            the result of job.
+     * @throws IOException
+     *             if the result cannot be stored.
+     */
+    public void writeResult(JobResult result) throws IOException {
+	Properties properties = new Properties();
+	properties.setProperty("job", result.getJobName());
+	properties.setProperty("status", result.isSuccessful() ? "OK" : "FAILED");
+	properties.setProperty("duration", Long.toString(result.getDuration()));
+	properties.setProperty("worker", result.getWorkerId());
+	properties.setProperty("message", (result.getMessage() != null) ? result.getMessage() : "");
+	writeProperties(getResultFile(result.getJobName()), properties);
+    }
+
+    /**
+     * Reads the result of a job.
+     *
+     * @param jobName
+     *            the name of job.
+     * @return the result of job or null, if the job has not been completed.
+     */
+    public JobResult readResult(String jobName) {
+	Properties properties = readProperties(getResultFile(jobName));
+	if ((properties == null) || !jobName.equals(properties.getProperty("job"))) {
+	    return null;
+	}
+
+	long duration;
+	try {
+	    duration = Long.parseLong(properties.getProperty("duration", "0"));
+	} catch (NumberFormatException e) {
+	    duration = 0;
+	}
+
+	return new JobResult(jobName, "OK".equals(properties.getProperty("status")), duration,
+		properties.getProperty("worker", ""), properties.getProperty("message", ""));
+    }
+
+    /**
+     * Returns the number of pending shards.
+     *
+     * @return the number of pending shards.
+     */
+    public int getPendingShards() {
+	return listShards(PENDING_DIR).size();
+    }
+
+    /**
+     * Returns the number of claimed shards.
+     *
+     * @return the number of claimed shards.
+     */
+    public int getClaimedShards() {
+	return listShards(CLAIMED_DIR).size();
+    }
+
+    /**
+     * Returns the number of completed shards.
+     *
+     * @return the number of completed shards.
+     */
+    public int getCompletedShards() {
+	return listShards(DONE_DIR).size();
+    }
+
+    // ---------------------------------------------------------------------------
+    // Helper methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Returns a subdirectory of the work directory.
+     *
+     * @param name
+     *            the name of subdirectory.
+     * @return the subdirectory.
+     */
+    private File getDirectory(String name) {
+	return new File(workDirectory, name);
+    }
+
+    /**
+     * Returns the file of a claimed shard.
+     *
+     * @param shardName
+     *            the name of shard.
+     * @param workerId
+     *            the identifier of worker.
+     * @return the claimed file.
+     */
+    private File getClaimFile(String shardName, String workerId) {
+	return new File(getDirectory(CLAIMED_DIR), shardName + CLAIM_SEPARATOR + workerId);
+    }
+
+    /**
+     * Returns the file with result of a job. The file name is derived from
+     * hash of the job name, since job names can contain any characters.
+     *
+     * @param jobName
+     *            the name of job.
+     * @return the result file.
+     */
+    private File getResultFile(String jobName) {
+	String hash = HashUtils.toHex(HashUtils.hash(jobName.getBytes(StandardCharsets.UTF_8)));
+	return new File(getDirectory(RESULTS_DIR), hash + RESULT_EXTENSION);
+    }
+
+    /**
+     * Lists shard files in a subdirectory of the work directory.
+     *
+     * @param dir
+     *            the name of subdirectory.
+     * @return the ordered list of file names.
+     */
+    private List<String> listShards(String dir) {
+	String[] names = getDirectory(dir).list();
+	if (names == null) {
+	    return Collections.emptyList();
+	}
+
+	List<String> result = new ArrayList<String>();
+	for (String name : names) {
+	    if (name.contains(SHARD_EXTENSION)) {
+		result.add(name);
+	    }
+	}
+
+	Collections.sort(result);
+	return result;
+    }
+
+    /**
+     * Reads properties from a file.
+     *
+     * @param file
+     *            the file.
+     * @return the properties or null, if the file cannot be read.
+     */
+    private static Properties readProperties(File file) {
+	try (InputStream in = new FileInputStream(file)) {
+	    Properties properties = new Properties();
+	    properties.load(in);
+	    return properties;
+	} catch (IOException e) {
+	    return null;
+	}
+    }
+
+    /**
+     * Writes properties to a file.
+     *
+     * @param file
+     *            the file.
+     * @param properties
+     *            the properties.
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    private static void writeProperties(File file, Properties properties) throws IOException {
+	ByteArrayOutputStream content = new ByteArrayOutputStream();
+	properties.store(content, null);
+	writeAtomically(file, content.toByteArray());
+    }
+
+    /**
+     * Writes content to a file via a temporary file, so that readers (possibly
+     * on other machines) never observe a partially written file.
+     *
+     * @param file
+     *            the file.
+     * @param content
+     *            the content.
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    private static void writeAtomically(File file, byte[] content) throws IOException {
+	File tmpFile = File.createTempFile("queue", ".tmp", file.getAbsoluteFile().getParentFile());
+	try {
+	    Files.write(tmpFile.toPath(), content);
+	    Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+		    StandardCopyOption.ATOMIC_MOVE);
+	} finally {
+	    tmpFile.delete();
+	}
+    }
+}
@@ -1,31 +1,57 @@
 package net.acprog.builder.compilation;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
 
+import net.acprog.builder.compilation.ValidationReport.Problem;
 import net.acprog.builder.components.ConfigurationException;
+import net.acprog.builder.components.Looper;
 import net.acprog.builder.components.PropertyType;
 import net.acprog.builder.modules.ComponentType;
 import net.acprog.builder.modules.Library;
 import net.acprog.builder.modules.Module;
+import net.acprog.builder.modules.ModuleDescriptorCache;
+import net.acprog.builder.modules.ModuleRepositoryIndex;
 import net.acprog.builder.platform.Platform;
 import net.acprog.builder.project.Component;
 import net.acprog.builder.project.Project;
+import net.acprog.builder.utils.XmlUtils;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
 /**
- * Compiler of ACP projects.
+ * Compiler of ACP projects. Modules are read either from a directory or from a
+ * zip (jar) archive with modules that is mounted as a file system. The
+ * compiler should be closed in order to release the mounted archive.
+ * <p>
+ * The compiler is thread-safe and it can be reused for many (concurrent)
+ * compilations. Loaded modules are immutable and they are shared by all
+ * compilations through a module cache that loads each module exactly once.
+ * All other state of a compilation is kept in its compilation context.
  */
-public class ACPCompiler {
+public class ACPCompiler implements Closeable {
 
     // ---------------------------------------------------------------------------
     // Compilation context
     // ---------------------------------------------------------------------------
 
     /**
-     * Bundle of all objects required to complete compilation.
+     * Bundle of all objects required to complete compilation. The context
+     * holds all state of a single compilation, hence concurrent compilations
+     * do not share any mutable state.
      */
     public static class CompilationContext {
 	/**
@@ -49,9 +75,24 @@ public class ACPCompiler {
 	private final Map<String, Module> projectModules;
 
 	/**
-	 * Storage for storing intermediate outputs.
+	 * Project resolved for content generators.
+	 */
+	private ResolvedProject resolvedProject;
+
+	/**
+	 * Report of the compilation.
+	 */
+	private CompilationResult result;
+
+	/**
+	 * Output sink where files of the library are written.
+	 */
+	private OutputSink outputSink;
+
+	/**
+	 * Monitor of the compilation.
 	 */
-	private final Map<String, Object> data;
+	private CompilationMonitor monitor;
 
 	/**
 	 * Returns the compilation settings for the compilation context.
@@ -81,12 +122,41 @@ public class ACPCompiler {
 	}
 
 	/**
-	 * Returns the map storing intermediate outputs of the compilation.
+	 * Returns the project resolved for content generators.
+	 * 
+	 * @return the resolved project.
+	 */
+	public ResolvedProject getResolvedProject() {
+	    return resolvedProject;
+	}
+
+	/**
+	 * Returns the report of the compilation where generated outputs are
+	 * recorded.
 	 * 
-	 * @return the storage for intermediate outputs.
+	 * @return the compilation result.
 	 */
-	public Map<String, Object> getData() {
-	    return data;
+	public CompilationResult getResult() {
+	    return result;
+	}
+
+	/**
+	 * Returns the output sink where files of the library are written.
+	 * 
+	 * @return the output sink.
+	 */
+	public OutputSink getOutputSink() {
+	    return outputSink;
+	}
+
+	/**
+	 * Returns the monitor that reports progress of the compilation and
+	 * checks whether the compilation should be aborted.
+	 * 
+	 * @return the compilation monitor.
+	 */
+	public CompilationMonitor getMonitor() {
+	    return monitor;
 	}
 
 	/**
@@ -103,7 +173,332 @@ public class ACPCompiler {
 	 */
 	private CompilationContext() {
 	    projectModules = new HashMap<String, Module>();
-	    data = new HashMap<String, Object>();
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Problem reporter
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Reporter of problems found by checks of a project configuration.
+     * Problems are added to a validation report together with the location of
+     * the related xml element (if known). Compilations check the reported
+     * problems after all checks and fail with a single compilation exception
+     * describing all problems.
+     */
+    private static class ProblemReporter {
+	/**
+	 * Report where problems are added.
+	 */
+	private final ValidationReport report;
+
+	/**
+	 * Xml elements of components.
+	 */
+	private final Map<Component, Element> componentElements = new IdentityHashMap<Component, Element>();
+
+	/**
+	 * Xml elements of library imports (map from names of imported libraries
+	 * to elements of their first import).
+	 */
+	private final Map<String, Element> importElements = new HashMap<String, Element>();
+
+	/**
+	 * Constructs a problem reporter with a new validation report.
+	 */
+	ProblemReporter() {
+	    this(new ValidationReport());
+	}
+
+	/**
+	 * Constructs a problem reporter that adds problems to a validation
+	 * report.
+	 * 
+	 * @param report
+	 *            the validation report.
+	 */
+	ProblemReporter(ValidationReport report) {
+	    this.report = report;
+	}
+
+	/**
+	 * Associates components and library imports of a project with xml
+	 * elements of the project configuration.
+	 * 
+	 * @param project
+	 *            the project read from the xml element.
+	 * @param xmlProject
+	 *            the xml element with project configuration.
+	 * @param skippedElements
+	 *            the xml elements skipped due to invalid configuration.
+	 */
+	void mapElements(Project project, Element xmlProject, Set<Element> skippedElements) {
+	    Element xmlComponents = XmlUtils.getChildElement(xmlProject, "components");
+	    if (xmlComponents != null) {
+		Iterator<Component> components = project.getComponents().iterator();
+		for (Element xmlComponent : XmlUtils.getChildElements(xmlComponents, "component")) {
+		    if (!skippedElements.contains(xmlComponent) && components.hasNext()) {
+			componentElements.put(components.next(), xmlComponent);
+		    }
+		}
+	    }
+
+	    Element xmlProgram = XmlUtils.getChildElement(xmlProject, "program");
+	    Element xmlImports = (xmlProgram != null) ? XmlUtils.getChildElement(xmlProgram, "imports") : null;
+	    if (xmlImports != null) {
+		for (Element xmlLibraryImport : XmlUtils.getChildElements(xmlImports, "library")) {
+		    String libraryName = xmlLibraryImport.getTextContent().trim();
+		    if (!importElements.containsKey(libraryName)) {
+			importElements.put(libraryName, xmlLibraryImport);
+		    }
+		}
+	    }
+	}
+
+	/**
+	 * Reports a problem of the project configuration.
+	 * 
+	 * @param xmlElement
+	 *            the related xml element (null, if not known).
+	 * @param message
+	 *            the description of problem.
+	 */
+	void report(Element xmlElement, String message) {
+	    report(Problem.Kind.CONFIGURATION, null, xmlElement, message);
+	}
+
+	/**
+	 * Reports a problem of the project configuration at a location in the
+	 * xml document.
+	 * 
+	 * @param line
+	 *            the line of the problem (-1, if not known).
+	 * @param column
+	 *            the column of the problem (-1, if not known).
+	 * @param message
+	 *            the description of problem.
+	 */
+	void report(int line, int column, String message) {
+	    report.addProblem(Problem.Kind.CONFIGURATION, null, line, column, message);
+	}
+
+	/**
+	 * Reports a problem.
+	 * 
+	 * @param kind
+	 *            the kind of problem.
+	 * @param subject
+	 *            the name of component or library with the problem (null,
+	 *            if not related to a component or library).
+	 * @param xmlElement
+	 *            the related xml element (null, if not known).
+	 * @param message
+	 *            the description of problem.
+	 */
+	void report(Problem.Kind kind, String subject, Element xmlElement, String message) {
+	    report.addProblem(kind, subject, XmlUtils.getLineNumber(xmlElement),
+		    XmlUtils.getColumnNumber(xmlElement), message);
+	}
+
+	/**
+	 * Reports a problem of a component.
+	 * 
+	 * @param component
+	 *            the component.
+	 * @param kind
+	 *            the kind of problem.
+	 * @param message
+	 *            the description of problem.
+	 */
+	void reportComponentProblem(Component component, Problem.Kind kind, String message) {
+	    report(kind, component.getName(), componentElements.get(component), message);
+	}
+
+	/**
+	 * Reports a problem found by a check of component configuration.
+	 * 
+	 * @param problem
+	 *            the problem.
+	 */
+	void reportComponentProblem(ComponentProblem problem) {
+	    if (problem.containerName == null) {
+		reportComponentProblem(problem.component, problem.kind, problem.message);
+	    } else {
+		reportComponentProblem(problem.component, problem.kind, problem.containerName, problem.elementName,
+			problem.name, problem.message);
+	    }
+	}
+
+	/**
+	 * Reports a problem of a component related to a named child element
+	 * (property or event) of the component configuration. If the component
+	 * does not contain such an element, the problem is related to the
+	 * component.
+	 * 
+	 * @param component
+	 *            the component.
+	 * @param kind
+	 *            the kind of problem.
+	 * @param containerName
+	 *            the name of element containing the child elements.
+	 * @param elementName
+	 *            the name of child elements.
+	 * @param name
+	 *            the value of attribute "name" of the related child
+	 *            element.
+	 * @param message
+	 *            the description of problem.
+	 */
+	void reportComponentProblem(Component component, Problem.Kind kind, String containerName,
+		String elementName, String name, String message) {
+	    Element xmlElement = componentElements.get(component);
+	    Element xmlContainer = (xmlElement != null) ? XmlUtils.getChildElement(xmlElement, containerName) : null;
+	    if (xmlContainer != null) {
+		for (Element xmlChild : XmlUtils.getChildElements(xmlContainer, elementName)) {
+		    if (name.equals(xmlChild.getAttribute("name").trim())) {
+			xmlElement = xmlChild;
+			break;
+		    }
+		}
+	    }
+
+	    report(kind, component.getName(), xmlElement, message);
+	}
+
+	/**
+	 * Reports a problem of a library import.
+	 * 
+	 * @param libraryName
+	 *            the name of imported library.
+	 * @param message
+	 *            the description of problem.
+	 */
+	void reportImportProblem(String libraryName, String message) {
+	    report(Problem.Kind.LIBRARY_IMPORT, libraryName, importElements.get(libraryName), message);
+	}
+
+	/**
+	 * Throws a compilation exception, if a problem has been reported. The
+	 * exception describes all reported problems.
+	 */
+	void throwIfProblems() {
+	    List<Problem> problems = report.getProblems();
+	    if (problems.isEmpty()) {
+		return;
+	    }
+
+	    if (problems.size() == 1) {
+		throw new CompilationException(problems.get(0).getMessage());
+	    }
+
+	    StringBuilder message = new StringBuilder("Project configuration contains " + problems.size()
+		    + " problems:");
+	    for (Problem problem : problems) {
+		message.append('\n').append(problem.getMessage());
+	    }
+	    throw new CompilationException(message.toString());
+	}
+    }
+
+    /**
+     * Problem found by a check of component configuration. Components are
+     * checked in parallel without access to the xml document, hence problems
+     * are collected and reported (located) after all checks.
+     */
+    private static class ComponentProblem {
+	/**
+	 * Component with the problem.
+	 */
+	final Component component;
+
+	/**
+	 * Kind of the problem.
+	 */
+	final Problem.Kind kind;
+
+	/**
+	 * Name of element of component configuration containing the related
+	 * element (null, if the problem is related to the component).
+	 */
+	final String containerName;
+
+	/**
+	 * Name of the related element.
+	 */
+	final String elementName;
+
+	/**
+	 * Value of attribute "name" of the related element.
+	 */
+	final String name;
+
+	/**
+	 * Description of the problem.
+	 */
+	final String message;
+
+	ComponentProblem(Component component, Problem.Kind kind, String message) {
+	    this(component, kind, null, null, null, message);
+	}
+
+	ComponentProblem(Component component, Problem.Kind kind, String containerName, String elementName,
+		String name, String message) {
+	    this.component = component;
+	    this.kind = kind;
+	    this.containerName = containerName;
+	    this.elementName = elementName;
+	    this.name = name;
+	    this.message = message;
+	}
+    }
+
+    /**
+     * Work shared by compilation of variants of a project. Results computed
+     * for a target platform are shared by all variants for the platform.
+     */
+    private static class SharedVariantWork {
+	/**
+	 * Compilation context with the resolved base project.
+	 */
+	final CompilationContext baseContext;
+
+	/**
+	 * Export engine with planned export of module files for the base
+	 * project.
+	 */
+	final FileExporter baseExporter;
+
+	/**
+	 * Build cache used by variants (null, if libraries are not cached).
+	 */
+	final BuildCache buildCache;
+
+	/**
+	 * Content of the base project configuration (null, if libraries are not
+	 * cached).
+	 */
+	final byte[] projectContent;
+
+	/**
+	 * Problems of components of the base project for each target platform.
+	 */
+	final ConcurrentMap<String, FutureTask<List<ComponentProblem>>> componentChecks =
+		new ConcurrentHashMap<String, FutureTask<List<ComponentProblem>>>();
+
+	/**
+	 * Outputs that do not depend on values of component properties for
+	 * each target platform.
+	 */
+	final ConcurrentMap<String, FutureTask<Map<String, byte[]>>> platformOutputs =
+		new ConcurrentHashMap<String, FutureTask<Map<String, byte[]>>>();
+
+	SharedVariantWork(CompilationContext baseContext, FileExporter baseExporter, BuildCache buildCache,
+		byte[] projectContent) {
+	    this.baseContext = baseContext;
+	    this.baseExporter = baseExporter;
+	    this.buildCache = buildCache;
+	    this.projectContent = projectContent;
 	}
     }
 
@@ -116,15 +511,99 @@ public class ACPCompiler {
      */
     public static final String TEMPLATES_RESOURCE_DIR = "/templates/";
 
+    /**
+     * Namespace of non-public objects in the generated code.
+     */
+    private static final String PRIVATE_NAMESPACE = "acp_private";
+
+    /**
+     * Minimal number of components checked by a validation thread.
+     */
+    private static final int COMPONENTS_PER_VALIDATION_THREAD = 128;
+
+    /**
+     * Extensions of files that are recognized as archives with modules.
+     */
+    private static final String[] MODULE_ARCHIVE_EXTENSIONS = { ".zip", ".jar" };
+
+    /**
+     * Interval (in milliseconds) in which a thread waiting for loads of
+     * modules checks whether the compilation should be aborted.
+     */
+    private static final long CANCELLATION_CHECK_INTERVAL = 100;
+
     // ---------------------------------------------------------------------------
     // Instance variables
     // ---------------------------------------------------------------------------
 
     /**
-     * Path to the modules directory.
+     * Path to the modules directory or archive with modules.
      */
     private final File modulesPath;
 
+    /**
+     * Root directory of modules (in the default file system or in the mounted
+     * module archive).
+     */
+    private final Path modulesRoot;
+
+    /**
+     * File system of the mounted module archive (null, if modules are read
+     * from a directory).
+     */
+    private final FileSystem moduleArchive;
+
+    /**
+     * Persistent cache of parsed module descriptions (null, if the cache is not
+     * used).
+     */
+    private volatile ModuleDescriptorCache descriptorCache;
+
+    /**
+     * Cache of compiled libraries (null, if the cache is not used).
+     */
+    private volatile BuildCache buildCache;
+
+    /**
+     * Index of the module repository used to resolve modules and their files
+     * (null, if modules are resolved by probing the file system).
+     */
+    private volatile ModuleRepositoryIndex repositoryIndex;
+
+    /**
+     * Number of threads used to load module descriptions.
+     */
+    private volatile int moduleLoadingThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of threads used to copy module files to the output library.
+     */
+    private volatile int exportThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of threads used to compile project variants.
+     */
+    private volatile int variantThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of threads used to check configuration of components.
+     */
+    private volatile int validationThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Cache of loaded modules shared by all compilations. A module is loaded
+     * by the first compilation that requires it, other compilations wait for
+     * completion of the load.
+     */
+    private final ConcurrentMap<String, FutureTask<Module>> moduleCache;
+
+    /**
+     * Index entries of cached modules that have been checked against the
+     * module directories. Files of other modules are found by walking their
+     * directories.
+     */
+    private final ConcurrentMap<String, ModuleRepositoryIndex.Entry> indexEntries;
+
     // ---------------------------------------------------------------------------
     // Constructor
     // ---------------------------------------------------------------------------
@@ -134,10 +613,137 @@ public class ACPCompiler {
      * 
      * @param modulesPath
      *            the directory that is a root of directories containig ACP
-     *            modules.
+     *            modules or a zip (jar) archive with the same structure.
      */
     public ACPCompiler(File modulesPath) {
 	this.modulesPath = modulesPath;
+	this.moduleCache = new ConcurrentHashMap<String, FutureTask<Module>>();
+	this.indexEntries = new ConcurrentHashMap<String, ModuleRepositoryIndex.Entry>();
+	if (isModuleArchive(modulesPath)) {
+	    try {
+		moduleArchive = FileSystems.newFileSystem(modulesPath.toPath(), (ClassLoader) null);
+	    } catch (IOException e) {
+		throw new CompilationException("Archive with ACP modules (" + modulesPath.getAbsolutePath()
+			+ ") cannot be opened.", e);
+	    }
+	    modulesRoot = moduleArchive.getPath("/");
+	} else {
+	    moduleArchive = null;
+	    modulesRoot = modulesPath.toPath();
+	}
+    }
+
+    /**
+     * Checks whether a file is an archive with modules.
+     * 
+     * @param file
+     *            the file.
+     * @return true, if the file is a zip (jar) archive, false otherwise.
+     */
+    public static boolean isModuleArchive(File file) {
+	if (!file.isFile()) {
+	    return false;
+	}
+
+	String name = file.getName().toLowerCase();
+	for (String extension : MODULE_ARCHIVE_EXTENSIONS) {
+	    if (name.endsWith(extension)) {
+		return true;
+	    }
+	}
+
+	return false;
+    }
+
+    /**
+     * Checks whether a file can be used as a repository of modules, i.e.,
+     * whether it is a directory or an archive with modules.
+     * 
+     * @param file
+     *            the file.
+     * @return true, if the file is a repository of modules, false otherwise.
+     */
+    public static boolean isModuleRepository(File file) {
+	return file.isDirectory() || isModuleArchive(file);
+    }
+
+    /**
+     * Releases the mounted module archive (if any).
+     */
+    @Override
+    public void close() {
+	if (moduleArchive != null) {
+	    try {
+		moduleArchive.close();
+	    } catch (IOException ignore) {
+		// Nothing to do
+	    }
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public File getModulesPath() {
+	return modulesPath;
+    }
+
+    public ModuleDescriptorCache getDescriptorCache() {
+	return descriptorCache;
+    }
+
+    public void setDescriptorCache(ModuleDescriptorCache descriptorCache) {
+	this.descriptorCache = descriptorCache;
+    }
+
+    public BuildCache getBuildCache() {
+	return buildCache;
+    }
+
+    public void setBuildCache(BuildCache buildCache) {
+	this.buildCache = buildCache;
+    }
+
+    public ModuleRepositoryIndex getRepositoryIndex() {
+	return repositoryIndex;
+    }
+
+    public void setRepositoryIndex(ModuleRepositoryIndex repositoryIndex) {
+	this.repositoryIndex = repositoryIndex;
+	clearModuleCache();
+    }
+
+    public int getModuleLoadingThreads() {
+	return moduleLoadingThreads;
+    }
+
+    public void setModuleLoadingThreads(int moduleLoadingThreads) {
+	this.moduleLoadingThreads = moduleLoadingThreads;
+    }
+
+    public int getExportThreads() {
+	return exportThreads;
+    }
+
+    public void setExportThreads(int exportThreads) {
+	this.exportThreads = exportThreads;
+    }
+
+    public int getVariantThreads() {
+	return variantThreads;
+    }
+
+    public void setVariantThreads(int variantThreads) {
+	this.variantThreads = variantThreads;
+    }
+
+    public int getValidationThreads() {
+	return validationThreads;
+    }
+
+    public void setValidationThreads(int validationThreads) {
+	this.validationThreads = validationThreads;
     }
 
     // ---------------------------------------------------------------------------
@@ -145,36 +751,793 @@ public class ACPCompiler {
     // ---------------------------------------------------------------------------
 
     /**
-     * Compiles a project.
+     * Compiles a project.
+     * 
+     * @param settings
+     *            the compilation settings.
+     * @return the report of compilation.
+     */
+    public CompilationResult compile(CompilationSettings settings) {
+	return compile(settings, new FileSystemOutputSink());
+    }
+
+    /**
+     * Compiles a project and writes files of the library through an output
+     * sink. The incremental export and the build cache are used only if the
+     * output sink is persistent.
+     * 
+     * @param settings
+     *            the compilation settings.
+     * @param outputSink
+     *            the output sink where files of the library are written.
+     * @return the report of compilation.
+     */
+    public CompilationResult compile(CompilationSettings settings, OutputSink outputSink) {
+	return compile(settings, outputSink, null);
+    }
+
+    /**
+     * Compiles a project with a monitor that reports progress of the
+     * compilation and allows to abort it. Generated outputs are staged in
+     * memory and the library is written only after all outputs have been
+     * generated, hence a cancelled or timed out compilation does not leave a
+     * partially written library.
+     * 
+     * @param settings
+     *            the compilation settings.
+     * @param outputSink
+     *            the output sink where files of the library are written.
+     * @param monitor
+     *            the compilation monitor (null, if the compilation is not
+     *            monitored).
+     * @return the report of compilation.
+     * @throws CompilationCancelledException
+     *             if the compilation has been cancelled or it has exceeded
+     *             its time limit.
+     */
+    public CompilationResult compile(CompilationSettings settings, OutputSink outputSink,
+	    CompilationMonitor monitor) {
+	if (monitor == null) {
+	    return compileProject(settings, outputSink, new CompilationMonitor());
+	}
+
+	monitor.start();
+	return compileProject(settings, outputSink, monitor);
+    }
+
+    /**
+     * Compiles a project and writes files of the library through an output
+     * sink.
+     * 
+     * @param settings
+     *            the compilation settings.
+     * @param outputSink
+     *            the output sink where files of the library are written.
+     * @param monitor
+     *            the compilation monitor.
+     * @return the report of compilation.
+     */
+    private CompilationResult compileProject(CompilationSettings settings, OutputSink outputSink,
+	    CompilationMonitor monitor) {
+	// Create compilation context
+	CompilationContext context = new CompilationContext();
+	context.settings = settings;
+	context.outputSink = outputSink;
+	context.monitor = monitor;
+	CompilationResult result = new CompilationResult();
+	context.result = result;
+
+	// Restore the library from the build cache
+	String buildKey = null;
+	BuildCache buildCache = outputSink.isPersistent() ? this.buildCache : null;
+	if (buildCache != null) {
+	    byte[] projectContent;
+	    try {
+		projectContent = Files.readAllBytes(settings.getProjectConfigurationFile().toPath());
+	    } catch (IOException e) {
+		throw new CompilationException("Project configuration cannot be read.", e);
+	    }
+
+	    buildKey = BuildCache.computeKey(projectContent, settings);
+	    File exportManifestFile = settings.isIncrementalExport() ? settings.getExportManifestFile() : null;
+	    if (buildCache.restore(buildKey, modulesRoot, settings.getLibraryDirectory(), exportManifestFile)) {
+		result.setRestoredFromCache(true);
+		return result;
+	    }
+	}
+
+	// Load project configuration, target platform and required modules
+	long stepStartTime = monitor.stepStarted(CompilationEvent.Phase.PROJECT_LOADING, null, 1, 1);
+	context.project = loadProject(settings);
+	monitor.stepCompleted(CompilationEvent.Phase.PROJECT_LOADING, null, 1, 1, context.project.getComponents()
+		.size(), stepStartTime);
+	resolveProject(context, true);
+	result.setModuleNames(context.projectModules.keySet());
+
+	// Plan export of include and source files for each referenced module
+	long exportStartTime = System.nanoTime();
+	ExportManifest exportManifest = outputSink.isPersistent() ? loadExportManifest(settings) : null;
+	FileExporter exporter = new FileExporter(exportManifest, settings.getExportMode());
+	int moduleCount = context.projectModules.size();
+	int moduleIdx = 0;
+	for (Module module : context.projectModules.values()) {
+	    moduleIdx++;
+	    stepStartTime = monitor.stepStarted(CompilationEvent.Phase.MODULE_EXPORT, module.getName(), moduleIdx,
+		    moduleCount);
+	    int plannedFiles = exporter.getPlannedFiles();
+	    exportFilesOfModule(module, settings, exporter);
+	    monitor.stepCompleted(CompilationEvent.Phase.MODULE_EXPORT, module.getName(), moduleIdx, moduleCount,
+		    exporter.getPlannedFiles() - plannedFiles, stepStartTime);
+	}
+
+	long exportPlanningTime = System.nanoTime() - exportStartTime;
+
+	// Generate all auto-generated files (only changed outputs are staged)
+	StagingOutputSink stagingSink = new StagingOutputSink(outputSink);
+	context.outputSink = stagingSink;
+	generateOutputs(context);
+	context.outputSink = outputSink;
+
+	// Write the library and store it to the build cache
+	ExecutorService exportExecutor = createExecutor(exportThreads, "acp-file-exporter");
+	try {
+	    writeLibrary(context, stagingSink, exporter, exportManifest, exportExecutor, exportPlanningTime);
+	} finally {
+	    exportExecutor.shutdownNow();
+	}
+
+	if (buildCache != null) {
+	    storeLibrary(buildCache, buildKey, context, exporter);
+	}
+
+	return result;
+    }
+
+    /**
+     * Writes the library: copies module files (only changed files, if the
+     * export is incremental) and writes changed outputs staged during
+     * generation.
+     * 
+     * @param context
+     *            the compilation context.
+     * @param stagingSink
+     *            the output sink with staged outputs.
+     * @param exporter
+     *            the export engine with planned export of module files.
+     * @param exportManifest
+     *            the export manifest (null, if the export is not
+     *            incremental).
+     * @param exportExecutor
+     *            the executor used to copy files.
+     * @param exportPlanningTime
+     *            the time of planning of export in nanoseconds.
+     */
+    private void writeLibrary(CompilationContext context, StagingOutputSink stagingSink, FileExporter exporter,
+	    ExportManifest exportManifest, ExecutorService exportExecutor, long exportPlanningTime) {
+	CompilationMonitor monitor = context.monitor;
+	monitor.commitStarted();
+	long stepStartTime = monitor.stepStarted(CompilationEvent.Phase.COMMIT, null, 1, 1);
+	long exportStartTime = System.nanoTime();
+	exportFiles(context, exporter, exportManifest, exportExecutor);
+	context.result.setExportTime((exportPlanningTime + System.nanoTime() - exportStartTime) / 1000000);
+
+	int writtenOutputs;
+	try {
+	    writtenOutputs = stagingSink.commit();
+	} catch (IOException e) {
+	    throw new CompilationException("Library cannot be written to "
+		    + context.settings.getOutputLibraryPath().getAbsolutePath() + ".", e);
+	}
+	monitor.stepCompleted(CompilationEvent.Phase.COMMIT, null, 1, 1, exporter.getExportedFiles()
+		+ writtenOutputs, stepStartTime);
+    }
+
+    /**
+     * Stores the written library to the build cache.
+     * 
+     * @param buildCache
+     *            the build cache.
+     * @param buildKey
+     *            the build key of the library.
+     * @param context
+     *            the compilation context.
+     * @param exporter
+     *            the export engine that exported module files.
+     */
+    private void storeLibrary(BuildCache buildCache, String buildKey, CompilationContext context,
+	    FileExporter exporter) {
+	File libraryDirectory = context.settings.getLibraryDirectory();
+	List<File> libraryFiles = new ArrayList<File>(exporter.getDestinations());
+	libraryFiles.addAll(context.result.getTouchedOutputs());
+	libraryFiles.addAll(context.result.getUnchangedOutputs());
+	buildCache.store(buildKey, modulesRoot, context.projectModules.values(), libraryDirectory,
+		getRelativePaths(libraryDirectory, libraryFiles),
+		getRelativePaths(libraryDirectory, exporter.getDestinations()));
+    }
+
+    /**
+     * Compiles a project directly to a zip archive with the library. Nothing
+     * is written to the output library path, the archive contains the
+     * directory of library and it is deterministic, i.e., the same library
+     * always produces the same archive.
+     * 
+     * @param settings
+     *            the compilation settings.
+     * @param out
+     *            the output stream where the archive is written (the stream
+     *            is not closed).
+     * @return the report of compilation.
+     */
+    public CompilationResult compileToZip(CompilationSettings settings, OutputStream out) {
+	return compileToZip(settings, out, null);
+    }
+
+    /**
+     * Compiles a project directly to a zip archive with the library. Nothing
+     * is written to the output stream, if the compilation fails or it is
+     * aborted by the monitor.
+     * 
+     * @param settings
+     *            the compilation settings.
+     * @param out
+     *            the output stream where the archive is written (the stream
+     *            is not closed).
+     * @param monitor
+     *            the compilation monitor (null, if the compilation is not
+     *            monitored).
+     * @return the report of compilation.
+     */
+    public CompilationResult compileToZip(CompilationSettings settings, OutputStream out,
+	    CompilationMonitor monitor) {
+	ZipOutputSink outputSink = new ZipOutputSink(settings.getOutputLibraryPath());
+	CompilationResult result = compile(settings, outputSink, monitor);
+	try {
+	    outputSink.writeTo(out);
+	} catch (IOException e) {
+	    throw new CompilationException("Zip archive with the library cannot be written.", e);
+	}
+
+	return result;
+    }
+
+    /**
+     * Compiles variants of a project. The project is loaded, required modules
+     * are resolved and export of module files is planned only once. Variants
+     * are compiled concurrently, each variant to its own output library and
+     * for its own target platform. Components of the base project are checked
+     * once for each target platform, only components with overridden
+     * properties are checked for each variant. Outputs of content generators
+     * that do not depend on values of component properties are generated once
+     * for each target platform and shared by all variants, other outputs are
+     * generated for each variant. The library of each variant is written in
+     * the same way as by {@link #compile(CompilationSettings)}: outputs are
+     * staged until all of them have been generated and the build cache is
+     * used, if it is set.
+     * 
+     * @param settings
+     *            the compilation settings of the base project (the output
+     *            library path is replaced by the path of each variant).
+     * @param variants
+     *            the variants of the project.
+     * @return the reports of compilation of variants (in order of variants).
+     */
+    public List<CompilationResult> compileVariants(CompilationSettings settings, List<BuildVariant> variants) {
+	// Load the base project and required modules (the target platform is
+	// resolved for each variant)
+	CompilationContext baseContext = new CompilationContext();
+	baseContext.settings = settings;
+	baseContext.outputSink = new FileSystemOutputSink();
+	baseContext.monitor = new CompilationMonitor();
+	baseContext.result = new CompilationResult();
+	baseContext.project = loadProject(settings);
+	resolveProject(baseContext, false);
+
+	// Plan export of module files for the base project
+	FileExporter baseExporter = new FileExporter(null, settings.getExportMode());
+	for (Module module : baseContext.projectModules.values()) {
+	    exportFilesOfModule(module, settings, baseExporter);
+	}
+
+	// Read the project configuration for build keys of variants
+	BuildCache buildCache = this.buildCache;
+	byte[] projectContent = null;
+	if (buildCache != null) {
+	    try {
+		projectContent = Files.readAllBytes(settings.getProjectConfigurationFile().toPath());
+	    } catch (IOException e) {
+		throw new CompilationException("Project configuration cannot be read.", e);
+	    }
+	}
+
+	// Compile variants
+	final SharedVariantWork sharedWork = new SharedVariantWork(baseContext, baseExporter, buildCache,
+		projectContent);
+	final ExecutorService exportExecutor = createExecutor(exportThreads, "acp-file-exporter");
+	ExecutorService variantExecutor = createExecutor(variantThreads, "acp-variant-builder");
+	try {
+	    List<Future<CompilationResult>> builds = new ArrayList<Future<CompilationResult>>();
+	    for (final BuildVariant variant : variants) {
+		builds.add(variantExecutor.submit(new Callable<CompilationResult>() {
+		    @Override
+		    public CompilationResult call() {
+			return compileVariant(sharedWork, variant, exportExecutor);
+		    }
+		}));
+	    }
+
+	    // Wait for all builds, the first failure (in order of variants) is
+	    // reported
+	    List<CompilationResult> results = new ArrayList<CompilationResult>(builds.size());
+	    CompilationException failure = null;
+	    for (int i = 0; i < builds.size(); i++) {
+		try {
+		    results.add(builds.get(i).get());
+		} catch (ExecutionException e) {
+		    if (failure == null) {
+			failure = new CompilationException("Compilation of variant " + variants.get(i).getName()
+				+ " failed.", e.getCause());
+		    }
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    throw new CompilationException("Compilation of variants has been interrupted.", e);
+		}
+	    }
+
+	    if (failure != null) {
+		throw failure;
+	    }
+
+	    return results;
+	} finally {
+	    variantExecutor.shutdownNow();
+	    exportExecutor.shutdownNow();
+	}
+    }
+
+    /**
+     * Compiles a project for several target platforms. The project and its
+     * modules are shared by all compilations that run concurrently. The
+     * library for each platform is created in a subdirectory of the output
+     * library path named by the platform.
+     * 
+     * @param settings
+     *            the compilation settings.
+     * @param platformNames
+     *            the names of target platforms.
+     * @return the map from platform names to reports of compilation.
+     */
+    public Map<String, CompilationResult> compileForPlatforms(CompilationSettings settings,
+	    Collection<String> platformNames) {
+	List<BuildVariant> variants = new ArrayList<BuildVariant>();
+	for (String platformName : new LinkedHashSet<String>(platformNames)) {
+	    BuildVariant variant = new BuildVariant(platformName, new File(settings.getOutputLibraryPath(),
+		    platformName));
+	    variant.setPlatformName(platformName);
+	    variants.add(variant);
+	}
+
+	List<CompilationResult> results = compileVariants(settings, variants);
+	Map<String, CompilationResult> result = new LinkedHashMap<String, CompilationResult>();
+	for (int i = 0; i < variants.size(); i++) {
+	    result.put(variants.get(i).getPlatformName(), results.get(i));
+	}
+
+	return result;
+    }
+
+    /**
+     * Compiles a variant of a resolved project.
+     * 
+     * @param sharedWork
+     *            the work shared by all variants of the project.
+     * @param variant
+     *            the variant.
+     * @param exportExecutor
+     *            the executor used to copy files.
+     * @return the report of compilation.
+     */
+    private CompilationResult compileVariant(SharedVariantWork sharedWork, BuildVariant variant,
+	    ExecutorService exportExecutor) {
+	CompilationContext baseContext = sharedWork.baseContext;
+	CompilationSettings settings = new CompilationSettings(baseContext.settings);
+	settings.setOutputLibraryPath(variant.getOutputLibraryPath());
+
+	OutputSink outputSink = new FileSystemOutputSink();
+	CompilationContext context = new CompilationContext();
+	context.settings = settings;
+	context.outputSink = outputSink;
+	context.monitor = new CompilationMonitor();
+	context.result = new CompilationResult();
+
+	// Restore the library of the variant from the build cache
+	BuildCache buildCache = sharedWork.buildCache;
+	String buildKey = null;
+	if (buildCache != null) {
+	    buildKey = BuildCache.computeKey(createVariantContent(sharedWork.projectContent, variant), settings);
+	    File exportManifestFile = settings.isIncrementalExport() ? settings.getExportManifestFile() : null;
+	    if (buildCache.restore(buildKey, modulesRoot, settings.getLibraryDirectory(), exportManifestFile)) {
+		context.result.setRestoredFromCache(true);
+		return context.result;
+	    }
+	}
+
+	context.result.setModuleNames(baseContext.projectModules.keySet());
+	context.projectModules.putAll(baseContext.projectModules);
+	try {
+	    context.project = baseContext.project.createVariant(variant.getPropertyOverrides());
+	} catch (ConfigurationException e) {
+	    throw new CompilationException("Variant " + variant.getName() + " contains errors.", e);
+	}
+
+	// Load target platform of the variant and check configuration of
+	// components with respect to the platform
+	String platformName = variant.getPlatformName();
+	if (platformName == null) {
+	    platformName = context.project.getPlatformName();
+	}
+	context.platform = loadPlatform(platformName);
+	String platformKey = (platformName != null) ? platformName.trim() : "";
+	checkVariantComponents(sharedWork, context, variant, platformKey);
+
+	// Plan export of module files to the library of the variant
+	long exportStartTime = System.nanoTime();
+	ExportManifest exportManifest = loadExportManifest(settings);
+	FileExporter exporter = sharedWork.baseExporter.relocate(baseContext.settings.getLibraryDirectory(),
+		settings.getLibraryDirectory(), exportManifest, settings.getExportMode());
+	long exportPlanningTime = System.nanoTime() - exportStartTime;
+
+	// Generate all auto-generated files (only changed outputs are staged)
+	StagingOutputSink stagingSink = new StagingOutputSink(outputSink);
+	context.outputSink = stagingSink;
+	generateVariantOutputs(sharedWork, context, platformKey);
+	context.outputSink = outputSink;
+
+	// Write the library and store it to the build cache
+	writeLibrary(context, stagingSink, exporter, exportManifest, exportExecutor, exportPlanningTime);
+	if (buildCache != null) {
+	    storeLibrary(buildCache, buildKey, context, exporter);
+	}
+
+	return context.result;
+    }
+
+    /**
+     * Checks components of a variant with respect to its target platform.
+     * Problems of components without overridden properties are taken from the
+     * check of the base project for the platform.
+     * 
+     * @param sharedWork
+     *            the work shared by all variants of the project.
+     * @param context
+     *            the compilation context of the variant.
+     * @param variant
+     *            the variant.
+     * @param platformKey
+     *            the name of target platform of the variant.
+     */
+    private void checkVariantComponents(final SharedVariantWork sharedWork, final CompilationContext context,
+	    BuildVariant variant, String platformKey) {
+	List<ComponentProblem> baseProblems = getSharedResult(sharedWork.componentChecks, platformKey,
+		new Callable<List<ComponentProblem>>() {
+		    @Override
+		    public List<ComponentProblem> call() {
+			return findComponentProblems(sharedWork.baseContext.project.getComponents(),
+				context.projectModules, context.platform);
+		    }
+		});
+
+	Map<String, Map<String, String>> overrides = variant.getPropertyOverrides();
+	List<Component> overriddenComponents = new ArrayList<Component>();
+	for (Component component : context.project.getComponents()) {
+	    if (overrides.containsKey(component.getName())) {
+		overriddenComponents.add(component);
+	    }
+	}
+
+	ProblemReporter reporter = new ProblemReporter();
+	for (ComponentProblem problem : baseProblems) {
+	    if (!overrides.containsKey(problem.component.getName())) {
+		reporter.reportComponentProblem(problem);
+	    }
+	}
+	for (ComponentProblem problem : findComponentProblems(overriddenComponents, context.projectModules,
+		context.platform)) {
+	    reporter.reportComponentProblem(problem);
+	}
+	reporter.throwIfProblems();
+    }
+
+    /**
+     * Generates outputs of a variant. Outputs that do not depend on values of
+     * component properties are generated only by the first variant compiled
+     * for the target platform, other variants write the same content.
+     * 
+     * @param sharedWork
+     *            the work shared by all variants of the project.
+     * @param context
+     *            the compilation context of the variant.
+     * @param platformKey
+     *            the name of target platform of the variant.
+     */
+    private void generateVariantOutputs(SharedVariantWork sharedWork, final CompilationContext context,
+	    String platformKey) {
+	context.resolvedProject = new ResolvedProject(context.project, context.projectModules, context.platform,
+		PRIVATE_NAMESPACE);
+
+	List<ACPContentGenerator> variantGenerators = new ArrayList<ACPContentGenerator>();
+	final List<ACPContentGenerator> platformGenerators = new ArrayList<ACPContentGenerator>();
+	for (ACPContentGenerator generator : createContentGenerators()) {
+	    if (generator.dependsOnPropertyValues()) {
+		variantGenerators.add(generator);
+	    } else {
+		platformGenerators.add(generator);
+	    }
+	}
+
+	// Write outputs shared by all variants for the target platform
+	Map<String, byte[]> platformOutputs = getSharedResult(sharedWork.platformOutputs, platformKey,
+		new Callable<Map<String, byte[]>>() {
+		    @Override
+		    public Map<String, byte[]> call() {
+			return generateSharedOutputs(context, platformGenerators);
+		    }
+		});
+
+	File libraryDirectory = context.settings.getLibraryDirectory();
+	for (Map.Entry<String, byte[]> output : platformOutputs.entrySet()) {
+	    File outputFile = new File(libraryDirectory, output.getKey());
+	    try {
+		boolean written = context.outputSink.writeFile(outputFile, output.getValue());
+		context.result.addGeneratedOutput(outputFile, written);
+	    } catch (IOException e) {
+		throw new CompilationException("File " + outputFile.getAbsolutePath() + " cannot be created.", e);
+	    }
+	}
+
+	// Generate outputs that depend on values of component properties
+	ACPContentGenerator.generateContent(variantGenerators, context);
+    }
+
+    /**
+     * Generates outputs of content generators to memory.
+     * 
+     * @param context
+     *            the compilation context with the resolved project.
+     * @param contentGenerators
+     *            the content generators.
+     * @return the map from paths of outputs (relative to the library
+     *         directory) to their content.
+     */
+    private static Map<String, byte[]> generateSharedOutputs(CompilationContext context,
+	    List<ACPContentGenerator> contentGenerators) {
+	MemoryOutputSink outputSink = new MemoryOutputSink(context.settings.getLibraryDirectory());
+	CompilationContext outputContext = new CompilationContext();
+	outputContext.settings = context.settings;
+	outputContext.project = context.project;
+	outputContext.platform = context.platform;
+	outputContext.projectModules.putAll(context.projectModules);
+	outputContext.resolvedProject = context.resolvedProject;
+	outputContext.outputSink = outputSink;
+	outputContext.monitor = context.monitor;
+	outputContext.result = new CompilationResult();
+	ACPContentGenerator.generateContent(contentGenerators, outputContext);
+
+	Map<String, byte[]> outputs = new TreeMap<String, byte[]>();
+	for (String path : outputSink.getPaths()) {
+	    outputs.put(path, outputSink.getContent(path));
+	}
+
+	return outputs;
+    }
+
+    /**
+     * Creates the content identifying a variant in the build cache. The
+     * content of the base project configuration is extended by the target
+     * platform and overridden property values of the variant.
+     * 
+     * @param projectContent
+     *            the content of the base project configuration.
+     * @param variant
+     *            the variant.
+     * @return the content for the build key of the variant.
+     */
+    private static byte[] createVariantContent(byte[] projectContent, BuildVariant variant) {
+	StringBuilder description = new StringBuilder("\nvariant\n");
+	description.append(variant.getPlatformName()).append('\n');
+	for (Map.Entry<String, Map<String, String>> component : new TreeMap<String, Map<String, String>>(variant
+		.getPropertyOverrides()).entrySet()) {
+	    for (Map.Entry<String, String> property : new TreeMap<String, String>(component.getValue()).entrySet()) {
+		description.append(component.getKey()).append('.').append(property.getKey()).append('=')
+			.append(property.getValue()).append('\n');
+	    }
+	}
+
+	byte[] variantContent = description.toString().getBytes(StandardCharsets.UTF_8);
+	byte[] content = Arrays.copyOf(projectContent, projectContent.length + variantContent.length);
+	System.arraycopy(variantContent, 0, content, projectContent.length, variantContent.length);
+	return content;
+    }
+
+    /**
+     * Returns the result of work shared by variants. The work is done by the
+     * first variant that needs the result, other variants wait for it.
+     * 
+     * @param results
+     *            the map of shared results.
+     * @param key
+     *            the key of result.
+     * @param work
+     *            the work computing the result.
+     * @return the result.
+     */
+    private static <T> T getSharedResult(ConcurrentMap<String, FutureTask<T>> results, String key, Callable<T> work) {
+	FutureTask<T> task = results.get(key);
+	if (task == null) {
+	    FutureTask<T> newTask = new FutureTask<T>(work);
+	    task = results.putIfAbsent(key, newTask);
+	    if (task == null) {
+		task = newTask;
+		task.run();
+	    }
+	}
+
+	try {
+	    return task.get();
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof RuntimeException) {
+		throw (RuntimeException) e.getCause();
+	    }
+	    throw new CompilationException("Work shared by variants failed.", e.getCause());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new CompilationException("Compilation of variants has been interrupted.", e);
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Validation methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Validates a project configuration without compiling it. The validation
+     * reads the configuration, checks names, types and configuration of
+     * components (values of properties, unknown properties and events and
+     * parameters of loopers) and imports of libraries. Components are checked
+     * in parallel, if the project contains many components. All problems are
+     * reported with their kind and location in the xml document. No files are
+     * exported or generated and descriptions of modules are taken from the
+     * module cache (a module that is not cached is loaded once and cached),
+     * hence repeated validations do not access the file system.
+     * 
+     * @param projectConfiguration
+     *            the content of xml file with project configuration.
+     * @return the report of validation.
+     */
+    public ValidationReport validate(byte[] projectConfiguration) {
+	long startTime = System.nanoTime();
+	ValidationReport report = new ValidationReport();
+	validateProject(projectConfiguration, new ProblemReporter(report));
+	report.sortProblems();
+	report.setValidationTime((System.nanoTime() - startTime) / 1000);
+	return report;
+    }
+
+    /**
+     * Validates a project configuration and reports all found problems.
+     * 
+     * @param projectConfiguration
+     *            the content of xml file with project configuration.
+     * @param reporter
+     *            the reporter of found problems.
+     */
+    private void validateProject(byte[] projectConfiguration, final ProblemReporter reporter) {
+	// Parse the project configuration
+	Document doc;
+	try {
+	    doc = XmlUtils.parseWithLocations(new ByteArrayInputStream(projectConfiguration));
+	} catch (SAXParseException e) {
+	    reporter.report(e.getLineNumber(), e.getColumnNumber(), e.getMessage());
+	    return;
+	} catch (IOException | SAXException e) {
+	    reporter.report(null, "Project configuration cannot be parsed: " + e.getMessage());
+	    return;
+	}
+
+	Element xmlRoot = doc.getDocumentElement();
+	if (!"project".equals(xmlRoot.getNodeName())) {
+	    reporter.report(xmlRoot,
+		    "Root element of a project configuration must be an element with name 'project'.");
+	    return;
+	}
+
+	// Read the project configuration, invalid parts are skipped
+	final Set<Element> skippedElements = Collections.newSetFromMap(new IdentityHashMap<Element, Boolean>());
+	Project project = new Project();
+	project.readConfiguration(xmlRoot, new Project.ProblemHandler() {
+	    @Override
+	    public void handleProblem(Element xmlElement, ConfigurationException problem) {
+		skippedElements.add(xmlElement);
+		StringBuilder message = new StringBuilder(problem.getMessage());
+		for (Throwable cause = problem.getCause(); cause != null; cause = cause.getCause()) {
+		    message.append(' ').append(cause.getMessage());
+		}
+		reporter.report(xmlElement, message.toString());
+	    }
+	});
+	reporter.mapElements(project, xmlRoot, skippedElements);
+
+	// Load description of target hardware (compilation) platform
+	Platform platform = null;
+	try {
+	    platform = loadPlatform(project.getPlatformName());
+	} catch (CompilationException e) {
+	    reporter.report(xmlRoot, e.getMessage());
+	}
+
+	checkComponentNames(project.getComponents(), reporter);
+
+	// Take descriptions of component types and imported libraries from the
+	// module cache, modules that cannot be loaded are reported by checks
+	Set<String> namesOfRequiredModules = new HashSet<String>();
+	for (Component component : project.getComponents()) {
+	    namesOfRequiredModules.add(component.getType());
+	}
+	namesOfRequiredModules.addAll(project.getLibraryImports());
+
+	Map<String, Module> modules = new HashMap<String, Module>();
+	for (String moduleName : namesOfRequiredModules) {
+	    if (moduleName.trim().isEmpty()) {
+		continue;
+	    }
+
+	    try {
+		modules.put(moduleName, getModule(moduleName.trim()));
+	    } catch (Exception e) {
+		// Missing module is reported as an invalid component type or
+		// library
+	    }
+	}
+
+	checkComponents(project.getComponents(), modules, platform, reporter);
+	checkLibraryImports(project.getLibraryImports(), modules, reporter);
+    }
+
+    /**
+     * Loads the project configuration.
      * 
      * @param settings
      *            the compilation settings.
+     * @return the project configuration.
      */
-    public void compile(CompilationSettings settings) {
-	// Create compilation context
-	CompilationContext context = new CompilationContext();
-	context.settings = settings;
-
-	// Load project configuration
+    private Project loadProject(CompilationSettings settings) {
 	try {
-	    context.project = Project.loadFromFile(settings.getProjectConfigurationFile());
+	    return Project.loadFromFile(settings.getProjectConfigurationFile());
 	} catch (ConfigurationException e) {
 	    throw new CompilationException("Project configuration contains errors.", e);
 	}
+    }
 
+    /**
+     * Loads all modules required by the project of a compilation context and
+     * checks the project configuration. Optionally, the target platform of the
+     * project is loaded and the configuration of components is checked with
+     * respect to the platform.
+     * 
+     * @param context
+     *            the compilation context with loaded project.
+     * @param resolvePlatform
+     *            true, if the target platform of the project should be
+     *            loaded, false otherwise.
+     */
+    private void resolveProject(CompilationContext context, boolean resolvePlatform) {
 	// Load description of target hardware (compilation) platform
-	String platformName = context.project.getPlatformName();
-	if ((platformName == null) || (platformName.trim().isEmpty())) {
-	    platformName = "Arduino";
-	}
-
-	context.platform = Platform.loadPlatform(platformName);
-	if (context.platform == null) {
-	    throw new CompilationException("Unsupported hardware platfrom '" + platformName + "'.");
+	if (resolvePlatform) {
+	    context.platform = loadPlatform(context.project.getPlatformName());
 	}
 
 	// Check component names
-	checkComponentNames(context.project.getComponents());
+	ProblemReporter reporter = new ProblemReporter();
+	checkComponentNames(context.project.getComponents(), reporter);
 
 	// Construct a set of names of all required modules
 	Set<String> namesOfRequiredModules = new HashSet<String>();
@@ -185,53 +1548,139 @@ public class ACPCompiler {
 
 	// Find all modules referenced from the project (modules that are
 	// imported in the program or required component types).
-	context.projectModules.putAll(loadModulesWithDependencies(namesOfRequiredModules));
+	CompilationMonitor monitor = context.monitor;
+	long stepStartTime = monitor.stepStarted(CompilationEvent.Phase.MODULE_RESOLUTION, null, 1, 1);
+	context.projectModules.putAll(loadModulesWithDependencies(namesOfRequiredModules, monitor));
+	monitor.stepCompleted(CompilationEvent.Phase.MODULE_RESOLUTION, null, 1, 1, context.projectModules.size(),
+		stepStartTime);
+	stepStartTime = monitor.stepStarted(CompilationEvent.Phase.VALIDATION, null, 1, 1);
 
 	// Check whether each component is properly configured with respect to
-	// component description
-	for (Component component : context.project.getComponents()) {
-	    Module componentTypeModule = context.projectModules.get(component.getType());
-	    if ((componentTypeModule == null) || (!(componentTypeModule instanceof ComponentType))) {
-		throw new CompilationException("Invalid component type (" + component.getType() + ") of component "
-			+ component.getName() + ".");
-	    }
+	// component description and whether all program imports are library
+	// modules
+	checkComponents(context.project.getComponents(), context.projectModules, context.platform, reporter);
+	checkLibraryImports(context.project.getLibraryImports(), context.projectModules, reporter);
+	reporter.throwIfProblems();
+	monitor.stepCompleted(CompilationEvent.Phase.VALIDATION, null, 1, 1, context.project.getComponents().size()
+		+ context.project.getLibraryImports().size(), stepStartTime);
+    }
 
-	    checkComponentConfiguration(component, (ComponentType) componentTypeModule, context.platform);
+    /**
+     * Loads description of target hardware (compilation) platform.
+     * 
+     * @param platformName
+     *            the name of platform (null or empty for the default
+     *            platform).
+     * @return the platform.
+     */
+    private static Platform loadPlatform(String platformName) {
+	if ((platformName == null) || (platformName.trim().isEmpty())) {
+	    platformName = "Arduino";
 	}
 
-	// Check whether all program imports are library modules
-	for (String libraryImport : context.project.getLibraryImports()) {
-	    Module libraryModule = context.projectModules.get(libraryImport);
-	    if ((libraryModule == null) || (!(libraryModule instanceof Library))) {
-		throw new CompilationException("Library " + libraryImport
-			+ " imported by program is not a library module.");
-	    }
+	Platform platform = Platform.loadPlatform(platformName);
+	if (platform == null) {
+	    throw new CompilationException("Unsupported hardware platfrom '" + platformName + "'.");
+	}
+
+	return platform;
+    }
+
+    /**
+     * Loads the manifest of exported files, if the export is incremental.
+     * 
+     * @param settings
+     *            the compilation settings.
+     * @return the manifest or null, if the export is not incremental.
+     */
+    private static ExportManifest loadExportManifest(CompilationSettings settings) {
+	if (!settings.isIncrementalExport()) {
+	    return null;
 	}
 
+	return ExportManifest.load(settings.getExportManifestFile(), settings.getLibraryDirectory());
+    }
+
+    /**
+     * Creates output directories and exports planned module files to the
+     * output library.
+     * 
+     * @param context
+     *            the compilation context.
+     * @param exporter
+     *            the export engine with planned export.
+     * @param exportManifest
+     *            the manifest of exported files (null, if the export is not
+     *            incremental).
+     * @param exportExecutor
+     *            the executor used to copy files.
+     */
+    private void exportFiles(CompilationContext context, FileExporter exporter, ExportManifest exportManifest,
+	    ExecutorService exportExecutor) {
+	CompilationSettings settings = context.settings;
+	CompilationResult result = context.result;
+
 	// Prepare output directories
 	File outIncludes = settings.getOutputIncludePath();
-	outIncludes.mkdirs();
-	if (!(outIncludes.exists() && outIncludes.isDirectory())) {
+	try {
+	    context.outputSink.createDirectory(outIncludes);
+	} catch (IOException e) {
 	    throw new CompilationException("Output directory for includes (" + outIncludes.getAbsolutePath()
-		    + ") cannot be created.");
+		    + ") cannot be created.", e);
 	}
 
 	File outSources = settings.getOutputSourcePath();
-	outSources.mkdirs();
-	if (!(outSources.exists() && outSources.isDirectory())) {
+	try {
+	    context.outputSink.createDirectory(outSources);
+	} catch (IOException e) {
 	    throw new CompilationException("Output directory for source files (" + outIncludes.getAbsolutePath()
-		    + ") cannot be created.");
+		    + ") cannot be created.", e);
 	}
 
-	// Copy include and source files for each referenced module
-	for (Module module : context.projectModules.values()) {
-	    exportFilesOfModule(module, settings);
+	CompilationMonitor monitor = context.monitor;
+	long stepStartTime = monitor.stepStarted(CompilationEvent.Phase.FILE_EXPORT, null, 1, 1);
+	exporter.export(exportExecutor, context.outputSink, monitor);
+	monitor.stepCompleted(CompilationEvent.Phase.FILE_EXPORT, null, 1, 1, exporter.getExportedFiles(),
+		stepStartTime);
+	result.setExportedFiles(exporter.getExportedFiles());
+	result.setExportedBytes(exporter.getExportedBytes());
+	result.setLinkedFiles(exporter.getLinkedFiles());
+
+	// Remove files that no longer belong to any module
+	if (exportManifest != null) {
+	    exportManifest.removeStaleFiles();
+	    try {
+		exportManifest.save(settings.getExportManifestFile());
+	    } catch (IOException e) {
+		throw new CompilationException("Manifest of exported files cannot be saved.", e);
+	    }
+
+	    result.setSkippedFiles(exportManifest.getSkippedFiles());
+	    result.setRemovedFiles(exportManifest.getRemovedFiles());
 	}
+    }
+
+    /**
+     * Generates all auto-generated files of the library.
+     * 
+     * @param context
+     *            the compilation context.
+     */
+    private void generateOutputs(CompilationContext context) {
+	// Resolve the project once for all content generators
+	context.resolvedProject = new ResolvedProject(context.project, context.projectModules, context.platform,
+		PRIVATE_NAMESPACE);
 
-	// Initialize context
-	context.data.put("PrivateNamespace", "acp_private");
+	// Generate all auto-generated files.
+	ACPContentGenerator.generateContent(createContentGenerators(), context);
+    }
 
-	// Create content generators
+    /**
+     * Creates content generators of all auto-generated files of the library.
+     * 
+     * @return the list of content generators.
+     */
+    private static List<ACPContentGenerator> createContentGenerators() {
 	List<ACPContentGenerator> contentGenerators = new ArrayList<ACPContentGenerator>();
 
 	// Generate source file with the project code.
@@ -263,65 +1712,280 @@ public class ACPCompiler {
 	ACPLibraryPropGenerator acpLibraryPropGenerator = new ACPLibraryPropGenerator();
 	contentGenerators.add(acpLibraryPropGenerator);
 
-	// Generate all auto-generated files.
-	ACPContentGenerator.generateContent(contentGenerators, context);
+	return contentGenerators;
     }
 
     /**
-     * Loads modules with names in the given set of module names.
+     * Loads modules with names in the given set of module names including all
+     * their (transitive) dependencies. Module descriptions are loaded in
+     * parallel. Each module is requested at most once, hence cyclic
+     * dependencies between modules are detected and do not cause repeated
+     * loading.
      * 
      * @param namesOfModules
      *            the names of modules forming an initial set of modules
      *            required by the project.
+     * @param monitor
+     *            the monitor checked while waiting for loads of modules.
+     * @return the map from names to loaded modules ordered by module names.
      */
-    private Map<String, Module> loadModulesWithDependencies(Set<String> namesOfModules) {
-	Map<String, Module> result = new HashMap<String, Module>();
-	Set<String> missingModules = new HashSet<String>(namesOfModules);
-	while (!missingModules.isEmpty()) {
-	    Map<String, Module> newModules = new HashMap<String, Module>();
-
-	    // Load missing modules
-	    for (String requiredModule : missingModules) {
-		// Skip modules with empty name
-		requiredModule = requiredModule.trim();
-		if (requiredModule.isEmpty()) {
-		    continue;
-		}
+    private Map<String, Module> loadModulesWithDependencies(Set<String> namesOfModules,
+	    CompilationMonitor monitor) {
+	ExecutorService executor = createExecutor(moduleLoadingThreads, "acp-module-loader");
+	try {
+	    return loadModulesWithDependencies(namesOfModules, executor, monitor);
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
 
-		// Load module description
-		Module module;
-		try {
-		    module = Module.loadFromFile(new File(ensureModule(requiredModule), Module.DESCRIPTION_FILE));
-		    if (!requiredModule.equals(module.getName())) {
-			throw new CompilationException("Invalid name of module in module description: "
-				+ requiredModule);
-		    }
-		} catch (Exception e) {
-		    throw new CompilationException("Invalid description file of module " + requiredModule, e);
-		}
+    /**
+     * Returns paths of files relative to a directory.
+     * 
+     * @param directory
+     *            the directory.
+     * @param files
+     *            the files in the directory.
+     * @return the relative paths with slash as the path separator.
+     */
+    private static List<String> getRelativePaths(File directory, List<File> files) {
+	List<String> result = new ArrayList<String>(files.size());
+	for (File file : files) {
+	    result.add(directory.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/'));
+	}
+
+	return result;
+    }
 
-		// Add module to newly loaded modules.
-		newModules.put(requiredModule, module);
+    /**
+     * Creates a fixed thread pool with daemon threads.
+     * 
+     * @param threads
+     *            the number of threads.
+     * @param name
+     *            the name of threads.
+     * @return the executor.
+     */
+    private static ExecutorService createExecutor(int threads, final String name) {
+	return Executors.newFixedThreadPool(Math.max(threads, 1), new ThreadFactory() {
+	    @Override
+	    public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, name);
+		thread.setDaemon(true);
+		return thread;
 	    }
-	    result.putAll(newModules);
-	    missingModules.clear();
+	});
+    }
 
-	    // Find missing dependencies of newly loaded modules
-	    for (Module newModule : newModules.values()) {
-		for (String requiredModule : newModule.getRequiredModules()) {
-		    if (!result.containsKey(requiredModule)) {
-			missingModules.add(requiredModule);
-		    }
+    /**
+     * Loads modules with names in the given set of module names including all
+     * their dependencies using an executor.
+     * 
+     * @param namesOfModules
+     *            the names of modules forming an initial set of modules
+     *            required by the project.
+     * @param executor
+     *            the executor used to load module descriptions.
+     * @param monitor
+     *            the monitor checked while waiting for loads of modules.
+     * @return the map from names to loaded modules ordered by module names.
+     */
+    private Map<String, Module> loadModulesWithDependencies(Set<String> namesOfModules, ExecutorService executor,
+	    CompilationMonitor monitor) {
+	CompletionService<Module> completionService = new ExecutorCompletionService<Module>(executor);
+	Map<Future<Module>, String> pendingLoads = new HashMap<Future<Module>, String>();
+	Set<String> requestedModules = new HashSet<String>();
+
+	// Request loading of initial modules
+	for (String requiredModule : namesOfModules) {
+	    requestModule(requiredModule, requestedModules, completionService, pendingLoads);
+	}
+
+	// Collect loaded modules and request their dependencies. All loads are
+	// completed even if some of them fail, so that the reported error does
+	// not depend on the order in which loads are completed.
+	Map<String, Module> result = new TreeMap<String, Module>();
+	SortedMap<String, Throwable> failures = new TreeMap<String, Throwable>();
+	while (!pendingLoads.isEmpty()) {
+	    Future<Module> completedLoad;
+	    try {
+		completedLoad = completionService.poll(CANCELLATION_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		throw new CompilationException("Loading of modules has been interrupted.", e);
+	    }
+
+	    monitor.checkCancellation();
+	    if (completedLoad == null) {
+		continue;
+	    }
+
+	    String moduleName = pendingLoads.remove(completedLoad);
+	    try {
+		Module module = completedLoad.get();
+		result.put(moduleName, module);
+		for (String requiredModule : module.getRequiredModules()) {
+		    requestModule(requiredModule, requestedModules, completionService, pendingLoads);
 		}
+	    } catch (ExecutionException e) {
+		failures.put(moduleName, e.getCause());
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		throw new CompilationException("Loading of modules has been interrupted.", e);
 	    }
 	}
 
+	if (!failures.isEmpty()) {
+	    String moduleName = failures.firstKey();
+	    throw new CompilationException("Invalid description file of module " + moduleName,
+		    failures.get(moduleName));
+	}
+
 	return result;
     }
 
+    /**
+     * Requests loading of a module, if the module has not been already
+     * requested.
+     * 
+     * @param requiredModule
+     *            the name of required module.
+     * @param requestedModules
+     *            the set of names of already requested modules.
+     * @param completionService
+     *            the completion service executing loads of modules.
+     * @param pendingLoads
+     *            the map of pending loads.
+     */
+    private void requestModule(String requiredModule, Set<String> requestedModules,
+	    CompletionService<Module> completionService, Map<Future<Module>, String> pendingLoads) {
+	// Skip modules with empty name
+	final String moduleName = requiredModule.trim();
+	if (moduleName.isEmpty()) {
+	    return;
+	}
+
+	if (!requestedModules.add(moduleName)) {
+	    return;
+	}
+
+	Future<Module> load = completionService.submit(new Callable<Module>() {
+	    @Override
+	    public Module call() throws Exception {
+		return getModule(moduleName);
+	    }
+	});
+	pendingLoads.put(load, moduleName);
+    }
+
+    /**
+     * Returns a module with given name from the module cache. If the module is
+     * not in the cache, it is loaded by the calling thread. Failed loads are
+     * not cached, so that the load is repeated in the next compilation.
+     * 
+     * @param moduleName
+     *            the name of module.
+     * @return the module description.
+     * @throws Exception
+     *             if the module cannot be loaded.
+     */
+    private Module getModule(final String moduleName) throws Exception {
+	FutureTask<Module> load = moduleCache.get(moduleName);
+	if (load == null) {
+	    FutureTask<Module> newLoad = new FutureTask<Module>(new Callable<Module>() {
+		@Override
+		public Module call() throws Exception {
+		    return loadModule(moduleName);
+		}
+	    });
+
+	    load = moduleCache.putIfAbsent(moduleName, newLoad);
+	    if (load == null) {
+		load = newLoad;
+		load.run();
+	    }
+	}
+
+	try {
+	    return load.get();
+	} catch (ExecutionException e) {
+	    moduleCache.remove(moduleName, load);
+	    throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+	}
+    }
+
+    /**
+     * Removes all modules from the module cache. Modules are loaded again
+     * in subsequent compilations.
+     */
+    public void clearModuleCache() {
+	moduleCache.clear();
+	indexEntries.clear();
+    }
+
+    /**
+     * Removes a module from the module cache, e.g., when the module files
+     * have changed.
+     * 
+     * @param moduleName
+     *            the name of module.
+     */
+    public void invalidateModule(String moduleName) {
+	moduleCache.remove(moduleName);
+	indexEntries.remove(moduleName);
+    }
+
+    /**
+     * Returns the directory of a module in the module repository.
+     * 
+     * @param moduleName
+     *            the name of module.
+     * @return the directory with the module description and data (in the
+     *         mounted module archive, if modules are read from an archive).
+     * @throws CompilationException
+     *             if the module is not available.
+     */
+    public Path getModuleDirectory(String moduleName) throws CompilationException {
+	return ensureModule(moduleName);
+    }
+
+    /**
+     * Loads a module with given name.
+     * 
+     * @param moduleName
+     *            the name of module.
+     * @return the module description.
+     */
+    private Module loadModule(String moduleName) {
+	Module module = loadModuleDescription(ensureModule(moduleName).resolve(Module.DESCRIPTION_FILE));
+	if (!moduleName.equals(module.getName())) {
+	    throw new CompilationException("Invalid name of module in module description: " + moduleName);
+	}
+
+	return module;
+    }
+
+    /**
+     * Loads description of a module using the descriptor cache (if
+     * available).
+     * 
+     * @param xmlFile
+     *            the xml file with description of a module.
+     * @return the module description.
+     */
+    private Module loadModuleDescription(Path xmlFile) {
+	if (descriptorCache != null) {
+	    return descriptorCache.load(xmlFile);
+	}
+
+	return Module.loadFromFile(xmlFile);
+    }
+
     /**
      * Ensures that module with given name is available and returns the path to
-     * directory containing the module.
+     * directory containing the module. The module is resolved by the
+     * repository index, if the index contains a valid entry of the module.
+     * Otherwise, the module directory is found by probing the file system.
      * 
      * @param moduleName
      *            the name of a module.
@@ -329,9 +1993,24 @@ public class ACPCompiler {
      * @throws CompilationException
      *             if the module is not available.
      */
-    private File ensureModule(String moduleName) throws CompilationException {
-	File componentPath = new File(modulesPath, moduleName.replace('.', '/'));
-	if (!(componentPath.exists() && componentPath.isDirectory())) {
+    private Path ensureModule(String moduleName) throws CompilationException {
+	ModuleRepositoryIndex index = repositoryIndex;
+	if (index != null) {
+	    ModuleRepositoryIndex.Entry indexEntry = index.lookup(moduleName);
+	    if (indexEntry != null) {
+		Path moduleDirectory = modulesRoot.resolve(indexEntry.getDirectory());
+		if (indexEntry.isValidFor(moduleDirectory)) {
+		    indexEntries.put(moduleName, indexEntry);
+		    return moduleDirectory;
+		}
+	    }
+
+	    // The module has been added or changed after the index was built
+	    indexEntries.remove(moduleName);
+	}
+
+	Path componentPath = modulesRoot.resolve(moduleName.replace('.', '/'));
+	if (!Files.isDirectory(componentPath)) {
 	    throw new CompilationException("Unavailable module " + moduleName);
 	}
 
@@ -343,12 +2022,152 @@ public class ACPCompiler {
      * 
      * @param components
      *            the list of investigated components.
+     * @param reporter
+     *            the reporter of found problems.
      */
-    private void checkComponentNames(List<Component> components) {
+    private void checkComponentNames(List<Component> components, ProblemReporter reporter) {
 	Set<String> names = new HashSet<String>();
 	for (Component component : components) {
 	    if (!names.add(component.getName())) {
-		throw new CompilationException("Duplicated component name: " + component.getName());
+		reporter.reportComponentProblem(component, Problem.Kind.COMPONENT_NAME, "Duplicated component name: "
+			+ component.getName());
+	    }
+	}
+    }
+
+    /**
+     * Checks whether each component has a valid component type and whether it
+     * is properly configured with respect to its component type. Large sets
+     * of components are split into contiguous chunks that are checked in
+     * parallel. Found problems are reported in the order of components
+     * regardless of the number of threads.
+     * 
+     * @param components
+     *            the list of investigated components.
+     * @param modules
+     *            the map from names to descriptions of available modules.
+     * @param platform
+     *            the target hardware and compilation platform (null, if the
+     *            configuration of components should not be checked).
+     * @param reporter
+     *            the reporter of found problems.
+     */
+    private void checkComponents(List<Component> components, Map<String, Module> modules, Platform platform,
+	    ProblemReporter reporter) {
+	for (ComponentProblem problem : findComponentProblems(components, modules, platform)) {
+	    reporter.reportComponentProblem(problem);
+	}
+    }
+
+    /**
+     * Finds problems of components with respect to their component types.
+     * Large sets of components are split into contiguous chunks that are
+     * checked in parallel.
+     * 
+     * @param components
+     *            the list of investigated components.
+     * @param modules
+     *            the map from names to descriptions of available modules.
+     * @param platform
+     *            the target hardware and compilation platform (null, if the
+     *            configuration of components should not be checked).
+     * @return the list of found problems in the order of components.
+     */
+    private List<ComponentProblem> findComponentProblems(List<Component> components,
+	    final Map<String, Module> modules, final Platform platform) {
+	int threads = Math.min(validationThreads, components.size() / COMPONENTS_PER_VALIDATION_THREAD);
+	List<ComponentProblem> problems;
+	if (threads <= 1) {
+	    problems = checkComponentChunk(components, modules, platform);
+	} else {
+	    problems = new ArrayList<ComponentProblem>();
+	    ExecutorService executor = createExecutor(threads, "acp-validator");
+	    try {
+		// Check chunks of components
+		int chunkSize = (components.size() + threads - 1) / threads;
+		List<Future<List<ComponentProblem>>> checks = new ArrayList<Future<List<ComponentProblem>>>();
+		for (int from = 0; from < components.size(); from += chunkSize) {
+		    final List<Component> chunk = components.subList(from,
+			    Math.min(from + chunkSize, components.size()));
+		    checks.add(executor.submit(new Callable<List<ComponentProblem>>() {
+			@Override
+			public List<ComponentProblem> call() {
+			    return checkComponentChunk(chunk, modules, platform);
+			}
+		    }));
+		}
+
+		// Collect problems in the order of chunks
+		for (Future<List<ComponentProblem>> check : checks) {
+		    try {
+			problems.addAll(check.get());
+		    } catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+			    throw (RuntimeException) e.getCause();
+			}
+			throw new CompilationException("Validation of components failed.", e.getCause());
+		    } catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CompilationException("Validation of components has been interrupted.", e);
+		    }
+		}
+	    } finally {
+		executor.shutdownNow();
+	    }
+	}
+
+	return problems;
+    }
+
+    /**
+     * Checks a chunk of components. The check does not modify any shared
+     * state, hence chunks can be checked concurrently.
+     * 
+     * @param components
+     *            the list of investigated components.
+     * @param modules
+     *            the map from names to descriptions of available modules.
+     * @param platform
+     *            the target hardware and compilation platform (null, if the
+     *            configuration of components should not be checked).
+     * @return the list of found problems in the order of components.
+     */
+    private static List<ComponentProblem> checkComponentChunk(List<Component> components,
+	    Map<String, Module> modules, Platform platform) {
+	List<ComponentProblem> problems = new ArrayList<ComponentProblem>();
+	for (Component component : components) {
+	    Module componentTypeModule = modules.get(component.getType());
+	    if ((componentTypeModule == null) || (!(componentTypeModule instanceof ComponentType))) {
+		problems.add(new ComponentProblem(component, Problem.Kind.COMPONENT_TYPE, "Invalid component type ("
+			+ component.getType() + ") of component " + component.getName() + "."));
+		continue;
+	    }
+
+	    if (platform != null) {
+		checkComponentConfiguration(component, (ComponentType) componentTypeModule, platform, problems);
+	    }
+	}
+
+	return problems;
+    }
+
+    /**
+     * Checks whether all program imports are library modules.
+     * 
+     * @param libraryImports
+     *            the names of imported libraries.
+     * @param modules
+     *            the map from names to descriptions of available modules.
+     * @param reporter
+     *            the reporter of found problems.
+     */
+    private void checkLibraryImports(List<String> libraryImports, Map<String, Module> modules,
+	    ProblemReporter reporter) {
+	for (String libraryImport : libraryImports) {
+	    Module libraryModule = modules.get(libraryImport);
+	    if ((libraryModule == null) || (!(libraryModule instanceof Library))) {
+		reporter.reportImportProblem(libraryImport, "Library " + libraryImport
+			+ " imported by program is not a library module.");
 	    }
 	}
     }
@@ -363,18 +2182,24 @@ public class ACPCompiler {
      *            the description of component type.
      * @param platform
      *            the target hardware and compilation platform.
+     * @param problems
+     *            the list where found problems are added.
      */
-    private void checkComponentConfiguration(Component component, ComponentType componentType, Platform platform) {
+    private static void checkComponentConfiguration(Component component, ComponentType componentType,
+	    Platform platform, List<ComponentProblem> problems) {
 	// Check whether all properties required by component type are properly
 	// set
+	Map<String, String> effectiveValues = new HashMap<String, String>();
 	for (Map.Entry<String, PropertyType> entry : componentType.getProperties().entrySet()) {
 	    String propertyName = entry.getKey();
 	    PropertyType propertyType = entry.getValue();
 	    String effectiveValue = propertyType.getEffectiveValue(component.getProperties().get(propertyName));
+	    effectiveValues.put(propertyName, effectiveValue);
 	    if (!(platform.checkValue(propertyType.getType(), effectiveValue) && propertyType
 		    .checkRestrictions(effectiveValue))) {
-		throw new CompilationException("Invalid or undefined value of property '" + propertyName
-			+ "' of component '" + component.getName() + "'.");
+		problems.add(new ComponentProblem(component, Problem.Kind.PROPERTY_VALUE, "properties", "property",
+			propertyName, "Invalid or undefined value of property '" + propertyName + "' of component '"
+				+ component.getName() + "'."));
 	    }
 	}
 
@@ -382,8 +2207,9 @@ public class ACPCompiler {
 	// given component type
 	for (String propertyName : component.getProperties().keySet()) {
 	    if (!componentType.getProperties().containsKey(propertyName)) {
-		throw new CompilationException("Property '" + propertyName + "' is not supported in component '"
-			+ component.getName() + "'.");
+		problems.add(new ComponentProblem(component, Problem.Kind.UNKNOWN_PROPERTY, "properties",
+			"property", propertyName, "Property '" + propertyName + "' is not supported in component '"
+				+ component.getName() + "'."));
 	    }
 	}
 
@@ -391,148 +2217,137 @@ public class ACPCompiler {
 	// type
 	for (String eventName : component.getEvents().keySet()) {
 	    if (!componentType.getEvents().containsKey(eventName)) {
-		throw new CompilationException("Event '" + eventName + "' is not supported in component '"
-			+ component.getName() + "'.");
+		problems.add(new ComponentProblem(component, Problem.Kind.UNKNOWN_EVENT, "events", "event",
+			eventName, "Event '" + eventName + "' is not supported in component '" + component.getName()
+				+ "'."));
 	    }
 	}
+
+	// Check whether intervals and initial delays of loopers are integer
+	// values or references to properties with integer values
+	if (componentType.getController() != null) {
+	    for (Looper looper : componentType.getLoopers()) {
+		checkLooperValue(component, looper.getInterval(), "interval", effectiveValues, problems);
+		checkLooperValue(component, looper.getInitialDelay(), "initial delay", effectiveValues, problems);
+	    }
+	}
+    }
+
+    /**
+     * Checks whether a looper parameter of a component is an integer value or
+     * a reference to a property with integer value.
+     * 
+     * @param component
+     *            the component configuration.
+     * @param valueOrProperty
+     *            the value of the looper parameter.
+     * @param parameterName
+     *            the name of the looper parameter used in the problem
+     *            description.
+     * @param effectiveValues
+     *            the effective values of properties of the component.
+     * @param problems
+     *            the list where found problems are added.
+     */
+    private static void checkLooperValue(Component component, String valueOrProperty, String parameterName,
+	    Map<String, String> effectiveValues, List<ComponentProblem> problems) {
+	try {
+	    ResolvedProject.readIntegerValueOrProperty(valueOrProperty, -1, effectiveValues);
+	} catch (CompilationException e) {
+	    problems.add(new ComponentProblem(component, Problem.Kind.LOOPER_INTERVAL, "properties", "property",
+		    valueOrProperty.trim(), "Invalid value of " + parameterName + " of looper of the component '"
+			    + component.getName() + "'. " + e.getMessage()));
+	}
     }
 
     /**
-     * Export all files required by given module.
+     * Plans export of all files required by given module.
      * 
      * @param module
      *            the module description.
      * @param settings
      *            the compilation settings.
+     * @param exporter
+     *            the export engine.
      */
-    private void exportFilesOfModule(Module module, CompilationSettings settings) {
+    private void exportFilesOfModule(Module module, CompilationSettings settings, FileExporter exporter) {
+	// Export files listed in the checked entry of the repository index
+	ModuleRepositoryIndex.Entry indexEntry = indexEntries.get(module.getName());
+	if (indexEntry != null) {
+	    exportIndexedFilesOfModule(module, indexEntry, settings, exporter);
+	    return;
+	}
+
 	// Path to files the module
 	String modulePath = module.getName().replace('.', '/');
 
 	// Export include files
-	File moduleIncludeDir = new File(module.getDirectory(), Module.INCLUDE_SUBDIR);
-	if (moduleIncludeDir.exists() && moduleIncludeDir.isDirectory()) {
-	    File exportDir = new File(settings.getOutputIncludePath(), modulePath);
-	    exportDir.mkdirs();
-	    if (!(exportDir.exists() && exportDir.isDirectory())) {
-		throw new CompilationException("Output directory for include files of module '" + module.getName()
-			+ "' cannot be created: " + exportDir.getAbsolutePath());
-	    }
-	    copyDirectory(moduleIncludeDir, exportDir);
+	Path moduleIncludeDir = module.getDirectory().resolve(Module.INCLUDE_SUBDIR);
+	if (Files.isDirectory(moduleIncludeDir)) {
+	    exporter.addDirectoryTree(moduleIncludeDir, new File(settings.getOutputIncludePath(), modulePath));
 	}
 
 	// Export source files
-	File moduleSrcDir = new File(module.getDirectory(), Module.SRC_SUBDIR);
-	if (moduleSrcDir.exists() && moduleSrcDir.isDirectory()) {
+	Path moduleSrcDir = module.getDirectory().resolve(Module.SRC_SUBDIR);
+	if (Files.isDirectory(moduleSrcDir)) {
 	    if (settings.isSourceFilesDirectoryMerging()) {
 		// Export all source files to a single directory
-		String modulePrefix = underscoreEscape(module.getName()).replace('.', '_');
-		copyDirectoryMerged(moduleSrcDir, settings.getOutputSourcePath(), modulePrefix + "_");
+		String modulePrefix = FileExporter.underscoreEscape(module.getName()).replace('.', '_');
+		exporter.addDirectoryTreeMerged(moduleSrcDir, settings.getOutputSourcePath(), modulePrefix + "_");
 	    } else {
 		// Export with directory structure
-		File exportDir = new File(settings.getOutputSourcePath(), modulePath);
-		exportDir.mkdirs();
-		if (!(exportDir.exists() && exportDir.isDirectory())) {
-		    throw new CompilationException("Output directory for source files of module '" + module.getName()
-			    + "' cannot be created: " + exportDir.getAbsolutePath());
-		}
-		copyDirectory(moduleSrcDir, exportDir);
+		exporter.addDirectoryTree(moduleSrcDir, new File(settings.getOutputSourcePath(), modulePath));
 	    }
 	}
     }
 
     /**
-     * Copies all files from source directory to destination directory.
+     * Plans export of all files of a module listed in the index entry of the
+     * module. The output is the same as the output of directory based export,
+     * but module directories are not listed.
      * 
-     * @param source
-     *            the source directory
-     * @param dest
-     *            the destination directory
+     * @param module
+     *            the module description.
+     * @param indexEntry
+     *            the index entry of the module.
+     * @param settings
+     *            the compilation settings.
+     * @param exporter
+     *            the export engine.
      */
-    private void copyDirectory(File source, File dest) {
-	// Prepare dest directory
-	dest.mkdirs();
-	if (!(dest.exists() && dest.isDirectory())) {
-	    throw new CompilationException("Directory " + dest.getAbsolutePath()
-		    + " does not exists or cannot be created.");
-	}
-
-	// Copy files and directories
-	for (File file : source.listFiles()) {
-	    if (file.isDirectory()) {
-		copyDirectory(file, new File(dest, file.getName()));
-	    }
-
-	    if (file.isFile()) {
-		copyFile(file, new File(dest, file.getName()));
+    private void exportIndexedFilesOfModule(Module module, ModuleRepositoryIndex.Entry indexEntry,
+	    CompilationSettings settings, FileExporter exporter) {
+	String modulePath = module.getName().replace('.', '/');
+	File includeExportDir = new File(settings.getOutputIncludePath(), modulePath);
+	File srcExportDir = new File(settings.getOutputSourcePath(), modulePath);
+	String modulePrefix = FileExporter.underscoreEscape(module.getName()).replace('.', '_') + "_";
+	boolean merging = settings.isSourceFilesDirectoryMerging();
+
+	// Create directories
+	for (String directory : indexEntry.getDirectories()) {
+	    String subdir = directory + "/";
+	    if (subdir.startsWith(Module.INCLUDE_SUBDIR)) {
+		exporter.addDirectory(new File(includeExportDir, subdir.substring(Module.INCLUDE_SUBDIR.length())));
+	    } else if (subdir.startsWith(Module.SRC_SUBDIR)) {
+		exporter.addDirectory(merging ? settings.getOutputSourcePath() : new File(srcExportDir, subdir
+			.substring(Module.SRC_SUBDIR.length())));
 	    }
 	}
-    }
-
-    /**
-     * Copies all files from source directory to destination directory in such a
-     * way that all files will be merged in the destination directory.
-     * 
-     * @param source
-     *            the source directory.
-     * @param dest
-     *            the destination directory.
-     * @param filePrefix
-     *            the prefix added to all files from the source directory.
-     */
-    private void copyDirectoryMerged(File source, File dest, String filePrefix) {
-	if (!source.exists()) {
-	    return;
-	}
-
-	// Prepare dest directory
-	dest.mkdirs();
-	if (!(dest.exists() && dest.isDirectory())) {
-	    throw new CompilationException("Directory " + dest.getAbsolutePath()
-		    + " does not exists or cannot be created.");
-	}
-
-	// Copy files and directories
-	for (File file : source.listFiles()) {
-	    if (file.isDirectory()) {
-		copyDirectoryMerged(file, dest, filePrefix + underscoreEscape(file.getName()) + "_");
-	    }
 
-	    if (file.isFile()) {
-		copyFile(file, new File(dest, filePrefix + underscoreEscape(file.getName())));
+	// Copy files
+	for (String file : indexEntry.getFiles()) {
+	    Path source = module.getDirectory().resolve(file);
+	    if (file.startsWith(Module.INCLUDE_SUBDIR)) {
+		exporter.addFile(source, new File(includeExportDir, file.substring(Module.INCLUDE_SUBDIR.length())));
+	    } else if (file.startsWith(Module.SRC_SUBDIR)) {
+		String relativePath = file.substring(Module.SRC_SUBDIR.length());
+		if (merging) {
+		    exporter.addFile(source, new File(settings.getOutputSourcePath(), modulePrefix
+			    + FileExporter.underscoreEscape(relativePath).replace('/', '_')));
+		} else {
+		    exporter.addFile(source, new File(srcExportDir, relativePath));
+		}
 	    }
 	}
     }
-
-    /**
-     * Copies regular file.
-     * 
-     * @param source
-     *            the source file.
-     * @param dest
-     *            the destination file.
-     */
-    private void copyFile(File source, File dest) {
-	/*
-	 * if (dest.exists()) { return; }
-	 */
-
-	try {
-	    Files.copy(source.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
-	} catch (IOException e) {
-	    throw new CompilationException("File " + source.getAbsolutePath() + " cannot be copied to "
-		    + dest.getAbsolutePath() + ".");
-	}
-    }
-
-    /**
-     * Escapes string in order to use underscore as a path separator.
-     * 
-     * @param s
-     *            the string to be escaped.
-     * @return the escaped string.
-     */
-    private String underscoreEscape(String s) {
-	return s.replace("_", "__");
-    }
 }
@@ -1,6 +1,8 @@
 package net.acprog.builder.compilation;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -54,9 +56,22 @@ public abstract class ACPContentGenerator {
      */
     protected abstract void generate(CompilationContext compilationContext, Map<String, String> output);
 
+    /**
+     * Returns whether outputs of the content generator depend on values of
+     * component properties. Outputs that do not depend on them are generated
+     * only once for all variants of a project with the same target platform.
+     * 
+     * @return true, if outputs depend on values of component properties,
+     *         false otherwise.
+     */
+    protected boolean dependsOnPropertyValues() {
+	return true;
+    }
+
     /**
      * Generates an output file from a resource template applying given
-     * replacements.
+     * replacements. The output file is written through the output sink of the
+     * compilation context only if its content has changed.
      * 
      * @param templateName
      *            the name of template resource.
@@ -64,9 +79,12 @@ public abstract class ACPContentGenerator {
      *            the map with replacements.
      * @param outputFile
      *            the output file.
+     * @param compilationContext
+     *            the compilation context where the generated output is
+     *            recorded.
      */
     protected void generateOutputFromResourceTemplate(String templateName, Map<String, String> replacements,
-	    File outputFile) {
+	    File outputFile, CompilationContext compilationContext) {
 	String templateResource = ACPCompiler.TEMPLATES_RESOURCE_DIR + templateName;
 	String fileContent = FileUtils.loadTemplateResource(templateResource, replacements);
 
@@ -74,14 +92,19 @@ public abstract class ACPContentGenerator {
 	    throw new CompilationException("Unavailable resource file: " + templateResource);
 	}
 
-	if (!FileUtils.saveToFile(outputFile, fileContent)) {
-	    throw new CompilationException("File " + outputFile.getAbsolutePath() + " cannot be created.");
+	try {
+	    boolean written = compilationContext.getOutputSink().writeFile(outputFile,
+		    fileContent.getBytes(Charset.defaultCharset()));
+	    compilationContext.getResult().addGeneratedOutput(outputFile, written);
+	} catch (IOException e) {
+	    throw new CompilationException("File " + outputFile.getAbsolutePath() + " cannot be created.", e);
 	}
     }
 
     /**
      * Executes and manages the process of generating content by all given
-     * content generators.
+     * content generators. Dependencies of content generators that are not in
+     * the list only constrain the order of execution, they are not executed.
      * 
      * @param contentGenerators
      *            the list of content generators.
@@ -97,6 +120,7 @@ public abstract class ACPContentGenerator {
 	for (ACPContentGenerator generator : contentGenerators) {
 	    orderDependencies(generator, orderedGenerators, lockedGenerators);
 	}
+	orderedGenerators.retainAll(contentGenerators);
 
 	// Create additional data storage objects
 	Map<ACPContentGenerator, Map<String, String>> outputs = new HashMap<ACPContentGenerator, Map<String, String>>();
@@ -105,16 +129,40 @@ public abstract class ACPContentGenerator {
 	}
 
 	// Prepare phase
-	for (ACPContentGenerator generator : orderedGenerators) {
+	CompilationMonitor monitor = compilationContext.getMonitor();
+	int steps = orderedGenerators.size();
+	for (int i = 0; i < steps; i++) {
+	    ACPContentGenerator generator = orderedGenerators.get(i);
+	    String name = generator.getClass().getSimpleName();
+	    long startTime = monitor.stepStarted(CompilationEvent.Phase.CONTENT_PREPARATION, name, i + 1, steps);
 	    generator.prepare(compilationContext, outputs.get(generator));
+	    monitor.stepCompleted(CompilationEvent.Phase.CONTENT_PREPARATION, name, i + 1, steps, 0, startTime);
 	}
 
 	// Generate phase
-	for (ACPContentGenerator generator : orderedGenerators) {
+	for (int i = 0; i < steps; i++) {
+	    ACPContentGenerator generator = orderedGenerators.get(i);
+	    String name = generator.getClass().getSimpleName();
+	    long startTime = monitor.stepStarted(CompilationEvent.Phase.CONTENT_GENERATION, name, i + 1, steps);
+	    int generatedOutputs = countGeneratedOutputs(compilationContext);
 	    generator.generate(compilationContext, outputs.get(generator));
+	    monitor.stepCompleted(CompilationEvent.Phase.CONTENT_GENERATION, name, i + 1, steps,
+		    countGeneratedOutputs(compilationContext) - generatedOutputs, startTime);
 	}
     }
 
+    /**
+     * Returns the number of outputs generated so far in a compilation.
+     * 
+     * @param compilationContext
+     *            the compilation context.
+     * @return the number of generated outputs.
+     */
+    private static int countGeneratedOutputs(CompilationContext compilationContext) {
+	CompilationResult result = compilationContext.getResult();
+	return result.getTouchedOutputs().size() + result.getUnchangedOutputs().size();
+    }
+
     /**
      * Recursively computes an execution order execution of generators that
      * satisfies specified dependencies.
@@ -20,6 +20,11 @@ public class ACPCoreHeaderGenerator extends ACPContentGenerator {
     @Override
     protected void generate(CompilationContext compilationContext, Map<String, String> output) {
 	generateOutputFromResourceTemplate("acp_core.h", output, new File(compilationContext.getSettings()
-		.getOutputIncludePath(), ACP_HEADER_FILENAME));
+		.getOutputIncludePath(), ACP_HEADER_FILENAME), compilationContext);
+    }
+
+    @Override
+    protected boolean dependsOnPropertyValues() {
+	return false;
     }
 }
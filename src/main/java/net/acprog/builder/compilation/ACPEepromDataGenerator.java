@@ -22,19 +22,24 @@ public class ACPEepromDataGenerator extends ACPContentGenerator {
 
     @Override
     protected void prepare(CompilationContext compilationContext, Map<String, String> output) {
-	output.put("privateNamespace", (String) compilationContext.getData().get("PrivateNamespace"));
+	output.put("privateNamespace", compilationContext.getResolvedProject().getPrivateNamespace());
 	output.put("acpEepromHeaderFile", EEPROMVARS_HEADER_FILENAME);
     }
 
     @Override
     protected void generate(CompilationContext compilationContext, Map<String, String> output) {
-	if (((Number) compilationContext.getData().get("EepromUsage")).intValue() == 0) {
+	if (compilationContext.getResolvedProject().getEepromUsage() == 0) {
 	    return;
 	}
 
 	generateOutputFromResourceTemplate("acp_eeprom_vars.h", output, new File(compilationContext.getSettings()
-		.getOutputIncludePath(), EEPROMVARS_HEADER_FILENAME));
+		.getOutputIncludePath(), EEPROMVARS_HEADER_FILENAME), compilationContext);
 	generateOutputFromResourceTemplate("acp_eeprom_vars.cpp", output, new File(compilationContext.getSettings()
-		.getOutputSourcePath(), EEPROMVARS_SOURCE_FILENAME));
+		.getOutputSourcePath(), EEPROMVARS_SOURCE_FILENAME), compilationContext);
+    }
+
+    @Override
+    protected boolean dependsOnPropertyValues() {
+	return false;
     }
 }
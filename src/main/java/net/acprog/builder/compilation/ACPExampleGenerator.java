@@ -3,9 +3,10 @@ package net.acprog.builder.compilation;
 import java.util.*;
 
 import net.acprog.builder.compilation.ACPCompiler.CompilationContext;
+import net.acprog.builder.compilation.ResolvedProject.ComponentRecord;
+import net.acprog.builder.compilation.ResolvedProject.EepromItemRecord;
 import net.acprog.builder.components.*;
-import net.acprog.builder.modules.*;
-import net.acprog.builder.project.*;
+import net.acprog.builder.modules.Module;
 import net.acprog.builder.utils.FileUtils;
 
 /**
@@ -22,17 +23,17 @@ public class ACPExampleGenerator extends ACPContentGenerator {
     /**
      * Generate callback event stubs for program events.
      * 
-     * @param compilationContext
-     *            the compilation context.
+     * @param project
+     *            the resolved project.
      * @param callbackCodeLines
      *            the list with code lines.
      */
-    private void generateProgramCallbacks(CompilationContext compilationContext, List<String> callbackCodeLines) {
-	Project project = compilationContext.getProject();
+    private void generateProgramCallbacks(ResolvedProject project, List<String> callbackCodeLines) {
+	Map<String, String> programEvents = project.getProgramEvents();
 
 	// Add OnStart event call
-	if (project.getProgramEvents().containsKey("OnStart")) {
-	    String handler = project.getProgramEvents().get("OnStart");
+	if (programEvents.containsKey("OnStart")) {
+	    String handler = programEvents.get("OnStart");
 	    callbackCodeLines.add(SEPARATOR_LINE);
 	    callbackCodeLines.add("// Event callback for Program.OnStart");
 	    callbackCodeLines.add("void " + handler + "() {");
@@ -42,8 +43,8 @@ public class ACPExampleGenerator extends ACPContentGenerator {
 	}
 
 	// Add OnLoop event call
-	if (project.getProgramEvents().containsKey("OnLoop")) {
-	    String handler = project.getProgramEvents().get("OnLoop");
+	if (programEvents.containsKey("OnLoop")) {
+	    String handler = programEvents.get("OnLoop");
 	    callbackCodeLines.add(SEPARATOR_LINE);
 	    callbackCodeLines.add("// Event callback for Program.OnLoop");
 	    callbackCodeLines.add("void " + handler + "() {");
@@ -56,21 +57,18 @@ public class ACPExampleGenerator extends ACPContentGenerator {
     /**
      * Generate callback event stubs for events defined by controllers.
      * 
-     * @param compilationContext
-     *            the compilation context.
+     * @param project
+     *            the resolved project.
      * @param callbackCodeLines
      *            the list with code lines.
      */
-    private void generateControllersCallbacks(CompilationContext compilationContext, List<String> callbackCodeLines) {
-	Map<String, Module> projectModules = compilationContext.getProjectModules();
-
-	for (Component component : compilationContext.getProject().getComponents()) {
-	    ComponentType componentType = (ComponentType) projectModules.get(component.getType());
-	    for (Map.Entry<String, Event> eventEntry : componentType.getEvents().entrySet()) {
+    private void generateControllersCallbacks(ResolvedProject project, List<String> callbackCodeLines) {
+	for (ComponentRecord component : project.getComponents()) {
+	    for (Map.Entry<String, Event> eventEntry : component.getComponentType().getEvents().entrySet()) {
 		String nameOfEvent = eventEntry.getKey();
 		Event eventDesc = eventEntry.getValue();
 		if (eventDesc.getBinding() != null) {
-		    String eventHandlerName = component.getEvents().get(nameOfEvent);
+		    String eventHandlerName = component.getEventHandlers().get(nameOfEvent);
 		    if (eventHandlerName != null) {
 			callbackCodeLines.add(SEPARATOR_LINE);
 			callbackCodeLines.add("// Event callback for " + component.getName() + "." + nameOfEvent);
@@ -87,20 +85,17 @@ public class ACPExampleGenerator extends ACPContentGenerator {
     /**
      * Generate summary of available objects.
      * 
-     * @param compilationContext
-     *            the compilation context.
+     * @param project
+     *            the resolved project.
      * @param publicObjectsSummary
      *            the list with code lines.
      */
-    private void generateComponentViewsSummary(CompilationContext compilationContext,
-	    List<String> publicObjectsSummary) {
+    private void generateComponentViewsSummary(ResolvedProject project, List<String> publicObjectsSummary) {
 	// Create list of available views
-	Map<String, Module> projectModules = compilationContext.getProjectModules();
-	for (Component component : compilationContext.getProject().getComponents()) {
-	    ComponentType componentType = (ComponentType) projectModules.get(component.getType());
-	    Instance viewDescription = componentType.getView();
-	    if (viewDescription != null) {
-		publicObjectsSummary.add("// " + component.getName() + " (" + component.getType() + ")");
+	for (ComponentRecord component : project.getComponents()) {
+	    if (component.hasView()) {
+		publicObjectsSummary.add("// " + component.getName() + " (" + component.getComponentType().getName()
+			+ ")");
 		String desc = component.getDescription();
 		if (desc != null) {
 		    desc = desc.trim();
@@ -116,7 +111,7 @@ public class ACPExampleGenerator extends ACPContentGenerator {
 	}
 
 	// Create list of eeprom variables
-	for (EepromItem item : compilationContext.getProject().getEepromItems()) {
+	for (EepromItemRecord item : project.getEepromItems()) {
 	    if (item.isArray()) {
 		publicObjectsSummary.add("// " + item.getName() + " (eeprom array of type " + item.getType()
 			+ " with length " + item.getLengthOfArray() + ")");
@@ -140,18 +135,20 @@ public class ACPExampleGenerator extends ACPContentGenerator {
 
     @Override
     protected void prepare(CompilationContext compilationContext, Map<String, String> output) {
+	ResolvedProject project = compilationContext.getResolvedProject();
+
 	// Generate includes
 	List<String> includes = new ArrayList<String>();
 
 	// Add required arduino libraries
-	for (Module module : compilationContext.getProjectModules().values()) {
+	for (Module module : project.getModules()) {
 	    for (String arduinoLibrary : module.getRequiredArduinoLibIncludes()) {
 		includes.add("#include <" + arduinoLibrary + ">");
 	    }
 	}
 
 	// Include EEPROM.h, if eeprom memory is used
-	if ((Integer) compilationContext.getData().get("EepromUsage") > 0) {
+	if (project.getEepromUsage() > 0) {
 	    includes.add("#include <EEPROM.h>");
 	}
 
@@ -163,12 +160,12 @@ public class ACPExampleGenerator extends ACPContentGenerator {
 
 	// Generate event callbacks
 	List<String> callbackCodeLines = new ArrayList<String>();
-	generateProgramCallbacks(compilationContext, callbackCodeLines);
-	generateControllersCallbacks(compilationContext, callbackCodeLines);
+	generateProgramCallbacks(project, callbackCodeLines);
+	generateControllersCallbacks(project, callbackCodeLines);
 
 	// Generate summary of available public objects
 	List<String> publicObjectsSummary = new ArrayList<String>();
-	generateComponentViewsSummary(compilationContext, publicObjectsSummary);
+	generateComponentViewsSummary(project, publicObjectsSummary);
 	if (!publicObjectsSummary.isEmpty()) {
 	    publicObjectsSummary.add(0, SEPARATOR_LINE);
 	    publicObjectsSummary.add(1, "// Summary of available objects:");
@@ -183,6 +180,12 @@ public class ACPExampleGenerator extends ACPContentGenerator {
 
     @Override
     protected void generate(CompilationContext compilationContext, Map<String, String> output) {
-	generateOutputFromResourceTemplate("example.ino", output, compilationContext.getSettings().getExampleFile());
+	generateOutputFromResourceTemplate("example.ino", output, compilationContext.getSettings().getExampleFile(),
+		compilationContext);
+    }
+
+    @Override
+    protected boolean dependsOnPropertyValues() {
+	return false;
     }
 }
@@ -18,7 +18,12 @@ public class ACPLibraryPropGenerator extends ACPContentGenerator {
     @Override
     protected void generate(CompilationContext compilationContext, Map<String, String> output) {
 	generateOutputFromResourceTemplate("library.properties", output, new File(compilationContext.getSettings()
-		.getLibraryDirectory(), "library.properties"));
+		.getLibraryDirectory(), "library.properties"), compilationContext);
 
     }
+
+    @Override
+    protected boolean dependsOnPropertyValues() {
+	return false;
+    }
 }
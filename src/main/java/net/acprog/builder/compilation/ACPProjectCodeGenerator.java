@@ -5,13 +5,12 @@ import java.util.*;
 
 import net.acprog.builder.compilation.ACPCompiler.CompilationContext;
 import net.acprog.builder.compilation.CompilationSettings.LooperStrategy;
+import net.acprog.builder.compilation.ResolvedProject.ComponentRecord;
+import net.acprog.builder.compilation.ResolvedProject.EepromItemRecord;
+import net.acprog.builder.compilation.ResolvedProject.LooperRecord;
+import net.acprog.builder.compilation.ResolvedProject.MethodWrapperRecord;
 import net.acprog.builder.components.*;
 import net.acprog.builder.modules.ComponentType;
-import net.acprog.builder.modules.Module;
-import net.acprog.builder.platform.Platform;
-import net.acprog.builder.project.Component;
-import net.acprog.builder.project.EepromItem;
-import net.acprog.builder.project.Project;
 import net.acprog.builder.utils.FileUtils;
 
 /**
@@ -38,39 +37,14 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
     // Data containers
     // ---------------------------------------------------------------------------
 
-    /**
-     * Details about a looper to be used in the project.
-     */
-    private static class LooperRecord {
-	/**
-	 * Name of component for which this looper works.
-	 */
-	String fullComponentName;
-
-	/**
-	 * Name of the looper method.
-	 */
-	String looperMethod;
-
-	/**
-	 * Looper interval.
-	 */
-	int interval;
-
-	/**
-	 * Initial delay of looper
-	 */
-	int initialDelay;
-    }
-
     /**
      * Context in which the generation process is executed.
      */
     private static class Context {
 	/**
-	 * Compilation context
+	 * Resolved project.
 	 */
-	final CompilationContext compilationContext;
+	final ResolvedProject project;
 
 	/**
 	 * List of user defined event handlers referenced from the generated
@@ -104,11 +78,6 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
 	 */
 	final List<String> loopCode = new ArrayList<String>();
 
-	/**
-	 * List of loopers used in the project.
-	 */
-	final List<LooperRecord> loopers = new ArrayList<LooperRecord>();
-
 	/**
 	 * Lines of code defining method wrappers
 	 */
@@ -136,8 +105,8 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
 	 *            the compilation context.
 	 */
 	Context(CompilationContext compilationContext) {
-	    this.compilationContext = compilationContext;
-	    privateNamespace = (String) compilationContext.getData().get("PrivateNamespace");
+	    this.project = compilationContext.getResolvedProject();
+	    privateNamespace = project.getPrivateNamespace();
 	}
     }
 
@@ -150,7 +119,7 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
      * @return the generated source code
      */
     private String generateArrayBasedLoopersCode(Context context) {
-	final List<LooperRecord> looperRecords = context.loopers;
+	final List<LooperRecord> looperRecords = context.project.getLoopers();
 	if (looperRecords.isEmpty()) {
 	    return "";
 	}
@@ -164,11 +133,12 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
 
 	    LooperRecord lr = looperRecords.get(i);
 	    looperHandlersCode.add("unsigned long " + LOOPER_HANDLER_PREFIX + i + "() {");
-	    if (lr.interval >= 0) {
-		looperHandlersCode.add(BASIC_INDENT + lr.fullComponentName + "." + lr.looperMethod + "();");
-		looperHandlersCode.add(BASIC_INDENT + "return " + lr.interval + ";");
+	    String looperInvocation = lr.getFullComponentName() + "." + lr.getLooper().getLooperMethod() + "()";
+	    if (lr.getInterval() >= 0) {
+		looperHandlersCode.add(BASIC_INDENT + looperInvocation + ";");
+		looperHandlersCode.add(BASIC_INDENT + "return " + lr.getInterval() + ";");
 	    } else {
-		looperHandlersCode.add(BASIC_INDENT + "return " + lr.fullComponentName + "." + lr.looperMethod + "();");
+		looperHandlersCode.add(BASIC_INDENT + "return " + looperInvocation + ";");
 	    }
 	    looperHandlersCode.add("}");
 	}
@@ -176,7 +146,8 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
 	// Loopers - initialization of array
 	List<String> loopersInit = new ArrayList<String>();
 	for (int i = 0; i < looperRecords.size(); i++) {
-	    String line = "{" + looperRecords.get(i).initialDelay + ", ENABLED, " + LOOPER_HANDLER_PREFIX + i + "}";
+	    String line = "{" + looperRecords.get(i).getInitialDelay() + ", ENABLED, " + LOOPER_HANDLER_PREFIX + i
+		    + "}";
 	    if (i != looperRecords.size() - 1) {
 		line = line + ",";
 	    }
@@ -192,7 +163,8 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
 	Arrays.sort(idxOrder, new Comparator<Integer>() {
 	    @Override
 	    public int compare(Integer idx1, Integer idx2) {
-		return Integer.compare(looperRecords.get(idx1).initialDelay, looperRecords.get(idx2).initialDelay);
+		return Integer.compare(looperRecords.get(idx1).getInitialDelay(), looperRecords.get(idx2)
+			.getInitialDelay());
 	    }
 	});
 
@@ -235,19 +207,19 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
      *            the context.
      */
     private void generateProgramEvents(Context context) {
-	Project project = context.compilationContext.getProject();
+	Map<String, String> programEvents = context.project.getProgramEvents();
 
 	// Add OnStart event call
-	if (project.getProgramEvents().containsKey("OnStart")) {
-	    String handler = project.getProgramEvents().get("OnStart");
+	if (programEvents.containsKey("OnStart")) {
+	    String handler = programEvents.get("OnStart");
 	    context.setupCode.add("// Call of the OnStart event");
 	    context.setupCode.add(handler + "();");
 	    context.eventHandlers.add("void " + handler + "()");
 	}
 
 	// Add OnLoop event call
-	if (project.getProgramEvents().containsKey("OnLoop")) {
-	    String handler = project.getProgramEvents().get("OnLoop");
+	if (programEvents.containsKey("OnLoop")) {
+	    String handler = programEvents.get("OnLoop");
 	    context.loopCode.add("// Call of the OnLoop event");
 	    context.loopCode.add(handler + "();");
 	    context.eventHandlers.add("void " + handler + "()");
@@ -262,85 +234,39 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
      *            the context.
      */
     private void generateComponentObjects(Context context) {
-	Project project = context.compilationContext.getProject();
-	Map<String, Module> projectModules = context.compilationContext.getProjectModules();
-	Platform platform = context.compilationContext.getPlatform();
-
-	int controllerIdGenerator = 0;
-	int methodWrapperIdGenerator = 0;
-
 	// Generate code for user defined components
-	for (Component component : project.getComponents()) {
-	    ComponentType componentType = (ComponentType) projectModules.get(component.getType());
+	for (ComponentRecord component : context.project.getComponents()) {
+	    ComponentType componentType = component.getComponentType();
 	    Instance viewDescription = componentType.getView();
 	    Instance controllerDescription = componentType.getController();
-	    String componentIncludePrefix = componentType.getName().replace('.', '/') + "/";
 
 	    // Generate controller (if necessary)
 	    if (controllerDescription != null) {
 		for (String include : controllerDescription.getIncludes()) {
-		    context.includes.add("#include <" + componentIncludePrefix + include + ">");
+		    context.includes.add("#include <" + component.getIncludePrefix() + include + ">");
 		}
 
-		String controllerName = "controller_" + controllerIdGenerator;
-		String fullControllerName = context.privateNamespace + "::" + controllerName;
-		controllerIdGenerator++;
-
-		// Set autogenerated controller name
-		component.getAutogeneratedProperties().put("controller", fullControllerName);
-
+		String fullControllerName = component.getFullControllerName();
 		context.setupCode.add("// Controller for " + component.getName());
 		boolean controllerBindingGenerated = false;
 
 		// Set looper identifiers of controller
-		for (Looper looper : componentType.getLoopers()) {
+		for (LooperRecord looperRecord : component.getLoopers()) {
 		    // Bind looper id (if necessary)
-		    Binding idBinding = looper.getIdBinding();
+		    Binding idBinding = looperRecord.getLooper().getIdBinding();
 		    if (idBinding != null) {
 			context.setupCode.add(idBinding.generateBindingCommand(fullControllerName,
-				Integer.toString(context.loopers.size())));
+				Integer.toString(looperRecord.getId())));
 			controllerBindingGenerated = true;
 		    }
-
-		    LooperRecord looperRecord = new LooperRecord();
-		    looperRecord.fullComponentName = fullControllerName;
-		    looperRecord.looperMethod = looper.getLooperMethod();
-
-		    try {
-			looperRecord.interval = readIntegerValueOrProperty(looper.getInterval(), component,
-				componentType, -1);
-		    } catch (Exception e) {
-			throw new CompilationException(
-				"Invalid value of interval of looper of the component '" + component.getName() + "'.");
-		    }
-
-		    try {
-			looperRecord.initialDelay = Math.max(
-				readIntegerValueOrProperty(looper.getInitialDelay(), component, componentType, -1), 0);
-		    } catch (Exception e) {
-			throw new CompilationException("Invalid value of initial delay of looper of the component '"
-				+ component.getName() + "'.");
-		    }
-
-		    context.loopers.add(looperRecord);
 		}
 
 		// Set controller properties using bindings
 		for (Map.Entry<String, PropertyType> propEntry : componentType.getProperties().entrySet()) {
-		    String propName = propEntry.getKey();
-		    PropertyType propType = propEntry.getValue();
-		    Binding binding = propType.getBinding();
+		    Binding binding = propEntry.getValue().getBinding();
 		    if (binding != null) {
-			String effectivePropertyValue = propType
-				.getEffectiveValue(component.getProperties().get(propName));
-			String escapedPropertyValue = platform.escapeValue(propEntry.getValue().getType(),
-				effectivePropertyValue);
-			if (escapedPropertyValue == null) {
-			    throw new CompilationException("Invalid or undefined value of property "
-				    + propEntry.getKey() + " of component " + component.getName() + ".");
-			}
-
-			context.setupCode.add(binding.generateBindingCommand(fullControllerName, escapedPropertyValue));
+			context.setupCode.add(binding.generateBindingCommand(fullControllerName, component
+				.getEscapedValues().get(propEntry.getKey())));
 			controllerBindingGenerated = true;
 		    }
 		}
@@ -351,7 +277,7 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
 		    Event eventDesc = eventEntry.getValue();
 		    Binding binding = eventDesc.getBinding();
 		    if (binding != null) {
-			String eventHandlerName = component.getEvents().get(nameOfEvent);
+			String eventHandlerName = component.getEventHandlers().get(nameOfEvent);
 			if (eventHandlerName != null) {
 			    context.setupCode.add(binding.generateBindingCommand(fullControllerName, eventHandlerName));
 			    // Export extern for event handler
@@ -364,9 +290,9 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
 		}
 
 		// Generate and bind method wrappers for controller
-		for (MethodWrapper methodWrapper : componentType.getMethodWrappers()) {
-		    String wrappingFunction = "method_wrapper_" + methodWrapperIdGenerator;
-		    methodWrapperIdGenerator++;
+		for (MethodWrapperRecord methodWrapperRecord : component.getMethodWrappers()) {
+		    MethodWrapper methodWrapper = methodWrapperRecord.getMethodWrapper();
+		    String wrappingFunction = methodWrapperRecord.getWrappingFunction();
 
 		    // Generate code of wrapping function
 		    context.methodWrappersCode
@@ -385,13 +311,6 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
 		    context.methodWrappersCode.add("}");
 		    context.methodWrappersCode.add("");
 
-		    // Set autogenerated-property
-		    String autogeneratedPropertyName = methodWrapper.getAutogeneratedPropertyName();
-		    if ((autogeneratedPropertyName != null) && (!autogeneratedPropertyName.trim().isEmpty())) {
-			component.getAutogeneratedProperties().put(autogeneratedPropertyName,
-				context.privateNamespace + "::" + wrappingFunction);
-		    }
-
 		    // Generate binding
 		    if (methodWrapper.getBinding() != null) {
 			context.setupCode.add(methodWrapper.getBinding().generateBindingCommand(fullControllerName,
@@ -409,18 +328,14 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
 		}
 
 		// Generate init call for controller
-		if (controllerDescription.getInitMethod() != null) {
-		    String invocationCode = controllerDescription.getInitMethod()
-			    .generateInvocationCode(fullControllerName, component, platform);
-		    context.setupCode.add(invocationCode);
+		if (component.getControllerInitCode() != null) {
+		    context.setupCode.add(component.getControllerInitCode());
 		    controllerBindingGenerated = true;
 		}
 
 		// Generate loop call for controller
-		if (controllerDescription.getLoopMethod() != null) {
-		    String invocationCode = controllerDescription.getLoopMethod()
-			    .generateInvocationCode(fullControllerName, component, platform);
-		    context.loopCode.add(invocationCode);
+		if (component.getControllerLoopCode() != null) {
+		    context.loopCode.add(component.getControllerLoopCode());
 		    controllerBindingGenerated = true;
 		}
 
@@ -432,20 +347,18 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
 
 		// Generate definition of controller
 		context.privateObjects.add("// Controller for " + component.getName());
-		context.privateObjects
-			.add(controllerDescription.generateClassType(component, platform) + " " + controllerName
-				+ controllerDescription.generateConstructorArguments(component, platform) + ";");
+		context.privateObjects.add(component.getControllerClassType() + " " + component.getControllerName()
+			+ component.getControllerConstructorArguments() + ";");
 	    }
 
 	    // Generate view (if necessary)
 	    if (viewDescription != null) {
 		for (String include : viewDescription.getIncludes()) {
-		    context.includes.add("#include <" + componentIncludePrefix + include + ">");
+		    context.includes.add("#include <" + component.getIncludePrefix() + include + ">");
 		}
 
-		context.publicObjects
-			.add(viewDescription.generateClassType(component, platform) + " " + component.getName()
-				+ viewDescription.generateConstructorArguments(component, platform) + ";");
+		context.publicObjects.add(component.getViewClassType() + " " + component.getName()
+			+ component.getViewConstructorArguments() + ";");
 	    }
 	}
     }
@@ -458,98 +371,27 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
      *            the context.
      */
     private void generateEepromItems(Context context) {
-	Project project = context.compilationContext.getProject();
-	Platform platform = context.compilationContext.getPlatform();
-
-	// Compute offset for each item
-	Map<EepromItem, Integer> itemOffsets = new HashMap<EepromItem, Integer>();
-	// We start counting offset from 4, since 4 bytes are reserved for
-	// EEPROM layout version
-	int offset = 4;
-	for (EepromItem item : project.getEepromItems()) {
-	    int sizeof = platform.getSizeOf(item.getType());
-	    if (sizeof == 0) {
-		throw new CompilationException("Type '" + item.getName() + "' of EEPROM item '" + item.getName()
-			+ "' is not supported as a type of an EEPROM item.");
-	    }
-
-	    itemOffsets.put(item, offset);
-
-	    if (item.isArray()) {
-		offset += sizeof * item.getLengthOfArray();
-	    } else {
-		offset += sizeof;
-	    }
-	}
-
-	if (!project.getEepromItems().isEmpty()) {
+	List<EepromItemRecord> eepromItems = context.project.getEepromItems();
+	if (!eepromItems.isEmpty()) {
 	    context.includes.add("#include <" + ACPEepromDataGenerator.EEPROMVARS_HEADER_FILENAME + ">");
-	} else {
-	    offset = 0;
 	}
 
-	// Store EEPROM memory usage
-	context.compilationContext.getData().put("EepromUsage", offset);
-
 	// Generate declarations of EEPROM items
-	List<String> externsForHeaderFile = new ArrayList<String>();
-	for (EepromItem item : project.getEepromItems()) {
-	    StringBuilder codeline = new StringBuilder();
-	    codeline.append(platform.getEepromWrapperClass(item.getType(), itemOffsets.get(item), item.isCached(),
-		    item.getLengthOfArray()));
-	    codeline.append(" ");
-	    codeline.append(item.getName());
-	    codeline.append(";");
-	    context.eepromItemDefinitions.add(codeline.toString());
-	    externsForHeaderFile.add("extern " + codeline.toString());
-
-	    String itemValue = item.getValue();
-	    if ((itemValue != null) && (!itemValue.isEmpty())) {
-		if (!platform.checkValue(item.getType(), itemValue)) {
-		    throw new CompilationException("The value '" + itemValue
-			    + "' is not valid initialization value for EEPROM item '" + item.getName() + "'.");
-		}
-
-		if (item.isArray()) {
-		    context.eepromInitializationCode
-			    .add(item.getName() + ".fill(" + platform.escapeValue(item.getType(), itemValue) + ");");
-		} else {
-		    context.eepromInitializationCode.add(
-			    item.getName() + ".setValue(" + platform.escapeValue(item.getType(), itemValue) + ");");
-		}
+	for (EepromItemRecord item : eepromItems) {
+	    context.eepromItemDefinitions.add(item.getDeclaration());
+	    if (item.getInitializationCode() != null) {
+		context.eepromInitializationCode.add(item.getInitializationCode());
 	    }
 	}
 
-	// Version of the EEPROM memory layout (random, hash, or a fixed number)
-	String memoryLayoutVersion = project.getEepromLayoutVersion();
-	if (memoryLayoutVersion != null) {
-	    memoryLayoutVersion = memoryLayoutVersion.trim();
-	}
-
 	// Generate the project code, if management of EEPROM memory is used.
-	if (offset != 0) {
-	    // Compute layout version according to project settings.
-	    long eepromLayoutVersion = 0;
-	    if ("random".equals(memoryLayoutVersion)) {
-		eepromLayoutVersion = (int) (Math.random() * 256 * 256 * 256);
-	    } else if ("".equals(memoryLayoutVersion) || "hash".equals(memoryLayoutVersion)) {
-		StringBuilder hashedContent = new StringBuilder();
-		for (String line : context.eepromItemDefinitions) {
-		    hashedContent.append(line);
-		}
-		eepromLayoutVersion = Math.abs(hashedContent.toString().hashCode());
-	    } else {
-		try {
-		    eepromLayoutVersion = Math.abs(Long.parseLong(memoryLayoutVersion));
-		} catch (Exception e) {
-		    throw new CompilationException("Invalid layout version of eeprom memory.");
-		}
-	    }
+	if (context.project.getEepromUsage() != 0) {
+	    long eepromLayoutVersion = context.project.getEepromLayoutVersion();
 
 	    // Initialize EEPROM items
 	    context.setupCode.add("// Initialize eeprom data");
 	    context.setupCode.add("eeprom_busy_wait();");
-	    for (EepromItem item : project.getEepromItems()) {
+	    for (EepromItemRecord item : eepromItems) {
 		context.setupCode.add(item.getName() + ".init();");
 	    }
 
@@ -563,54 +405,6 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
 		    BASIC_INDENT + context.privateNamespace + "::writeEepromVersion(" + eepromLayoutVersion + ");");
 	    context.setupCode.add("}");
 	}
-
-	// Store generated externs for items
-	context.compilationContext.getData().put("EepromExterns", externsForHeaderFile);
-    }
-
-    /**
-     * Converts a string value that can be an integer value or reference to a
-     * property value to an integer value.
-     * 
-     * @param valueOrProperty
-     *            the string to be converted.
-     * @param component
-     *            the component for which the conversion is realized.
-     * @param componentType
-     *            the type of component for which the conversion is realized.
-     * @param unsetValue
-     *            the value to return if the property is not set or is an empty
-     *            string.
-     * @return the conversion result.
-     */
-    private int readIntegerValueOrProperty(String valueOrProperty, Component component, ComponentType componentType,
-	    int unsetValue) {
-	if ((valueOrProperty == null) || (valueOrProperty.trim().isEmpty())) {
-	    return unsetValue;
-	}
-
-	try {
-	    return Integer.parseInt(valueOrProperty);
-	} catch (Exception ignore) {
-
-	}
-
-	PropertyType propertyType = componentType.getProperties().get(valueOrProperty);
-	if (propertyType == null) {
-	    throw new CompilationException("Undefined property '" + valueOrProperty + "'.");
-	}
-
-	String strValue = propertyType.getEffectiveValue(component.getProperties().get(valueOrProperty));
-	if ((strValue == null) || (strValue.trim().isEmpty())) {
-	    return unsetValue;
-	}
-
-	try {
-	    return Integer.parseInt(strValue.trim());
-	} catch (Exception e) {
-	    throw new CompilationException(
-		    "The value of property '" + valueOrProperty + "' cannot be converted to an integer value.");
-	}
     }
 
     @Override
@@ -618,11 +412,6 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
 	// Create context
 	Context context = new Context(compilationContext);
 
-	// Clean auto-generated properties
-	for (Component component : compilationContext.getProject().getComponents()) {
-	    component.getAutogeneratedProperties().clear();
-	}
-
 	// Generate EEPROM items
 	generateEepromItems(context);
 
@@ -639,13 +428,10 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
 	generateProgramEvents(context);
 
 	// Setup watchdog
-	if (compilationContext.getProject().getWatchdogLevel() >= 0) {
-	    int wl = Math.min(compilationContext.getProject().getWatchdogLevel(),
-		    compilationContext.getPlatform().getMaxWatchdogLevel());
-
+	if (context.project.getWatchdogLevel() >= 0) {
 	    context.includes.add("#include <avr/wdt.h>");
 	    context.setupCode.add(0, "wdt_disable();");
-	    context.setupCode.add("wdt_enable(" + wl + ");");
+	    context.setupCode.add("wdt_enable(" + context.project.getWatchdogLevel() + ");");
 	    context.loopCode.add(0, "wdt_reset();");
 	}
 
@@ -680,6 +466,7 @@ public class ACPProjectCodeGenerator extends ACPContentGenerator {
     @Override
     protected void generate(CompilationContext compilationContext, Map<String, String> output) {
 	generateOutputFromResourceTemplate("acp_core.cpp", output,
-		new File(compilationContext.getSettings().getOutputSourcePath(), ACP_CORE_SOURCE_FILE));
+		new File(compilationContext.getSettings().getOutputSourcePath(), ACP_CORE_SOURCE_FILE),
+		compilationContext);
     }
 }
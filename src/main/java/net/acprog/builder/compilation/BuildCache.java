@@ -0,0 +1,860 @@
+package net.acprog.builder.compilation;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import net.acprog.builder.modules.Module;
+import net.acprog.builder.utils.HashUtils;
+import net.acprog.builder.utils.ZipUtils;
+
+/**
+ * Content-addressed cache of compiled libraries. A build is identified by a
+ * key computed from the project configuration and compilation settings. For
+ * each key, the cache stores an entry with the directories of modules used by
+ * the build, fingerprints of all their files and the key of the result. An
+ * entry is valid only if the module directories contain the same files with
+ * the same content. The key does not depend on the location of the module
+ * repository, hence machines with the same modules in different directories
+ * share cached libraries. The result key is derived from the build key, the
+ * module directories and the content of module files, and it addresses an
+ * archive with the generated library. A restored library directory contains
+ * exactly the files of the archive. The total size of the cache is bounded,
+ * the least recently used files are evicted. Optionally, the local cache is
+ * backed by a shared remote cache that is consulted when a build is not found
+ * locally.
+ */
+public class BuildCache {
+
+    // ---------------------------------------------------------------------------
+    // Configuration constants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Version of the cache format. The version is a part of build keys.
+     */
+    private static final int CACHE_VERSION = 3;
+
+    /**
+     * Magic number at the beginning of each entry file.
+     */
+    private static final int ENTRY_FILE_MAGIC = 0x41435042;
+
+    /**
+     * Extension of entry files.
+     */
+    private static final String ENTRY_FILE_EXTENSION = ".entry";
+
+    /**
+     * Extension of archives with libraries.
+     */
+    private static final String ARCHIVE_FILE_EXTENSION = ".zip";
+
+    /**
+     * Default maximal size of the cache in bytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+    // ---------------------------------------------------------------------------
+    // Input fingerprint
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Fingerprint of a module file used by a build.
+     */
+    static class Input {
+	/**
+	 * Path of the file relative to the root of the module repository.
+	 */
+	final String path;
+
+	/**
+	 * Size of the file in bytes.
+	 */
+	final long size;
+
+	/**
+	 * Time of the last modification.
+	 */
+	final long lastModified;
+
+	/**
+	 * Hash of the file content.
+	 */
+	final byte[] hash;
+
+	Input(String path, long size, long lastModified, byte[] hash) {
+	    this.path = path;
+	    this.size = size;
+	    this.lastModified = lastModified;
+	    this.hash = hash;
+	}
+
+	/**
+	 * Checks whether the file has not changed. The content of the file is
+	 * hashed only if its size or modification time differs.
+	 *
+	 * @param modulesRoot
+	 *            the root of the module repository.
+	 * @return true, if the file content is the same, false otherwise.
+	 */
+	boolean isUpToDate(Path modulesRoot) {
+	    Path file = modulesRoot.resolve(path);
+	    try {
+		if (!Files.isRegularFile(file) || (Files.size(file) != size)) {
+		    return false;
+		}
+
+		if (Files.getLastModifiedTime(file).toMillis() == lastModified) {
+		    return true;
+		}
+
+		return Arrays.equals(hash, HashUtils.hash(Files.readAllBytes(file)));
+	    } catch (IOException e) {
+		return false;
+	    }
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Cache entry
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Decoded entry of a build.
+     */
+    private static class Entry {
+	/**
+	 * Key of the build result.
+	 */
+	final String resultKey;
+
+	/**
+	 * Paths of exported module files in the library (relative to the
+	 * library directory).
+	 */
+	final List<String> exportedFiles;
+
+	Entry(String resultKey, List<String> exportedFiles) {
+	    this.resultKey = resultKey;
+	    this.exportedFiles = exportedFiles;
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Directory where cache files are stored.
+     */
+    private final File cacheDirectory;
+
+    /**
+     * Maximal total size of cache files in bytes.
+     */
+    private volatile long maxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * Number of builds restored from the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Number of builds not found in the cache.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Number of cache files removed by eviction.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Number of builds restored from the remote cache (included in hits).
+     */
+    private final AtomicLong remoteHits = new AtomicLong();
+
+    /**
+     * Remote cache (null, if only the local cache is used).
+     */
+    private volatile RemoteBuildCache remoteCache;
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the cache.
+     *
+     * @param cacheDirectory
+     *            the directory where cache files are stored.
+     */
+    public BuildCache(File cacheDirectory) {
+	this.cacheDirectory = cacheDirectory;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public File getCacheDirectory() {
+	return cacheDirectory;
+    }
+
+    public long getMaxSize() {
+	return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+	this.maxSize = maxSize;
+    }
+
+    public long getHits() {
+	return hits.get();
+    }
+
+    public long getMisses() {
+	return misses.get();
+    }
+
+    public long getEvictions() {
+	return evictions.get();
+    }
+
+    public long getRemoteHits() {
+	return remoteHits.get();
+    }
+
+    public RemoteBuildCache getRemoteCache() {
+	return remoteCache;
+    }
+
+    public void setRemoteCache(RemoteBuildCache remoteCache) {
+	this.remoteCache = remoteCache;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Keys
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Computes the key of a build. Module files are not part of the key, they
+     * are checked by fingerprints stored in the entry of the build.
+     *
+     * @param projectContent
+     *            the content of the project configuration file.
+     * @param settings
+     *            the compilation settings.
+     * @return the build key.
+     */
+    public static String computeKey(byte[] projectContent, CompilationSettings settings) {
+	MessageDigest digest = HashUtils.createDigest();
+	StringBuilder header = new StringBuilder();
+	header.append(CACHE_VERSION).append('\n');
+	header.append(settings.getLibraryName()).append('\n');
+	header.append(settings.isSourceFilesDirectoryMerging()).append('\n');
+	header.append(settings.isDebugMode()).append('\n');
+	header.append(settings.getLooperStrategy()).append('\n');
+	digest.update(header.toString().getBytes(StandardCharsets.UTF_8));
+	digest.update(projectContent);
+	return HashUtils.toHex(digest.digest());
+    }
+
+    /**
+     * Computes the key of a build result.
+     *
+     * @param key
+     *            the build key.
+     * @param moduleDirectories
+     *            the directories of modules used by the build.
+     * @param inputs
+     *            the fingerprints of module files used by the build.
+     * @return the result key.
+     */
+    private static String computeResultKey(String key, List<String> moduleDirectories, List<Input> inputs) {
+	MessageDigest digest = HashUtils.createDigest();
+	digest.update(key.getBytes(StandardCharsets.UTF_8));
+	for (String moduleDirectory : moduleDirectories) {
+	    digest.update(moduleDirectory.getBytes(StandardCharsets.UTF_8));
+	    digest.update((byte) '\n');
+	}
+	for (Input input : inputs) {
+	    digest.update(input.path.getBytes(StandardCharsets.UTF_8));
+	    digest.update(input.hash);
+	}
+	return HashUtils.toHex(digest.digest());
+    }
+
+    // ---------------------------------------------------------------------------
+    // Cache methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Restores a library from the cache. Files of the library directory that
+     * are not in the cached library (e.g., files of modules used by the
+     * previous build) are removed and the manifest of exported files is
+     * rewritten for the restored library.
+     *
+     * @param key
+     *            the build key.
+     * @param modulesRoot
+     *            the root of the module repository.
+     * @param libraryDirectory
+     *            the library directory where the library is restored.
+     * @param exportManifestFile
+     *            the manifest file of incremental export (null, if the export
+     *            is not incremental).
+     * @return true, if the library has been restored, false, if the build is
+     *         not cached.
+     */
+    public boolean restore(String key, Path modulesRoot, File libraryDirectory, File exportManifestFile) {
+	Entry entry = findEntry(key, modulesRoot);
+	if (entry != null) {
+	    File archiveFile = new File(cacheDirectory, entry.resultKey + ARCHIVE_FILE_EXTENSION);
+	    try (InputStream in = new BufferedInputStream(new FileInputStream(archiveFile))) {
+		Set<String> libraryFiles = new HashSet<String>();
+		ZipUtils.unzipFiles(in, libraryDirectory, libraryFiles);
+		removeOtherFiles(libraryDirectory, libraryFiles, exportManifestFile);
+		if (exportManifestFile != null) {
+		    ExportManifest exportManifest = ExportManifest.load(exportManifestFile, libraryDirectory);
+		    for (String path : entry.exportedFiles) {
+			exportManifest.fileRestored(new File(libraryDirectory, path));
+		    }
+		    exportManifest.save(exportManifestFile);
+		}
+
+		hits.incrementAndGet();
+		return true;
+	    } catch (IOException e) {
+		// Broken archive is handled as a missing entry
+	    }
+	}
+
+	misses.incrementAndGet();
+	return false;
+    }
+
+    /**
+     * Finds the entry of a library built with given key from current module
+     * files whose archive is available in the local cache. The entry and the
+     * archive are marked as recently used.
+     *
+     * @param key
+     *            the build key.
+     * @param modulesRoot
+     *            the root of the module repository.
+     * @return the entry or null, if the cache does not contain the library.
+     */
+    private Entry findEntry(String key, Path modulesRoot) {
+	File entryFile = new File(cacheDirectory, key + ENTRY_FILE_EXTENSION);
+	Entry entry = entryFile.isFile() ? readEntry(readCacheFile(entryFile), modulesRoot) : null;
+	File archiveFile = (entry != null) ? new File(cacheDirectory, entry.resultKey + ARCHIVE_FILE_EXTENSION)
+		: null;
+	if ((archiveFile == null) || !archiveFile.isFile()) {
+	    return (remoteCache != null) ? downloadEntry(key, modulesRoot) : null;
+	}
+
+	long now = System.currentTimeMillis();
+	entryFile.setLastModified(now);
+	archiveFile.setLastModified(now);
+	return entry;
+    }
+
+    /**
+     * Downloads the entry and the archive with library built with given key
+     * from the remote cache and stores them to the local cache.
+     * 
+     * @param key
+     *            the build key.
+     * @param modulesRoot
+     *            the root of the module repository.
+     * @return the entry or null, if the remote cache does not contain the
+     *         library.
+     */
+    private Entry downloadEntry(String key, Path modulesRoot) {
+	byte[] entryContent = remoteCache.download(key + ENTRY_FILE_EXTENSION);
+	Entry entry = (entryContent != null) ? readEntry(entryContent, modulesRoot) : null;
+	if (entry == null) {
+	    return null;
+	}
+
+	String resultKey = entry.resultKey;
+	byte[] archiveContent = remoteCache.download(resultKey + ARCHIVE_FILE_EXTENSION);
+	if (archiveContent == null) {
+	    return null;
+	}
+
+	try {
+	    File archiveFile = new File(cacheDirectory, resultKey + ARCHIVE_FILE_EXTENSION);
+	    cacheDirectory.mkdirs();
+	    writeAtomically(archiveFile, archiveContent);
+	    writeAtomically(new File(cacheDirectory, key + ENTRY_FILE_EXTENSION), entryContent);
+	    remoteHits.incrementAndGet();
+	    evict();
+	    return archiveFile.isFile() ? entry : null;
+	} catch (IOException e) {
+	    return null;
+	}
+    }
+
+    /**
+     * Stores a library to the cache. Failures are ignored since the cache is
+     * only an optimization.
+     *
+     * @param key
+     *            the build key.
+     * @param modulesRoot
+     *            the root of the module repository.
+     * @param modules
+     *            the modules used by the build.
+     * @param libraryDirectory
+     *            the library directory.
+     * @param libraryFiles
+     *            the paths of library files (relative to the library
+     *            directory) that were produced by the build.
+     * @param exportedFiles
+     *            the paths of library files that are exported module files.
+     */
+    public void store(String key, Path modulesRoot, Collection<Module> modules, File libraryDirectory,
+	    Collection<String> libraryFiles, Collection<String> exportedFiles) {
+	try {
+	    List<String> moduleDirectories = new ArrayList<String>();
+	    for (Module module : modules) {
+		moduleDirectories.add(getRelativePath(modulesRoot, module.getDirectory()));
+	    }
+	    Collections.sort(moduleDirectories);
+
+	    List<Input> inputs = collectInputs(modulesRoot, modules);
+	    String resultKey = computeResultKey(key, moduleDirectories, inputs);
+
+	    ByteArrayOutputStream archiveOut = new ByteArrayOutputStream();
+	    ZipUtils.zipFiles(libraryDirectory, libraryFiles, archiveOut);
+	    byte[] archiveContent = archiveOut.toByteArray();
+	    byte[] entryContent = encodeEntry(resultKey, moduleDirectories, inputs, exportedFiles);
+
+	    cacheDirectory.mkdirs();
+	    writeAtomically(new File(cacheDirectory, resultKey + ARCHIVE_FILE_EXTENSION), archiveContent);
+	    writeAtomically(new File(cacheDirectory, key + ENTRY_FILE_EXTENSION), entryContent);
+	    evict();
+
+	    // The archive is uploaded before the entry, so that the remote
+	    // cache never contains an entry referring to a missing archive
+	    RemoteBuildCache remote = remoteCache;
+	    if ((remote != null) && remote.upload(resultKey + ARCHIVE_FILE_EXTENSION, archiveContent)) {
+		remote.upload(key + ENTRY_FILE_EXTENSION, entryContent);
+	    }
+	} catch (IOException e) {
+	    // Nothing to do
+	}
+    }
+
+    /**
+     * Checks whether a string is a valid name of a cache file.
+     * 
+     * @param fileName
+     *            the name of file.
+     * @return true, if the name is a valid name of cache file, false
+     *         otherwise.
+     */
+    static boolean isCacheFileName(String fileName) {
+	return fileName.matches("[0-9a-f]{40}(" + Pattern.quote(ENTRY_FILE_EXTENSION) + "|"
+		+ Pattern.quote(ARCHIVE_FILE_EXTENSION) + ")");
+    }
+
+    /**
+     * Reads a cache file and marks it as recently used.
+     * 
+     * @param fileName
+     *            the name of cache file.
+     * @return the content of cache file or null, if the file does not exist.
+     */
+    byte[] readCacheFile(String fileName) {
+	File cacheFile = new File(cacheDirectory, fileName);
+	byte[] content = cacheFile.isFile() ? readCacheFile(cacheFile) : null;
+	if (content != null) {
+	    cacheFile.setLastModified(System.currentTimeMillis());
+	}
+
+	return content;
+    }
+
+    /**
+     * Writes a cache file.
+     * 
+     * @param fileName
+     *            the name of cache file.
+     * @param content
+     *            the content of cache file.
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    void writeCacheFile(String fileName, byte[] content) throws IOException {
+	cacheDirectory.mkdirs();
+	writeAtomically(new File(cacheDirectory, fileName), content);
+	evict();
+    }
+
+    /**
+     * Removes the least recently used cache files until the total size of the
+     * cache does not exceed the maximal size.
+     */
+    public synchronized void evict() {
+	File[] cacheFiles = cacheDirectory.listFiles(new FileFilter() {
+	    @Override
+	    public boolean accept(File file) {
+		return file.isFile()
+			&& (file.getName().endsWith(ENTRY_FILE_EXTENSION) || file.getName().endsWith(
+				ARCHIVE_FILE_EXTENSION));
+	    }
+	});
+
+	if (cacheFiles == null) {
+	    return;
+	}
+
+	long totalSize = 0;
+	final Map<File, Long> lastUses = new HashMap<File, Long>();
+	for (File cacheFile : cacheFiles) {
+	    totalSize += cacheFile.length();
+	    lastUses.put(cacheFile, cacheFile.lastModified());
+	}
+
+	Arrays.sort(cacheFiles, new Comparator<File>() {
+	    @Override
+	    public int compare(File f1, File f2) {
+		return Long.compare(lastUses.get(f1), lastUses.get(f2));
+	    }
+	});
+
+	for (File cacheFile : cacheFiles) {
+	    if (totalSize <= maxSize) {
+		break;
+	    }
+
+	    long size = cacheFile.length();
+	    if (cacheFile.delete()) {
+		totalSize -= size;
+		evictions.incrementAndGet();
+	    }
+	}
+    }
+
+    /**
+     * Removes all cache files.
+     */
+    public void clear() {
+	File[] cacheFiles = cacheDirectory.listFiles();
+	if (cacheFiles == null) {
+	    return;
+	}
+
+	for (File cacheFile : cacheFiles) {
+	    if (cacheFile.getName().endsWith(ENTRY_FILE_EXTENSION)
+		    || cacheFile.getName().endsWith(ARCHIVE_FILE_EXTENSION)) {
+		cacheFile.delete();
+	    }
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Helper methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Collects fingerprints of all files of modules (module descriptions,
+     * include and source files).
+     *
+     * @param modulesRoot
+     *            the root of the module repository.
+     * @param modules
+     *            the modules.
+     * @return the fingerprints ordered by paths.
+     * @throws IOException
+     *             if a module file cannot be read.
+     */
+    static List<Input> collectInputs(Path modulesRoot, Collection<Module> modules) throws IOException {
+	List<Path> files = new ArrayList<Path>();
+	for (Module module : modules) {
+	    collectModuleFiles(module.getDirectory(), files);
+	}
+
+	List<Input> inputs = new ArrayList<Input>();
+	for (Path file : files) {
+	    String path = getRelativePath(modulesRoot, file);
+	    byte[] content = Files.readAllBytes(file);
+	    inputs.add(new Input(path, content.length, Files.getLastModifiedTime(file).toMillis(), HashUtils
+		    .hash(content)));
+	}
+
+	Collections.sort(inputs, new Comparator<Input>() {
+	    @Override
+	    public int compare(Input i1, Input i2) {
+		return i1.path.compareTo(i2.path);
+	    }
+	});
+	return inputs;
+    }
+
+    /**
+     * Collects files of a module that are used by a build (the module
+     * description, include and source files).
+     *
+     * @param moduleDirectory
+     *            the directory of module.
+     * @param files
+     *            the list where found files are stored.
+     * @throws IOException
+     *             if the module directory cannot be read.
+     */
+    private static void collectModuleFiles(Path moduleDirectory, List<Path> files) throws IOException {
+	files.add(moduleDirectory.resolve(Module.DESCRIPTION_FILE));
+	collectFiles(moduleDirectory.resolve(Module.INCLUDE_SUBDIR), files);
+	collectFiles(moduleDirectory.resolve(Module.SRC_SUBDIR), files);
+    }
+
+    /**
+     * Returns the path of a file relative to the root of the module
+     * repository.
+     *
+     * @param modulesRoot
+     *            the root of the module repository.
+     * @param file
+     *            the file in the module repository.
+     * @return the relative path with slash as the path separator.
+     */
+    private static String getRelativePath(Path modulesRoot, Path file) {
+	return modulesRoot.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Recursively collects regular files in a directory.
+     *
+     * @param dir
+     *            the directory.
+     * @param files
+     *            the list where found files are stored.
+     * @throws IOException
+     *             if the directory cannot be read.
+     */
+    private static void collectFiles(Path dir, List<Path> files) throws IOException {
+	if (!Files.isDirectory(dir)) {
+	    return;
+	}
+
+	try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+	    for (Path file : stream) {
+		if (Files.isDirectory(file)) {
+		    collectFiles(file, files);
+		} else if (Files.isRegularFile(file)) {
+		    files.add(file);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Removes files and empty directories of a library directory that do not
+     * belong to the restored library.
+     *
+     * @param libraryDirectory
+     *            the library directory.
+     * @param libraryFiles
+     *            the paths of files of the restored library (relative to the
+     *            library directory).
+     * @param keptFile
+     *            the file that is kept in the library directory (null, if
+     *            there is no such file).
+     * @throws IOException
+     *             if the library directory cannot be read.
+     */
+    private static void removeOtherFiles(final File libraryDirectory, final Set<String> libraryFiles,
+	    final File keptFile) throws IOException {
+	final Path root = libraryDirectory.toPath();
+	final Path keptPath = (keptFile != null) ? keptFile.toPath() : null;
+	Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+	    @Override
+	    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+		String path = root.relativize(file).toString().replace(File.separatorChar, '/');
+		if (!libraryFiles.contains(path) && !file.equals(keptPath)) {
+		    Files.delete(file);
+		}
+		return FileVisitResult.CONTINUE;
+	    }
+
+	    @Override
+	    public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+		if (e != null) {
+		    throw e;
+		}
+
+		String[] content = dir.toFile().list();
+		if (!dir.equals(root) && (content != null) && (content.length == 0)) {
+		    Files.delete(dir);
+		}
+		return FileVisitResult.CONTINUE;
+	    }
+	});
+    }
+
+    /**
+     * Reads content of a cache file.
+     * 
+     * @param cacheFile
+     *            the cache file.
+     * @return the content or null, if the file cannot be read.
+     */
+    private static byte[] readCacheFile(File cacheFile) {
+	try {
+	    return Files.readAllBytes(cacheFile.toPath());
+	} catch (IOException e) {
+	    return null;
+	}
+    }
+
+    /**
+     * Decodes an entry and checks whether all module files recorded in the
+     * entry are unchanged and the module directories contain no other files
+     * (e.g., a source file added after the entry was stored).
+     *
+     * @param entryContent
+     *            the content of entry file.
+     * @param modulesRoot
+     *            the root of the module repository.
+     * @return the entry, or null if the entry is not valid for current module
+     *         files.
+     */
+    private static Entry readEntry(byte[] entryContent, Path modulesRoot) {
+	if (entryContent == null) {
+	    return null;
+	}
+
+	try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(entryContent))) {
+	    if (in.readInt() != ENTRY_FILE_MAGIC) {
+		return null;
+	    }
+
+	    String resultKey = in.readUTF();
+	    int moduleDirectoryCount = in.readInt();
+	    List<String> moduleDirectories = new ArrayList<String>(moduleDirectoryCount);
+	    for (int i = 0; i < moduleDirectoryCount; i++) {
+		moduleDirectories.add(in.readUTF());
+	    }
+
+	    int inputCount = in.readInt();
+	    Set<String> inputPaths = new HashSet<String>();
+	    for (int i = 0; i < inputCount; i++) {
+		String path = in.readUTF();
+		long size = in.readLong();
+		long lastModified = in.readLong();
+		byte[] hash = new byte[in.readUnsignedByte()];
+		in.readFully(hash);
+		if (!new Input(path, size, lastModified, hash).isUpToDate(modulesRoot)) {
+		    return null;
+		}
+		inputPaths.add(path);
+	    }
+
+	    // Module directories must not contain files added after the build
+	    List<Path> files = new ArrayList<Path>();
+	    for (String moduleDirectory : moduleDirectories) {
+		collectModuleFiles(modulesRoot.resolve(moduleDirectory), files);
+	    }
+	    if (files.size() != inputPaths.size()) {
+		return null;
+	    }
+	    for (Path file : files) {
+		if (!inputPaths.contains(getRelativePath(modulesRoot, file))) {
+		    return null;
+		}
+	    }
+
+	    int exportedFileCount = in.readInt();
+	    List<String> exportedFiles = new ArrayList<String>(exportedFileCount);
+	    for (int i = 0; i < exportedFileCount; i++) {
+		exportedFiles.add(in.readUTF());
+	    }
+
+	    return new Entry(resultKey, exportedFiles);
+	} catch (IOException e) {
+	    return null;
+	}
+    }
+
+    /**
+     * Encodes content of an entry file.
+     *
+     * @param resultKey
+     *            the result key.
+     * @param moduleDirectories
+     *            the directories of modules used by the build.
+     * @param inputs
+     *            the fingerprints of module files.
+     * @param exportedFiles
+     *            the paths of exported module files in the library.
+     * @return the content of entry file.
+     * @throws IOException
+     *             if encoding failed.
+     */
+    private static byte[] encodeEntry(String resultKey, List<String> moduleDirectories, List<Input> inputs,
+	    Collection<String> exportedFiles) throws IOException {
+	ByteArrayOutputStream content = new ByteArrayOutputStream();
+	DataOutputStream out = new DataOutputStream(content);
+	out.writeInt(ENTRY_FILE_MAGIC);
+	out.writeUTF(resultKey);
+	out.writeInt(moduleDirectories.size());
+	for (String moduleDirectory : moduleDirectories) {
+	    out.writeUTF(moduleDirectory);
+	}
+	out.writeInt(inputs.size());
+	for (Input input : inputs) {
+	    out.writeUTF(input.path);
+	    out.writeLong(input.size);
+	    out.writeLong(input.lastModified);
+	    out.writeByte(input.hash.length);
+	    out.write(input.hash);
+	}
+	out.writeInt(exportedFiles.size());
+	for (String exportedFile : new TreeSet<String>(exportedFiles)) {
+	    out.writeUTF(exportedFile);
+	}
+	out.flush();
+	return content.toByteArray();
+    }
+
+    /**
+     * Writes content to a file via a temporary file, so that readers never
+     * observe a partially written file.
+     *
+     * @param file
+     *            the file.
+     * @param content
+     *            the content.
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    private void writeAtomically(File file, byte[] content) throws IOException {
+	File tmpFile = File.createTempFile("cache", ".tmp", cacheDirectory);
+	try {
+	    Files.write(tmpFile.toPath(), content);
+	    try {
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+	    } catch (IOException e) {
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	    }
+	} finally {
+	    tmpFile.delete();
+	}
+    }
+}
@@ -0,0 +1,204 @@
+package net.acprog.builder.compilation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP server of a shared build cache based on the HTTP server built in the
+ * JDK. The server stores cache files in a local build cache. A cache file is
+ * downloaded by GET and uploaded by PUT request to the URL path formed by the
+ * cache file name.
+ */
+public class BuildCacheServer {
+
+    // ---------------------------------------------------------------------------
+    // Configuration constants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Default port of the server.
+     */
+    public static final int DEFAULT_PORT = 5071;
+
+    /**
+     * Maximal size of uploaded cache file in bytes.
+     */
+    private static final int MAX_UPLOAD_SIZE = 256 * 1024 * 1024;
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Cache where cache files are stored.
+     */
+    private final BuildCache cache;
+
+    /**
+     * HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * Executor handling requests.
+     */
+    private final ExecutorService executor;
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the server.
+     *
+     * @param cache
+     *            the cache where cache files are stored.
+     * @param address
+     *            the address where the server listens.
+     * @param threads
+     *            the number of threads handling requests.
+     * @throws IOException
+     *             if the server cannot be created.
+     */
+    public BuildCacheServer(BuildCache cache, InetSocketAddress address, int threads) throws IOException {
+	this.cache = cache;
+	server = HttpServer.create(address, 0);
+	executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+	server.setExecutor(executor);
+	server.createContext("/", new HttpHandler() {
+	    @Override
+	    public void handle(HttpExchange exchange) throws IOException {
+		try {
+		    handleRequest(exchange);
+		} catch (IOException | RuntimeException e) {
+		    System.err.println("Request " + exchange.getRequestURI() + " failed: " + e.getMessage());
+		    sendEmptyResponse(exchange, 500);
+		} finally {
+		    exchange.close();
+		}
+	    }
+	});
+    }
+
+    // ---------------------------------------------------------------------------
+    // Server methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Returns the address where the server listens.
+     *
+     * @return the address.
+     */
+    public InetSocketAddress getAddress() {
+	return server.getAddress();
+    }
+
+    /**
+     * Starts the server.
+     */
+    public void start() {
+	server.start();
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+	server.stop(0);
+	executor.shutdownNow();
+    }
+
+    /**
+     * Handles a request.
+     *
+     * @param exchange
+     *            the HTTP exchange.
+     * @throws IOException
+     *             if the request cannot be handled.
+     */
+    private void handleRequest(HttpExchange exchange) throws IOException {
+	String fileName = exchange.getRequestURI().getPath().substring(1);
+	if (!BuildCache.isCacheFileName(fileName)) {
+	    sendEmptyResponse(exchange, 404);
+	    return;
+	}
+
+	String method = exchange.getRequestMethod();
+	if ("GET".equals(method)) {
+	    byte[] content = cache.readCacheFile(fileName);
+	    if (content == null) {
+		sendEmptyResponse(exchange, 404);
+		return;
+	    }
+
+	    exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+	    exchange.sendResponseHeaders(200, content.length);
+	    try (OutputStream out = exchange.getResponseBody()) {
+		out.write(content);
+	    }
+	} else if ("PUT".equals(method)) {
+	    byte[] content = readRequestBody(exchange);
+	    if (content == null) {
+		sendEmptyResponse(exchange, 413);
+		return;
+	    }
+
+	    cache.writeCacheFile(fileName, content);
+	    sendEmptyResponse(exchange, 201);
+	} else {
+	    exchange.getResponseHeaders().set("Allow", "GET, PUT");
+	    sendEmptyResponse(exchange, 405);
+	}
+    }
+
+    /**
+     * Sends a response without content. The response length -1 makes the
+     * server send "Content-Length: 0" (0 would select chunked encoding), so
+     * that the client can reuse the persistent connection.
+     *
+     * @param exchange
+     *            the HTTP exchange.
+     * @param responseCode
+     *            the response code.
+     * @throws IOException
+     *             if the response cannot be sent.
+     */
+    private static void sendEmptyResponse(HttpExchange exchange, int responseCode) throws IOException {
+	exchange.sendResponseHeaders(responseCode, -1);
+	exchange.getResponseBody().close();
+    }
+
+    /**
+     * Reads the body of a request.
+     *
+     * @param exchange
+     *            the HTTP exchange.
+     * @return the body or null, if the body is too large.
+     * @throws IOException
+     *             if the body cannot be read.
+     */
+    private static byte[] readRequestBody(HttpExchange exchange) throws IOException {
+	ByteArrayOutputStream content = new ByteArrayOutputStream();
+	try (InputStream in = exchange.getRequestBody()) {
+	    byte[] buffer = new byte[8192];
+	    int read;
+	    while ((read = in.read(buffer)) >= 0) {
+		if (content.size() + read > MAX_UPLOAD_SIZE) {
+		    return null;
+		}
+		content.write(buffer, 0, read);
+	    }
+	}
+
+	return content.toByteArray();
+    }
+}
@@ -0,0 +1,645 @@
+package net.acprog.builder.compilation;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import net.acprog.builder.modules.ModuleDescriptorCache;
+import net.acprog.builder.utils.FileUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP build service based on the HTTP server built in the JDK. A project
+ * configuration is sent in the body of a POST request to the path "/build"
+ * and the generated library is streamed back as a zip archive. The name of
+ * library is given by the query parameter "library", optional parameters
+ * "merge" and "debug" control the compilation settings. Builds are executed
+ * by a shared compiler with a limited number of concurrent builds, requests
+ * that exceed the capacity of the waiting queue are rejected. A project
+ * configuration posted to the path "/validate" is only validated and the
+ * response lists all found problems with their locations (one problem per
+ * line). Validations do not wait in the build queue, since they only use
+ * module descriptions cached by the compiler. Statistics of the service are
+ * provided by the path "/metrics".
+ */
+public class BuildService {
+
+    // ---------------------------------------------------------------------------
+    // Latency window
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Window of recently measured latencies used to compute percentiles.
+     */
+    private static class LatencyWindow {
+	/**
+	 * Circular buffer with latencies in milliseconds.
+	 */
+	private final long[] latencies;
+
+	/**
+	 * Number of recorded latencies.
+	 */
+	private long count;
+
+	LatencyWindow(int size) {
+	    latencies = new long[size];
+	}
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param latency
+	 *            the latency in milliseconds.
+	 */
+	synchronized void record(long latency) {
+	    latencies[(int) (count % latencies.length)] = latency;
+	    count++;
+	}
+
+	/**
+	 * Returns the sorted latencies of the window.
+	 *
+	 * @return the sorted latencies.
+	 */
+	synchronized long[] getSortedLatencies() {
+	    long[] result = Arrays.copyOf(latencies, (int) Math.min(count, latencies.length));
+	    Arrays.sort(result);
+	    return result;
+	}
+
+	/**
+	 * Returns a percentile of sorted latencies (nearest-rank method).
+	 *
+	 * @param sortedLatencies
+	 *            the sorted latencies.
+	 * @param percentile
+	 *            the percentile.
+	 * @return the latency or 0, if no latency has been recorded.
+	 */
+	static long getPercentile(long[] sortedLatencies, double percentile) {
+	    if (sortedLatencies.length == 0) {
+		return 0;
+	    }
+
+	    int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+	    return sortedLatencies[Math.max(rank, 1) - 1];
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Configuration constants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Default port of the service.
+     */
+    public static final int DEFAULT_PORT = 5072;
+
+    /**
+     * Maximal size of project configuration in bytes.
+     */
+    private static final int MAX_PROJECT_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Number of latencies used to compute percentiles.
+     */
+    private static final int LATENCY_WINDOW_SIZE = 1024;
+
+    /**
+     * Reported latency percentiles.
+     */
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    /**
+     * Pattern of valid library names.
+     */
+    private static final Pattern LIBRARY_NAME_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Compiler shared by all builds.
+     */
+    private final ACPCompiler compiler;
+
+    /**
+     * HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * Executor handling requests.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Permits for accepted build requests (running and waiting).
+     */
+    private final Semaphore admissionPermits;
+
+    /**
+     * Permits for running builds.
+     */
+    private final Semaphore buildPermits;
+
+    /**
+     * Maximal time (in milliseconds) that a request waits for a build
+     * permit.
+     */
+    private volatile long queueTimeout = 60000;
+
+    /**
+     * Time limit (in milliseconds) of a build (0, if builds are not limited).
+     */
+    private volatile long buildTimeout;
+
+    /**
+     * Number of requests waiting for a build permit.
+     */
+    private final AtomicInteger queuedBuilds = new AtomicInteger();
+
+    /**
+     * Number of running builds.
+     */
+    private final AtomicInteger activeBuilds = new AtomicInteger();
+
+    /**
+     * Number of successfully completed builds.
+     */
+    private final AtomicLong completedBuilds = new AtomicLong();
+
+    /**
+     * Number of failed builds.
+     */
+    private final AtomicLong failedBuilds = new AtomicLong();
+
+    /**
+     * Number of builds aborted after exceeding the time limit.
+     */
+    private final AtomicLong timedOutBuilds = new AtomicLong();
+
+    /**
+     * Number of rejected requests.
+     */
+    private final AtomicLong rejectedBuilds = new AtomicLong();
+
+    /**
+     * Number of validated project configurations.
+     */
+    private final AtomicLong completedValidations = new AtomicLong();
+
+    /**
+     * Number of validated project configurations with problems.
+     */
+    private final AtomicLong invalidProjects = new AtomicLong();
+
+    /**
+     * Recent times (in milliseconds) spent by waiting in the queue.
+     */
+    private final LatencyWindow queueLatencies = new LatencyWindow(LATENCY_WINDOW_SIZE);
+
+    /**
+     * Recent total times (in milliseconds) of completed builds.
+     */
+    private final LatencyWindow buildLatencies = new LatencyWindow(LATENCY_WINDOW_SIZE);
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the build service.
+     *
+     * @param compiler
+     *            the compiler shared by all builds.
+     * @param address
+     *            the address where the service listens.
+     * @param maxConcurrentBuilds
+     *            the maximal number of concurrently running builds.
+     * @param queueCapacity
+     *            the maximal number of requests waiting for a build.
+     * @throws IOException
+     *             if the server cannot be created.
+     */
+    public BuildService(ACPCompiler compiler, InetSocketAddress address, int maxConcurrentBuilds, int queueCapacity)
+	    throws IOException {
+	this.compiler = compiler;
+	maxConcurrentBuilds = Math.max(maxConcurrentBuilds, 1);
+	queueCapacity = Math.max(queueCapacity, 0);
+	admissionPermits = new Semaphore(maxConcurrentBuilds + queueCapacity);
+	buildPermits = new Semaphore(maxConcurrentBuilds, true);
+
+	// Accepted requests occupy at most maxConcurrentBuilds + queueCapacity
+	// threads, additional threads serve metrics and rejections
+	server = HttpServer.create(address, 0);
+	executor = Executors.newFixedThreadPool(maxConcurrentBuilds + queueCapacity + 2);
+	server.setExecutor(executor);
+	server.createContext("/build", new HttpHandler() {
+	    @Override
+	    public void handle(HttpExchange exchange) throws IOException {
+		try {
+		    handleBuildRequest(exchange);
+		} catch (IOException | RuntimeException e) {
+		    System.err.println("Request " + exchange.getRequestURI() + " failed: " + e.getMessage());
+		    sendTextResponse(exchange, 500, "Request failed.");
+		} finally {
+		    exchange.close();
+		}
+	    }
+	});
+	server.createContext("/validate", new HttpHandler() {
+	    @Override
+	    public void handle(HttpExchange exchange) throws IOException {
+		try {
+		    handleValidationRequest(exchange);
+		} catch (IOException | RuntimeException e) {
+		    System.err.println("Request " + exchange.getRequestURI() + " failed: " + e.getMessage());
+		    sendTextResponse(exchange, 500, "Request failed.");
+		} finally {
+		    exchange.close();
+		}
+	    }
+	});
+	server.createContext("/metrics", new HttpHandler() {
+	    @Override
+	    public void handle(HttpExchange exchange) throws IOException {
+		try {
+		    sendTextResponse(exchange, 200, createMetrics());
+		} finally {
+		    exchange.close();
+		}
+	    }
+	});
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public long getQueueTimeout() {
+	return queueTimeout;
+    }
+
+    public void setQueueTimeout(long queueTimeout) {
+	this.queueTimeout = queueTimeout;
+    }
+
+    public long getBuildTimeout() {
+	return buildTimeout;
+    }
+
+    public void setBuildTimeout(long buildTimeout) {
+	this.buildTimeout = Math.max(buildTimeout, 0);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Server methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Returns the address where the service listens.
+     *
+     * @return the address.
+     */
+    public InetSocketAddress getAddress() {
+	return server.getAddress();
+    }
+
+    /**
+     * Starts the service.
+     */
+    public void start() {
+	server.start();
+    }
+
+    /**
+     * Stops the service.
+     */
+    public void stop() {
+	server.stop(0);
+	executor.shutdownNow();
+    }
+
+    /**
+     * Handles a build request.
+     *
+     * @param exchange
+     *            the HTTP exchange.
+     * @throws IOException
+     *             if the request cannot be handled.
+     */
+    private void handleBuildRequest(HttpExchange exchange) throws IOException {
+	if (!"POST".equals(exchange.getRequestMethod())) {
+	    exchange.getResponseHeaders().set("Allow", "POST");
+	    sendTextResponse(exchange, 405, "Method not allowed.");
+	    return;
+	}
+
+	Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+	String libraryName = parameters.get("library");
+	if ((libraryName == null) || !LIBRARY_NAME_PATTERN.matcher(libraryName).matches()) {
+	    sendTextResponse(exchange, 400, "Parameter library must be a valid library name.");
+	    return;
+	}
+
+	long startTime = System.nanoTime();
+	if (!admissionPermits.tryAcquire()) {
+	    rejectedBuilds.incrementAndGet();
+	    exchange.getResponseHeaders().set("Retry-After", "1");
+	    sendTextResponse(exchange, 503, "Build queue is full.");
+	    return;
+	}
+
+	try {
+	    byte[] project = readRequestBody(exchange);
+	    if (project == null) {
+		sendTextResponse(exchange, 413, "Project configuration is too large.");
+		return;
+	    }
+
+	    queuedBuilds.incrementAndGet();
+	    boolean permitted;
+	    try {
+		permitted = buildPermits.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		permitted = false;
+	    } finally {
+		queuedBuilds.decrementAndGet();
+	    }
+
+	    if (!permitted) {
+		rejectedBuilds.incrementAndGet();
+		exchange.getResponseHeaders().set("Retry-After", "1");
+		sendTextResponse(exchange, 503, "Build has not been started within the queue timeout.");
+		return;
+	    }
+
+	    long queueTime = (System.nanoTime() - startTime) / 1000000;
+	    queueLatencies.record(queueTime);
+	    activeBuilds.incrementAndGet();
+	    try {
+		build(exchange, project, libraryName, parameters, startTime, queueTime);
+	    } finally {
+		activeBuilds.decrementAndGet();
+		buildPermits.release();
+	    }
+	} finally {
+	    admissionPermits.release();
+	}
+    }
+
+    /**
+     * Builds a library and streams it to the client as a zip archive.
+     *
+     * @param exchange
+     *            the HTTP exchange.
+     * @param project
+     *            the project configuration.
+     * @param libraryName
+     *            the name of library.
+     * @param parameters
+     *            the query parameters of request.
+     * @param startTime
+     *            the time (in nanoseconds) when the request was received.
+     * @param queueTime
+     *            the time (in milliseconds) spent in the queue.
+     * @throws IOException
+     *             if the response cannot be sent.
+     */
+    private void build(HttpExchange exchange, byte[] project, String libraryName, Map<String, String> parameters,
+	    long startTime, long queueTime) throws IOException {
+	File workDirectory = Files.createTempDirectory("acp-build").toFile();
+	try {
+	    File projectFile = new File(workDirectory, "project.xml");
+	    Files.write(projectFile.toPath(), project);
+
+	    CompilationSettings settings = new CompilationSettings();
+	    settings.setProjectConfigurationFile(projectFile);
+	    settings.setLibraryName(libraryName);
+	    settings.setOutputLibraryPath(new File(workDirectory, "out"));
+	    settings.setSourceFilesDirectoryMerging(Boolean.parseBoolean(parameters.get("merge")));
+	    settings.setDebugMode(Boolean.parseBoolean(parameters.get("debug")));
+	    settings.setExportMode(CompilationSettings.ExportMode.COPY);
+
+	    // The library is not written to the disk, it is streamed from the
+	    // output sink directly to the response
+	    ZipOutputSink outputSink = new ZipOutputSink(settings.getOutputLibraryPath());
+	    CompilationMonitor monitor = new CompilationMonitor();
+	    monitor.setTimeout(buildTimeout);
+	    long compileStartTime = System.nanoTime();
+	    try {
+		compiler.compile(settings, outputSink, monitor);
+	    } catch (CompilationCancelledException e) {
+		timedOutBuilds.incrementAndGet();
+		setTimingHeaders(exchange, queueTime, (System.nanoTime() - compileStartTime) / 1000000);
+		sendTextResponse(exchange, 504, e.getMessage() + "\n");
+		return;
+	    } catch (RuntimeException e) {
+		failedBuilds.incrementAndGet();
+		StringBuilder message = new StringBuilder();
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+		    message.append(cause.getMessage()).append('\n');
+		}
+		setTimingHeaders(exchange, queueTime, (System.nanoTime() - compileStartTime) / 1000000);
+		sendTextResponse(exchange, 422, message.toString());
+		return;
+	    }
+	    long compileTime = (System.nanoTime() - compileStartTime) / 1000000;
+
+	    setTimingHeaders(exchange, queueTime, compileTime);
+	    exchange.getResponseHeaders().set("Content-Type", "application/zip");
+	    exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + libraryName
+		    + ".zip\"");
+	    exchange.sendResponseHeaders(200, 0);
+	    try (OutputStream out = new BufferedOutputStream(exchange.getResponseBody())) {
+		outputSink.writeTo(out);
+	    }
+
+	    completedBuilds.incrementAndGet();
+	    buildLatencies.record((System.nanoTime() - startTime) / 1000000);
+	} finally {
+	    FileUtils.removeDirectory(workDirectory);
+	    workDirectory.delete();
+	}
+    }
+
+    /**
+     * Handles a validation request. The response code is 200 for a valid
+     * project and 422 for a project with problems.
+     *
+     * @param exchange
+     *            the HTTP exchange.
+     * @throws IOException
+     *             if the request cannot be handled.
+     */
+    private void handleValidationRequest(HttpExchange exchange) throws IOException {
+	if (!"POST".equals(exchange.getRequestMethod())) {
+	    exchange.getResponseHeaders().set("Allow", "POST");
+	    sendTextResponse(exchange, 405, "Method not allowed.");
+	    return;
+	}
+
+	byte[] project = readRequestBody(exchange);
+	if (project == null) {
+	    sendTextResponse(exchange, 413, "Project configuration is too large.");
+	    return;
+	}
+
+	ValidationReport report = compiler.validate(project);
+	completedValidations.incrementAndGet();
+	if (!report.isValid()) {
+	    invalidProjects.incrementAndGet();
+	}
+
+	exchange.getResponseHeaders().set("X-Validation-Problems", Integer.toString(report.getProblems().size()));
+	exchange.getResponseHeaders().set("Server-Timing", "validate;dur=" + (report.getValidationTime() / 1000.0));
+	sendTextResponse(exchange, report.isValid() ? 200 : 422, report.toString());
+    }
+
+    /**
+     * Sets response headers with durations of build phases.
+     *
+     * @param exchange
+     *            the HTTP exchange.
+     * @param queueTime
+     *            the time (in milliseconds) spent in the queue.
+     * @param compileTime
+     *            the time (in milliseconds) of compilation.
+     */
+    private static void setTimingHeaders(HttpExchange exchange, long queueTime, long compileTime) {
+	exchange.getResponseHeaders().set("X-Build-Queue-Time", Long.toString(queueTime));
+	exchange.getResponseHeaders().set("X-Build-Compile-Time", Long.toString(compileTime));
+	exchange.getResponseHeaders().set("Server-Timing", "queue;dur=" + queueTime + ", compile;dur=" + compileTime);
+    }
+
+    /**
+     * Creates metrics of the service in a plain text format (one metric per
+     * line).
+     *
+     * @return the metrics.
+     */
+    private String createMetrics() {
+	StringBuilder metrics = new StringBuilder();
+	metrics.append("acp_build_queue_depth ").append(queuedBuilds.get()).append('\n');
+	metrics.append("acp_build_active ").append(activeBuilds.get()).append('\n');
+	metrics.append("acp_build_completed_total ").append(completedBuilds.get()).append('\n');
+	metrics.append("acp_build_failed_total ").append(failedBuilds.get()).append('\n');
+	metrics.append("acp_build_timed_out_total ").append(timedOutBuilds.get()).append('\n');
+	metrics.append("acp_build_rejected_total ").append(rejectedBuilds.get()).append('\n');
+	metrics.append("acp_validation_completed_total ").append(completedValidations.get()).append('\n');
+	metrics.append("acp_validation_invalid_total ").append(invalidProjects.get()).append('\n');
+	appendLatencyMetrics(metrics, "acp_build_queue_time_ms", queueLatencies);
+	appendLatencyMetrics(metrics, "acp_build_latency_ms", buildLatencies);
+	ModuleDescriptorCache descriptorCache = compiler.getDescriptorCache();
+	if (descriptorCache != null) {
+	    metrics.append("acp_descriptor_cache_hits_total ").append(descriptorCache.getHits()).append('\n');
+	    metrics.append("acp_descriptor_cache_misses_total ").append(descriptorCache.getMisses()).append('\n');
+	}
+	return metrics.toString();
+    }
+
+    /**
+     * Appends percentiles of latencies to metrics.
+     *
+     * @param metrics
+     *            the metrics.
+     * @param name
+     *            the name of metric.
+     * @param window
+     *            the window with latencies.
+     */
+    private static void appendLatencyMetrics(StringBuilder metrics, String name, LatencyWindow window) {
+	long[] latencies = window.getSortedLatencies();
+	for (double percentile : PERCENTILES) {
+	    metrics.append(name).append("{quantile=\"").append(percentile / 100).append("\"} ")
+		    .append(LatencyWindow.getPercentile(latencies, percentile)).append('\n');
+	}
+	metrics.append(name).append("_max ").append(LatencyWindow.getPercentile(latencies, 100)).append('\n');
+    }
+
+    /**
+     * Parses query parameters of a request.
+     *
+     * @param query
+     *            the raw query (can be null).
+     * @return the map from names to values of parameters.
+     */
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+	Map<String, String> parameters = new HashMap<String, String>();
+	if (query == null) {
+	    return parameters;
+	}
+
+	for (String parameter : query.split("&")) {
+	    int idx = parameter.indexOf('=');
+	    String name = (idx < 0) ? parameter : parameter.substring(0, idx);
+	    String value = (idx < 0) ? "true" : parameter.substring(idx + 1);
+	    parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+	}
+
+	return parameters;
+    }
+
+    /**
+     * Sends a plain text response.
+     *
+     * @param exchange
+     *            the HTTP exchange.
+     * @param responseCode
+     *            the response code.
+     * @param text
+     *            the text of response.
+     * @throws IOException
+     *             if the response cannot be sent.
+     */
+    private static void sendTextResponse(HttpExchange exchange, int responseCode, String text) throws IOException {
+	byte[] content = text.getBytes(StandardCharsets.UTF_8);
+	exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+	exchange.sendResponseHeaders(responseCode, content.length);
+	try (OutputStream out = exchange.getResponseBody()) {
+	    out.write(content);
+	}
+    }
+
+    /**
+     * Reads the body of a request.
+     *
+     * @param exchange
+     *            the HTTP exchange.
+     * @return the body or null, if the body is too large.
+     * @throws IOException
+     *             if the body cannot be read.
+     */
+    private static byte[] readRequestBody(HttpExchange exchange) throws IOException {
+	ByteArrayOutputStream content = new ByteArrayOutputStream();
+	try (InputStream in = exchange.getRequestBody()) {
+	    byte[] buffer = new byte[8192];
+	    int read;
+	    while ((read = in.read(buffer)) >= 0) {
+		if (content.size() + read > MAX_PROJECT_SIZE) {
+		    return null;
+		}
+		content.write(buffer, 0, read);
+	    }
+	}
+
+	return content.toByteArray();
+    }
+}
@@ -0,0 +1,112 @@
+package net.acprog.builder.compilation;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Variant of a project build. A variant is the base project with overridden
+ * values of some component properties that is compiled to its own output
+ * library, optionally for another target platform.
+ */
+public class BuildVariant {
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Name of the variant.
+     */
+    private final String name;
+
+    /**
+     * Directory where the library of the variant will be created.
+     */
+    private final File outputLibraryPath;
+
+    /**
+     * Name of target platform (null, if the platform of the project is used).
+     */
+    private String platformName;
+
+    /**
+     * Overridden property values of components (map from component names to
+     * maps from property names to values).
+     */
+    private final Map<String, Map<String, String>> propertyOverrides = new TreeMap<String, Map<String, String>>();
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs a build variant.
+     *
+     * @param name
+     *            the name of variant.
+     * @param outputLibraryPath
+     *            the directory where the library of the variant will be
+     *            created.
+     */
+    public BuildVariant(String name, File outputLibraryPath) {
+	this.name = name;
+	this.outputLibraryPath = outputLibraryPath;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public String getName() {
+	return name;
+    }
+
+    public File getOutputLibraryPath() {
+	return outputLibraryPath;
+    }
+
+    public String getPlatformName() {
+	return platformName;
+    }
+
+    public void setPlatformName(String platformName) {
+	this.platformName = platformName;
+    }
+
+    /**
+     * Overrides value of a component property.
+     *
+     * @param componentName
+     *            the name of component.
+     * @param propertyName
+     *            the name of property.
+     * @param value
+     *            the value of property in the variant.
+     */
+    public void setProperty(String componentName, String propertyName, String value) {
+	Map<String, String> componentOverrides = propertyOverrides.get(componentName);
+	if (componentOverrides == null) {
+	    componentOverrides = new TreeMap<String, String>();
+	    propertyOverrides.put(componentName, componentOverrides);
+	}
+
+	componentOverrides.put(propertyName, value);
+    }
+
+    /**
+     * Returns overridden property values of components.
+     *
+     * @return the unmodifiable map from component names to maps from property
+     *         names to values.
+     */
+    public Map<String, Map<String, String>> getPropertyOverrides() {
+	return Collections.unmodifiableMap(propertyOverrides);
+    }
+
+    @Override
+    public String toString() {
+	return name;
+    }
+}
@@ -0,0 +1,23 @@
+package net.acprog.builder.compilation;
+
+/**
+ * Exception indicating that a compilation has been cancelled or that it has
+ * exceeded its time limit.
+ */
+@SuppressWarnings("serial")
+public class CompilationCancelledException extends CompilationException {
+
+    /**
+     * Indicates whether the compilation has exceeded its time limit.
+     */
+    private final boolean timedOut;
+
+    public CompilationCancelledException(String message, boolean timedOut) {
+	super(message);
+	this.timedOut = timedOut;
+    }
+
+    public boolean isTimedOut() {
+	return timedOut;
+    }
+}
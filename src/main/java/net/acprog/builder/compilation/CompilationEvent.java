@@ -0,0 +1,214 @@
+package net.acprog.builder.compilation;
+
+/**
+ * Event reporting progress of a compilation. A phase of compilation consists
+ * of one or more steps (e.g., export of each module or execution of each
+ * content generator), an event is fired when a step starts and when it is
+ * completed.
+ */
+public class CompilationEvent {
+
+    // ---------------------------------------------------------------------------
+    // Phases of compilation
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Phase of compilation.
+     */
+    public enum Phase {
+	/**
+	 * Loading of the project configuration.
+	 */
+	PROJECT_LOADING("Project loading"),
+
+	/**
+	 * Loading of modules required by the project including their
+	 * dependencies.
+	 */
+	MODULE_RESOLUTION("Module resolution"),
+
+	/**
+	 * Validation of the project with respect to modules and the target
+	 * platform.
+	 */
+	VALIDATION("Validation"),
+
+	/**
+	 * Planning of the export of files of a module.
+	 */
+	MODULE_EXPORT("Module export"),
+
+	/**
+	 * Copying of exported module files to the library.
+	 */
+	FILE_EXPORT("File export"),
+
+	/**
+	 * Preparation of outputs by a content generator.
+	 */
+	CONTENT_PREPARATION("Content preparation"),
+
+	/**
+	 * Generation of outputs by a content generator.
+	 */
+	CONTENT_GENERATION("Content generation"),
+
+	/**
+	 * Writing of the library: export of module files and writing of changed
+	 * generated outputs.
+	 */
+	COMMIT("Commit");
+
+	/**
+	 * Human readable name of the phase.
+	 */
+	private final String title;
+
+	private Phase(String title) {
+	    this.title = title;
+	}
+
+	public String getTitle() {
+	    return title;
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Phase of compilation.
+     */
+    private final Phase phase;
+
+    /**
+     * Subject of the step, e.g., the name of module or content generator (null,
+     * if the step has no subject).
+     */
+    private final String subject;
+
+    /**
+     * Sequence number of the step within the phase (starting with 1).
+     */
+    private final int step;
+
+    /**
+     * Number of steps of the phase.
+     */
+    private final int steps;
+
+    /**
+     * Indicates whether the step has been completed.
+     */
+    private final boolean completed;
+
+    /**
+     * Number of items (modules, components or files) processed by the
+     * completed step.
+     */
+    private final long items;
+
+    /**
+     * Duration of the completed step in milliseconds.
+     */
+    private final long elapsedTime;
+
+    /**
+     * Time in milliseconds from the start of compilation.
+     */
+    private final long compilationTime;
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the compilation event.
+     *
+     * @param phase
+     *            the phase of compilation.
+     * @param subject
+     *            the subject of the step (null, if the step has no subject).
+     * @param step
+     *            the sequence number of the step within the phase.
+     * @param steps
+     *            the number of steps of the phase.
+     * @param completed
+     *            true, if the step has been completed, false, if it has been
+     *            started.
+     * @param items
+     *            the number of items processed by the completed step.
+     * @param elapsedTime
+     *            the duration of the completed step in milliseconds.
+     * @param compilationTime
+     *            the time in milliseconds from the start of compilation.
+     */
+    public CompilationEvent(Phase phase, String subject, int step, int steps, boolean completed, long items,
+	    long elapsedTime, long compilationTime) {
+	this.phase = phase;
+	this.subject = subject;
+	this.step = step;
+	this.steps = steps;
+	this.completed = completed;
+	this.items = items;
+	this.elapsedTime = elapsedTime;
+	this.compilationTime = compilationTime;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public Phase getPhase() {
+	return phase;
+    }
+
+    public String getSubject() {
+	return subject;
+    }
+
+    public int getStep() {
+	return step;
+    }
+
+    public int getSteps() {
+	return steps;
+    }
+
+    public boolean isCompleted() {
+	return completed;
+    }
+
+    public long getItems() {
+	return items;
+    }
+
+    public long getElapsedTime() {
+	return elapsedTime;
+    }
+
+    public long getCompilationTime() {
+	return compilationTime;
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder sb = new StringBuilder(phase.getTitle());
+	if (steps > 1) {
+	    sb.append(" [").append(step).append('/').append(steps).append(']');
+	}
+
+	if (subject != null) {
+	    sb.append(' ').append(subject);
+	}
+
+	if (completed) {
+	    sb.append(" completed in ").append(elapsedTime).append(" ms (").append(items).append(" item(s))");
+	} else {
+	    sb.append(" started");
+	}
+
+	return sb.toString();
+    }
+}
@@ -0,0 +1,16 @@
+package net.acprog.builder.compilation;
+
+/**
+ * Listener notified about progress of a compilation.
+ */
+public interface CompilationListener {
+
+    /**
+     * Invoked when a step of compilation is started or completed. The method
+     * is invoked by the thread executing the compilation.
+     *
+     * @param event
+     *            the compilation event.
+     */
+    void compilationProgress(CompilationEvent event);
+}
@@ -0,0 +1,218 @@
+package net.acprog.builder.compilation;
+
+/**
+ * Monitor of a compilation that reports progress to a listener and allows to
+ * abort the compilation. Cancellation is cooperative: the compiler checks the
+ * monitor between units of work (steps of compilation, loads of modules and
+ * copies of files) and aborts the compilation with a
+ * {@link CompilationCancelledException}, if the compilation has been
+ * cancelled or its time limit has been exceeded. Once the compiler starts
+ * writing the library, the compilation is no longer aborted.
+ */
+public class CompilationMonitor {
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Listener notified about progress of the compilation (null, if progress
+     * is not reported).
+     */
+    private final CompilationListener listener;
+
+    /**
+     * Time limit of the compilation in milliseconds (0, if the compilation is
+     * not limited).
+     */
+    private volatile long timeout;
+
+    /**
+     * Time (in nanoseconds) when the compilation started.
+     */
+    private volatile long startTime = System.nanoTime();
+
+    /**
+     * Indicates whether the compilation has been cancelled.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Indicates whether the compilation is writing the library and it can no
+     * longer be aborted.
+     */
+    private volatile boolean committing;
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the compilation monitor without a listener.
+     */
+    public CompilationMonitor() {
+	this(null);
+    }
+
+    /**
+     * Constructs the compilation monitor.
+     *
+     * @param listener
+     *            the listener notified about progress of the compilation
+     *            (null, if progress is not reported).
+     */
+    public CompilationMonitor(CompilationListener listener) {
+	this.listener = listener;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public long getTimeout() {
+	return timeout;
+    }
+
+    /**
+     * Sets the time limit of the compilation measured from the start of
+     * compilation.
+     *
+     * @param timeout
+     *            the time limit in milliseconds (0, if the compilation is not
+     *            limited).
+     */
+    public void setTimeout(long timeout) {
+	this.timeout = Math.max(timeout, 0);
+    }
+
+    public boolean isCancelled() {
+	return cancelled;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Control of compilation
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Requests cancellation of the compilation. The compilation is aborted at
+     * the next check of the monitor.
+     */
+    public void cancel() {
+	cancelled = true;
+    }
+
+    /**
+     * Marks the start of compilation. The time limit is measured from this
+     * moment.
+     */
+    void start() {
+	startTime = System.nanoTime();
+	committing = false;
+    }
+
+    /**
+     * Marks the start of writing the library. The monitor is checked for the
+     * last time and later checks do not abort the compilation, hence the
+     * library is never left partially written.
+     *
+     * @throws CompilationCancelledException
+     *             if the compilation should be aborted.
+     */
+    void commitStarted() throws CompilationCancelledException {
+	checkCancellation();
+	committing = true;
+    }
+
+    /**
+     * Returns whether the time limit of the compilation has been exceeded.
+     *
+     * @return true, if the time limit has been exceeded, false otherwise.
+     */
+    public boolean isTimedOut() {
+	long limit = timeout;
+	return (limit > 0) && (getCompilationTime() >= limit);
+    }
+
+    /**
+     * Aborts the compilation, if it has been cancelled or its time limit has
+     * been exceeded.
+     *
+     * @throws CompilationCancelledException
+     *             if the compilation should be aborted.
+     */
+    public void checkCancellation() throws CompilationCancelledException {
+	if (committing) {
+	    return;
+	}
+
+	if (cancelled) {
+	    throw new CompilationCancelledException("Compilation has been cancelled.", false);
+	}
+
+	if (isTimedOut()) {
+	    throw new CompilationCancelledException("Compilation has exceeded the time limit of " + timeout
+		    + " ms.", true);
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Progress reporting
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Reports start of a step of compilation. The compilation is aborted, if
+     * it has been cancelled or its time limit has been exceeded.
+     *
+     * @param phase
+     *            the phase of compilation.
+     * @param subject
+     *            the subject of the step (null, if the step has no subject).
+     * @param step
+     *            the sequence number of the step within the phase.
+     * @param steps
+     *            the number of steps of the phase.
+     * @return the time (in nanoseconds) when the step started.
+     */
+    long stepStarted(CompilationEvent.Phase phase, String subject, int step, int steps) {
+	checkCancellation();
+	if (listener != null) {
+	    listener.compilationProgress(new CompilationEvent(phase, subject, step, steps, false, 0, 0,
+		    getCompilationTime()));
+	}
+
+	return System.nanoTime();
+    }
+
+    /**
+     * Reports completion of a step of compilation.
+     *
+     * @param phase
+     *            the phase of compilation.
+     * @param subject
+     *            the subject of the step (null, if the step has no subject).
+     * @param step
+     *            the sequence number of the step within the phase.
+     * @param steps
+     *            the number of steps of the phase.
+     * @param items
+     *            the number of items processed by the step.
+     * @param stepStartTime
+     *            the time (in nanoseconds) when the step started.
+     */
+    void stepCompleted(CompilationEvent.Phase phase, String subject, int step, int steps, long items,
+	    long stepStartTime) {
+	if (listener != null) {
+	    listener.compilationProgress(new CompilationEvent(phase, subject, step, steps, true, items, (System
+		    .nanoTime() - stepStartTime) / 1000000, getCompilationTime()));
+	}
+    }
+
+    /**
+     * Returns the time from the start of compilation.
+     *
+     * @return the time in milliseconds.
+     */
+    private long getCompilationTime() {
+	return (System.nanoTime() - startTime) / 1000000;
+    }
+}
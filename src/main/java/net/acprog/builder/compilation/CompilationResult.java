@@ -0,0 +1,193 @@
+package net.acprog.builder.compilation;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Report of a completed compilation.
+ */
+public class CompilationResult {
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Indicates whether the library has been restored from the build cache.
+     */
+    private boolean restoredFromCache;
+
+    /**
+     * Number of module files exported to the output library.
+     */
+    private long exportedFiles;
+
+    /**
+     * Number of bytes copied to the output library.
+     */
+    private long exportedBytes;
+
+    /**
+     * Number of exported module files that are links to module files.
+     */
+    private long linkedFiles;
+
+    /**
+     * Number of module files that were up to date and not copied.
+     */
+    private long skippedFiles;
+
+    /**
+     * Number of stale files removed from the output library.
+     */
+    private long removedFiles;
+
+    /**
+     * Duration of export of module files in milliseconds.
+     */
+    private long exportTime;
+
+    /**
+     * Generated output files that were written.
+     */
+    private final List<File> touchedOutputs = new ArrayList<File>();
+
+    /**
+     * Generated output files whose content has not changed.
+     */
+    private final List<File> unchangedOutputs = new ArrayList<File>();
+
+    /**
+     * Names of modules used by the project (empty, if the library has been
+     * restored from the build cache).
+     */
+    private final List<String> moduleNames = new ArrayList<String>();
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public boolean isRestoredFromCache() {
+	return restoredFromCache;
+    }
+
+    void setRestoredFromCache(boolean restoredFromCache) {
+	this.restoredFromCache = restoredFromCache;
+    }
+
+    public long getExportedFiles() {
+	return exportedFiles;
+    }
+
+    void setExportedFiles(long exportedFiles) {
+	this.exportedFiles = exportedFiles;
+    }
+
+    public long getExportedBytes() {
+	return exportedBytes;
+    }
+
+    void setExportedBytes(long exportedBytes) {
+	this.exportedBytes = exportedBytes;
+    }
+
+    public long getLinkedFiles() {
+	return linkedFiles;
+    }
+
+    void setLinkedFiles(long linkedFiles) {
+	this.linkedFiles = linkedFiles;
+    }
+
+    public long getSkippedFiles() {
+	return skippedFiles;
+    }
+
+    void setSkippedFiles(long skippedFiles) {
+	this.skippedFiles = skippedFiles;
+    }
+
+    public long getRemovedFiles() {
+	return removedFiles;
+    }
+
+    void setRemovedFiles(long removedFiles) {
+	this.removedFiles = removedFiles;
+    }
+
+    public long getExportTime() {
+	return exportTime;
+    }
+
+    void setExportTime(long exportTime) {
+	this.exportTime = exportTime;
+    }
+
+    /**
+     * Returns the generated output files that were (re)written by the
+     * compilation.
+     * 
+     * @return the list of touched output files.
+     */
+    public synchronized List<File> getTouchedOutputs() {
+	return Collections.unmodifiableList(new ArrayList<File>(touchedOutputs));
+    }
+
+    /**
+     * Returns the generated output files that were not rewritten since their
+     * content has not changed.
+     * 
+     * @return the list of unchanged output files.
+     */
+    public synchronized List<File> getUnchangedOutputs() {
+	return Collections.unmodifiableList(new ArrayList<File>(unchangedOutputs));
+    }
+
+    /**
+     * Returns the names of modules used by the project.
+     * 
+     * @return the ordered list of module names (empty, if the library has
+     *         been restored from the build cache).
+     */
+    public synchronized List<String> getModuleNames() {
+	return Collections.unmodifiableList(new ArrayList<String>(moduleNames));
+    }
+
+    synchronized void setModuleNames(Collection<String> moduleNames) {
+	this.moduleNames.clear();
+	this.moduleNames.addAll(new TreeSet<String>(moduleNames));
+    }
+
+    /**
+     * Records a generated output file.
+     * 
+     * @param outputFile
+     *            the output file.
+     * @param touched
+     *            true, if the file has been written, false if its content
+     *            has not changed.
+     */
+    synchronized void addGeneratedOutput(File outputFile, boolean touched) {
+	if (touched) {
+	    touchedOutputs.add(outputFile);
+	} else {
+	    unchangedOutputs.add(outputFile);
+	}
+    }
+
+    @Override
+    public String toString() {
+	if (restoredFromCache) {
+	    return "library restored from build cache";
+	}
+
+	return exportedFiles + " file(s) exported (" + linkedFiles + " linked, " + exportedBytes + " bytes copied), "
+		+ skippedFiles + " file(s) up to date, " + removedFiles + " stale file(s) removed in " + exportTime
+		+ " ms, " + touchedOutputs.size() + " of " + (touchedOutputs.size() + unchangedOutputs.size())
+		+ " generated file(s) updated";
+    }
+}
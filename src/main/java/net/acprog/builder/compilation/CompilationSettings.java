@@ -18,6 +18,24 @@ public class CompilationSettings {
 	ARRAY
     }
 
+    // ---------------------------------------------------------------------------
+    // Export mode
+    // ---------------------------------------------------------------------------
+
+    public static enum ExportMode {
+	/**
+	 * Module files are copied to the output library.
+	 */
+	COPY,
+
+	/**
+	 * Module files are hard linked to the output library. If a hard link
+	 * cannot be created, a symbolic link is created. If linking fails, the
+	 * file is copied.
+	 */
+	LINK
+    }
+
     // ---------------------------------------------------------------------------
     // Instance variables
     // ---------------------------------------------------------------------------
@@ -49,11 +67,50 @@ public class CompilationSettings {
      */
     private boolean debugMode;
 
+    /**
+     * Indicates whether module files are exported incrementally, i.e., only
+     * changed files are copied and stale files are removed.
+     */
+    private boolean incrementalExport;
+
+    /**
+     * Way how module files are exported to the output library.
+     */
+    private ExportMode exportMode = ExportMode.COPY;
+
     /**
      * Algorithms and strategy used by generated looper code.
      */
     private LooperStrategy looperStrategy = LooperStrategy.ARRAY;
 
+    // ---------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs default settings.
+     */
+    public CompilationSettings() {
+
+    }
+
+    /**
+     * Constructs a copy of settings.
+     * 
+     * @param settings
+     *            the settings to be copied.
+     */
+    public CompilationSettings(CompilationSettings settings) {
+	projectConfigurationFile = settings.projectConfigurationFile;
+	outputLibraryPath = settings.outputLibraryPath;
+	libraryName = settings.libraryName;
+	sourceFilesDirectoryMerging = settings.sourceFilesDirectoryMerging;
+	debugMode = settings.debugMode;
+	incrementalExport = settings.incrementalExport;
+	exportMode = settings.exportMode;
+	looperStrategy = settings.looperStrategy;
+    }
+
     // ---------------------------------------------------------------------------
     // Setters and getters
     // ---------------------------------------------------------------------------
@@ -106,6 +163,22 @@ public class CompilationSettings {
 	this.debugMode = debugMode;
     }
 
+    public boolean isIncrementalExport() {
+	return incrementalExport;
+    }
+
+    public void setIncrementalExport(boolean incrementalExport) {
+	this.incrementalExport = incrementalExport;
+    }
+
+    public ExportMode getExportMode() {
+	return exportMode;
+    }
+
+    public void setExportMode(ExportMode exportMode) {
+	this.exportMode = exportMode;
+    }
+
     // ---------------------------------------------------------------------------
     // Specific getters for arduino 1.6 compatible libraries.
     // ---------------------------------------------------------------------------
@@ -156,4 +229,14 @@ public class CompilationSettings {
     public File getExampleFile() {
 	return new File(getLibraryDirectory(), "examples/" + libraryName + "Skeleton/" + libraryName + "Skeleton.ino");
     }
+
+    /**
+     * Returns the file with manifest of exported module files used by
+     * incremental export.
+     * 
+     * @return the manifest file.
+     */
+    public File getExportManifestFile() {
+	return new File(getLibraryDirectory(), ".acp-export");
+    }
 }
@@ -0,0 +1,355 @@
+package net.acprog.builder.compilation;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Manifest of module files exported to a library directory. For each exported
+ * file, the manifest records its path relative to the library directory, its
+ * size, CRC32 checksum of its content and modification times of the source
+ * and the exported file. The manifest allows to skip export of files that
+ * have not been changed since the previous build and to remove exported files
+ * that no longer belong to any module.
+ */
+public class ExportManifest {
+
+    // ---------------------------------------------------------------------------
+    // Configuration constants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Header (the first line) of manifest files.
+     */
+    private static final String MANIFEST_HEADER = "# ACP export manifest 1";
+
+    // ---------------------------------------------------------------------------
+    // Manifest record
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Fingerprint of an exported file.
+     */
+    private static class Record {
+	/**
+	 * Size of the file in bytes.
+	 */
+	final long size;
+
+	/**
+	 * CRC32 checksum of the file content.
+	 */
+	final long checksum;
+
+	/**
+	 * Time of the last modification of the source file.
+	 */
+	final long sourceLastModified;
+
+	/**
+	 * Time of the last modification of the exported file.
+	 */
+	final long exportLastModified;
+
+	Record(long size, long checksum, long sourceLastModified, long exportLastModified) {
+	    this.size = size;
+	    this.checksum = checksum;
+	    this.sourceLastModified = sourceLastModified;
+	    this.exportLastModified = exportLastModified;
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Library directory to which paths in the manifest are relative.
+     */
+    private final File baseDirectory;
+
+    /**
+     * Records of the previous build.
+     */
+    private final Map<String, Record> previousRecords;
+
+    /**
+     * Records of the current build.
+     */
+    private final Map<String, Record> records = new ConcurrentHashMap<String, Record>();
+
+    /**
+     * Number of files that were exported.
+     */
+    private final AtomicInteger exportedFiles = new AtomicInteger();
+
+    /**
+     * Number of files whose export was skipped since they were up to date.
+     */
+    private final AtomicInteger skippedFiles = new AtomicInteger();
+
+    /**
+     * Number of stale files that were removed.
+     */
+    private int removedFiles;
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the manifest.
+     *
+     * @param baseDirectory
+     *            the library directory.
+     * @param previousRecords
+     *            the records of the previous build.
+     */
+    private ExportManifest(File baseDirectory, Map<String, Record> previousRecords) {
+	this.baseDirectory = baseDirectory;
+	this.previousRecords = previousRecords;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public int getExportedFiles() {
+	return exportedFiles.get();
+    }
+
+    public int getSkippedFiles() {
+	return skippedFiles.get();
+    }
+
+    public int getRemovedFiles() {
+	return removedFiles;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Manifest methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Checks whether a source file has to be exported to the destination file.
+     * If the destination file is up to date, it is recorded in the manifest as
+     * exported. Otherwise, the caller is expected to export the file and call
+     * {@link #fileExported(Path, File, long)} or
+     * {@link #fileExported(Path, File)}, if the file has been linked.
+     *
+     * @param source
+     *            the source file.
+     * @param dest
+     *            the destination file.
+     * @return true, if the file has to be exported, false if the destination
+     *         file is up to date.
+     * @throws IOException
+     *             if the source file cannot be read.
+     */
+    public boolean needsExport(Path source, File dest) throws IOException {
+	String path = getRelativePath(dest);
+	Record previousRecord = previousRecords.get(path);
+	if ((previousRecord == null) || !dest.isFile() || (dest.length() != previousRecord.size)
+		|| (dest.lastModified() != previousRecord.exportLastModified)) {
+	    return true;
+	}
+
+	long size = Files.size(source);
+	long sourceLastModified = Files.getLastModifiedTime(source).toMillis();
+	if (size != previousRecord.size) {
+	    return true;
+	}
+
+	// Content of a touched source file is compared by checksum
+	if (sourceLastModified != previousRecord.sourceLastModified) {
+	    if (computeChecksum(source) != previousRecord.checksum) {
+		return true;
+	    }
+	}
+
+	records.put(path, new Record(size, previousRecord.checksum, sourceLastModified,
+		previousRecord.exportLastModified));
+	skippedFiles.incrementAndGet();
+	return false;
+    }
+
+    /**
+     * Records a file that has been exported as a link. The checksum is
+     * computed from the source file, since the file has not been read.
+     *
+     * @param source
+     *            the source file.
+     * @param dest
+     *            the exported file.
+     * @throws IOException
+     *             if the source file cannot be read.
+     */
+    public void fileExported(Path source, File dest) throws IOException {
+	fileExported(source, dest, computeChecksum(source));
+    }
+
+    /**
+     * Records a file that has been exported by a copy.
+     *
+     * @param source
+     *            the source file.
+     * @param dest
+     *            the exported file.
+     * @param checksum
+     *            the CRC32 checksum of the copied content.
+     * @throws IOException
+     *             if attributes of the source file cannot be read.
+     */
+    public void fileExported(Path source, File dest, long checksum) throws IOException {
+	records.put(getRelativePath(dest), new Record(Files.size(source), checksum, Files.getLastModifiedTime(
+		source).toMillis(), dest.lastModified()));
+	exportedFiles.incrementAndGet();
+    }
+
+    /**
+     * Records an exported file that has been restored from the build cache.
+     * The modification time of its source file is not known, hence the source
+     * file is compared with the restored file by checksum in the next build.
+     *
+     * @param dest
+     *            the restored file.
+     * @throws IOException
+     *             if the restored file cannot be read.
+     */
+    public void fileRestored(File dest) throws IOException {
+	records.put(getRelativePath(dest), new Record(dest.length(), computeChecksum(dest.toPath()), 0, dest
+		.lastModified()));
+    }
+
+    /**
+     * Removes files that were exported by the previous build but have not been
+     * exported by the current build. Directories that become empty are
+     * removed as well.
+     */
+    public void removeStaleFiles() {
+	for (String path : previousRecords.keySet()) {
+	    if (records.containsKey(path)) {
+		continue;
+	    }
+
+	    File staleFile = new File(baseDirectory, path);
+	    if (staleFile.isFile() && staleFile.delete()) {
+		removedFiles++;
+	    }
+
+	    // Remove empty parent directories
+	    File dir = staleFile.getParentFile();
+	    while ((dir != null) && !dir.equals(baseDirectory)) {
+		String[] content = dir.list();
+		if ((content == null) || (content.length > 0) || !dir.delete()) {
+		    break;
+		}
+		dir = dir.getParentFile();
+	    }
+	}
+    }
+
+    /**
+     * Returns the path of a file relative to the library directory.
+     *
+     * @param file
+     *            the file in the library directory.
+     * @return the relative path with slash as the path separator.
+     */
+    private String getRelativePath(File file) {
+	return baseDirectory.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Computes CRC32 checksum of a file.
+     *
+     * @param file
+     *            the file.
+     * @return the checksum.
+     * @throws IOException
+     *             if the file cannot be read.
+     */
+    private static long computeChecksum(Path file) throws IOException {
+	CRC32 crc = new CRC32();
+	try (InputStream in = new CheckedInputStream(Files.newInputStream(file), crc)) {
+	    byte[] buffer = new byte[8192];
+	    while (in.read(buffer) >= 0) {
+		// Checksum is updated by the stream
+	    }
+	}
+
+	return crc.getValue();
+    }
+
+    // ---------------------------------------------------------------------------
+    // Loading and saving
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Loads the manifest of the previous build. If the manifest file does not
+     * exist or it is not valid, the manifest without records is returned.
+     *
+     * @param manifestFile
+     *            the manifest file.
+     * @param baseDirectory
+     *            the library directory.
+     * @return the manifest.
+     */
+    public static ExportManifest load(File manifestFile, File baseDirectory) {
+	Map<String, Record> previousRecords = new HashMap<String, Record>();
+	if (manifestFile.isFile()) {
+	    try (BufferedReader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+		if (MANIFEST_HEADER.equals(reader.readLine())) {
+		    String line;
+		    while ((line = reader.readLine()) != null) {
+			String[] fields = line.split("\t", 5);
+			previousRecords.put(fields[4],
+				new Record(Long.parseLong(fields[0]), Long.parseLong(fields[1], 16),
+					Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+		    }
+		}
+	    } catch (Exception e) {
+		// Invalid manifest is handled as a missing manifest
+		previousRecords.clear();
+	    }
+	}
+
+	return new ExportManifest(baseDirectory, previousRecords);
+    }
+
+    /**
+     * Saves records of the current build to a manifest file.
+     *
+     * @param manifestFile
+     *            the manifest file.
+     * @throws IOException
+     *             if the manifest file cannot be written.
+     */
+    public void save(File manifestFile) throws IOException {
+	StringBuilder content = new StringBuilder();
+	content.append(MANIFEST_HEADER).append('\n');
+	for (Map.Entry<String, Record> entry : new TreeMap<String, Record>(records).entrySet()) {
+	    Record record = entry.getValue();
+	    content.append(record.size).append('\t');
+	    content.append(Long.toHexString(record.checksum)).append('\t');
+	    content.append(record.sourceLastModified).append('\t');
+	    content.append(record.exportLastModified).append('\t');
+	    content.append(entry.getKey()).append('\n');
+	}
+
+	File tmpFile = File.createTempFile("manifest", ".tmp", manifestFile.getAbsoluteFile().getParentFile());
+	try {
+	    Files.write(tmpFile.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+	    Files.move(tmpFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	} finally {
+	    tmpFile.delete();
+	}
+    }
+}
@@ -0,0 +1,459 @@
+package net.acprog.builder.compilation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Export engine that copies module files to the output library. Exported
+ * files are first collected by walking source directories, then all output
+ * directories are created in a single batch and finally files are copied in
+ * parallel using an executor. Files are written through an output sink.
+ * Instead of copying, files can be exported as links to module files, if the
+ * output sink supports links.
+ */
+public class FileExporter {
+
+    // ---------------------------------------------------------------------------
+    // Copy task
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Request to copy a file.
+     */
+    private static class CopyTask {
+	/**
+	 * Source file.
+	 */
+	final Path source;
+
+	/**
+	 * Destination file.
+	 */
+	final File dest;
+
+	CopyTask(Path source, File dest) {
+	    this.source = source;
+	    this.dest = dest;
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Manifest of exported files (null, if the export is not incremental).
+     */
+    private final ExportManifest exportManifest;
+
+    /**
+     * Indicates whether files are exported as links.
+     */
+    private final boolean linking;
+
+    /**
+     * Output directories to be created (ordered so that parent directories
+     * precede their subdirectories).
+     */
+    private final Set<File> directories = new TreeSet<File>();
+
+    /**
+     * Files to be copied.
+     */
+    private final List<CopyTask> copyTasks = new ArrayList<CopyTask>();
+
+    /**
+     * Number of copied files.
+     */
+    private final AtomicLong exportedFiles = new AtomicLong();
+
+    /**
+     * Number of copied bytes.
+     */
+    private final AtomicLong exportedBytes = new AtomicLong();
+
+    /**
+     * Number of files exported as links.
+     */
+    private final AtomicLong linkedFiles = new AtomicLong();
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the export engine.
+     *
+     * @param exportManifest
+     *            the manifest of exported files (null, if the export is not
+     *            incremental).
+     * @param exportMode
+     *            the way how files are exported.
+     */
+    public FileExporter(ExportManifest exportManifest, CompilationSettings.ExportMode exportMode) {
+	this.exportManifest = exportManifest;
+	this.linking = (exportMode == CompilationSettings.ExportMode.LINK);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public long getExportedFiles() {
+	return exportedFiles.get();
+    }
+
+    public long getExportedBytes() {
+	return exportedBytes.get();
+    }
+
+    /**
+     * Returns the number of files planned to be exported.
+     * 
+     * @return the number of planned files.
+     */
+    public int getPlannedFiles() {
+	return copyTasks.size();
+    }
+
+    /**
+     * Returns all destination files of the export including files that were
+     * up to date.
+     * 
+     * @return the list of destination files.
+     */
+    public List<File> getDestinations() {
+	List<File> result = new ArrayList<File>(copyTasks.size());
+	for (CopyTask copyTask : copyTasks) {
+	    result.add(copyTask.dest);
+	}
+
+	return result;
+    }
+
+    /**
+     * Returns the number of exported files that are links to module files.
+     * These files are included in the number of exported files.
+     * 
+     * @return the number of linked files.
+     */
+    public long getLinkedFiles() {
+	return linkedFiles.get();
+    }
+
+    // ---------------------------------------------------------------------------
+    // Planning of export
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Adds an output directory to be created.
+     *
+     * @param dir
+     *            the directory.
+     */
+    public void addDirectory(File dir) {
+	directories.add(dir);
+    }
+
+    /**
+     * Adds a file to be copied.
+     *
+     * @param source
+     *            the source file.
+     * @param dest
+     *            the destination file.
+     */
+    public void addFile(Path source, File dest) {
+	copyTasks.add(new CopyTask(source, dest));
+    }
+
+    /**
+     * Adds all files and subdirectories of a source directory to be copied to
+     * the destination directory.
+     *
+     * @param source
+     *            the source directory.
+     * @param dest
+     *            the destination directory.
+     */
+    public void addDirectoryTree(final Path source, final File dest) {
+	walk(source, new SimpleFileVisitor<Path>() {
+	    @Override
+	    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+		addDirectory(resolve(dest, source, dir));
+		return FileVisitResult.CONTINUE;
+	    }
+
+	    @Override
+	    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+		if (attrs.isRegularFile()) {
+		    addFile(file, resolve(dest, source, file));
+		}
+		return FileVisitResult.CONTINUE;
+	    }
+	});
+    }
+
+    /**
+     * Adds all files of a source directory to be copied to the destination
+     * directory in such a way that all files will be merged in the destination
+     * directory. The name of a file in the destination directory is formed by
+     * the prefix followed by names of subdirectories and the file name
+     * separated by underscore (underscores in names are escaped).
+     *
+     * @param source
+     *            the source directory.
+     * @param dest
+     *            the destination directory.
+     * @param filePrefix
+     *            the prefix added to all files from the source directory.
+     */
+    public void addDirectoryTreeMerged(final Path source, final File dest, final String filePrefix) {
+	if (!Files.exists(source)) {
+	    return;
+	}
+
+	addDirectory(dest);
+	walk(source, new SimpleFileVisitor<Path>() {
+	    @Override
+	    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+		if (attrs.isRegularFile()) {
+		    StringBuilder name = new StringBuilder(filePrefix);
+		    for (Path part : source.relativize(file)) {
+			if (name.length() > filePrefix.length()) {
+			    name.append('_');
+			}
+			name.append(underscoreEscape(getFileName(part)));
+		    }
+		    addFile(file, new File(dest, name.toString()));
+		}
+		return FileVisitResult.CONTINUE;
+	    }
+	});
+    }
+
+    /**
+     * Walks a directory tree.
+     *
+     * @param start
+     *            the root of the directory tree.
+     * @param visitor
+     *            the file visitor.
+     */
+    private void walk(Path start, FileVisitor<Path> visitor) {
+	try {
+	    Files.walkFileTree(start, visitor);
+	} catch (IOException e) {
+	    throw new CompilationException("Directory " + start.toUri() + " cannot be read.", e);
+	}
+    }
+
+    /**
+     * Resolves destination of a file in a copied directory tree.
+     *
+     * @param dest
+     *            the destination directory.
+     * @param source
+     *            the source directory.
+     * @param file
+     *            the file in the source directory.
+     * @return the destination of the file.
+     */
+    private static File resolve(File dest, Path source, Path file) {
+	File result = dest;
+	for (Path part : source.relativize(file)) {
+	    String name = getFileName(part);
+	    if (!name.isEmpty()) {
+		result = new File(result, name);
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Creates an export engine with the same planned export, but relocated
+     * from an output directory to another output directory. The relocated
+     * export does not require walking source directories again.
+     *
+     * @param directory
+     *            the output directory of the planned export.
+     * @param newDirectory
+     *            the output directory of the relocated export.
+     * @param exportManifest
+     *            the manifest of exported files of the relocated export
+     *            (null, if the export is not incremental).
+     * @param exportMode
+     *            the way how files are exported.
+     * @return the export engine with relocated export.
+     */
+    public FileExporter relocate(File directory, File newDirectory, ExportManifest exportManifest,
+	    CompilationSettings.ExportMode exportMode) {
+	FileExporter result = new FileExporter(exportManifest, exportMode);
+	for (File dir : directories) {
+	    result.addDirectory(relocate(dir, directory, newDirectory));
+	}
+
+	for (CopyTask copyTask : copyTasks) {
+	    result.addFile(copyTask.source, relocate(copyTask.dest, directory, newDirectory));
+	}
+
+	return result;
+    }
+
+    /**
+     * Relocates a file from a directory to another directory.
+     *
+     * @param file
+     *            the file in the directory.
+     * @param directory
+     *            the directory.
+     * @param newDirectory
+     *            the new directory.
+     * @return the relocated file.
+     */
+    private static File relocate(File file, File directory, File newDirectory) {
+	return newDirectory.toPath().resolve(directory.toPath().relativize(file.toPath())).toFile();
+    }
+
+    // ---------------------------------------------------------------------------
+    // Execution of export
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Creates all output directories and copies all files.
+     *
+     * @param executor
+     *            the executor used to copy files.
+     * @param outputSink
+     *            the output sink where files are written.
+     * @param monitor
+     *            the compilation monitor checked before each copy.
+     */
+    public void export(ExecutorService executor, final OutputSink outputSink, final CompilationMonitor monitor) {
+	// Create directories
+	for (File dir : directories) {
+	    try {
+		outputSink.createDirectory(dir);
+	    } catch (IOException e) {
+		throw new CompilationException("Directory " + dir.getAbsolutePath()
+			+ " does not exists or cannot be created.", e);
+	    }
+	}
+
+	// Copy files
+	List<Future<?>> copies = new ArrayList<Future<?>>(copyTasks.size());
+	for (final CopyTask copyTask : copyTasks) {
+	    copies.add(executor.submit(new Callable<Void>() {
+		@Override
+		public Void call() {
+		    monitor.checkCancellation();
+		    copyFile(copyTask.source, copyTask.dest, outputSink);
+		    return null;
+		}
+	    }));
+	}
+
+	// Wait for all copies, the first failure (in order of copy tasks) is
+	// reported
+	CompilationException failure = null;
+	for (Future<?> copy : copies) {
+	    try {
+		copy.get();
+	    } catch (ExecutionException e) {
+		if (failure == null) {
+		    failure = (e.getCause() instanceof CompilationException) ? (CompilationException) e.getCause()
+			    : new CompilationException("Export of files failed.", e.getCause());
+		}
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		throw new CompilationException("Export of files has been interrupted.", e);
+	    }
+	}
+
+	if (failure != null) {
+	    throw failure;
+	}
+    }
+
+    /**
+     * Copies regular file.
+     *
+     * @param source
+     *            the source file.
+     * @param dest
+     *            the destination file.
+     * @param outputSink
+     *            the output sink where the file is written.
+     */
+    private void copyFile(Path source, File dest, OutputSink outputSink) {
+	try {
+	    if ((exportManifest != null) && !exportManifest.needsExport(source, dest)) {
+		return;
+	    }
+
+	    if (linking && outputSink.linkFile(source, dest)) {
+		linkedFiles.incrementAndGet();
+		if (exportManifest != null) {
+		    exportManifest.fileExported(source, dest);
+		}
+	    } else {
+		long size = Files.size(source);
+		CRC32 checksum = (exportManifest != null) ? new CRC32() : null;
+		outputSink.copyFile(source, dest, checksum);
+		exportedBytes.addAndGet(size);
+		if (exportManifest != null) {
+		    exportManifest.fileExported(source, dest, checksum.getValue());
+		}
+	    }
+
+	    exportedFiles.incrementAndGet();
+	} catch (IOException e) {
+	    throw new CompilationException("File " + source.toUri() + " cannot be copied to "
+		    + dest.getAbsolutePath() + ".");
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Helper methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Returns the name of a file or directory without trailing separator
+     * (directories in zip archives can have a trailing slash).
+     *
+     * @param file
+     *            the file or directory.
+     * @return the name.
+     */
+    static String getFileName(Path file) {
+	Path fileName = file.getFileName();
+	if (fileName == null) {
+	    return "";
+	}
+
+	String name = fileName.toString();
+	if (name.endsWith("/")) {
+	    name = name.substring(0, name.length() - 1);
+	}
+
+	return name;
+    }
+
+    /**
+     * Escapes string in order to use underscore as a path separator.
+     *
+     * @param s
+     *            the string to be escaped.
+     * @return the escaped string.
+     */
+    static String underscoreEscape(String s) {
+	return s.replace("_", "__");
+    }
+}
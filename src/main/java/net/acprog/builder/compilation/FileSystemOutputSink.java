@@ -0,0 +1,134 @@
+package net.acprog.builder.compilation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
+
+import net.acprog.builder.utils.FileUtils;
+
+/**
+ * Output sink that writes files directly to the file system.
+ */
+public class FileSystemOutputSink implements OutputSink {
+
+    // ---------------------------------------------------------------------------
+    // Configuration constants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Minimal size of a file (in bytes) that is copied by transferring file
+     * channels.
+     */
+    private static final long TRANSFER_THRESHOLD = 64 * 1024;
+
+    // ---------------------------------------------------------------------------
+    // Output methods
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public boolean isPersistent() {
+	return true;
+    }
+
+    @Override
+    public void createDirectory(File directory) throws IOException {
+	if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+	    throw new IOException("Directory " + directory.getAbsolutePath()
+		    + " does not exists or cannot be created.");
+	}
+    }
+
+    @Override
+    public boolean writeFile(File file, byte[] content) throws IOException {
+	if (FileUtils.hasContent(file, content)) {
+	    return false;
+	}
+
+	createDirectory(file.getParentFile());
+	Files.write(file.toPath(), content);
+	return true;
+    }
+
+    /**
+     * Copies a file. Large files are transferred between file channels
+     * unless the checksum of the content is computed.
+     */
+    @Override
+    public void copyFile(Path source, File dest, Checksum checksum) throws IOException {
+	if (checksum != null) {
+	    try (InputStream in = new CheckedInputStream(Files.newInputStream(source), checksum)) {
+		Files.copy(in, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	    }
+	    return;
+	}
+
+	long size = Files.size(source);
+	if ((size >= TRANSFER_THRESHOLD) && (source.getFileSystem() == FileSystems.getDefault())) {
+	    transferFile(source, dest.toPath(), size);
+	} else {
+	    Files.copy(source, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+    }
+
+    /**
+     * Replaces the destination file by a hard link to the source file or by a
+     * symbolic link, if a hard link cannot be created. Files in mounted module
+     * archives cannot be linked.
+     */
+    @Override
+    public boolean linkFile(Path source, File dest) throws IOException {
+	if (source.getFileSystem() != FileSystems.getDefault()) {
+	    return false;
+	}
+
+	Files.deleteIfExists(dest.toPath());
+	try {
+	    Files.createLink(dest.toPath(), source);
+	    return true;
+	} catch (IOException | UnsupportedOperationException | SecurityException e) {
+	    // Hard links are not supported or source and destination are on
+	    // different file systems
+	}
+
+	try {
+	    Files.createSymbolicLink(dest.toPath(), source.toAbsolutePath());
+	    return true;
+	} catch (IOException | UnsupportedOperationException | SecurityException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Copies a file by transferring content between file channels.
+     *
+     * @param source
+     *            the source file.
+     * @param dest
+     *            the destination file.
+     * @param size
+     *            the size of the source file.
+     * @throws IOException
+     *             if copying failed.
+     */
+    private static void transferFile(Path source, Path dest, long size) throws IOException {
+	// Existing file can be a link to the source file, hence it cannot be
+	// overwritten
+	Files.deleteIfExists(dest);
+	try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+		FileChannel out = FileChannel.open(dest, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING)) {
+	    long position = 0;
+	    while (position < size) {
+		long transferred = in.transferTo(position, size - position, out);
+		if (transferred <= 0) {
+		    break;
+		}
+		position += transferred;
+	    }
+	}
+    }
+}
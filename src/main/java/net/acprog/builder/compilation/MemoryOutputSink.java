@@ -0,0 +1,241 @@
+package net.acprog.builder.compilation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.Checksum;
+
+import net.acprog.builder.utils.FileTrash;
+import net.acprog.builder.utils.FileUtils;
+
+/**
+ * Output sink that keeps written files in memory. Files are stored under
+ * paths relative to a base directory (usually the output library path of the
+ * compilation), hence a library compiled to memory can be inspected without
+ * any disk writes and later committed to the base directory.
+ */
+public class MemoryOutputSink implements OutputSink {
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Base directory of stored files.
+     */
+    private final File baseDirectory;
+
+    /**
+     * Created directories (relative paths with slash as the path separator).
+     */
+    private final Set<String> directories = new TreeSet<String>();
+
+    /**
+     * Contents of written files (map from relative paths with slash as the
+     * path separator to contents).
+     */
+    private final Map<String, byte[]> files = new TreeMap<String, byte[]>();
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the in-memory output sink.
+     *
+     * @param baseDirectory
+     *            the base directory of stored files.
+     */
+    public MemoryOutputSink(File baseDirectory) {
+	this.baseDirectory = baseDirectory;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public File getBaseDirectory() {
+	return baseDirectory;
+    }
+
+    /**
+     * Returns relative paths of all stored files.
+     *
+     * @return the ordered set of relative paths with slash as the path
+     *         separator.
+     */
+    public synchronized SortedSet<String> getPaths() {
+	return new TreeSet<String>(files.keySet());
+    }
+
+    /**
+     * Returns the content of a stored file.
+     *
+     * @param path
+     *            the relative path of file with slash as the path separator.
+     * @return the content of file or null, if the file is not stored.
+     */
+    public synchronized byte[] getContent(String path) {
+	byte[] content = files.get(path);
+	return (content != null) ? content.clone() : null;
+    }
+
+    /**
+     * Returns the content of a stored file.
+     *
+     * @param file
+     *            the file in the base directory.
+     * @return the content of file or null, if the file is not stored.
+     */
+    public byte[] getContent(File file) {
+	try {
+	    return getContent(getRelativePath(file));
+	} catch (IOException e) {
+	    return null;
+	}
+    }
+
+    /**
+     * Returns the total size of stored files.
+     *
+     * @return the size in bytes.
+     */
+    public synchronized long getSize() {
+	long size = 0;
+	for (byte[] content : files.values()) {
+	    size += content.length;
+	}
+
+	return size;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Output methods
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public boolean isPersistent() {
+	return false;
+    }
+
+    @Override
+    public synchronized void createDirectory(File directory) throws IOException {
+	String path = getRelativePath(directory);
+	while (!path.isEmpty() && directories.add(path)) {
+	    int idx = path.lastIndexOf('/');
+	    path = (idx < 0) ? "" : path.substring(0, idx);
+	}
+    }
+
+    @Override
+    public synchronized boolean writeFile(File file, byte[] content) throws IOException {
+	String path = getRelativePath(file);
+	if (Arrays.equals(files.get(path), content)) {
+	    return false;
+	}
+
+	createDirectory(file.getParentFile());
+	files.put(path, content.clone());
+	return true;
+    }
+
+    @Override
+    public void copyFile(Path source, File dest, Checksum checksum) throws IOException {
+	byte[] content = Files.readAllBytes(source);
+	if (checksum != null) {
+	    checksum.update(content, 0, content.length);
+	}
+	writeFile(dest, content);
+    }
+
+    @Override
+    public boolean linkFile(Path source, File dest) {
+	return false;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Commit
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Writes stored files to the base directory. Files are first written to a
+     * staging directory and then each top-level directory (usually the
+     * directory of library) replaces the existing directory by a rename, hence
+     * the base directory never contains a partially written library. Replaced
+     * directories are deleted in background.
+     *
+     * @throws IOException
+     *             if the files cannot be written.
+     */
+    public synchronized void commit() throws IOException {
+	Files.createDirectories(baseDirectory.toPath());
+	File stagingDirectory = Files.createTempDirectory(baseDirectory.toPath(), ".acp-staging").toFile();
+	File replacedDirectory = Files.createTempDirectory(baseDirectory.toPath(), ".acp-replaced").toFile();
+	try {
+	    // Write all files to the staging directory
+	    FileSystemOutputSink stagingSink = new FileSystemOutputSink();
+	    for (String directory : directories) {
+		stagingSink.createDirectory(new File(stagingDirectory, directory));
+	    }
+
+	    for (Map.Entry<String, byte[]> entry : files.entrySet()) {
+		stagingSink.writeFile(new File(stagingDirectory, entry.getKey()), entry.getValue());
+	    }
+
+	    // Replace top-level entries of the base directory
+	    for (String name : stagingDirectory.list()) {
+		Path target = new File(baseDirectory, name).toPath();
+		if (Files.exists(target)) {
+		    Files.move(target, new File(replacedDirectory, name).toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+		Files.move(new File(stagingDirectory, name).toPath(), target, StandardCopyOption.ATOMIC_MOVE);
+	    }
+	} finally {
+	    FileUtils.removeDirectory(stagingDirectory);
+	    stagingDirectory.delete();
+	    FileTrash.discard(replacedDirectory);
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Helper methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Returns the path of a file relative to the base directory.
+     *
+     * @param file
+     *            the file.
+     * @return the relative path with slash as the path separator.
+     * @throws IOException
+     *             if the file is not located in the base directory.
+     */
+    private String getRelativePath(File file) throws IOException {
+	return getRelativePath(baseDirectory, file);
+    }
+
+    /**
+     * Returns the path of a file relative to a base directory.
+     *
+     * @param baseDirectory
+     *            the base directory.
+     * @param file
+     *            the file.
+     * @return the relative path with slash as the path separator.
+     * @throws IOException
+     *             if the file is not located in the base directory.
+     */
+    static String getRelativePath(File baseDirectory, File file) throws IOException {
+	Path base = baseDirectory.toPath().toAbsolutePath().normalize();
+	Path path = file.toPath().toAbsolutePath().normalize();
+	if (!path.startsWith(base)) {
+	    throw new IOException("File " + file.getPath() + " is outside of the output directory "
+		    + baseDirectory.getPath() + ".");
+	}
+
+	return base.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+}
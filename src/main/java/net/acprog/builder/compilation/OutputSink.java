@@ -0,0 +1,80 @@
+package net.acprog.builder.compilation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.zip.Checksum;
+
+/**
+ * Destination of files of a compiled library. Generated files and exported
+ * module files are written through an output sink, hence a library can be
+ * compiled to the file system or to memory. Implementations must be
+ * thread-safe, since module files are exported in parallel.
+ */
+public interface OutputSink {
+
+    /**
+     * Returns whether the sink writes to the file system. Features that
+     * inspect the output library on disk (incremental export and the build
+     * cache) are used only with persistent sinks.
+     *
+     * @return true, if files are written to the file system, false otherwise.
+     */
+    boolean isPersistent();
+
+    /**
+     * Creates a directory including all nonexistent parent directories.
+     *
+     * @param directory
+     *            the directory.
+     * @throws IOException
+     *             if the directory cannot be created.
+     */
+    void createDirectory(File directory) throws IOException;
+
+    /**
+     * Writes content to a file, if the file does not exist or its content
+     * differs.
+     *
+     * @param file
+     *            the file.
+     * @param content
+     *            the content.
+     * @return true, if the file has been written, false, if the file already
+     *         had the given content.
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    boolean writeFile(File file, byte[] content) throws IOException;
+
+    /**
+     * Copies a file (possibly from a mounted module archive) to the output.
+     * If a checksum is given, it is updated by the copied content while the
+     * source file is read, hence the file is not read again to compute it.
+     *
+     * @param source
+     *            the source file.
+     * @param dest
+     *            the destination file.
+     * @param checksum
+     *            the checksum of the copied content (null, if the checksum is
+     *            not computed).
+     * @throws IOException
+     *             if the file cannot be copied.
+     */
+    void copyFile(Path source, File dest, Checksum checksum) throws IOException;
+
+    /**
+     * Exports a file as a link to the source file.
+     *
+     * @param source
+     *            the source file.
+     * @param dest
+     *            the destination file.
+     * @return true, if a link has been created, false, if links are not
+     *         supported and the file has to be copied.
+     * @throws IOException
+     *             if an existing destination file cannot be replaced.
+     */
+    boolean linkFile(Path source, File dest) throws IOException;
+}
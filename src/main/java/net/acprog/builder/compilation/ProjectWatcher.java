@@ -0,0 +1,466 @@
+package net.acprog.builder.compilation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watcher that rebuilds a project whenever its configuration file or a module
+ * used by the project changes. Bursts of file events are coalesced into a
+ * single rebuild. Only changed modules are removed from the module cache of
+ * the compiler and the export of module files is incremental, hence a rebuild
+ * reloads the project, parses again only changed module descriptions and
+ * rewrites only changed files of the library.
+ */
+public class ProjectWatcher implements Closeable {
+
+    // ---------------------------------------------------------------------------
+    // Rebuild report
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Report of a rebuild triggered by changes.
+     */
+    public static class RebuildReport {
+	/**
+	 * Sequence number of the rebuild (0 for the initial build).
+	 */
+	private final int number;
+
+	/**
+	 * Number of changed files that triggered the rebuild.
+	 */
+	private final int changedFiles;
+
+	/**
+	 * Report of compilation (null, if the rebuild failed).
+	 */
+	private final CompilationResult result;
+
+	/**
+	 * Failure of the rebuild (null, if the rebuild succeeded).
+	 */
+	private final Throwable failure;
+
+	/**
+	 * Duration of the compilation in milliseconds.
+	 */
+	private final long buildTime;
+
+	/**
+	 * Time (in milliseconds) from the first observed change to completion
+	 * of the rebuild.
+	 */
+	private final long latency;
+
+	public int getNumber() {
+	    return number;
+	}
+
+	public int getChangedFiles() {
+	    return changedFiles;
+	}
+
+	public CompilationResult getResult() {
+	    return result;
+	}
+
+	public Throwable getFailure() {
+	    return failure;
+	}
+
+	public long getBuildTime() {
+	    return buildTime;
+	}
+
+	public long getLatency() {
+	    return latency;
+	}
+
+	public boolean isSuccessful() {
+	    return failure == null;
+	}
+
+	RebuildReport(int number, int changedFiles, CompilationResult result, Throwable failure, long buildTime,
+		long latency) {
+	    this.number = number;
+	    this.changedFiles = changedFiles;
+	    this.result = result;
+	    this.failure = failure;
+	    this.buildTime = buildTime;
+	    this.latency = latency;
+	}
+
+	@Override
+	public String toString() {
+	    StringBuilder sb = new StringBuilder();
+	    sb.append((number == 0) ? "Build" : "Rebuild #" + number + " (" + changedFiles + " changed file(s))");
+	    sb.append(isSuccessful() ? " completed" : " failed").append(" in ").append(buildTime).append(" ms");
+	    if (number > 0) {
+		sb.append(", ").append(latency).append(" ms after the first change");
+	    }
+
+	    if (isSuccessful()) {
+		sb.append(": ").append(result);
+	    } else {
+		for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+		    sb.append((cause == failure) ? ": " : " <- ").append(cause.getMessage());
+		}
+	    }
+
+	    return sb.toString();
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Rebuild listener
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Listener notified about completed rebuilds.
+     */
+    public interface RebuildListener {
+	/**
+	 * Invoked when a (re)build is completed. The method is invoked by the
+	 * thread of the watcher.
+	 *
+	 * @param report
+	 *            the report of rebuild.
+	 */
+	void rebuildCompleted(RebuildReport report);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Configuration constants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Default delay (in milliseconds) without file events after which a
+     * rebuild is started.
+     */
+    public static final long DEFAULT_DEBOUNCE_DELAY = 300;
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Compiler used for rebuilds.
+     */
+    private final ACPCompiler compiler;
+
+    /**
+     * Compilation settings of the project.
+     */
+    private final CompilationSettings settings;
+
+    /**
+     * Listener notified about completed rebuilds.
+     */
+    private final RebuildListener listener;
+
+    /**
+     * Path to the project configuration file.
+     */
+    private final Path projectFile;
+
+    /**
+     * Watch service.
+     */
+    private final WatchService watchService;
+
+    /**
+     * Watched directories (map from directories to their watch keys).
+     */
+    private final Map<Path, WatchKey> watchedDirectories = new HashMap<Path, WatchKey>();
+
+    /**
+     * Directories of modules used by the project (map from directories to
+     * module names).
+     */
+    private final Map<Path, String> moduleDirectories = new HashMap<Path, String>();
+
+    /**
+     * Delay (in milliseconds) without file events after which a rebuild is
+     * started.
+     */
+    private volatile long debounceDelay = DEFAULT_DEBOUNCE_DELAY;
+
+    /**
+     * Thread of the watcher.
+     */
+    private Thread thread;
+
+    /**
+     * Indicates whether the watcher has been stopped.
+     */
+    private volatile boolean stopped;
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the project watcher. The export of module files is switched
+     * to incremental export.
+     *
+     * @param compiler
+     *            the compiler used for rebuilds.
+     * @param settings
+     *            the compilation settings of the project.
+     * @param listener
+     *            the listener notified about completed rebuilds.
+     * @throws IOException
+     *             if the watch service cannot be created.
+     */
+    public ProjectWatcher(ACPCompiler compiler, CompilationSettings settings, RebuildListener listener)
+	    throws IOException {
+	this.compiler = compiler;
+	this.settings = new CompilationSettings(settings);
+	this.settings.setIncrementalExport(true);
+	this.listener = listener;
+	this.projectFile = settings.getProjectConfigurationFile().toPath().toAbsolutePath().normalize();
+	this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public long getDebounceDelay() {
+	return debounceDelay;
+    }
+
+    public void setDebounceDelay(long debounceDelay) {
+	this.debounceDelay = Math.max(debounceDelay, 0);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Watcher methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Builds the project and starts watching for changes in a new thread.
+     */
+    public synchronized void start() {
+	if (thread != null) {
+	    return;
+	}
+
+	thread = new Thread(new Runnable() {
+	    @Override
+	    public void run() {
+		watch();
+	    }
+	}, "acp-project-watcher");
+	thread.setDaemon(true);
+	thread.start();
+    }
+
+    /**
+     * Stops watching for changes. A rebuild in progress is completed.
+     */
+    @Override
+    public void close() {
+	stopped = true;
+	try {
+	    watchService.close();
+	} catch (IOException ignore) {
+	    // Nothing to do
+	}
+    }
+
+    /**
+     * Builds the project and rebuilds it after each burst of changes until
+     * the watcher is stopped.
+     */
+    private void watch() {
+	rebuild(0, 0, System.nanoTime());
+	int rebuilds = 0;
+	while (!stopped) {
+	    try {
+		WatchKey key = watchService.take();
+		long firstChangeTime = System.nanoTime();
+		Set<Path> changedPaths = new HashSet<Path>();
+		boolean overflow = collectChanges(key, changedPaths);
+
+		// Wait until the burst of changes is over
+		while ((key = watchService.poll(debounceDelay, TimeUnit.MILLISECONDS)) != null) {
+		    overflow |= collectChanges(key, changedPaths);
+		}
+
+		if (overflow) {
+		    compiler.clearModuleCache();
+		} else if (!invalidateChangedModules(changedPaths)) {
+		    continue;
+		}
+
+		rebuilds++;
+		rebuild(rebuilds, changedPaths.size(), firstChangeTime);
+	    } catch (InterruptedException | ClosedWatchServiceException e) {
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Collects changed paths from events of a watch key.
+     *
+     * @param key
+     *            the signalled watch key.
+     * @param changedPaths
+     *            the set where changed paths are added.
+     * @return true, if some events have been lost, false otherwise.
+     */
+    private boolean collectChanges(WatchKey key, Set<Path> changedPaths) {
+	boolean overflow = false;
+	Path directory = (Path) key.watchable();
+	for (WatchEvent<?> event : key.pollEvents()) {
+	    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+		overflow = true;
+	    } else {
+		changedPaths.add(directory.resolve((Path) event.context()));
+	    }
+	}
+
+	key.reset();
+	return overflow;
+    }
+
+    /**
+     * Removes changed modules from the module cache of the compiler.
+     *
+     * @param changedPaths
+     *            the changed paths.
+     * @return true, if the project configuration or a module used by the
+     *         project has changed, false otherwise.
+     */
+    private boolean invalidateChangedModules(Set<Path> changedPaths) {
+	boolean relevantChange = false;
+	for (Path changedPath : changedPaths) {
+	    if (changedPath.equals(projectFile)) {
+		relevantChange = true;
+		continue;
+	    }
+
+	    // Find the innermost module directory containing the changed path
+	    for (Path path = changedPath; path != null; path = path.getParent()) {
+		String moduleName = moduleDirectories.get(path);
+		if (moduleName != null) {
+		    compiler.invalidateModule(moduleName);
+		    relevantChange = true;
+		    break;
+		}
+	    }
+	}
+
+	return relevantChange;
+    }
+
+    /**
+     * Rebuilds the project, notifies the listener and updates watched
+     * directories with respect to modules used by the project.
+     *
+     * @param number
+     *            the sequence number of rebuild.
+     * @param changedFiles
+     *            the number of changed files that triggered the rebuild.
+     * @param firstChangeTime
+     *            the time (in nanoseconds) of the first change.
+     */
+    private void rebuild(int number, int changedFiles, long firstChangeTime) {
+	long startTime = System.nanoTime();
+	CompilationResult result = null;
+	Throwable failure = null;
+	try {
+	    result = compiler.compile(settings);
+	} catch (RuntimeException e) {
+	    failure = e;
+	}
+	long endTime = System.nanoTime();
+
+	if ((result != null) && !result.isRestoredFromCache()) {
+	    updateWatchedDirectories(result.getModuleNames());
+	} else if (watchedDirectories.isEmpty()) {
+	    updateWatchedDirectories(Collections.<String> emptyList());
+	}
+
+	listener.rebuildCompleted(new RebuildReport(number, changedFiles, result, failure,
+		(endTime - startTime) / 1000000, (endTime - firstChangeTime) / 1000000));
+    }
+
+    /**
+     * Updates watched directories to the directory of the project
+     * configuration file and directories of modules used by the project.
+     *
+     * @param moduleNames
+     *            the names of modules used by the project.
+     */
+    private void updateWatchedDirectories(List<String> moduleNames) {
+	moduleDirectories.clear();
+	Set<Path> directories = new HashSet<Path>();
+	directories.add(projectFile.getParent());
+	for (String moduleName : moduleNames) {
+	    Path moduleDirectory;
+	    try {
+		moduleDirectory = compiler.getModuleDirectory(moduleName);
+	    } catch (CompilationException e) {
+		continue;
+	    }
+
+	    // Modules in a module archive are not watched
+	    if (moduleDirectory.getFileSystem() != FileSystems.getDefault()) {
+		continue;
+	    }
+
+	    moduleDirectory = moduleDirectory.toAbsolutePath().normalize();
+	    moduleDirectories.put(moduleDirectory, moduleName);
+	    collectDirectories(moduleDirectory, directories);
+	}
+
+	// Cancel watch keys of directories that are no longer relevant
+	Iterator<Map.Entry<Path, WatchKey>> it = watchedDirectories.entrySet().iterator();
+	while (it.hasNext()) {
+	    Map.Entry<Path, WatchKey> entry = it.next();
+	    if (!directories.remove(entry.getKey())) {
+		entry.getValue().cancel();
+		it.remove();
+	    }
+	}
+
+	for (Path directory : directories) {
+	    try {
+		watchedDirectories.put(directory, directory.register(watchService,
+			StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+			StandardWatchEventKinds.ENTRY_MODIFY));
+	    } catch (IOException | ClosedWatchServiceException e) {
+		// Changes in the directory will not be observed
+	    }
+	}
+    }
+
+    /**
+     * Collects a directory and all its subdirectories.
+     *
+     * @param directory
+     *            the directory.
+     * @param directories
+     *            the set where directories are added.
+     */
+    private static void collectDirectories(Path directory, final Set<Path> directories) {
+	try {
+	    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+		@Override
+		public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+		    directories.add(dir);
+		    return FileVisitResult.CONTINUE;
+		}
+	    });
+	} catch (IOException e) {
+	    // Changes in unreadable directories will not be observed
+	}
+    }
+}
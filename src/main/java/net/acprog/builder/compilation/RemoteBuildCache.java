@@ -0,0 +1,222 @@
+package net.acprog.builder.compilation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client of a remote build cache. The remote cache is accessed by a simple
+ * HTTP protocol: a cache file is downloaded by GET and uploaded by PUT
+ * request to the URL formed by the base URL of the cache and the name of
+ * cache file. All failures (including timeouts) are handled as missing cache
+ * files, hence the build falls back to a local build.
+ */
+public class RemoteBuildCache {
+
+    // ---------------------------------------------------------------------------
+    // Configuration constants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Default timeout (in milliseconds) for connecting to the remote cache.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 2000;
+
+    /**
+     * Default timeout (in milliseconds) for reading responses of the remote
+     * cache.
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 10000;
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Base URL of the remote cache (ending with slash).
+     */
+    private final String baseUrl;
+
+    /**
+     * Timeout (in milliseconds) for connecting to the remote cache.
+     */
+    private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+    /**
+     * Timeout (in milliseconds) for reading responses of the remote cache.
+     */
+    private volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+
+    /**
+     * Number of downloaded cache files.
+     */
+    private final AtomicLong downloads = new AtomicLong();
+
+    /**
+     * Number of uploaded cache files.
+     */
+    private final AtomicLong uploads = new AtomicLong();
+
+    /**
+     * Number of failed requests (excluding requests for missing files).
+     */
+    private final AtomicLong failures = new AtomicLong();
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the client of a remote cache.
+     *
+     * @param baseUrl
+     *            the base URL of the remote cache.
+     */
+    public RemoteBuildCache(String baseUrl) {
+	this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public String getBaseUrl() {
+	return baseUrl;
+    }
+
+    public int getConnectTimeout() {
+	return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+	this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+	return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+	this.readTimeout = readTimeout;
+    }
+
+    public long getDownloads() {
+	return downloads.get();
+    }
+
+    public long getUploads() {
+	return uploads.get();
+    }
+
+    public long getFailures() {
+	return failures.get();
+    }
+
+    // ---------------------------------------------------------------------------
+    // Cache methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Downloads a cache file.
+     *
+     * @param fileName
+     *            the name of cache file.
+     * @return the content of the cache file or null, if the file is not
+     *         available.
+     */
+    public byte[] download(String fileName) {
+	HttpURLConnection connection = null;
+	try {
+	    connection = openConnection(fileName);
+	    connection.setRequestMethod("GET");
+	    int responseCode = connection.getResponseCode();
+	    if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+		return null;
+	    }
+
+	    if (responseCode != HttpURLConnection.HTTP_OK) {
+		failures.incrementAndGet();
+		return null;
+	    }
+
+	    ByteArrayOutputStream content = new ByteArrayOutputStream();
+	    try (InputStream in = connection.getInputStream()) {
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+		    content.write(buffer, 0, read);
+		}
+	    }
+
+	    downloads.incrementAndGet();
+	    return content.toByteArray();
+	} catch (IOException e) {
+	    failures.incrementAndGet();
+	    return null;
+	} finally {
+	    if (connection != null) {
+		connection.disconnect();
+	    }
+	}
+    }
+
+    /**
+     * Uploads a cache file.
+     *
+     * @param fileName
+     *            the name of cache file.
+     * @param content
+     *            the content of cache file.
+     * @return true, if the file has been uploaded, false otherwise.
+     */
+    public boolean upload(String fileName, byte[] content) {
+	HttpURLConnection connection = null;
+	try {
+	    connection = openConnection(fileName);
+	    connection.setRequestMethod("PUT");
+	    connection.setDoOutput(true);
+	    connection.setFixedLengthStreamingMode(content.length);
+	    connection.setRequestProperty("Content-Type", "application/octet-stream");
+	    try (OutputStream out = connection.getOutputStream()) {
+		out.write(content);
+	    }
+
+	    int responseCode = connection.getResponseCode();
+	    if ((responseCode < 200) || (responseCode >= 300)) {
+		failures.incrementAndGet();
+		return false;
+	    }
+
+	    uploads.incrementAndGet();
+	    return true;
+	} catch (IOException e) {
+	    failures.incrementAndGet();
+	    return false;
+	} finally {
+	    if (connection != null) {
+		connection.disconnect();
+	    }
+	}
+    }
+
+    /**
+     * Opens connection to a cache file.
+     *
+     * @param fileName
+     *            the name of cache file.
+     * @return the connection.
+     * @throws IOException
+     *             if the connection cannot be opened.
+     */
+    private HttpURLConnection openConnection(String fileName) throws IOException {
+	HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + fileName).openConnection();
+	connection.setConnectTimeout(connectTimeout);
+	connection.setReadTimeout(readTimeout);
+	connection.setUseCaches(false);
+	return connection;
+    }
+}
@@ -0,0 +1,797 @@
+package net.acprog.builder.compilation;
+
+import java.util.*;
+
+import net.acprog.builder.components.Instance;
+import net.acprog.builder.components.Looper;
+import net.acprog.builder.components.MethodWrapper;
+import net.acprog.builder.components.PropertyType;
+import net.acprog.builder.modules.ComponentType;
+import net.acprog.builder.modules.Library;
+import net.acprog.builder.modules.Module;
+import net.acprog.builder.platform.Platform;
+import net.acprog.builder.project.Component;
+import net.acprog.builder.project.EepromItem;
+import net.acprog.builder.project.Project;
+
+/**
+ * Validated project resolved against its modules and target platform. The
+ * resolved project is an immutable intermediate representation that is
+ * constructed once per compilation and shared by all content generators.
+ * Component types are looked up, effective and escaped property values,
+ * names of generated objects, loopers and the layout of EEPROM memory are
+ * computed during construction, hence content generators only render the
+ * prepared records.
+ */
+public class ResolvedProject {
+
+    // ---------------------------------------------------------------------------
+    // Data containers
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Details about a looper to be used in the project.
+     */
+    public static class LooperRecord {
+	/**
+	 * Identifier of the looper (index of the looper in the project).
+	 */
+	private final int id;
+
+	/**
+	 * Name of component for which this looper works.
+	 */
+	private final String fullComponentName;
+
+	/**
+	 * Description of the looper.
+	 */
+	private final Looper looper;
+
+	/**
+	 * Looper interval.
+	 */
+	private final int interval;
+
+	/**
+	 * Initial delay of looper
+	 */
+	private final int initialDelay;
+
+	LooperRecord(int id, String fullComponentName, Looper looper, int interval, int initialDelay) {
+	    this.id = id;
+	    this.fullComponentName = fullComponentName;
+	    this.looper = looper;
+	    this.interval = interval;
+	    this.initialDelay = initialDelay;
+	}
+
+	public int getId() {
+	    return id;
+	}
+
+	public String getFullComponentName() {
+	    return fullComponentName;
+	}
+
+	public Looper getLooper() {
+	    return looper;
+	}
+
+	public int getInterval() {
+	    return interval;
+	}
+
+	public int getInitialDelay() {
+	    return initialDelay;
+	}
+    }
+
+    /**
+     * Method wrapper generated for a controller.
+     */
+    public static class MethodWrapperRecord {
+	/**
+	 * Description of the method wrapper.
+	 */
+	private final MethodWrapper methodWrapper;
+
+	/**
+	 * Name of the generated wrapping function.
+	 */
+	private final String wrappingFunction;
+
+	MethodWrapperRecord(MethodWrapper methodWrapper, String wrappingFunction) {
+	    this.methodWrapper = methodWrapper;
+	    this.wrappingFunction = wrappingFunction;
+	}
+
+	public MethodWrapper getMethodWrapper() {
+	    return methodWrapper;
+	}
+
+	public String getWrappingFunction() {
+	    return wrappingFunction;
+	}
+    }
+
+    /**
+     * Component resolved with respect to its component type.
+     */
+    public static class ComponentRecord {
+	/**
+	 * Name of the component.
+	 */
+	private final String name;
+
+	/**
+	 * Description of the component.
+	 */
+	private final String description;
+
+	/**
+	 * Description of the component type.
+	 */
+	private final ComponentType componentType;
+
+	/**
+	 * Prefix of includes of the component type.
+	 */
+	private final String includePrefix;
+
+	/**
+	 * Names of event handlers (map from names of events).
+	 */
+	private final Map<String, String> eventHandlers;
+
+	/**
+	 * Effective values of properties (map from names of properties).
+	 */
+	private final Map<String, String> effectiveValues;
+
+	/**
+	 * Escaped values of properties (map from names of properties, null for
+	 * values that cannot be escaped).
+	 */
+	private final Map<String, String> escapedValues;
+
+	/**
+	 * Properties of component generated during compilation.
+	 */
+	private final Map<String, String> autogeneratedProperties;
+
+	/**
+	 * Name of the controller (null, if the component has no controller).
+	 */
+	private final String controllerName;
+
+	/**
+	 * Name of the controller including the namespace (null, if the
+	 * component has no controller).
+	 */
+	private final String fullControllerName;
+
+	/**
+	 * Class type of the controller (null, if the component has no
+	 * controller).
+	 */
+	private final String controllerClassType;
+
+	/**
+	 * Constructor arguments of the controller (null, if the component has
+	 * no controller).
+	 */
+	private final String controllerConstructorArguments;
+
+	/**
+	 * Code that invokes the init method of the controller (null, if not
+	 * defined).
+	 */
+	private final String controllerInitCode;
+
+	/**
+	 * Code that invokes the loop method of the controller (null, if not
+	 * defined).
+	 */
+	private final String controllerLoopCode;
+
+	/**
+	 * Loopers of the controller.
+	 */
+	private final List<LooperRecord> loopers;
+
+	/**
+	 * Method wrappers of the controller.
+	 */
+	private final List<MethodWrapperRecord> methodWrappers;
+
+	/**
+	 * Class type of the view (null, if the component has no view).
+	 */
+	private final String viewClassType;
+
+	/**
+	 * Constructor arguments of the view (null, if the component has no
+	 * view).
+	 */
+	private final String viewConstructorArguments;
+
+	/**
+	 * Constructs the resolved component.
+	 *
+	 * @param component
+	 *            the component configuration.
+	 * @param componentType
+	 *            the description of component type.
+	 * @param platform
+	 *            the target hardware and compilation platform.
+	 * @param privateNamespace
+	 *            the namespace for non-public objects.
+	 * @param controllerId
+	 *            the identifier of controller, if the component has a
+	 *            controller.
+	 * @param firstMethodWrapperId
+	 *            the identifier of the first method wrapper of the
+	 *            controller.
+	 * @param firstLooperId
+	 *            the identifier of the first looper of the controller.
+	 */
+	ComponentRecord(Component component, ComponentType componentType, Platform platform,
+		String privateNamespace, int controllerId, int firstMethodWrapperId, int firstLooperId) {
+	    this.name = component.getName();
+	    this.description = component.getDescription();
+	    this.componentType = componentType;
+	    this.includePrefix = componentType.getName().replace('.', '/') + "/";
+	    this.eventHandlers = Collections.unmodifiableMap(new HashMap<String, String>(component.getEvents()));
+
+	    // Compute effective and escaped values of properties
+	    Map<String, String> effectiveValues = new HashMap<String, String>();
+	    Map<String, String> escapedValues = new HashMap<String, String>();
+	    for (Map.Entry<String, PropertyType> propEntry : componentType.getProperties().entrySet()) {
+		String propName = propEntry.getKey();
+		PropertyType propType = propEntry.getValue();
+		String effectiveValue = propType.getEffectiveValue(component.getProperties().get(propName));
+		String escapedValue = (effectiveValue != null) ? platform.escapeValue(propType.getType(),
+			effectiveValue) : null;
+		if ((escapedValue == null) && (propType.getBinding() != null)) {
+		    throw new CompilationException("Invalid or undefined value of property " + propName
+			    + " of component " + name + ".");
+		}
+
+		effectiveValues.put(propName, effectiveValue);
+		escapedValues.put(propName, escapedValue);
+	    }
+	    this.effectiveValues = Collections.unmodifiableMap(effectiveValues);
+	    this.escapedValues = Collections.unmodifiableMap(escapedValues);
+
+	    // Resolve controller
+	    Map<String, String> autogeneratedProperties = new HashMap<String, String>();
+	    List<LooperRecord> loopers = new ArrayList<LooperRecord>();
+	    List<MethodWrapperRecord> methodWrappers = new ArrayList<MethodWrapperRecord>();
+	    Instance controllerDescription = componentType.getController();
+	    if (controllerDescription != null) {
+		controllerName = "controller_" + controllerId;
+		fullControllerName = privateNamespace + "::" + controllerName;
+		autogeneratedProperties.put("controller", fullControllerName);
+
+		for (Looper looper : componentType.getLoopers()) {
+		    int interval;
+		    try {
+			interval = readIntegerValueOrProperty(looper.getInterval(), -1, effectiveValues);
+		    } catch (Exception e) {
+			throw new CompilationException("Invalid value of interval of looper of the component '" + name
+				+ "'.");
+		    }
+
+		    int initialDelay;
+		    try {
+			initialDelay = Math.max(
+				readIntegerValueOrProperty(looper.getInitialDelay(), -1, effectiveValues), 0);
+		    } catch (Exception e) {
+			throw new CompilationException("Invalid value of initial delay of looper of the component '"
+				+ name + "'.");
+		    }
+
+		    loopers.add(new LooperRecord(firstLooperId + loopers.size(), fullControllerName, looper,
+			    interval, initialDelay));
+		}
+
+		for (MethodWrapper methodWrapper : componentType.getMethodWrappers()) {
+		    String wrappingFunction = "method_wrapper_" + (firstMethodWrapperId + methodWrappers.size());
+		    methodWrappers.add(new MethodWrapperRecord(methodWrapper, wrappingFunction));
+
+		    String autogeneratedPropertyName = methodWrapper.getAutogeneratedPropertyName();
+		    if ((autogeneratedPropertyName != null) && (!autogeneratedPropertyName.trim().isEmpty())) {
+			autogeneratedProperties.put(autogeneratedPropertyName, privateNamespace + "::"
+				+ wrappingFunction);
+		    }
+		}
+
+		controllerInitCode = (controllerDescription.getInitMethod() != null) ? controllerDescription
+			.getInitMethod().generateInvocationCode(fullControllerName, component,
+				autogeneratedProperties, platform) : null;
+		controllerLoopCode = (controllerDescription.getLoopMethod() != null) ? controllerDescription
+			.getLoopMethod().generateInvocationCode(fullControllerName, component,
+				autogeneratedProperties, platform) : null;
+		controllerClassType = controllerDescription.generateClassType(component, autogeneratedProperties,
+			platform);
+		controllerConstructorArguments = controllerDescription.generateConstructorArguments(component,
+			autogeneratedProperties, platform);
+	    } else {
+		controllerName = null;
+		fullControllerName = null;
+		controllerInitCode = null;
+		controllerLoopCode = null;
+		controllerClassType = null;
+		controllerConstructorArguments = null;
+	    }
+	    this.autogeneratedProperties = Collections.unmodifiableMap(autogeneratedProperties);
+	    this.loopers = Collections.unmodifiableList(loopers);
+	    this.methodWrappers = Collections.unmodifiableList(methodWrappers);
+
+	    // Resolve view
+	    Instance viewDescription = componentType.getView();
+	    if (viewDescription != null) {
+		viewClassType = viewDescription.generateClassType(component, autogeneratedProperties, platform);
+		viewConstructorArguments = viewDescription.generateConstructorArguments(component,
+			autogeneratedProperties, platform);
+	    } else {
+		viewClassType = null;
+		viewConstructorArguments = null;
+	    }
+	}
+
+	public String getName() {
+	    return name;
+	}
+
+	public String getDescription() {
+	    return description;
+	}
+
+	public ComponentType getComponentType() {
+	    return componentType;
+	}
+
+	public String getIncludePrefix() {
+	    return includePrefix;
+	}
+
+	public Map<String, String> getEventHandlers() {
+	    return eventHandlers;
+	}
+
+	public Map<String, String> getEffectiveValues() {
+	    return effectiveValues;
+	}
+
+	public Map<String, String> getEscapedValues() {
+	    return escapedValues;
+	}
+
+	public Map<String, String> getAutogeneratedProperties() {
+	    return autogeneratedProperties;
+	}
+
+	public boolean hasController() {
+	    return controllerName != null;
+	}
+
+	public String getControllerName() {
+	    return controllerName;
+	}
+
+	public String getFullControllerName() {
+	    return fullControllerName;
+	}
+
+	public String getControllerClassType() {
+	    return controllerClassType;
+	}
+
+	public String getControllerConstructorArguments() {
+	    return controllerConstructorArguments;
+	}
+
+	public String getControllerInitCode() {
+	    return controllerInitCode;
+	}
+
+	public String getControllerLoopCode() {
+	    return controllerLoopCode;
+	}
+
+	public List<LooperRecord> getLoopers() {
+	    return loopers;
+	}
+
+	public List<MethodWrapperRecord> getMethodWrappers() {
+	    return methodWrappers;
+	}
+
+	public boolean hasView() {
+	    return viewClassType != null;
+	}
+
+	public String getViewClassType() {
+	    return viewClassType;
+	}
+
+	public String getViewConstructorArguments() {
+	    return viewConstructorArguments;
+	}
+    }
+
+    /**
+     * EEPROM item placed in the EEPROM memory.
+     */
+    public static class EepromItemRecord {
+	/**
+	 * Name of the item.
+	 */
+	private final String name;
+
+	/**
+	 * Type of the item.
+	 */
+	private final String type;
+
+	/**
+	 * Description of the item.
+	 */
+	private final String description;
+
+	/**
+	 * Length of array (-1, if the item is a variable).
+	 */
+	private final int lengthOfArray;
+
+	/**
+	 * Offset of the item in the EEPROM memory.
+	 */
+	private final int offset;
+
+	/**
+	 * Declaration of the item (wrapper class and name).
+	 */
+	private final String declaration;
+
+	/**
+	 * Code that sets the initial value of the item (null, if the item has
+	 * no initial value).
+	 */
+	private final String initializationCode;
+
+	/**
+	 * Constructs the EEPROM item record.
+	 *
+	 * @param item
+	 *            the EEPROM item.
+	 * @param offset
+	 *            the offset of the item in the EEPROM memory.
+	 * @param platform
+	 *            the target hardware and compilation platform.
+	 */
+	EepromItemRecord(EepromItem item, int offset, Platform platform) {
+	    this.name = item.getName();
+	    this.type = item.getType();
+	    this.description = item.getDescription();
+	    this.lengthOfArray = item.isArray() ? item.getLengthOfArray() : -1;
+	    this.offset = offset;
+	    this.declaration = platform.getEepromWrapperClass(type, offset, item.isCached(), item.getLengthOfArray())
+		    + " " + name + ";";
+
+	    String itemValue = item.getValue();
+	    if ((itemValue != null) && (!itemValue.isEmpty())) {
+		if (!platform.checkValue(type, itemValue)) {
+		    throw new CompilationException("The value '" + itemValue
+			    + "' is not valid initialization value for EEPROM item '" + name + "'.");
+		}
+
+		if (item.isArray()) {
+		    initializationCode = name + ".fill(" + platform.escapeValue(type, itemValue) + ");";
+		} else {
+		    initializationCode = name + ".setValue(" + platform.escapeValue(type, itemValue) + ");";
+		}
+	    } else {
+		initializationCode = null;
+	    }
+	}
+
+	public String getName() {
+	    return name;
+	}
+
+	public String getType() {
+	    return type;
+	}
+
+	public String getDescription() {
+	    return description;
+	}
+
+	public boolean isArray() {
+	    return lengthOfArray >= 0;
+	}
+
+	public int getLengthOfArray() {
+	    return lengthOfArray;
+	}
+
+	public int getOffset() {
+	    return offset;
+	}
+
+	public String getDeclaration() {
+	    return declaration;
+	}
+
+	public String getInitializationCode() {
+	    return initializationCode;
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Namespace for non-public objects.
+     */
+    private final String privateNamespace;
+
+    /**
+     * Target hardware and compilation platform.
+     */
+    private final Platform platform;
+
+    /**
+     * Watchdog level limited by the platform (-1, if the watchdog is not
+     * used).
+     */
+    private final int watchdogLevel;
+
+    /**
+     * User defined program events.
+     */
+    private final Map<String, String> programEvents;
+
+    /**
+     * All modules used by the project.
+     */
+    private final List<Module> modules;
+
+    /**
+     * Libraries imported by the program.
+     */
+    private final List<Library> libraries;
+
+    /**
+     * Resolved components (in order of the project configuration).
+     */
+    private final List<ComponentRecord> components;
+
+    /**
+     * Loopers of all components.
+     */
+    private final List<LooperRecord> loopers;
+
+    /**
+     * EEPROM items (in order of the project configuration).
+     */
+    private final List<EepromItemRecord> eepromItems;
+
+    /**
+     * Number of used bytes of the EEPROM memory.
+     */
+    private final int eepromUsage;
+
+    /**
+     * Version of the EEPROM memory layout.
+     */
+    private final long eepromLayoutVersion;
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Resolves a validated project.
+     *
+     * @param project
+     *            the project configuration.
+     * @param projectModules
+     *            the modules used by the project.
+     * @param platform
+     *            the target hardware and compilation platform.
+     * @param privateNamespace
+     *            the namespace for non-public objects.
+     */
+    public ResolvedProject(Project project, Map<String, Module> projectModules, Platform platform,
+	    String privateNamespace) {
+	this.privateNamespace = privateNamespace;
+	this.platform = platform;
+	this.watchdogLevel = (project.getWatchdogLevel() >= 0) ? Math.min(project.getWatchdogLevel(),
+		platform.getMaxWatchdogLevel()) : -1;
+	this.programEvents = Collections.unmodifiableMap(new HashMap<String, String>(project.getProgramEvents()));
+	this.modules = Collections.unmodifiableList(new ArrayList<Module>(projectModules.values()));
+
+	List<Library> libraries = new ArrayList<Library>();
+	for (String libraryImport : project.getLibraryImports()) {
+	    libraries.add((Library) projectModules.get(libraryImport));
+	}
+	this.libraries = Collections.unmodifiableList(libraries);
+
+	// Resolve components
+	List<ComponentRecord> components = new ArrayList<ComponentRecord>();
+	List<LooperRecord> loopers = new ArrayList<LooperRecord>();
+	int controllerIdGenerator = 0;
+	int methodWrapperIdGenerator = 0;
+	for (Component component : project.getComponents()) {
+	    ComponentType componentType = (ComponentType) projectModules.get(component.getType());
+	    ComponentRecord record = new ComponentRecord(component, componentType, platform, privateNamespace,
+		    controllerIdGenerator, methodWrapperIdGenerator, loopers.size());
+	    if (record.hasController()) {
+		controllerIdGenerator++;
+	    }
+	    methodWrapperIdGenerator += record.getMethodWrappers().size();
+	    loopers.addAll(record.getLoopers());
+	    components.add(record);
+	}
+	this.components = Collections.unmodifiableList(components);
+	this.loopers = Collections.unmodifiableList(loopers);
+
+	// Compute offset for each EEPROM item. We start counting offset from
+	// 4, since 4 bytes are reserved for EEPROM layout version
+	List<EepromItemRecord> eepromItems = new ArrayList<EepromItemRecord>();
+	int offset = 4;
+	for (EepromItem item : project.getEepromItems()) {
+	    int sizeof = platform.getSizeOf(item.getType());
+	    if (sizeof == 0) {
+		throw new CompilationException("Type '" + item.getName() + "' of EEPROM item '" + item.getName()
+			+ "' is not supported as a type of an EEPROM item.");
+	    }
+
+	    eepromItems.add(new EepromItemRecord(item, offset, platform));
+	    if (item.isArray()) {
+		offset += sizeof * item.getLengthOfArray();
+	    } else {
+		offset += sizeof;
+	    }
+	}
+	this.eepromItems = Collections.unmodifiableList(eepromItems);
+	this.eepromUsage = eepromItems.isEmpty() ? 0 : offset;
+	this.eepromLayoutVersion = computeEepromLayoutVersion(project.getEepromLayoutVersion());
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public String getPrivateNamespace() {
+	return privateNamespace;
+    }
+
+    public Platform getPlatform() {
+	return platform;
+    }
+
+    public int getWatchdogLevel() {
+	return watchdogLevel;
+    }
+
+    public Map<String, String> getProgramEvents() {
+	return programEvents;
+    }
+
+    public List<Module> getModules() {
+	return modules;
+    }
+
+    public List<Library> getLibraries() {
+	return libraries;
+    }
+
+    public List<ComponentRecord> getComponents() {
+	return components;
+    }
+
+    public List<LooperRecord> getLoopers() {
+	return loopers;
+    }
+
+    public List<EepromItemRecord> getEepromItems() {
+	return eepromItems;
+    }
+
+    public int getEepromUsage() {
+	return eepromUsage;
+    }
+
+    public long getEepromLayoutVersion() {
+	return eepromLayoutVersion;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Helper methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Converts a string value that can be an integer value or reference to a
+     * property value to an integer value.
+     *
+     * @param valueOrProperty
+     *            the string to be converted.
+     * @param unsetValue
+     *            the value to return if the property is not set or is an
+     *            empty string.
+     * @param effectiveValues
+     *            the effective values of properties of a component.
+     * @return the conversion result.
+     */
+    static int readIntegerValueOrProperty(String valueOrProperty, int unsetValue,
+	    Map<String, String> effectiveValues) {
+	if ((valueOrProperty == null) || (valueOrProperty.trim().isEmpty())) {
+	    return unsetValue;
+	}
+
+	try {
+	    return Integer.parseInt(valueOrProperty);
+	} catch (Exception ignore) {
+
+	}
+
+	if (!effectiveValues.containsKey(valueOrProperty)) {
+	    throw new CompilationException("Undefined property '" + valueOrProperty + "'.");
+	}
+
+	String strValue = effectiveValues.get(valueOrProperty);
+	if ((strValue == null) || (strValue.trim().isEmpty())) {
+	    return unsetValue;
+	}
+
+	try {
+	    return Integer.parseInt(strValue.trim());
+	} catch (Exception e) {
+	    throw new CompilationException("The value of property '" + valueOrProperty
+		    + "' cannot be converted to an integer value.");
+	}
+    }
+
+    /**
+     * Computes the version of the EEPROM memory layout according to project
+     * settings.
+     *
+     * @param memoryLayoutVersion
+     *            the configured layout version (random, hash, or a fixed
+     *            number).
+     * @return the layout version or 0, if the EEPROM memory is not used.
+     */
+    private long computeEepromLayoutVersion(String memoryLayoutVersion) {
+	if (eepromUsage == 0) {
+	    return 0;
+	}
+
+	if (memoryLayoutVersion != null) {
+	    memoryLayoutVersion = memoryLayoutVersion.trim();
+	}
+
+	if ("random".equals(memoryLayoutVersion)) {
+	    return (int) (Math.random() * 256 * 256 * 256);
+	}
+
+	if ("".equals(memoryLayoutVersion) || "hash".equals(memoryLayoutVersion)) {
+	    StringBuilder hashedContent = new StringBuilder();
+	    for (EepromItemRecord item : eepromItems) {
+		hashedContent.append(item.getDeclaration());
+	    }
+	    return Math.abs(hashedContent.toString().hashCode());
+	}
+
+	try {
+	    return Math.abs(Long.parseLong(memoryLayoutVersion));
+	} catch (Exception e) {
+	    throw new CompilationException("Invalid layout version of eeprom memory.");
+	}
+    }
+}
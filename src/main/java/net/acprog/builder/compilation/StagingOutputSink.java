@@ -0,0 +1,122 @@
+package net.acprog.builder.compilation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.Checksum;
+
+import net.acprog.builder.utils.FileUtils;
+
+/**
+ * Output sink that keeps generated files in memory until the compilation
+ * commits them to a target sink. If the target sink is persistent, a file that
+ * already has the same content on disk is not staged, hence the commit writes
+ * only changed files into the existing library.
+ */
+class StagingOutputSink implements OutputSink {
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Sink where staged files are written by the commit.
+     */
+    private final OutputSink target;
+
+    /**
+     * Created directories (ordered so that parent directories precede their
+     * subdirectories).
+     */
+    private final Set<File> directories = new TreeSet<File>();
+
+    /**
+     * Contents of staged files.
+     */
+    private final Map<File, byte[]> files = new TreeMap<File, byte[]>();
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the staging output sink.
+     *
+     * @param target
+     *            the sink where staged files are written by the commit.
+     */
+    StagingOutputSink(OutputSink target) {
+	this.target = target;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Output methods
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public boolean isPersistent() {
+	return target.isPersistent();
+    }
+
+    @Override
+    public synchronized void createDirectory(File directory) {
+	directories.add(directory);
+    }
+
+    @Override
+    public synchronized boolean writeFile(File file, byte[] content) {
+	if (target.isPersistent() && FileUtils.hasContent(file, content)) {
+	    files.remove(file);
+	    return false;
+	}
+
+	if (Arrays.equals(files.get(file), content)) {
+	    return false;
+	}
+
+	files.put(file, content.clone());
+	return true;
+    }
+
+    @Override
+    public void copyFile(Path source, File dest, Checksum checksum) throws IOException {
+	byte[] content = Files.readAllBytes(source);
+	if (checksum != null) {
+	    checksum.update(content, 0, content.length);
+	}
+	writeFile(dest, content);
+    }
+
+    @Override
+    public boolean linkFile(Path source, File dest) {
+	return false;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Commit
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Writes staged directories and files to the target sink.
+     *
+     * @return the number of written files.
+     * @throws IOException
+     *             if a file cannot be written.
+     */
+    synchronized int commit() throws IOException {
+	for (File directory : directories) {
+	    target.createDirectory(directory);
+	}
+
+	int writtenFiles = 0;
+	for (Map.Entry<File, byte[]> entry : files.entrySet()) {
+	    if (target.writeFile(entry.getKey(), entry.getValue())) {
+		writtenFiles++;
+	    }
+	}
+
+	return writtenFiles;
+    }
+}
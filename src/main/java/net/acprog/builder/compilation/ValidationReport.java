@@ -0,0 +1,235 @@
+package net.acprog.builder.compilation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Report of a validation of project configuration. The report contains all
+ * problems found in the configuration ordered by their location in the xml
+ * document. Problems with the same location are ordered in the order of
+ * components in the project configuration, hence the report is deterministic
+ * even if components are checked in parallel.
+ */
+public class ValidationReport {
+
+    // ---------------------------------------------------------------------------
+    // Problem
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Problem found in a project configuration.
+     */
+    public static class Problem implements Comparable<Problem> {
+	/**
+	 * Kinds of problems.
+	 */
+	public static enum Kind {
+	    /**
+	     * Malformed xml document, invalid project settings or unknown
+	     * target platform.
+	     */
+	    CONFIGURATION,
+	    /**
+	     * Duplicated name of component.
+	     */
+	    COMPONENT_NAME,
+	    /**
+	     * Unknown or invalid type of component.
+	     */
+	    COMPONENT_TYPE,
+	    /**
+	     * Invalid or undefined value of property of component.
+	     */
+	    PROPERTY_VALUE,
+	    /**
+	     * Property not supported by type of component.
+	     */
+	    UNKNOWN_PROPERTY,
+	    /**
+	     * Event not supported by type of component.
+	     */
+	    UNKNOWN_EVENT,
+	    /**
+	     * Invalid interval or initial delay of looper of component.
+	     */
+	    LOOPER_INTERVAL,
+	    /**
+	     * Imported module that is not a library.
+	     */
+	    LIBRARY_IMPORT
+	}
+
+	/**
+	 * Kind of the problem.
+	 */
+	private final Kind kind;
+
+	/**
+	 * Name of the component or library with the problem (null, if the
+	 * problem is not related to a component or library).
+	 */
+	private final String subject;
+
+	/**
+	 * Line of the xml element with the problem (-1, if not known).
+	 */
+	private final int line;
+
+	/**
+	 * Column of the xml element with the problem (-1, if not known).
+	 */
+	private final int column;
+
+	/**
+	 * Description of the problem.
+	 */
+	private final String message;
+
+	Problem(Kind kind, String subject, int line, int column, String message) {
+	    this.kind = kind;
+	    this.subject = subject;
+	    this.line = line;
+	    this.column = column;
+	    this.message = message;
+	}
+
+	public Kind getKind() {
+	    return kind;
+	}
+
+	public String getSubject() {
+	    return subject;
+	}
+
+	public int getLine() {
+	    return line;
+	}
+
+	public int getColumn() {
+	    return column;
+	}
+
+	public String getMessage() {
+	    return message;
+	}
+
+	@Override
+	public int compareTo(Problem other) {
+	    if (line != other.line) {
+		return (line < other.line) ? -1 : 1;
+	    }
+
+	    if (column != other.column) {
+		return (column < other.column) ? -1 : 1;
+	    }
+
+	    return 0;
+	}
+
+	@Override
+	public String toString() {
+	    return line + ":" + column + ": " + message;
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Found problems.
+     */
+    private final List<Problem> problems = new ArrayList<Problem>();
+
+    /**
+     * Duration of validation in microseconds.
+     */
+    private long validationTime;
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public List<Problem> getProblems() {
+	return Collections.unmodifiableList(problems);
+    }
+
+    public long getValidationTime() {
+	return validationTime;
+    }
+
+    void setValidationTime(long validationTime) {
+	this.validationTime = validationTime;
+    }
+
+    /**
+     * Returns whether the project configuration is valid.
+     *
+     * @return true, if no problem has been found, false otherwise.
+     */
+    public boolean isValid() {
+	return problems.isEmpty();
+    }
+
+    /**
+     * Returns the number of found problems of a kind.
+     *
+     * @param kind
+     *            the kind of problems.
+     * @return the number of problems.
+     */
+    public int getProblemCount(Problem.Kind kind) {
+	int result = 0;
+	for (Problem problem : problems) {
+	    if (problem.getKind() == kind) {
+		result++;
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Adds a problem to the report.
+     *
+     * @param kind
+     *            the kind of the problem.
+     * @param subject
+     *            the name of the component or library with the problem
+     *            (null, if the problem is not related to a component or
+     *            library).
+     * @param line
+     *            the line of the xml element with the problem (-1, if not
+     *            known).
+     * @param column
+     *            the column of the xml element with the problem (-1, if not
+     *            known).
+     * @param message
+     *            the description of the problem.
+     */
+    void addProblem(Problem.Kind kind, String subject, int line, int column, String message) {
+	problems.add(new Problem(kind, subject, line, column, message));
+    }
+
+    /**
+     * Orders problems by their location. Problems with the same location keep
+     * the order in which they were found.
+     */
+    void sortProblems() {
+	Collections.sort(problems);
+    }
+
+    /**
+     * Returns the report in a plain text format (one problem per line).
+     */
+    @Override
+    public String toString() {
+	StringBuilder result = new StringBuilder();
+	for (Problem problem : problems) {
+	    result.append(problem).append('\n');
+	}
+
+	return result.toString();
+    }
+}
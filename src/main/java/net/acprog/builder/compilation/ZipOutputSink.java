@@ -0,0 +1,164 @@
+package net.acprog.builder.compilation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.Checksum;
+import java.util.zip.ZipOutputStream;
+
+import net.acprog.builder.utils.ZipUtils;
+
+/**
+ * Output sink that writes the library to a zip archive. Generated files are
+ * kept in memory, exported module files are only recorded and their content
+ * is streamed from modules directly to the archive. Entries are named by paths
+ * relative to a base directory (usually the output library path of the
+ * compilation), hence the archive contains the directory of library and can
+ * be installed as an Arduino library. The archive is deterministic: entries
+ * are ordered by their names and all entries have the same timestamp.
+ */
+public class ZipOutputSink implements OutputSink {
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Base directory of entries.
+     */
+    private final File baseDirectory;
+
+    /**
+     * Entries of the archive (map from entry names to contents of generated
+     * files or to source files of exported files, directories are mapped to
+     * null).
+     */
+    private final Map<String, Object> entries = new TreeMap<String, Object>();
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the zip output sink.
+     *
+     * @param baseDirectory
+     *            the base directory of entries.
+     */
+    public ZipOutputSink(File baseDirectory) {
+	this.baseDirectory = baseDirectory;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public File getBaseDirectory() {
+	return baseDirectory;
+    }
+
+    /**
+     * Returns the number of files in the archive.
+     *
+     * @return the number of files.
+     */
+    public synchronized int getFileCount() {
+	int count = 0;
+	for (Object content : entries.values()) {
+	    if (content != null) {
+		count++;
+	    }
+	}
+
+	return count;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Output methods
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public boolean isPersistent() {
+	return false;
+    }
+
+    @Override
+    public synchronized void createDirectory(File directory) throws IOException {
+	String path = MemoryOutputSink.getRelativePath(baseDirectory, directory);
+	while (!path.isEmpty() && !entries.containsKey(path + "/")) {
+	    entries.put(path + "/", null);
+	    int idx = path.lastIndexOf('/');
+	    path = (idx < 0) ? "" : path.substring(0, idx);
+	}
+    }
+
+    @Override
+    public synchronized boolean writeFile(File file, byte[] content) throws IOException {
+	String path = MemoryOutputSink.getRelativePath(baseDirectory, file);
+	Object currentContent = entries.get(path);
+	if ((currentContent instanceof byte[]) && Arrays.equals((byte[]) currentContent, content)) {
+	    return false;
+	}
+
+	createDirectory(file.getParentFile());
+	entries.put(path, content.clone());
+	return true;
+    }
+
+    /**
+     * Records a file whose content is streamed to the archive. If the checksum
+     * is computed, the content is read and kept in memory instead.
+     */
+    @Override
+    public synchronized void copyFile(Path source, File dest, Checksum checksum) throws IOException {
+	if (!Files.isRegularFile(source)) {
+	    throw new IOException("File " + source.toUri() + " does not exist.");
+	}
+
+	createDirectory(dest.getParentFile());
+	if (checksum != null) {
+	    byte[] content = Files.readAllBytes(source);
+	    checksum.update(content, 0, content.length);
+	    entries.put(MemoryOutputSink.getRelativePath(baseDirectory, dest), content);
+	} else {
+	    entries.put(MemoryOutputSink.getRelativePath(baseDirectory, dest), source);
+	}
+    }
+
+    @Override
+    public boolean linkFile(Path source, File dest) {
+	return false;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Writing of archive
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Writes the zip archive. Exported module files are read during writing,
+     * hence the archive must be written before the compiler that compiled the
+     * library is closed.
+     *
+     * @param out
+     *            the output stream where the archive is written (the stream
+     *            is not closed).
+     * @throws IOException
+     *             if writing of the archive failed.
+     */
+    public synchronized void writeTo(OutputStream out) throws IOException {
+	ZipOutputStream zipOut = new ZipOutputStream(out);
+	for (Map.Entry<String, Object> entry : entries.entrySet()) {
+	    zipOut.putNextEntry(ZipUtils.createEntry(entry.getKey()));
+	    if (entry.getValue() instanceof byte[]) {
+		zipOut.write((byte[]) entry.getValue());
+	    } else if (entry.getValue() instanceof Path) {
+		Files.copy((Path) entry.getValue(), zipOut);
+	    }
+	    zipOut.closeEntry();
+	}
+	zipOut.finish();
+    }
+}
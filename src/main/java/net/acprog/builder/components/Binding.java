@@ -1,5 +1,11 @@
 package net.acprog.builder.components;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.acprog.builder.utils.DataUtils;
+
 import org.w3c.dom.Element;
 
 /**
@@ -86,6 +92,72 @@ public class Binding {
 	setTarget(targetValue);
     }
 
+    // ---------------------------------------------------------------------------
+    // Binary serialization
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Writes the binding to a binary data output.
+     * 
+     * @param out
+     *            the data output.
+     * @throws IOException
+     *             if writing failed.
+     */
+    public void writeToStream(DataOutput out) throws IOException {
+	DataUtils.writeEnum(out, type);
+	DataUtils.writeString(out, target);
+    }
+
+    /**
+     * Reads the binding from a binary data input.
+     * 
+     * @param in
+     *            the data input.
+     * @throws IOException
+     *             if reading failed.
+     */
+    public void readFromStream(DataInput in) throws IOException {
+	type = DataUtils.readEnum(in, BindingType.class);
+	target = DataUtils.readString(in);
+    }
+
+    /**
+     * Writes a binding that can be null to a binary data output.
+     * 
+     * @param out
+     *            the data output.
+     * @param binding
+     *            the binding or null.
+     * @throws IOException
+     *             if writing failed.
+     */
+    public static void writeOptional(DataOutput out, Binding binding) throws IOException {
+	out.writeBoolean(binding != null);
+	if (binding != null) {
+	    binding.writeToStream(out);
+	}
+    }
+
+    /**
+     * Reads a binding written by {@link #writeOptional(DataOutput, Binding)}.
+     * 
+     * @param in
+     *            the data input.
+     * @return the binding or null.
+     * @throws IOException
+     *             if reading failed.
+     */
+    public static Binding readOptional(DataInput in) throws IOException {
+	if (!in.readBoolean()) {
+	    return null;
+	}
+
+	Binding binding = new Binding();
+	binding.readFromStream(in);
+	return binding;
+    }
+
     // ---------------------------------------------------------------------------
     // Generators
     // ---------------------------------------------------------------------------
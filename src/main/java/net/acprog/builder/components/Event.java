@@ -1,7 +1,11 @@
 package net.acprog.builder.components;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
+import net.acprog.builder.utils.DataUtils;
 import net.acprog.builder.utils.XmlUtils;
 
 import org.w3c.dom.Element;
@@ -143,6 +147,49 @@ public class Event {
 	description = XmlUtils.getSimplePropertyValue(xmlElement, "description", "");
     }
 
+    // ---------------------------------------------------------------------------
+    // Binary serialization
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Writes the event to a binary data output.
+     * 
+     * @param out
+     *            the data output.
+     * @throws IOException
+     *             if writing failed.
+     */
+    public void writeToStream(DataOutput out) throws IOException {
+	Binding.writeOptional(out, binding);
+	DataUtils.writeString(out, resultType);
+	DataUtils.writeString(out, description);
+	out.writeInt(parameters.size());
+	for (ParameterType parameter : parameters) {
+	    DataUtils.writeString(out, parameter.getType());
+	    DataUtils.writeString(out, parameter.getName());
+	}
+    }
+
+    /**
+     * Reads the event from a binary data input.
+     * 
+     * @param in
+     *            the data input.
+     * @throws IOException
+     *             if reading failed.
+     */
+    public void readFromStream(DataInput in) throws IOException {
+	binding = Binding.readOptional(in);
+	resultType = DataUtils.readString(in);
+	description = DataUtils.readString(in);
+	parameters.clear();
+	int parameterCount = in.readInt();
+	for (int i = 0; i < parameterCount; i++) {
+	    String parameterType = DataUtils.readString(in);
+	    parameters.add(new ParameterType(parameterType, DataUtils.readString(in)));
+	}
+    }
+
     // ---------------------------------------------------------------------------
     // Generators
     // ---------------------------------------------------------------------------
@@ -1,11 +1,15 @@
 package net.acprog.builder.components;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 import net.acprog.builder.compilation.CompilationException;
 import net.acprog.builder.modules.ComponentType;
 import net.acprog.builder.platform.Platform;
 import net.acprog.builder.project.Component;
+import net.acprog.builder.utils.DataUtils;
 import net.acprog.builder.utils.XmlUtils;
 
 import org.w3c.dom.Element;
@@ -104,12 +108,16 @@ public class Instance {
 	 *            the name of object.
 	 * @param componentConfig
 	 *            the component configuration.
+	 * @param autogeneratedProperties
+	 *            the properties of component generated during compilation.
 	 * @param platform
 	 *            target hardware and compilation platform.
 	 * @return the code that executes the method.
 	 */
-	public String generateInvocationCode(String objectName, Component componentConfig, Platform platform) {
-	    return objectName + "." + name + "(" + generateArgumentList(arguments, componentConfig, platform) + ");";
+	public String generateInvocationCode(String objectName, Component componentConfig,
+		Map<String, String> autogeneratedProperties, Platform platform) {
+	    return objectName + "." + name + "("
+		    + generateArgumentList(arguments, componentConfig, autogeneratedProperties, platform) + ");";
 	}
     }
 
@@ -359,6 +367,81 @@ public class Instance {
 	}
     }
 
+    // ---------------------------------------------------------------------------
+    // Binary serialization
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Writes the instance description to a binary data output.
+     * 
+     * @param out
+     *            the data output.
+     * @throws IOException
+     *             if writing failed.
+     */
+    public void writeToStream(DataOutput out) throws IOException {
+	DataUtils.writeStrings(out, includes);
+	DataUtils.writeString(out, className);
+	writeArguments(out, templateArguments);
+	writeArguments(out, constructorArguments);
+	writeMethod(out, initMethod);
+	writeMethod(out, loopMethod);
+    }
+
+    /**
+     * Reads the instance description from a binary data input.
+     * 
+     * @param in
+     *            the data input.
+     * @throws IOException
+     *             if reading failed.
+     */
+    public void readFromStream(DataInput in) throws IOException {
+	includes.clear();
+	DataUtils.readStrings(in, includes);
+	className = DataUtils.readString(in);
+	templateArguments.clear();
+	readArguments(in, templateArguments);
+	constructorArguments.clear();
+	readArguments(in, constructorArguments);
+	initMethod = readMethod(in);
+	loopMethod = readMethod(in);
+    }
+
+    private static void writeArguments(DataOutput out, List<Argument> arguments) throws IOException {
+	out.writeInt(arguments.size());
+	for (Argument argument : arguments) {
+	    DataUtils.writeEnum(out, argument.type);
+	    DataUtils.writeString(out, argument.value);
+	}
+    }
+
+    private static void readArguments(DataInput in, List<Argument> result) throws IOException {
+	int argumentCount = in.readInt();
+	for (int i = 0; i < argumentCount; i++) {
+	    ArgumentType argType = DataUtils.readEnum(in, ArgumentType.class);
+	    result.add(new Argument(argType, DataUtils.readString(in)));
+	}
+    }
+
+    private static void writeMethod(DataOutput out, Method method) throws IOException {
+	out.writeBoolean(method != null);
+	if (method != null) {
+	    DataUtils.writeString(out, method.name);
+	    writeArguments(out, method.arguments);
+	}
+    }
+
+    private Method readMethod(DataInput in) throws IOException {
+	if (!in.readBoolean()) {
+	    return null;
+	}
+
+	Method result = new Method(DataUtils.readString(in));
+	readArguments(in, result.arguments);
+	return result;
+    }
+
     // ---------------------------------------------------------------------------
     // Generators
     // ---------------------------------------------------------------------------
@@ -368,16 +451,20 @@ public class Instance {
      * 
      * @param componentConfig
      *            the component configuration.
+     * @param autogeneratedProperties
+     *            the properties of component generated during compilation.
      * @param platform
      *            target hardware and compilation platform.
      * @return the class name or null, if the class name cannot be generated.
      */
-    public String generateClassType(Component componentConfig, Platform platform) {
+    public String generateClassType(Component componentConfig, Map<String, String> autogeneratedProperties,
+	    Platform platform) {
 	if (templateArguments.isEmpty()) {
 	    return getClassName();
 	}
 
-	return getClassName() + "<" + generateArgumentList(templateArguments, componentConfig, platform) + ">";
+	return getClassName() + "<"
+		+ generateArgumentList(templateArguments, componentConfig, autogeneratedProperties, platform) + ">";
     }
 
     /**
@@ -386,16 +473,20 @@ public class Instance {
      * 
      * @param componentConfig
      *            the component configuration.
+     * @param autogeneratedProperties
+     *            the properties of component generated during compilation.
      * @param platform
      *            target hardware and compilation platform.
      * @return the string with comma separated constructor parameters.
      */
-    public String generateConstructorArguments(Component componentConfig, Platform platform) {
+    public String generateConstructorArguments(Component componentConfig,
+	    Map<String, String> autogeneratedProperties, Platform platform) {
 	if (constructorArguments.isEmpty()) {
 	    return "";
 	}
 
-	return "(" + generateArgumentList(constructorArguments, componentConfig, platform) + ")";
+	return "(" + generateArgumentList(constructorArguments, componentConfig, autogeneratedProperties, platform)
+		+ ")";
     }
 
     /**
@@ -405,11 +496,14 @@ public class Instance {
      *            the list of arguments
      * @param componentConfig
      *            the component configuration.
+     * @param autogeneratedProperties
+     *            the properties of component generated during compilation.
      * @param platform
      *            target hardware and compilation platform.
      * @return the string containing list of arguments for invocation
      */
-    private String generateArgumentList(List<Argument> arguments, Component componentConfig, Platform platform) {
+    private String generateArgumentList(List<Argument> arguments, Component componentConfig,
+	    Map<String, String> autogeneratedProperties, Platform platform) {
 	if ((arguments == null) || (arguments.isEmpty())) {
 	    return "";
 	}
@@ -450,7 +544,7 @@ public class Instance {
 		// Add value to argument list
 		sb.append(escapedPropValue);
 	    } else if (arg.type == ArgumentType.AUTOGENERATED) {
-		String propValue = componentConfig.getAutogeneratedProperties().get(arg.value);
+		String propValue = autogeneratedProperties.get(arg.value);
 		if ((propValue == null) || (propValue.trim().isEmpty())) {
 		    throw new CompilationException("Undefined autogenerated property '" + arg.value
 			    + "' of component '" + componentConfig.getName()
@@ -1,6 +1,11 @@
 package net.acprog.builder.components;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import net.acprog.builder.modules.ComponentType;
+import net.acprog.builder.utils.DataUtils;
 import net.acprog.builder.utils.XmlUtils;
 
 import org.w3c.dom.Element;
@@ -155,4 +160,38 @@ public class Looper {
 		    + " does not contain an integer value or property name.");
 	}
     }
+
+    // ---------------------------------------------------------------------------
+    // Binary serialization
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Writes the looper to a binary data output.
+     * 
+     * @param out
+     *            the data output.
+     * @throws IOException
+     *             if writing failed.
+     */
+    public void writeToStream(DataOutput out) throws IOException {
+	DataUtils.writeString(out, looperMethod);
+	DataUtils.writeString(out, interval);
+	DataUtils.writeString(out, initialDelay);
+	Binding.writeOptional(out, idBinding);
+    }
+
+    /**
+     * Reads the looper from a binary data input.
+     * 
+     * @param in
+     *            the data input.
+     * @throws IOException
+     *             if reading failed.
+     */
+    public void readFromStream(DataInput in) throws IOException {
+	looperMethod = DataUtils.readString(in);
+	interval = DataUtils.readString(in);
+	initialDelay = DataUtils.readString(in);
+	idBinding = Binding.readOptional(in);
+    }
 }
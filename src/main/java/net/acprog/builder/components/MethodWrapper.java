@@ -1,7 +1,11 @@
 package net.acprog.builder.components;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
+import net.acprog.builder.utils.DataUtils;
 import net.acprog.builder.utils.XmlUtils;
 
 import org.w3c.dom.Element;
@@ -152,6 +156,51 @@ public class MethodWrapper {
 	}
     }
 
+    // ---------------------------------------------------------------------------
+    // Binary serialization
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Writes the method wrapper to a binary data output.
+     * 
+     * @param out
+     *            the data output.
+     * @throws IOException
+     *             if writing failed.
+     */
+    public void writeToStream(DataOutput out) throws IOException {
+	DataUtils.writeString(out, wrappedMethod);
+	DataUtils.writeString(out, autogeneratedPropertyName);
+	Binding.writeOptional(out, binding);
+	DataUtils.writeString(out, resultType);
+	out.writeInt(parameters.size());
+	for (ParameterType parameter : parameters) {
+	    DataUtils.writeString(out, parameter.getType());
+	    DataUtils.writeString(out, parameter.getName());
+	}
+    }
+
+    /**
+     * Reads the method wrapper from a binary data input.
+     * 
+     * @param in
+     *            the data input.
+     * @throws IOException
+     *             if reading failed.
+     */
+    public void readFromStream(DataInput in) throws IOException {
+	wrappedMethod = DataUtils.readString(in);
+	autogeneratedPropertyName = DataUtils.readString(in);
+	binding = Binding.readOptional(in);
+	resultType = DataUtils.readString(in);
+	parameters.clear();
+	int parameterCount = in.readInt();
+	for (int i = 0; i < parameterCount; i++) {
+	    String parameterType = DataUtils.readString(in);
+	    parameters.add(new ParameterType(parameterType, DataUtils.readString(in)));
+	}
+    }
+
     // ---------------------------------------------------------------------------
     // Generators
     // ---------------------------------------------------------------------------
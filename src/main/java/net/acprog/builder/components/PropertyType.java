@@ -1,5 +1,10 @@
 package net.acprog.builder.components;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.acprog.builder.utils.DataUtils;
 import net.acprog.builder.utils.XmlUtils;
 
 import org.w3c.dom.Element;
@@ -149,6 +154,42 @@ public class PropertyType {
 	description = XmlUtils.getSimplePropertyValue(xmlElement, "description", "");
     }
 
+    // ---------------------------------------------------------------------------
+    // Binary serialization
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Writes the property type to a binary data output.
+     * 
+     * @param out
+     *            the data output.
+     * @throws IOException
+     *             if writing failed.
+     */
+    public void writeToStream(DataOutput out) throws IOException {
+	DataUtils.writeString(out, type);
+	DataUtils.writeString(out, value);
+	DataUtils.writeEnum(out, valueType);
+	Binding.writeOptional(out, binding);
+	DataUtils.writeString(out, description);
+    }
+
+    /**
+     * Reads the property type from a binary data input.
+     * 
+     * @param in
+     *            the data input.
+     * @throws IOException
+     *             if reading failed.
+     */
+    public void readFromStream(DataInput in) throws IOException {
+	type = DataUtils.readString(in);
+	value = DataUtils.readString(in);
+	valueType = DataUtils.readEnum(in, ValueType.class);
+	binding = Binding.readOptional(in);
+	description = DataUtils.readString(in);
+    }
+
     // ---------------------------------------------------------------------------
     // Generators
     // ---------------------------------------------------------------------------
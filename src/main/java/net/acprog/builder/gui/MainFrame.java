@@ -8,7 +8,17 @@ import javax.swing.border.EmptyBorder;
 
 import net.acprog.builder.App;
 import net.acprog.builder.compilation.ACPCompiler;
+import net.acprog.builder.compilation.CompilationCancelledException;
+import net.acprog.builder.compilation.CompilationEvent;
+import net.acprog.builder.compilation.CompilationListener;
+import net.acprog.builder.compilation.CompilationMonitor;
+import net.acprog.builder.compilation.CompilationResult;
 import net.acprog.builder.compilation.CompilationSettings;
+import net.acprog.builder.compilation.FileSystemOutputSink;
+import net.acprog.builder.compilation.MemoryOutputSink;
+import net.acprog.builder.compilation.ProjectWatcher;
+import net.acprog.builder.modules.ModuleRepositoryIndex;
+import net.acprog.builder.utils.FileTrash;
 import net.acprog.builder.utils.FileUtils;
 import net.miginfocom.swing.MigLayout;
 
@@ -21,10 +31,15 @@ import javax.swing.JTextField;
 import javax.swing.JButton;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.JToggleButton;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
 import java.io.File;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutionException;
 import java.util.prefs.Preferences;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
@@ -65,6 +80,27 @@ public class MainFrame extends JFrame {
     private JButton projectXmlChangeButton;
     private JTextArea exampleInoTextArea;
     private JCheckBox debugModeCheckBox;
+    private JToggleButton watchButton;
+    private JButton previewButton;
+    private JButton cancelButton;
+    private JLabel statusLabel;
+
+    /**
+     * Monitor of the running build (null, if no build is running).
+     */
+    private CompilationMonitor buildMonitor;
+
+    /**
+     * Compiler used in the watch mode (null, if the watch mode is not
+     * active).
+     */
+    private ACPCompiler watchCompiler;
+
+    /**
+     * Watcher of the project in the watch mode (null, if the watch mode is not
+     * active).
+     */
+    private ProjectWatcher projectWatcher;
 
     /**
      * Create the frame.
@@ -84,6 +120,7 @@ public class MainFrame extends JFrame {
 	addWindowListener(new WindowAdapter() {
 	    @Override
 	    public void windowClosing(WindowEvent e) {
+		stopWatching();
 		savePaths();
 	    }
 	});
@@ -164,7 +201,7 @@ public class MainFrame extends JFrame {
 
 	JPanel actionPanel = new JPanel();
 	contentPane.add(actionPanel, "cell 0 2,grow");
-	actionPanel.setLayout(new MigLayout("", "[grow,fill][][]", "[]"));
+	actionPanel.setLayout(new MigLayout("", "[grow,fill][][][][][]", "[]"));
 
 	cleanAndBuildButton = new JButton("Clean & Build");
 	cleanAndBuildButton.addActionListener(new ActionListener() {
@@ -185,6 +222,37 @@ public class MainFrame extends JFrame {
 	});
 	actionPanel.add(buildButton, "cell 2 0");
 
+	watchButton = new JToggleButton("Watch");
+	watchButton.addActionListener(new ActionListener() {
+	    public void actionPerformed(ActionEvent e) {
+		if (watchButton.isSelected()) {
+		    startWatching();
+		} else {
+		    stopWatching();
+		}
+	    }
+	});
+	actionPanel.add(watchButton, "cell 3 0");
+
+	previewButton = new JButton("Preview");
+	previewButton.addActionListener(new ActionListener() {
+	    public void actionPerformed(ActionEvent e) {
+		previewProject();
+	    }
+	});
+	actionPanel.add(previewButton, "cell 4 0");
+
+	cancelButton = new JButton("Cancel");
+	cancelButton.setEnabled(false);
+	cancelButton.addActionListener(new ActionListener() {
+	    public void actionPerformed(ActionEvent e) {
+		if (buildMonitor != null) {
+		    buildMonitor.cancel();
+		}
+	    }
+	});
+	actionPanel.add(cancelButton, "cell 5 0");
+
 	JPanel examplePanel = new JPanel();
 	contentPane.add(examplePanel, "cell 0 3,grow");
 	examplePanel.setLayout(new BorderLayout(0, 0));
@@ -198,6 +266,9 @@ public class MainFrame extends JFrame {
 
 	JLabel exampleInoLabel = new JLabel("Example:");
 	examplePanel.add(exampleInoLabel, BorderLayout.NORTH);
+
+	statusLabel = new JLabel(" ");
+	examplePanel.add(statusLabel, BorderLayout.SOUTH);
     }
 
     /**
@@ -208,7 +279,7 @@ public class MainFrame extends JFrame {
 
 	// Directory with ACP modules
 	acpModulesPathTextField.setText(pref.get("acp-modules-path", ""));
-	if (!isDirectory(acpModulesPathTextField.getText())) {
+	if (!isModuleRepository(acpModulesPathTextField.getText())) {
 	    acpModulesPathTextField.setText("");
 	}
 
@@ -216,6 +287,9 @@ public class MainFrame extends JFrame {
 	arduinoLibraryPathTextField.setText(pref.get("arduino-library-path", ""));
 	if (!isDirectory(arduinoLibraryPathTextField.getText())) {
 	    arduinoLibraryPathTextField.setText("");
+	} else {
+	    // Delete libraries left in the trash by earlier clean builds
+	    FileTrash.sweep(new File(arduinoLibraryPathTextField.getText()));
 	}
 
 	// Directory with last open project
@@ -257,13 +331,31 @@ public class MainFrame extends JFrame {
 	return dirFile.exists() && dirFile.isDirectory();
     }
 
+    /**
+     * Checks whether given path represents an existing directory or archive
+     * with ACP modules.
+     * 
+     * @param path
+     *            the path to a directory or archive.
+     * @return true, if the path represents a repository of modules, false
+     *         otherwise.
+     */
+    private boolean isModuleRepository(String path) {
+	if ((path == null) || (path.trim().isEmpty())) {
+	    return false;
+	}
+
+	return ACPCompiler.isModuleRepository(new File(path));
+    }
+
     /**
      * Changes path to acp modules.
      */
     private void changeAcpModulesPath() {
 	JFileChooser chooser = new JFileChooser();
-	chooser.setDialogTitle("Choose directory with ACP modules");
-	chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+	chooser.setDialogTitle("Choose directory or archive with ACP modules");
+	chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+	chooser.addChoosableFileFilter(new FileNameExtensionFilter("Module archives", "zip", "jar"));
 
 	chooser.setSelectedFile(new File(acpModulesPathTextField.getText()));
 	int returnVal = chooser.showOpenDialog(this);
@@ -326,7 +418,7 @@ public class MainFrame extends JFrame {
      */
     private void setButtons() {
 	boolean canBuild = true;
-	if (!isDirectory(acpModulesPathTextField.getText())) {
+	if (!isModuleRepository(acpModulesPathTextField.getText())) {
 	    canBuild = false;
 	}
 
@@ -347,82 +439,256 @@ public class MainFrame extends JFrame {
 	    canBuild = false;
 	}
 
-	buildButton.setEnabled(canBuild);
-	cleanAndBuildButton.setEnabled(canBuild);
+	boolean watching = (projectWatcher != null);
+	boolean building = (buildMonitor != null);
+	buildButton.setEnabled(canBuild && !watching && !building);
+	cleanAndBuildButton.setEnabled(canBuild && !watching && !building);
+	watchButton.setEnabled((canBuild && !building) || watching);
+	watchButton.setSelected(watching);
+	previewButton.setEnabled(canBuild && !building);
+	cancelButton.setEnabled(building);
     }
 
     /**
-     * Builds the project.
+     * Builds the project in a background thread. Progress of the build is
+     * shown in the status line and the build can be cancelled.
      * 
      * @param clean
      *            true, if the output directory should be cleaned before the
      *            build process, false otherwise.
      */
     private void buildProject(boolean clean) {
-	// Check preconditions
+	final CompilationSettings settings = createCompilationSettings();
+	if (settings == null) {
+	    return;
+	}
+
+	// Clean (if required), the old library is deleted in background
+	if (clean) {
+	    FileTrash.discard(settings.getLibraryDirectory());
+	}
+
+	// Build
+	final File modulesPath = new File(acpModulesPathTextField.getText());
+	final CompilationMonitor monitor = new CompilationMonitor(new CompilationListener() {
+	    @Override
+	    public void compilationProgress(final CompilationEvent event) {
+		SwingUtilities.invokeLater(new Runnable() {
+		    @Override
+		    public void run() {
+			statusLabel.setText(event.toString());
+		    }
+		});
+	    }
+	});
+	buildMonitor = monitor;
+	setButtons();
+
+	new SwingWorker<CompilationResult, Void>() {
+	    @Override
+	    protected CompilationResult doInBackground() throws Exception {
+		try (ACPCompiler compiler = createCompiler(modulesPath)) {
+		    return compiler.compile(settings, new FileSystemOutputSink(), monitor);
+		}
+	    }
+
+	    @Override
+	    protected void done() {
+		buildMonitor = null;
+		setButtons();
+
+		CompilationResult result;
+		try {
+		    result = get();
+		} catch (ExecutionException e) {
+		    if (e.getCause() instanceof CompilationCancelledException) {
+			statusLabel.setText(e.getCause().getMessage());
+		    } else {
+			statusLabel.setText(" ");
+			JOptionPane.showMessageDialog(MainFrame.this, "Build failed: "
+				+ e.getCause().getLocalizedMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+		    }
+		    return;
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    return;
+		}
+
+		statusLabel.setText(" ");
+		showExample(settings);
+		JOptionPane.showMessageDialog(MainFrame.this, "Build completed: " + result + ".");
+	    }
+	}.execute();
+    }
+
+    /**
+     * Compiles the project to memory and shows the generated example. Nothing
+     * is written to the directory with Arduino libraries.
+     */
+    private void previewProject() {
+	CompilationSettings settings = createCompilationSettings();
+	if (settings == null) {
+	    return;
+	}
+
+	MemoryOutputSink outputSink = new MemoryOutputSink(settings.getOutputLibraryPath());
+	try (ACPCompiler compiler = createCompiler(new File(acpModulesPathTextField.getText()))) {
+	    compiler.compile(settings, outputSink);
+	} catch (Exception e) {
+	    JOptionPane.showMessageDialog(this, "Preview failed: " + e.getLocalizedMessage(), "Error",
+		    JOptionPane.ERROR_MESSAGE);
+	    return;
+	}
+
+	byte[] example = outputSink.getContent(settings.getExampleFile());
+	exampleInoTextArea.setText((example != null) ? new String(example, Charset.defaultCharset()) : "");
+	exampleInoTextArea.setCaretPosition(0);
+	statusLabel.setText("Preview: " + outputSink.getPaths().size() + " file(s), " + outputSink.getSize()
+		+ " bytes (not saved)");
+    }
+
+    /**
+     * Starts the watch mode that rebuilds the project whenever the project
+     * configuration or a module used by the project changes.
+     */
+    private void startWatching() {
+	final CompilationSettings settings = createCompilationSettings();
+	if (settings == null) {
+	    setButtons();
+	    return;
+	}
+
+	try {
+	    watchCompiler = createCompiler(new File(acpModulesPathTextField.getText()));
+	    projectWatcher = new ProjectWatcher(watchCompiler, settings, new ProjectWatcher.RebuildListener() {
+		@Override
+		public void rebuildCompleted(final ProjectWatcher.RebuildReport report) {
+		    SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+			    statusLabel.setText(report.toString());
+			    statusLabel.setToolTipText(report.toString());
+			    if (report.isSuccessful()) {
+				showExample(settings);
+			    }
+			}
+		    });
+		}
+	    });
+	} catch (Exception e) {
+	    stopWatching();
+	    JOptionPane.showMessageDialog(this, "Watch mode cannot be started: " + e.getLocalizedMessage(), "Error",
+		    JOptionPane.ERROR_MESSAGE);
+	    return;
+	}
+
+	projectXmlChangeButton.setEnabled(false);
+	statusLabel.setText("Watching project...");
+	projectWatcher.start();
+	setButtons();
+    }
+
+    /**
+     * Stops the watch mode (if active).
+     */
+    private void stopWatching() {
+	if (projectWatcher != null) {
+	    projectWatcher.close();
+	    projectWatcher = null;
+	}
+
+	if (watchCompiler != null) {
+	    watchCompiler.close();
+	    watchCompiler = null;
+	}
+
+	statusLabel.setText(" ");
+	projectXmlChangeButton.setEnabled(isModuleRepository(acpModulesPathTextField.getText())
+		&& isDirectory(arduinoLibraryPathTextField.getText()));
+	setButtons();
+    }
+
+    /**
+     * Checks preconditions of a build and creates compilation settings.
+     * 
+     * @return the compilation settings or null, if the build cannot be
+     *         started.
+     */
+    private CompilationSettings createCompilationSettings() {
 	String libraryName = libraryNameTextField.getText().trim();
 	if (libraryName.isEmpty()) {
 	    JOptionPane.showMessageDialog(this, "Library name cannot be empty.", "Error", JOptionPane.ERROR_MESSAGE);
-	    return;
+	    return null;
 	}
 
 	if (libraryName.matches("^.*[^a-zA-Z0-9 ].*$")) {
 	    JOptionPane.showMessageDialog(this, "Library name cannot contain nonalphanumeric characters.", "Error",
 		    JOptionPane.ERROR_MESSAGE);
-	    return;
+	    return null;
 	}
 
 	File acpModulesDirectory = new File(acpModulesPathTextField.getText());
-	if (!acpModulesDirectory.exists() || !acpModulesDirectory.isDirectory()) {
-	    JOptionPane.showMessageDialog(this, "Directory with ACP modules does not exist.", "Error",
+	if (!ACPCompiler.isModuleRepository(acpModulesDirectory)) {
+	    JOptionPane.showMessageDialog(this, "Directory or archive with ACP modules does not exist.", "Error",
 		    JOptionPane.ERROR_MESSAGE);
-	    return;
+	    return null;
 	}
 
 	File arduinoLibraryDirectory = new File(arduinoLibraryPathTextField.getText());
 	if (!arduinoLibraryDirectory.exists() || !arduinoLibraryDirectory.isDirectory()) {
 	    JOptionPane.showMessageDialog(this, "Directory with Arduino libraries does not exist.", "Error",
 		    JOptionPane.ERROR_MESSAGE);
-	    return;
+	    return null;
 	}
 
 	File projectFile = new File(projectXmlTextField.getText());
 	if (!projectFile.exists() || !projectFile.isFile()) {
 	    JOptionPane.showMessageDialog(this, "File with project configuration does not exist.", "Error",
 		    JOptionPane.ERROR_MESSAGE);
-	    return;
+	    return null;
 	}
 
-	// Clean (if required)
-	if (clean) {
-	    File libraryDir = new File(arduinoLibraryDirectory, libraryName);
-	    FileUtils.removeDirectory(libraryDir);
+	CompilationSettings settings = new CompilationSettings();
+	settings.setProjectConfigurationFile(projectFile);
+	settings.setLibraryName(libraryName);
+	settings.setOutputLibraryPath(arduinoLibraryDirectory);
+	settings.setDebugMode(debugModeCheckBox.isSelected());
+	settings.setIncrementalExport(true);
+	return settings;
+    }
+
+    /**
+     * Creates a compiler for a module repository. The default index of the
+     * repository is used, if it exists.
+     * 
+     * @param modulesPath
+     *            the directory or archive with modules.
+     * @return the compiler.
+     */
+    private ACPCompiler createCompiler(File modulesPath) {
+	ACPCompiler compiler = new ACPCompiler(modulesPath);
+	ModuleRepositoryIndex repositoryIndex = ModuleRepositoryIndex.openDefault(modulesPath);
+	if (repositoryIndex != null) {
+	    compiler.setRepositoryIndex(repositoryIndex);
 	}
 
-	// Build
-	try {
-	    ACPCompiler compiler = new ACPCompiler(acpModulesDirectory);
-	    CompilationSettings settings = new CompilationSettings();
-	    settings.setProjectConfigurationFile(projectFile);
-	    settings.setLibraryName(libraryName);
-	    settings.setOutputLibraryPath(arduinoLibraryDirectory);
-	    settings.setDebugMode(debugModeCheckBox.isSelected());
-	    compiler.compile(settings);
-
-	    File exampleFile = settings.getExampleFile();
-	    if (exampleFile.exists()) {
-		exampleInoTextArea.setText(FileUtils.readFile(exampleFile));
-	    } else {
-		exampleInoTextArea.setText("");
-	    }
+	return compiler;
+    }
 
-	    exampleInoTextArea.setCaretPosition(0);
-	} catch (Exception e) {
-	    JOptionPane.showMessageDialog(this, "Build failed: " + e.getLocalizedMessage(), "Error",
-		    JOptionPane.ERROR_MESSAGE);
-	    return;
+    /**
+     * Shows the generated example of the library.
+     * 
+     * @param settings
+     *            the compilation settings of the library.
+     */
+    private void showExample(CompilationSettings settings) {
+	File exampleFile = settings.getExampleFile();
+	if (exampleFile.exists()) {
+	    exampleInoTextArea.setText(FileUtils.readFile(exampleFile));
+	} else {
+	    exampleInoTextArea.setText("");
 	}
 
-	JOptionPane.showMessageDialog(this, "Build completed.");
+	exampleInoTextArea.setCaretPosition(0);
     }
 }
@@ -1,8 +1,12 @@
 package net.acprog.builder.modules;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 import net.acprog.builder.components.*;
+import net.acprog.builder.utils.DataUtils;
 import net.acprog.builder.utils.XmlUtils;
 
 import org.w3c.dom.Element;
@@ -281,4 +285,93 @@ public class ComponentType extends Module {
 	    looperDesc.validate(this);
 	}
     }
+
+    // ---------------------------------------------------------------------------
+    // Binary serialization
+    // ---------------------------------------------------------------------------
+
+    protected void writeConfiguration(DataOutput out) throws IOException {
+	writeInstance(out, view);
+	writeInstance(out, controller);
+	Binding.writeOptional(out, viewBinding);
+
+	out.writeInt(properties.size());
+	for (Map.Entry<String, PropertyType> property : properties.entrySet()) {
+	    DataUtils.writeString(out, property.getKey());
+	    property.getValue().writeToStream(out);
+	}
+
+	out.writeInt(events.size());
+	for (Map.Entry<String, Event> event : events.entrySet()) {
+	    DataUtils.writeString(out, event.getKey());
+	    event.getValue().writeToStream(out);
+	}
+
+	out.writeInt(loopers.size());
+	for (Looper looper : loopers) {
+	    looper.writeToStream(out);
+	}
+
+	out.writeInt(methodWrappers.size());
+	for (MethodWrapper methodWrapper : methodWrappers) {
+	    methodWrapper.writeToStream(out);
+	}
+    }
+
+    protected void readConfiguration(DataInput in) throws IOException {
+	view = readInstance(in);
+	controller = readInstance(in);
+	viewBinding = Binding.readOptional(in);
+
+	properties.clear();
+	int propertyCount = in.readInt();
+	for (int i = 0; i < propertyCount; i++) {
+	    String propertyName = DataUtils.readString(in);
+	    PropertyType ptd = new PropertyType();
+	    ptd.readFromStream(in);
+	    properties.put(propertyName, ptd);
+	}
+
+	events.clear();
+	int eventCount = in.readInt();
+	for (int i = 0; i < eventCount; i++) {
+	    String eventName = DataUtils.readString(in);
+	    Event ed = new Event();
+	    ed.readFromStream(in);
+	    events.put(eventName, ed);
+	}
+
+	loopers.clear();
+	int looperCount = in.readInt();
+	for (int i = 0; i < looperCount; i++) {
+	    Looper ld = new Looper();
+	    ld.readFromStream(in);
+	    loopers.add(ld);
+	}
+
+	methodWrappers.clear();
+	int methodWrapperCount = in.readInt();
+	for (int i = 0; i < methodWrapperCount; i++) {
+	    MethodWrapper mw = new MethodWrapper();
+	    mw.readFromStream(in);
+	    methodWrappers.add(mw);
+	}
+    }
+
+    private static void writeInstance(DataOutput out, Instance instance) throws IOException {
+	out.writeBoolean(instance != null);
+	if (instance != null) {
+	    instance.writeToStream(out);
+	}
+    }
+
+    private Instance readInstance(DataInput in) throws IOException {
+	if (!in.readBoolean()) {
+	    return null;
+	}
+
+	Instance instance = new Instance(this);
+	instance.readFromStream(in);
+	return instance;
+    }
 }
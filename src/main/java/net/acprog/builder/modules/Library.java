@@ -1,8 +1,12 @@
 package net.acprog.builder.modules;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 import net.acprog.builder.components.ConfigurationException;
+import net.acprog.builder.utils.DataUtils;
 import net.acprog.builder.utils.XmlUtils;
 
 import org.w3c.dom.Element;
@@ -56,4 +60,17 @@ public class Library extends Module {
 	    }
 	}
     }
+
+    // ---------------------------------------------------------------------------
+    // Binary serialization
+    // ---------------------------------------------------------------------------
+
+    protected void writeConfiguration(DataOutput out) throws IOException {
+	DataUtils.writeStrings(out, includes);
+    }
+
+    protected void readConfiguration(DataInput in) throws IOException {
+	includes.clear();
+	DataUtils.readStrings(in, includes);
+    }
 }
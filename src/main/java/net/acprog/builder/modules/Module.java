@@ -1,6 +1,13 @@
 package net.acprog.builder.modules;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -8,10 +15,12 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
 import net.acprog.builder.components.ConfigurationException;
+import net.acprog.builder.utils.DataUtils;
 import net.acprog.builder.utils.XmlUtils;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
 
 /**
  * Description of a ACP module. A module can be a component (type) or a library.
@@ -52,9 +61,10 @@ abstract public class Module {
     // ---------------------------------------------------------------------------
 
     /**
-     * Directory containing module resources.
+     * Directory containing module resources. The directory can be located in
+     * a module archive.
      */
-    private File directory;
+    private Path directory;
 
     /**
      * Full (dot based) name of the component type.
@@ -77,11 +87,11 @@ abstract public class Module {
     // Setters and getters
     // ---------------------------------------------------------------------------
 
-    public File getDirectory() {
+    public Path getDirectory() {
         return directory;
     }
 
-    public void setDirectory(File directory) {
+    public void setDirectory(Path directory) {
         this.directory = directory;
     }
 
@@ -121,13 +131,58 @@ abstract public class Module {
      * @throws ConfigurationException if loading of module description failed.
      */
     public static Module loadFromFile(File xmlFile) throws ConfigurationException {
+        return loadFromFile(xmlFile.toPath());
+    }
+
+    /**
+     * Loads a module configuration from an xml file. The file can be located
+     * in any file system, e.g., in a mounted zip archive.
+     *
+     * @param xmlFile the xml file with description of a module.
+     * @return the constructed module description.
+     * @throws ConfigurationException if loading of module description failed.
+     */
+    public static Module loadFromFile(Path xmlFile) throws ConfigurationException {
+        try (InputStream in = Files.newInputStream(xmlFile)) {
+            InputSource source = new InputSource(in);
+            source.setSystemId(xmlFile.toUri().toString());
+            return loadFromSource(xmlFile, source);
+        } catch (IOException e) {
+            throw new ConfigurationException(
+                    "Loading of description of a module from file " + xmlFile.toUri() + " failed.", e);
+        }
+    }
+
+    /**
+     * Loads a module configuration from already read content of an xml file.
+     *
+     * @param xmlFile the xml file with description of a module.
+     * @param content the content of the xml file.
+     * @return the constructed module description.
+     * @throws ConfigurationException if loading of module description failed.
+     */
+    public static Module loadFromContent(Path xmlFile, byte[] content) throws ConfigurationException {
+        InputSource source = new InputSource(new ByteArrayInputStream(content));
+        source.setSystemId(xmlFile.toUri().toString());
+        return loadFromSource(xmlFile, source);
+    }
+
+    /**
+     * Loads a module configuration from an xml input source.
+     *
+     * @param xmlFile the xml file with description of a module.
+     * @param source the input source providing content of the xml file.
+     * @return the constructed module description.
+     * @throws ConfigurationException if loading of module description failed.
+     */
+    private static Module loadFromSource(Path xmlFile, InputSource source) throws ConfigurationException {
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         dbf.setIgnoringComments(true);
         dbf.setCoalescing(true);
 
         try {
             DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.parse(xmlFile);
+            Document doc = db.parse(source);
 
             Module result = null;
             Element xmlRoot = doc.getDocumentElement();
@@ -144,12 +199,12 @@ abstract public class Module {
                         "Unknown module type '" + moduleType + "' (root element of the module description).");
             }
 
-            result.directory = xmlFile.getParentFile();
+            result.directory = xmlFile.getParent();
             result.readModuleConfiguration(xmlRoot);
             result.readConfiguration(xmlRoot);
             return result;
         } catch (Exception e) {
-            System.err.println("Loading of a file " + xmlFile + " with module description failed:");
+            System.err.println("Loading of a file " + xmlFile.toUri() + " with module description failed:");
             String prefix = "  ";
             Throwable t = e;
             while (t != null) {
@@ -158,7 +213,7 @@ abstract public class Module {
                 prefix += "  ";
             }
             throw new ConfigurationException(
-                    "Loading of description of a module from file " + xmlFile.getAbsolutePath() + " failed.", e);
+                    "Loading of description of a module from file " + xmlFile.toUri() + " failed.", e);
         }
     }
 
@@ -214,4 +269,67 @@ abstract public class Module {
      * @throws ConfigurationException if a module misconfiguration is detected.
      */
     protected abstract void readConfiguration(Element xmlModule) throws ConfigurationException;
+
+    // ---------------------------------------------------------------------------
+    // Binary serialization
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Writes the module description to a binary data output. The directory of
+     * the module is not written.
+     *
+     * @param out the data output.
+     * @throws IOException if writing failed.
+     */
+    public void writeToStream(DataOutput out) throws IOException {
+        DataUtils.writeString(out, (this instanceof ComponentType) ? COMPONENT_TYPE_XML_ROOT : LIBRARY_XML_ROOT);
+        DataUtils.writeString(out, name);
+        DataUtils.writeString(out, description);
+        DataUtils.writeStrings(out, requiredModules);
+        DataUtils.writeStrings(out, requiredArduinoLibIncludes);
+        writeConfiguration(out);
+    }
+
+    /**
+     * Reads a module description written by {@link #writeToStream(DataOutput)}.
+     * The directory of the module is not set.
+     *
+     * @param in the data input.
+     * @return the module description.
+     * @throws IOException if reading failed.
+     */
+    public static Module readFromStream(DataInput in) throws IOException {
+        Module result;
+        String moduleType = DataUtils.readString(in);
+        if (COMPONENT_TYPE_XML_ROOT.equals(moduleType)) {
+            result = new ComponentType();
+        } else if (LIBRARY_XML_ROOT.equals(moduleType)) {
+            result = new Library();
+        } else {
+            throw new IOException("Unknown module type '" + moduleType + "'.");
+        }
+
+        result.name = DataUtils.readString(in);
+        result.description = DataUtils.readString(in);
+        DataUtils.readStrings(in, result.requiredModules);
+        DataUtils.readStrings(in, result.requiredArduinoLibIncludes);
+        result.readConfiguration(in);
+        return result;
+    }
+
+    /**
+     * Writes specific module description to a binary data output.
+     *
+     * @param out the data output.
+     * @throws IOException if writing failed.
+     */
+    protected abstract void writeConfiguration(DataOutput out) throws IOException;
+
+    /**
+     * Reads specific module description from a binary data input.
+     *
+     * @param in the data input.
+     * @throws IOException if reading failed.
+     */
+    protected abstract void readConfiguration(DataInput in) throws IOException;
 }
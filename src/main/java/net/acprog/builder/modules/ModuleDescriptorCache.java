@@ -0,0 +1,363 @@
+package net.acprog.builder.modules;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.acprog.builder.components.ConfigurationException;
+import net.acprog.builder.utils.HashUtils;
+
+/**
+ * Persistent cache of parsed module descriptions. Each module is stored in a
+ * separate cache file together with a fingerprint (path, modification time,
+ * size and content hash) of the description file from which the module was
+ * parsed. A cache entry is used only if the fingerprint matches the current
+ * description file, otherwise the module is parsed again and the entry is
+ * replaced.
+ */
+public class ModuleDescriptorCache {
+
+    // ---------------------------------------------------------------------------
+    // Configuration constants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Extension of cache files.
+     */
+    private static final String CACHE_FILE_EXTENSION = ".module";
+
+    /**
+     * Magic number at the beginning of each cache file.
+     */
+    private static final int CACHE_FILE_MAGIC = 0x41435044;
+
+    /**
+     * Version of the cache file format.
+     */
+    private static final int CACHE_FILE_VERSION = 2;
+
+    // ---------------------------------------------------------------------------
+    // Fingerprint
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Fingerprint of a module description file.
+     */
+    private static class Fingerprint {
+	/**
+	 * URI of the description file.
+	 */
+	final String path;
+
+	/**
+	 * Time of the last modification.
+	 */
+	final long lastModified;
+
+	/**
+	 * Size of the file in bytes.
+	 */
+	final long size;
+
+	/**
+	 * Hash of the file content.
+	 */
+	final byte[] hash;
+
+	Fingerprint(String path, long lastModified, long size, byte[] hash) {
+	    this.path = path;
+	    this.lastModified = lastModified;
+	    this.size = size;
+	    this.hash = hash;
+	}
+
+	/**
+	 * Checks whether the fingerprint equals to another fingerprint.
+	 *
+	 * @param other
+	 *            the other fingerprint.
+	 * @return true, if fingerprints are equal, false otherwise.
+	 */
+	boolean matches(Fingerprint other) {
+	    return path.equals(other.path) && (lastModified == other.lastModified) && (size == other.size)
+		    && Arrays.equals(hash, other.hash);
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Directory where cache files are stored.
+     */
+    private final File cacheDirectory;
+
+    /**
+     * Number of modules loaded from the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Number of modules that had to be parsed.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Total time (in nanoseconds) spent by parsing of module descriptions.
+     */
+    private final AtomicLong parseTime = new AtomicLong();
+
+    /**
+     * Total time (in nanoseconds) of parsing saved by cache hits. The saved
+     * time is estimated by the parse time recorded in cache entries.
+     */
+    private final AtomicLong savedParseTime = new AtomicLong();
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the cache.
+     *
+     * @param cacheDirectory
+     *            the directory where cache files are stored.
+     */
+    public ModuleDescriptorCache(File cacheDirectory) {
+	this.cacheDirectory = cacheDirectory;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Setters and getters
+    // ---------------------------------------------------------------------------
+
+    public File getCacheDirectory() {
+	return cacheDirectory;
+    }
+
+    public long getHits() {
+	return hits.get();
+    }
+
+    public long getMisses() {
+	return misses.get();
+    }
+
+    /**
+     * Returns the total time spent by parsing of module descriptions that were
+     * not found in the cache.
+     *
+     * @return the parse time in nanoseconds.
+     */
+    public long getParseTime() {
+	return parseTime.get();
+    }
+
+    /**
+     * Returns the estimated time of parsing saved by cache hits.
+     *
+     * @return the saved parse time in nanoseconds.
+     */
+    public long getSavedParseTime() {
+	return savedParseTime.get();
+    }
+
+    // ---------------------------------------------------------------------------
+    // Cache methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Loads a module description from an xml file. If the cache contains a
+     * valid entry for the file, the parsed module is read from the cache.
+     *
+     * @param xmlFile
+     *            the xml file with description of a module.
+     * @return the module description.
+     * @throws ConfigurationException
+     *             if loading of module description failed.
+     */
+    public Module load(File xmlFile) throws ConfigurationException {
+	return load(xmlFile.toPath());
+    }
+
+    /**
+     * Loads a module description from an xml file located in any file system
+     * (e.g., in a mounted module archive). If the cache contains a valid entry
+     * for the file, the parsed module is read from the cache.
+     *
+     * @param xmlFile
+     *            the xml file with description of a module.
+     * @return the module description.
+     * @throws ConfigurationException
+     *             if loading of module description failed.
+     */
+    public Module load(Path xmlFile) throws ConfigurationException {
+	// Read the description file
+	byte[] content;
+	long lastModified;
+	try {
+	    content = Files.readAllBytes(xmlFile);
+	    lastModified = Files.getLastModifiedTime(xmlFile).toMillis();
+	} catch (IOException e) {
+	    return Module.loadFromFile(xmlFile);
+	}
+
+	Fingerprint fingerprint = new Fingerprint(xmlFile.toUri().toString(), lastModified, content.length,
+		HashUtils.hash(content));
+	File cacheFile = getCacheFile(fingerprint.path);
+
+	// Try to read module from the cache
+	Module module = readCacheFile(cacheFile, fingerprint);
+	if (module != null) {
+	    hits.incrementAndGet();
+	    module.setDirectory(xmlFile.getParent());
+	    return module;
+	}
+
+	// Parse module description and store it in the cache
+	misses.incrementAndGet();
+	long startTime = System.nanoTime();
+	module = Module.loadFromContent(xmlFile, content);
+	long moduleParseTime = System.nanoTime() - startTime;
+	parseTime.addAndGet(moduleParseTime);
+
+	writeCacheFile(cacheFile, fingerprint, moduleParseTime, module);
+	return module;
+    }
+
+    /**
+     * Removes the cache entry for a module description file.
+     *
+     * @param xmlFile
+     *            the xml file with description of a module.
+     */
+    public void invalidate(File xmlFile) {
+	invalidate(xmlFile.toPath());
+    }
+
+    /**
+     * Removes the cache entry for a module description file located in any
+     * file system.
+     *
+     * @param xmlFile
+     *            the xml file with description of a module.
+     */
+    public void invalidate(Path xmlFile) {
+	getCacheFile(xmlFile.toUri().toString()).delete();
+    }
+
+    /**
+     * Removes all cache entries.
+     */
+    public void clear() {
+	File[] cacheFiles = cacheDirectory.listFiles();
+	if (cacheFiles == null) {
+	    return;
+	}
+
+	for (File cacheFile : cacheFiles) {
+	    if (cacheFile.isFile() && cacheFile.getName().endsWith(CACHE_FILE_EXTENSION)) {
+		cacheFile.delete();
+	    }
+	}
+    }
+
+    /**
+     * Returns the cache file for a module description file.
+     *
+     * @param path
+     *            the URI of the module description file.
+     * @return the cache file.
+     */
+    private File getCacheFile(String path) {
+	return new File(cacheDirectory, HashUtils.toHex(HashUtils.hash(path.getBytes(StandardCharsets.UTF_8)))
+		+ CACHE_FILE_EXTENSION);
+    }
+
+    /**
+     * Reads a module from a cache file.
+     *
+     * @param cacheFile
+     *            the cache file.
+     * @param fingerprint
+     *            the fingerprint of the current module description file.
+     * @return the module, or null if the cache file does not exist or it is
+     *         not valid for given fingerprint.
+     */
+    private Module readCacheFile(File cacheFile, Fingerprint fingerprint) {
+	if (!cacheFile.isFile()) {
+	    return null;
+	}
+
+	try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+	    if ((in.readInt() != CACHE_FILE_MAGIC) || (in.readInt() != CACHE_FILE_VERSION)) {
+		return null;
+	    }
+
+	    String path = in.readUTF();
+	    long lastModified = in.readLong();
+	    long size = in.readLong();
+	    byte[] hash = new byte[in.readUnsignedByte()];
+	    in.readFully(hash);
+	    if (!fingerprint.matches(new Fingerprint(path, lastModified, size, hash))) {
+		return null;
+	    }
+
+	    long moduleParseTime = in.readLong();
+	    Module module = Module.readFromStream(in);
+	    savedParseTime.addAndGet(moduleParseTime);
+	    return module;
+	} catch (Exception e) {
+	    // Broken or incompatible cache file is handled as a missing entry
+	    return null;
+	}
+    }
+
+    /**
+     * Writes a module to a cache file. Failures are ignored since the cache is
+     * only an optimization.
+     *
+     * @param cacheFile
+     *            the cache file.
+     * @param fingerprint
+     *            the fingerprint of the module description file.
+     * @param moduleParseTime
+     *            the time spent by parsing of the module description.
+     * @param module
+     *            the parsed module.
+     */
+    private void writeCacheFile(File cacheFile, Fingerprint fingerprint, long moduleParseTime, Module module) {
+	File tmpFile = null;
+	try {
+	    cacheDirectory.mkdirs();
+	    tmpFile = File.createTempFile("module", ".tmp", cacheDirectory);
+	    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+		out.writeInt(CACHE_FILE_MAGIC);
+		out.writeInt(CACHE_FILE_VERSION);
+		out.writeUTF(fingerprint.path);
+		out.writeLong(fingerprint.lastModified);
+		out.writeLong(fingerprint.size);
+		out.writeByte(fingerprint.hash.length);
+		out.write(fingerprint.hash);
+		out.writeLong(moduleParseTime);
+		module.writeToStream(out);
+	    }
+
+	    try {
+		Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+	    } catch (IOException e) {
+		Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	    }
+	} catch (Exception e) {
+	    if (tmpFile != null) {
+		tmpFile.delete();
+	    }
+	}
+    }
+}
@@ -0,0 +1,689 @@
+package net.acprog.builder.modules;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import net.acprog.builder.utils.HashUtils;
+
+/**
+ * Index of a module repository. The index maps names of modules to their
+ * directories, hashes of module descriptions and manifests of module files.
+ * The index is stored in a file that is read through a memory-mapped open
+ * addressing hash table, hence resolution of a module requires no probing of
+ * the file system. Before an entry is trusted, it is checked against the
+ * module description and directories of the module, since the index can be
+ * older than the repository.
+ */
+public class ModuleRepositoryIndex {
+
+    // ---------------------------------------------------------------------------
+    // Configuration constants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Default name of the index file in the root of a module repository.
+     */
+    public static final String DEFAULT_INDEX_FILE = ".acp-modules.idx";
+
+    /**
+     * Magic number at the beginning of each index file.
+     */
+    private static final int INDEX_FILE_MAGIC = 0x41435049;
+
+    /**
+     * Version of the index file format.
+     */
+    private static final int INDEX_FILE_VERSION = 1;
+
+    /**
+     * Size of the index file header in bytes.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    // ---------------------------------------------------------------------------
+    // Index entry
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Record of a module in the index.
+     */
+    public static class Entry {
+	/**
+	 * Name of the module.
+	 */
+	private final String name;
+
+	/**
+	 * Directory of the module relative to the repository root.
+	 */
+	private final String directory;
+
+	/**
+	 * Time of the last modification of the module description.
+	 */
+	private final long descriptorLastModified;
+
+	/**
+	 * Size of the module description file.
+	 */
+	private final long descriptorSize;
+
+	/**
+	 * Hash of the content of the module description file.
+	 */
+	private final byte[] descriptorHash;
+
+	/**
+	 * Include and source files of the module (relative to the module
+	 * directory).
+	 */
+	private final List<String> files;
+
+	/**
+	 * Directories of the module (relative to the module directory) and
+	 * times of their last modification.
+	 */
+	private final Map<String, Long> directories;
+
+	Entry(String name, String directory, long descriptorLastModified, long descriptorSize, byte[] descriptorHash,
+		List<String> files, Map<String, Long> directories) {
+	    this.name = name;
+	    this.directory = directory;
+	    this.descriptorLastModified = descriptorLastModified;
+	    this.descriptorSize = descriptorSize;
+	    this.descriptorHash = descriptorHash;
+	    this.files = Collections.unmodifiableList(files);
+	    this.directories = Collections.unmodifiableMap(directories);
+	}
+
+	public String getName() {
+	    return name;
+	}
+
+	/**
+	 * Returns the directory of the module relative to the repository root
+	 * (with slash as the path separator).
+	 */
+	public String getDirectory() {
+	    return directory;
+	}
+
+	public long getDescriptorLastModified() {
+	    return descriptorLastModified;
+	}
+
+	public long getDescriptorSize() {
+	    return descriptorSize;
+	}
+
+	public byte[] getDescriptorHash() {
+	    return descriptorHash.clone();
+	}
+
+	/**
+	 * Returns the include and source files of the module relative to the
+	 * module directory (with slash as the path separator).
+	 */
+	public List<String> getFiles() {
+	    return files;
+	}
+
+	/**
+	 * Returns the directories of the module relative to the module
+	 * directory (with slash as the path separator). The module directory
+	 * itself is not included.
+	 */
+	public Set<String> getDirectories() {
+	    Set<String> result = new TreeSet<String>(directories.keySet());
+	    result.remove("");
+	    return result;
+	}
+
+	/**
+	 * Checks whether the entry describes the current content of the module
+	 * directory, i.e., whether the module description has not been changed
+	 * and no file or directory has been added or removed.
+	 *
+	 * @param moduleDir
+	 *            the module directory.
+	 * @return true, if the entry is up to date, false otherwise.
+	 */
+	boolean isUpToDate(File moduleDir) {
+	    File descriptionFile = new File(moduleDir, Module.DESCRIPTION_FILE);
+	    if ((descriptionFile.lastModified() != descriptorLastModified)
+		    || (descriptionFile.length() != descriptorSize)) {
+		return false;
+	    }
+
+	    for (Map.Entry<String, Long> dirEntry : directories.entrySet()) {
+		File dir = dirEntry.getKey().isEmpty() ? moduleDir : new File(moduleDir, dirEntry.getKey());
+		if (dir.lastModified() != dirEntry.getValue()) {
+		    return false;
+		}
+	    }
+
+	    return true;
+	}
+
+	/**
+	 * Checks whether the entry can be used for the current content of the
+	 * module directory. The module description must have the same size and
+	 * hash (it is hashed only if its modification time differs) and no file
+	 * or directory may have been added or removed. Unlike
+	 * {@link #isUpToDate(File)}, the module directory can be located in a
+	 * mounted module archive.
+	 *
+	 * @param moduleDir
+	 *            the module directory.
+	 * @return true, if the entry describes the module directory, false
+	 *         otherwise.
+	 */
+	public boolean isValidFor(Path moduleDir) {
+	    try {
+		Path descriptionFile = moduleDir.resolve(Module.DESCRIPTION_FILE);
+		if (Files.size(descriptionFile) != descriptorSize) {
+		    return false;
+		}
+
+		if ((Files.getLastModifiedTime(descriptionFile).toMillis() != descriptorLastModified)
+			&& !Arrays.equals(descriptorHash, HashUtils.hash(Files.readAllBytes(descriptionFile)))) {
+		    return false;
+		}
+
+		for (Map.Entry<String, Long> dirEntry : directories.entrySet()) {
+		    Path dir = dirEntry.getKey().isEmpty() ? moduleDir : moduleDir.resolve(dirEntry.getKey());
+		    if (Files.getLastModifiedTime(dir).toMillis() != dirEntry.getValue()) {
+			return false;
+		    }
+		}
+
+		return true;
+	    } catch (IOException e) {
+		return false;
+	    }
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Scan statistics
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Statistics of a repository scan.
+     */
+    public static class ScanStatistics {
+	/**
+	 * Number of modules whose directories were scanned.
+	 */
+	private int scannedModules;
+
+	/**
+	 * Number of modules whose index entries were reused from a previous
+	 * index.
+	 */
+	private int reusedModules;
+
+	public int getScannedModules() {
+	    return scannedModules;
+	}
+
+	public int getReusedModules() {
+	    return reusedModules;
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Instance variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Memory-mapped content of the index file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Number of slots in the hash table (a power of 2).
+     */
+    private final int slotCount;
+
+    /**
+     * Number of modules in the index.
+     */
+    private final int size;
+
+    // ---------------------------------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Constructs the index over a mapped index file.
+     *
+     * @param buffer
+     *            the content of the index file.
+     * @throws IOException
+     *             if the content is not a valid index.
+     */
+    private ModuleRepositoryIndex(ByteBuffer buffer) throws IOException {
+	this.buffer = buffer;
+	if ((buffer.capacity() < HEADER_SIZE) || (buffer.getInt(0) != INDEX_FILE_MAGIC)
+		|| (buffer.getInt(4) != INDEX_FILE_VERSION)) {
+	    throw new IOException("Invalid or unsupported format of the module repository index.");
+	}
+
+	slotCount = buffer.getInt(8);
+	size = buffer.getInt(12);
+	if ((slotCount <= 0) || (Integer.bitCount(slotCount) != 1)
+		|| (HEADER_SIZE + 4L * slotCount > buffer.capacity())) {
+	    throw new IOException("Corrupted module repository index.");
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Lookup methods
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Returns the number of modules in the index.
+     *
+     * @return the number of modules.
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Finds the index entry of a module.
+     *
+     * @param moduleName
+     *            the name of module.
+     * @return the index entry or null, if the module is not in the index.
+     */
+    public Entry lookup(String moduleName) {
+	ByteBuffer view = buffer.duplicate();
+	byte[] encodedName = moduleName.getBytes(StandardCharsets.UTF_8);
+	int slot = hashSlot(moduleName, slotCount);
+	for (int i = 0; i < slotCount; i++) {
+	    int offset = view.getInt(HEADER_SIZE + 4 * slot);
+	    if (offset == 0) {
+		return null;
+	    }
+
+	    view.position(offset);
+	    if (Arrays.equals(encodedName, readBytes(view))) {
+		view.position(offset);
+		return readEntry(view);
+	    }
+
+	    slot = (slot + 1) & (slotCount - 1);
+	}
+
+	return null;
+    }
+
+    /**
+     * Returns all entries of the index ordered by module names.
+     *
+     * @return the list of index entries.
+     */
+    public List<Entry> getEntries() {
+	ByteBuffer view = buffer.duplicate();
+	List<Entry> result = new ArrayList<Entry>();
+	for (int slot = 0; slot < slotCount; slot++) {
+	    int offset = view.getInt(HEADER_SIZE + 4 * slot);
+	    if (offset != 0) {
+		view.position(offset);
+		result.add(readEntry(view));
+	    }
+	}
+
+	Collections.sort(result, new Comparator<Entry>() {
+	    @Override
+	    public int compare(Entry e1, Entry e2) {
+		return e1.name.compareTo(e2.name);
+	    }
+	});
+	return result;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Loading and building of index files
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Opens an index file.
+     *
+     * @param indexFile
+     *            the index file.
+     * @return the index.
+     * @throws IOException
+     *             if the index file cannot be read or it is not a valid index
+     *             file.
+     */
+    public static ModuleRepositoryIndex open(File indexFile) throws IOException {
+	try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+	    MappedByteBuffer mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	    return new ModuleRepositoryIndex(mappedBuffer);
+	}
+    }
+
+    /**
+     * Opens the default index file of a module directory.
+     *
+     * @param repositoryRoot
+     *            the root directory of the module repository.
+     * @return the index or null, if the repository is not a directory or its
+     *         default index file does not exist or it is not valid.
+     */
+    public static ModuleRepositoryIndex openDefault(File repositoryRoot) {
+	File indexFile = new File(repositoryRoot, DEFAULT_INDEX_FILE);
+	if (!repositoryRoot.isDirectory() || !indexFile.isFile()) {
+	    return null;
+	}
+
+	try {
+	    return open(indexFile);
+	} catch (IOException e) {
+	    return null;
+	}
+    }
+
+    /**
+     * Scans a module repository and stores the index to an index file.
+     *
+     * @param repositoryRoot
+     *            the root directory of the module repository.
+     * @param indexFile
+     *            the index file.
+     * @param incremental
+     *            true, if modules whose directories have not been changed
+     *            since the index file was created are taken from the
+     *            existing index file without rescanning, false to rescan all
+     *            modules.
+     * @return the statistics of the scan.
+     * @throws IOException
+     *             if the index file cannot be created.
+     */
+    public static ScanStatistics build(File repositoryRoot, File indexFile, boolean incremental) throws IOException {
+	// Load entries of the previous index
+	Map<String, Entry> previousEntries = new HashMap<String, Entry>();
+	if (incremental && indexFile.isFile()) {
+	    try {
+		for (Entry entry : open(indexFile).getEntries()) {
+		    previousEntries.put(entry.getDirectory(), entry);
+		}
+	    } catch (IOException ignore) {
+		// Invalid index file is rebuilt from scratch
+	    }
+	}
+
+	// Scan the repository
+	ScanStatistics statistics = new ScanStatistics();
+	List<Entry> entries = new ArrayList<Entry>();
+	scanDirectory(repositoryRoot, "", previousEntries, entries, statistics);
+
+	// Write the index file
+	File tmpFile = File.createTempFile("index", ".tmp", indexFile.getAbsoluteFile().getParentFile());
+	try {
+	    Files.write(tmpFile.toPath(), encodeIndex(entries));
+	    try {
+		Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+	    } catch (IOException e) {
+		Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	    }
+	} finally {
+	    tmpFile.delete();
+	}
+
+	return statistics;
+    }
+
+    /**
+     * Recursively scans a directory of the module repository for modules.
+     *
+     * @param dir
+     *            the scanned directory.
+     * @param relativePath
+     *            the path of the directory relative to the repository root.
+     * @param previousEntries
+     *            the entries of the previous index mapped by module
+     *            directories.
+     * @param entries
+     *            the list where the entries of found modules are stored.
+     * @param statistics
+     *            the scan statistics.
+     * @throws IOException
+     *             if scanning failed.
+     */
+    private static void scanDirectory(File dir, String relativePath, Map<String, Entry> previousEntries,
+	    List<Entry> entries, ScanStatistics statistics) throws IOException {
+	boolean isModule = !relativePath.isEmpty() && new File(dir, Module.DESCRIPTION_FILE).isFile();
+	if (isModule) {
+	    Entry previousEntry = previousEntries.get(relativePath);
+	    if ((previousEntry != null) && previousEntry.isUpToDate(dir)) {
+		entries.add(previousEntry);
+		statistics.reusedModules++;
+	    } else {
+		entries.add(scanModule(dir, relativePath));
+		statistics.scannedModules++;
+	    }
+	}
+
+	File[] children = dir.listFiles();
+	if (children == null) {
+	    return;
+	}
+
+	Arrays.sort(children);
+	for (File child : children) {
+	    if (!child.isDirectory()) {
+		continue;
+	    }
+
+	    // Subdirectories with module files are not searched for modules
+	    String childName = child.getName();
+	    if (isModule
+		    && (Module.INCLUDE_SUBDIR.equals(childName + "/") || Module.SRC_SUBDIR.equals(childName + "/"))) {
+		continue;
+	    }
+
+	    scanDirectory(child, relativePath.isEmpty() ? childName : relativePath + "/" + childName,
+		    previousEntries, entries, statistics);
+	}
+    }
+
+    /**
+     * Scans a module directory and creates an index entry of the module.
+     *
+     * @param moduleDir
+     *            the module directory.
+     * @param relativePath
+     *            the path of the module directory relative to the repository
+     *            root.
+     * @return the index entry.
+     * @throws IOException
+     *             if scanning failed.
+     */
+    private static Entry scanModule(File moduleDir, String relativePath) throws IOException {
+	File descriptionFile = new File(moduleDir, Module.DESCRIPTION_FILE);
+	long descriptorLastModified = descriptionFile.lastModified();
+	byte[] descriptorContent = Files.readAllBytes(descriptionFile.toPath());
+
+	List<String> files = new ArrayList<String>();
+	Map<String, Long> directories = new TreeMap<String, Long>();
+	directories.put("", moduleDir.lastModified());
+	scanModuleFiles(new File(moduleDir, Module.INCLUDE_SUBDIR), Module.INCLUDE_SUBDIR, files, directories);
+	scanModuleFiles(new File(moduleDir, Module.SRC_SUBDIR), Module.SRC_SUBDIR, files, directories);
+
+	return new Entry(relativePath.replace('/', '.'), relativePath, descriptorLastModified,
+		descriptorContent.length, HashUtils.hash(descriptorContent), files, directories);
+    }
+
+    /**
+     * Recursively collects files of a module directory.
+     *
+     * @param dir
+     *            the directory.
+     * @param relativePath
+     *            the path of the directory relative to the module directory
+     *            ending with slash.
+     * @param files
+     *            the list where relative paths of found files are stored.
+     * @param directories
+     *            the map where relative paths of found directories and their
+     *            modification times are stored.
+     */
+    private static void scanModuleFiles(File dir, String relativePath, List<String> files,
+	    Map<String, Long> directories) {
+	File[] children = dir.listFiles();
+	if (children == null) {
+	    return;
+	}
+
+	directories.put(relativePath.substring(0, relativePath.length() - 1), dir.lastModified());
+	Arrays.sort(children);
+	for (File child : children) {
+	    if (child.isDirectory()) {
+		scanModuleFiles(child, relativePath + child.getName() + "/", files, directories);
+	    } else if (child.isFile()) {
+		files.add(relativePath + child.getName());
+	    }
+	}
+    }
+
+    // ---------------------------------------------------------------------------
+    // Encoding and decoding
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Encodes entries to content of an index file.
+     *
+     * @param entries
+     *            the index entries.
+     * @return the content of the index file.
+     * @throws IOException
+     *             if encoding failed.
+     */
+    private static byte[] encodeIndex(List<Entry> entries) throws IOException {
+	// Hash table is at most half full
+	int slotCount = Integer.highestOneBit(Math.max(entries.size(), 1)) * 4;
+
+	// Encode entries and assign them to slots
+	int[] slots = new int[slotCount];
+	ByteArrayOutputStream entriesContent = new ByteArrayOutputStream();
+	DataOutputStream entriesOut = new DataOutputStream(entriesContent);
+	int entriesOffset = HEADER_SIZE + 4 * slotCount;
+	for (Entry entry : entries) {
+	    int slot = hashSlot(entry.name, slotCount);
+	    while (slots[slot] != 0) {
+		slot = (slot + 1) & (slotCount - 1);
+	    }
+	    slots[slot] = entriesOffset + entriesOut.size();
+
+	    writeString(entriesOut, entry.name);
+	    writeString(entriesOut, entry.directory);
+	    entriesOut.writeLong(entry.descriptorLastModified);
+	    entriesOut.writeLong(entry.descriptorSize);
+	    entriesOut.writeInt(entry.descriptorHash.length);
+	    entriesOut.write(entry.descriptorHash);
+	    entriesOut.writeInt(entry.files.size());
+	    for (String file : entry.files) {
+		writeString(entriesOut, file);
+	    }
+	    entriesOut.writeInt(entry.directories.size());
+	    for (Map.Entry<String, Long> dirEntry : entry.directories.entrySet()) {
+		writeString(entriesOut, dirEntry.getKey());
+		entriesOut.writeLong(dirEntry.getValue());
+	    }
+	}
+	entriesOut.flush();
+
+	// Compose the index file
+	ByteArrayOutputStream content = new ByteArrayOutputStream(entriesOffset + entriesContent.size());
+	DataOutputStream out = new DataOutputStream(content);
+	out.writeInt(INDEX_FILE_MAGIC);
+	out.writeInt(INDEX_FILE_VERSION);
+	out.writeInt(slotCount);
+	out.writeInt(entries.size());
+	for (int offset : slots) {
+	    out.writeInt(offset);
+	}
+	entriesContent.writeTo(out);
+	out.flush();
+	return content.toByteArray();
+    }
+
+    /**
+     * Decodes an index entry starting at the current position of a buffer.
+     *
+     * @param view
+     *            the buffer.
+     * @return the decoded entry.
+     */
+    private static Entry readEntry(ByteBuffer view) {
+	String name = readString(view);
+	String directory = readString(view);
+	long descriptorLastModified = view.getLong();
+	long descriptorSize = view.getLong();
+	byte[] descriptorHash = readBytes(view);
+
+	int fileCount = view.getInt();
+	List<String> files = new ArrayList<String>(fileCount);
+	for (int i = 0; i < fileCount; i++) {
+	    files.add(readString(view));
+	}
+
+	int directoryCount = view.getInt();
+	Map<String, Long> directories = new TreeMap<String, Long>();
+	for (int i = 0; i < directoryCount; i++) {
+	    String dir = readString(view);
+	    directories.put(dir, view.getLong());
+	}
+
+	return new Entry(name, directory, descriptorLastModified, descriptorSize, descriptorHash, files, directories);
+    }
+
+    /**
+     * Computes the initial slot of a module name in the hash table.
+     *
+     * @param moduleName
+     *            the name of module.
+     * @param slotCount
+     *            the number of slots (a power of 2).
+     * @return the slot.
+     */
+    private static int hashSlot(String moduleName, int slotCount) {
+	int h = moduleName.hashCode();
+	h ^= (h >>> 16);
+	h *= 0x85ebca6b;
+	h ^= (h >>> 13);
+	return h & (slotCount - 1);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+	byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+	out.writeInt(encoded.length);
+	out.write(encoded);
+    }
+
+    private static byte[] readBytes(ByteBuffer view) {
+	byte[] result = new byte[view.getInt()];
+	view.get(result);
+	return result;
+    }
+
+    private static String readString(ByteBuffer view) {
+	return new String(readBytes(view), StandardCharsets.UTF_8);
+    }
+}
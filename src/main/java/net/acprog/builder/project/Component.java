@@ -43,11 +43,6 @@ public class Component {
      */
     private final Map<String, String> events = new HashMap<String, String>();
 
-    /**
-     * Properties generated during compilation process.
-     */
-    private final Map<String, String> autogeneratedProperties = new HashMap<String, String>();
-
     // ---------------------------------------------------------------------------
     // Setters and getters
     // ---------------------------------------------------------------------------
@@ -60,10 +55,6 @@ public class Component {
         return events;
     }
 
-    public Map<String, String> getAutogeneratedProperties() {
-        return autogeneratedProperties;
-    }
-
     public String getName() {
         return name;
     }
@@ -96,6 +87,21 @@ public class Component {
         this.description = description;
     }
 
+    /**
+     * Creates a copy of the component configuration.
+     *
+     * @return the copy of component configuration.
+     */
+    public Component copy() {
+        Component result = new Component();
+        result.name = name;
+        result.type = type;
+        result.description = description;
+        result.properties.putAll(properties);
+        result.events.putAll(events);
+        return result;
+    }
+
     // ---------------------------------------------------------------------------
     // XML parsing and validation
     // ---------------------------------------------------------------------------
@@ -22,6 +22,28 @@ import org.w3c.dom.Element;
  */
 public class Project {
 
+    // ---------------------------------------------------------------------------
+    // Problem handler
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Handler of problems found while reading a project configuration. A
+     * handler allows to read the whole configuration even if some of its
+     * parts are invalid.
+     */
+    public interface ProblemHandler {
+	/**
+	 * Invoked when a part of the project configuration is invalid. The
+	 * invalid part is skipped and reading continues with the next part.
+	 * 
+	 * @param xmlElement
+	 *            the xml element with invalid configuration.
+	 * @param problem
+	 *            the description of problem.
+	 */
+	void handleProblem(Element xmlElement, ConfigurationException problem);
+    }
+
     // ---------------------------------------------------------------------------
     // Instance variables
     // ---------------------------------------------------------------------------
@@ -120,36 +142,84 @@ public class Project {
      * 
      */
     public void readConfiguration(Element xmlProject) throws ConfigurationException {
+	readConfiguration(xmlProject, null);
+    }
+
+    /**
+     * Reads project configuration from an xml element. Problems in the
+     * configuration are reported to a problem handler and invalid parts of
+     * the configuration (e.g., invalid components) are skipped.
+     * 
+     * @param xmlProject
+     *            the xml element with project configuration.
+     * @param problemHandler
+     *            the handler of found problems (null, if the first problem
+     *            should be thrown).
+     * @throws ConfigurationException
+     *             if the project is misconfigured and no problem handler is
+     *             given.
+     */
+    public void readConfiguration(Element xmlProject, ProblemHandler problemHandler)
+	    throws ConfigurationException {
 	// Read name of target platform
 	platformName = xmlProject.getAttribute("platform");
 
 	// Read program
-	readProgramConfiguration(XmlUtils.getChildElement(xmlProject, "program"));
+	readProgramConfiguration(XmlUtils.getChildElement(xmlProject, "program"), problemHandler);
 
 	// Read eeprom configuration
-	readEepromConfiguration(XmlUtils.getChildElement(xmlProject, "eeprom"));
+	readEepromConfiguration(XmlUtils.getChildElement(xmlProject, "eeprom"), problemHandler);
 
 	// Read components
 	components.clear();
 	Element xmlComponents = XmlUtils.getChildElement(xmlProject, "components");
 	if (xmlComponents != null) {
 	    for (Element xmlComponent : XmlUtils.getChildElements(xmlComponents, "component")) {
-		Component componentConfig = new Component();
-		componentConfig.readFromXml(xmlComponent);
-		components.add(componentConfig);
+		try {
+		    Component componentConfig = new Component();
+		    componentConfig.readFromXml(xmlComponent);
+		    components.add(componentConfig);
+		} catch (ConfigurationException e) {
+		    handleProblem(problemHandler, xmlComponent, e);
+		}
 	    }
 	}
     }
 
+    /**
+     * Reports a problem to a problem handler.
+     * 
+     * @param problemHandler
+     *            the problem handler (null, if the problem should be thrown).
+     * @param xmlElement
+     *            the xml element with invalid configuration.
+     * @param problem
+     *            the description of problem.
+     * @throws ConfigurationException
+     *             if no problem handler is given.
+     */
+    private static void handleProblem(ProblemHandler problemHandler, Element xmlElement,
+	    ConfigurationException problem) throws ConfigurationException {
+	if (problemHandler == null) {
+	    throw problem;
+	}
+
+	problemHandler.handleProblem(xmlElement, problem);
+    }
+
     /**
      * Reads configuration of program from an xml element.
      * 
      * @param xmlProgram
      *            the xml element with program configuration.
+     * @param problemHandler
+     *            the handler of found problems (null, if the first problem
+     *            should be thrown).
      * @throws ConfigurationException
      *             if the program element is misconfigured.
      */
-    private void readProgramConfiguration(Element xmlProgram) throws ConfigurationException {
+    private void readProgramConfiguration(Element xmlProgram, ProblemHandler problemHandler)
+	    throws ConfigurationException {
 	programEvents.clear();
 	libraryImports.clear();
 
@@ -159,14 +229,18 @@ public class Project {
 
 	watchdogLevel = -1;
 	if (xmlProgram.hasAttribute("watchdog-level")) {
+	    int level = -1;
 	    try {
-		watchdogLevel = Integer.parseInt(xmlProgram.getAttribute("watchdog-level"));
+		level = Integer.parseInt(xmlProgram.getAttribute("watchdog-level"));
 	    } catch (Exception e) {
-		throw new ConfigurationException("Watchdog level must be a non-negative integer.");
+		// Invalid level is reported below
 	    }
 
-	    if (watchdogLevel < 0) {
-		throw new ConfigurationException("Watchdog level must be a non-negative integer.");
+	    if (level < 0) {
+		handleProblem(problemHandler, xmlProgram, new ConfigurationException(
+			"Watchdog level must be a non-negative integer."));
+	    } else {
+		watchdogLevel = level;
 	    }
 	}
 
@@ -176,12 +250,15 @@ public class Project {
 		String eventName = xmlEvent.getAttribute("name").trim();
 		String eventBinding = xmlEvent.getTextContent().trim();
 		if (eventName.isEmpty()) {
-		    throw new ConfigurationException("Program contains event with empty name.");
+		    handleProblem(problemHandler, xmlEvent, new ConfigurationException(
+			    "Program contains event with empty name."));
+		    continue;
 		}
 
 		if (eventBinding.isEmpty()) {
-		    throw new ConfigurationException(
-			    "Program event " + eventName + " is not set to any function of procedure.");
+		    handleProblem(problemHandler, xmlEvent, new ConfigurationException("Program event " + eventName
+			    + " is not set to any function of procedure."));
+		    continue;
 		}
 
 		programEvents.put(eventName, eventBinding);
@@ -193,7 +270,9 @@ public class Project {
 	    for (Element xmlLibraryImport : XmlUtils.getChildElements(xmlImports, "library")) {
 		String libraryModuleName = xmlLibraryImport.getTextContent().trim();
 		if (libraryModuleName.isEmpty()) {
-		    throw new ConfigurationException("Program contains an empty import of a library module.");
+		    handleProblem(problemHandler, xmlLibraryImport, new ConfigurationException(
+			    "Program contains an empty import of a library module."));
+		    continue;
 		}
 
 		libraryImports.add(libraryModuleName);
@@ -206,10 +285,14 @@ public class Project {
      * 
      * @param xmlEeprom
      *            the xml element with program configuration.
+     * @param problemHandler
+     *            the handler of found problems (null, if the first problem
+     *            should be thrown).
      * @throws ConfigurationException
      *             if the program element is misconfigured.
      */
-    private void readEepromConfiguration(Element xmlEeprom) throws ConfigurationException {
+    private void readEepromConfiguration(Element xmlEeprom, ProblemHandler problemHandler)
+	    throws ConfigurationException {
 	eepromItems.clear();
 	if (xmlEeprom == null) {
 	    return;
@@ -226,8 +309,12 @@ public class Project {
 	    }
 
 	    if (item != null) {
-		item.readFromXml(xmlEepromItem);
-		eepromItems.add(item);
+		try {
+		    item.readFromXml(xmlEepromItem);
+		    eepromItems.add(item);
+		} catch (ConfigurationException e) {
+		    handleProblem(problemHandler, xmlEepromItem, e);
+		}
 	    }
 	}
 
@@ -243,11 +330,12 @@ public class Project {
      * @return the constructed project configuration.
      */
     public static Project loadFromFile(File xmlFile) {
-	DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-	dbf.setIgnoringComments(true);
-	dbf.setCoalescing(true);
-
 	try {
+	    // Project configurations can come from clients of the build
+	    // service, hence external entities and DTDs are not loaded
+	    DocumentBuilderFactory dbf = XmlUtils.createSecureDocumentBuilderFactory();
+	    dbf.setIgnoringComments(true);
+	    dbf.setCoalescing(true);
 	    DocumentBuilder db = dbf.newDocumentBuilder();
 	    Document doc = db.parse(xmlFile);
 
@@ -264,6 +352,49 @@ public class Project {
 	}
     }
 
+    /**
+     * Creates a variant of the project with overridden values of component
+     * properties. Components without overridden properties are shared with
+     * this project.
+     * 
+     * @param propertyOverrides
+     *            the map from component names to maps from property names to
+     *            overridden values.
+     * @return the project variant.
+     * @throws ConfigurationException
+     *             if an overridden component does not exist.
+     */
+    public Project createVariant(Map<String, Map<String, String>> propertyOverrides) throws ConfigurationException {
+	Project result = new Project();
+	result.platformName = platformName;
+	result.watchdogLevel = watchdogLevel;
+	result.eepromLayoutVersion = eepromLayoutVersion;
+	result.libraryImports.addAll(libraryImports);
+	result.programEvents.putAll(programEvents);
+	result.eepromItems.addAll(eepromItems);
+
+	Set<String> unknownComponents = new TreeSet<String>(propertyOverrides.keySet());
+	for (Component component : components) {
+	    Map<String, String> overrides = propertyOverrides.get(component.getName());
+	    if (overrides == null) {
+		result.components.add(component);
+		continue;
+	    }
+
+	    unknownComponents.remove(component.getName());
+	    Component variantComponent = component.copy();
+	    variantComponent.getProperties().putAll(overrides);
+	    result.components.add(variantComponent);
+	}
+
+	if (!unknownComponents.isEmpty()) {
+	    throw new ConfigurationException("Property of unknown component " + unknownComponents.iterator().next()
+		    + " cannot be overridden.");
+	}
+
+	return result;
+    }
+
 	private Element writeProgramConfiguration(Element xmlProgram) throws ConfigurationException {
 		Document doc = xmlProgram.getOwnerDocument();
 		boolean empty = true;
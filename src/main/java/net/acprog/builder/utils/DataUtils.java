@@ -0,0 +1,134 @@
+package net.acprog.builder.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Helper methods for writing and reading values of binary data streams.
+ */
+public final class DataUtils {
+
+    /**
+     * Writes a string that can be null.
+     *
+     * @param out
+     *            the output.
+     * @param value
+     *            the string or null.
+     * @throws IOException
+     *             if writing failed.
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+	if (value == null) {
+	    out.writeInt(-1);
+	    return;
+	}
+
+	byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+	out.writeInt(encoded.length);
+	out.write(encoded);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutput, String)}.
+     *
+     * @param in
+     *            the input.
+     * @return the string or null.
+     * @throws IOException
+     *             if reading failed.
+     */
+    public static String readString(DataInput in) throws IOException {
+	int length = in.readInt();
+	if (length < 0) {
+	    return null;
+	}
+
+	byte[] encoded = new byte[length];
+	in.readFully(encoded);
+	return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a list of strings.
+     *
+     * @param out
+     *            the output.
+     * @param values
+     *            the list of strings.
+     * @throws IOException
+     *             if writing failed.
+     */
+    public static void writeStrings(DataOutput out, List<String> values) throws IOException {
+	out.writeInt(values.size());
+	for (String value : values) {
+	    writeString(out, value);
+	}
+    }
+
+    /**
+     * Reads strings written by {@link #writeStrings(DataOutput, List)}.
+     *
+     * @param in
+     *            the input.
+     * @param values
+     *            the list where read strings are added.
+     * @throws IOException
+     *             if reading failed.
+     */
+    public static void readStrings(DataInput in, List<String> values) throws IOException {
+	int count = in.readInt();
+	for (int i = 0; i < count; i++) {
+	    values.add(readString(in));
+	}
+    }
+
+    /**
+     * Writes a constant of an enum that can be null.
+     *
+     * @param out
+     *            the output.
+     * @param value
+     *            the enum constant or null.
+     * @throws IOException
+     *             if writing failed.
+     */
+    public static void writeEnum(DataOutput out, Enum<?> value) throws IOException {
+	writeString(out, (value != null) ? value.name() : null);
+    }
+
+    /**
+     * Reads a constant of an enum written by
+     * {@link #writeEnum(DataOutput, Enum)}.
+     *
+     * @param in
+     *            the input.
+     * @param enumType
+     *            the type of enum.
+     * @return the enum constant or null.
+     * @throws IOException
+     *             if reading failed or the constant is unknown.
+     */
+    public static <T extends Enum<T>> T readEnum(DataInput in, Class<T> enumType) throws IOException {
+	String name = readString(in);
+	if (name == null) {
+	    return null;
+	}
+
+	try {
+	    return Enum.valueOf(enumType, name);
+	} catch (IllegalArgumentException e) {
+	    throw new IOException("Unknown constant " + name + " of " + enumType.getSimpleName() + ".", e);
+	}
+    }
+
+    /**
+     * Private constructor disallowing instantiation of this class.
+     */
+    private DataUtils() {
+
+    }
+}
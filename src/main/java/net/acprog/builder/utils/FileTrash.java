@@ -0,0 +1,123 @@
+package net.acprog.builder.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.*;
+
+/**
+ * Helper methods for removing directories without waiting for deletion of
+ * their content. A removed directory is renamed to the trash directory
+ * located next to it (a single atomic operation) and its content is deleted
+ * by a background thread. Content of the trash directory left by an earlier
+ * run (e.g., after a crash) is deleted whenever the trash directory is used
+ * again or swept.
+ */
+public final class FileTrash {
+
+    /**
+     * Name of the trash directory.
+     */
+    public static final String TRASH_DIRECTORY_NAME = ".acp-trash";
+
+    /**
+     * Lock that prevents deletion of an empty trash directory while another
+     * directory is being moved to it.
+     */
+    private static final Object trashLock = new Object();
+
+    /**
+     * Time (in milliseconds) after which an idle thread of the cleaner
+     * terminates.
+     */
+    private static final long CLEANER_KEEP_ALIVE = 100;
+
+    /**
+     * Executor deleting content of trash directories. The thread of the
+     * executor is not a daemon thread, hence pending deletions are completed
+     * before the application exits, but the thread terminates when idle.
+     */
+    private static final ExecutorService cleaner = new ThreadPoolExecutor(0, 1, CLEANER_KEEP_ALIVE,
+	    TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+		    Thread thread = new Thread(r, "acp-trash-cleaner");
+		    thread.setPriority(Thread.MIN_PRIORITY);
+		    return thread;
+		}
+	    });
+
+    /**
+     * Removes a directory by moving it to the trash directory and deletes it
+     * in background. If the directory cannot be moved, it is removed
+     * immediately.
+     *
+     * @param directory
+     *            the directory to be removed.
+     * @return the future completed when the trash directory is emptied.
+     */
+    public static Future<?> discard(File directory) {
+	if (!directory.isDirectory()) {
+	    return sweep(directory.getAbsoluteFile().getParentFile());
+	}
+
+	File trashDirectory = getTrashDirectory(directory.getAbsoluteFile().getParentFile());
+	try {
+	    synchronized (trashLock) {
+		Files.createDirectories(trashDirectory.toPath());
+		Path container = Files.createTempDirectory(trashDirectory.toPath(), directory.getName() + "-");
+		Files.move(directory.toPath(), container.resolve(directory.getName()), StandardCopyOption.ATOMIC_MOVE);
+	    }
+	} catch (IOException | UnsupportedOperationException e) {
+	    FileUtils.removeDirectory(directory);
+	    directory.delete();
+	}
+
+	return sweep(directory.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Deletes in background the content of the trash directory located in a
+     * directory.
+     *
+     * @param parentDirectory
+     *            the directory with the trash directory.
+     * @return the future completed when the trash directory is emptied.
+     */
+    public static Future<?> sweep(File parentDirectory) {
+	final File trashDirectory = getTrashDirectory(parentDirectory);
+	return cleaner.submit(new Runnable() {
+	    @Override
+	    public void run() {
+		if (!trashDirectory.isDirectory()) {
+		    return;
+		}
+
+		FileUtils.removeDirectory(trashDirectory);
+		synchronized (trashLock) {
+		    trashDirectory.delete();
+		}
+	    }
+	});
+    }
+
+    /**
+     * Returns the trash directory located in a directory.
+     *
+     * @param parentDirectory
+     *            the directory.
+     * @return the trash directory.
+     */
+    public static File getTrashDirectory(File parentDirectory) {
+	return new File(parentDirectory, TRASH_DIRECTORY_NAME);
+    }
+
+    /**
+     * Private constructor disallowing instantiation of this class.
+     */
+    private FileTrash() {
+
+    }
+}
@@ -1,18 +1,30 @@
 package net.acprog.builder.utils;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Helper methods for reading and writing text files.
  */
 public class FileUtils {
 
+    /**
+     * Cache of loaded template resources (map from resource paths to
+     * contents). Resources do not change while the application is running,
+     * hence each template is read only once.
+     */
+    private static final ConcurrentMap<String, String> templateResources = new ConcurrentHashMap<String, String>();
+
     /**
      * Reads the content of a text file in UTF-8 encoding.
      * 
@@ -58,12 +70,16 @@ public class FileUtils {
      * @return the loaded template resource after applying replacements.
      */
     public static String loadTemplateResource(String resource, Map<String, String> replacements) {
-	String resourceContent;
-	try (Scanner sc = new Scanner(FileUtils.class.getResourceAsStream(resource))) {
-	    sc.useDelimiter("\\A");
-	    resourceContent = sc.hasNext() ? sc.next() : "";
-	} catch (Exception e) {
-	    return null;
+	String resourceContent = templateResources.get(resource);
+	if (resourceContent == null) {
+	    try (Scanner sc = new Scanner(FileUtils.class.getResourceAsStream(resource))) {
+		sc.useDelimiter("\\A");
+		resourceContent = sc.hasNext() ? sc.next() : "";
+	    } catch (Exception e) {
+		return null;
+	    }
+
+	    templateResources.put(resource, resourceContent);
 	}
 
 	return applyTemplateReplacements(resourceContent, replacements);
@@ -142,6 +158,45 @@ public class FileUtils {
 	return true;
     }
 
+    /**
+     * Checks whether a file has given content. The file is compared with the
+     * content while reading it.
+     * 
+     * @param file
+     *            the file.
+     * @param content
+     *            the expected content.
+     * @return true, if the file exists and has the given content, false
+     *         otherwise.
+     */
+    public static boolean hasContent(File file, byte[] content) {
+	if (!file.isFile() || (file.length() != content.length)) {
+	    return false;
+	}
+
+	try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+	    byte[] buffer = new byte[8192];
+	    int offset = 0;
+	    int read;
+	    while ((read = in.read(buffer)) >= 0) {
+		if (offset + read > content.length) {
+		    return false;
+		}
+
+		for (int i = 0; i < read; i++) {
+		    if (buffer[i] != content[offset + i]) {
+			return false;
+		    }
+		}
+		offset += read;
+	    }
+
+	    return offset == content.length;
+	} catch (IOException e) {
+	    return false;
+	}
+    }
+
     /**
      * Merges multiple slashes to a single slash character.
      * 
@@ -0,0 +1,63 @@
+package net.acprog.builder.utils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helper methods for computing content hashes.
+ */
+public final class HashUtils {
+
+    /**
+     * Algorithm used to compute content hashes.
+     */
+    public static final String HASH_ALGORITHM = "SHA-1";
+
+    /**
+     * Creates a new message digest for computing content hashes.
+     *
+     * @return the message digest.
+     */
+    public static MessageDigest createDigest() {
+	try {
+	    return MessageDigest.getInstance(HASH_ALGORITHM);
+	} catch (NoSuchAlgorithmException e) {
+	    throw new IllegalStateException("Hash algorithm " + HASH_ALGORITHM + " is not available.", e);
+	}
+    }
+
+    /**
+     * Computes hash of a byte array.
+     *
+     * @param content
+     *            the content to be hashed.
+     * @return the hash.
+     */
+    public static byte[] hash(byte[] content) {
+	return createDigest().digest(content);
+    }
+
+    /**
+     * Converts a byte array to a hexadecimal string.
+     *
+     * @param bytes
+     *            the byte array.
+     * @return the hexadecimal representation of bytes.
+     */
+    public static String toHex(byte[] bytes) {
+	final char[] digits = "0123456789abcdef".toCharArray();
+	char[] result = new char[bytes.length * 2];
+	for (int i = 0; i < bytes.length; i++) {
+	    result[2 * i] = digits[(bytes[i] >> 4) & 0x0f];
+	    result[2 * i + 1] = digits[bytes[i] & 0x0f];
+	}
+	return new String(result);
+    }
+
+    /**
+     * Private constructor disallowing instantiation of this class.
+     */
+    private HashUtils() {
+
+    }
+}
@@ -1,17 +1,106 @@
 package net.acprog.builder.utils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.w3c.dom.Text;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * Utility class with helper methods for processing xml.
  */
 public final class XmlUtils {
 
+    /**
+     * Key of user data with the location of an element in the parsed xml
+     * document.
+     */
+    private static final String LOCATION_KEY = "net.acprog.builder.location";
+
+    /**
+     * Feature of xml parsers that enables loading of external general
+     * entities.
+     */
+    private static final String EXTERNAL_GENERAL_ENTITIES_FEATURE =
+	    "http://xml.org/sax/features/external-general-entities";
+
+    /**
+     * Feature of xml parsers that enables loading of external parameter
+     * entities (including the external subset of document type declaration).
+     */
+    private static final String EXTERNAL_PARAMETER_ENTITIES_FEATURE =
+	    "http://xml.org/sax/features/external-parameter-entities";
+
+    /**
+     * Feature of xml parsers that enables loading of external document type
+     * definitions by non-validating parsers.
+     */
+    private static final String LOAD_EXTERNAL_DTD_FEATURE =
+	    "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+
+    /**
+     * Creates a factory of document builders for xml documents from untrusted
+     * sources (e.g., project configurations received by the build service).
+     * Documents can contain a document type declaration, but external
+     * document type definitions and external entities are never loaded, hence
+     * a document cannot read local files or resources on the network.
+     * Expansion of internal entities is limited by the secure processing.
+     * 
+     * @return the factory of document builders.
+     * @throws ParserConfigurationException
+     *             if the xml parser does not support the required features.
+     */
+    public static DocumentBuilderFactory createSecureDocumentBuilderFactory() throws ParserConfigurationException {
+	DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+	dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+	dbf.setFeature(EXTERNAL_GENERAL_ENTITIES_FEATURE, false);
+	dbf.setFeature(EXTERNAL_PARAMETER_ENTITIES_FEATURE, false);
+	dbf.setFeature(LOAD_EXTERNAL_DTD_FEATURE, false);
+	dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+	dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+	dbf.setXIncludeAware(false);
+	return dbf;
+    }
+
+    /**
+     * Creates a factory of SAX parsers for xml documents from untrusted
+     * sources. As with {@link #createSecureDocumentBuilderFactory()}, document
+     * type declarations are allowed, but external document type definitions
+     * and external entities are not loaded.
+     * 
+     * @return the factory of SAX parsers.
+     * @throws ParserConfigurationException
+     *             if the xml parser does not support the required features.
+     * @throws SAXException
+     *             if the xml parser does not recognize the required features.
+     */
+    public static SAXParserFactory createSecureSAXParserFactory() throws ParserConfigurationException,
+	    SAXException {
+	SAXParserFactory spf = SAXParserFactory.newInstance();
+	spf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+	spf.setFeature(EXTERNAL_GENERAL_ENTITIES_FEATURE, false);
+	spf.setFeature(EXTERNAL_PARAMETER_ENTITIES_FEATURE, false);
+	spf.setFeature(LOAD_EXTERNAL_DTD_FEATURE, false);
+	spf.setXIncludeAware(false);
+	return spf;
+    }
+
     /**
      * Retrieves child elements of a given element.
      * 
@@ -134,6 +223,117 @@ public final class XmlUtils {
     	return value;
 	}
 
+    /**
+     * Parses an xml document and stores the location of each element in the
+     * source (line and column of the end of its start tag). The document is
+     * built as with a coalescing document builder that ignores comments.
+     * Documents with a document type declaration are rejected, since the
+     * parsed document can come from a client of the build service.
+     * 
+     * @param in
+     *            the input stream with the xml document.
+     * @return the parsed document.
+     * @throws IOException
+     *             if the document cannot be read.
+     * @throws SAXException
+     *             if the document is not a well-formed xml document (a
+     *             {@link org.xml.sax.SAXParseException} provides the location
+     *             of the error).
+     */
+    public static Document parseWithLocations(InputStream in) throws IOException, SAXException {
+	final Document doc;
+	try {
+	    doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+	    createSecureSAXParserFactory().newSAXParser().parse(in, new DefaultHandler() {
+		/**
+		 * Open elements (the innermost element is the first one).
+		 */
+		private final Deque<Node> openNodes = new ArrayDeque<Node>();
+
+		/**
+		 * Locator of parsing events.
+		 */
+		private Locator locator;
+
+		@Override
+		public void setDocumentLocator(Locator locator) {
+		    this.locator = locator;
+		}
+
+		@Override
+		public void startDocument() {
+		    openNodes.push(doc);
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+		    Element element = doc.createElement(qName);
+		    for (int i = 0; i < attributes.getLength(); i++) {
+			element.setAttribute(attributes.getQName(i), attributes.getValue(i));
+		    }
+
+		    if (locator != null) {
+			element.setUserData(LOCATION_KEY,
+				new int[] { locator.getLineNumber(), locator.getColumnNumber() }, null);
+		    }
+
+		    openNodes.peek().appendChild(element);
+		    openNodes.push(element);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+		    openNodes.pop();
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+		    Node parent = openNodes.peek();
+		    if (parent == doc) {
+			return;
+		    }
+
+		    Node lastChild = parent.getLastChild();
+		    if (lastChild instanceof Text) {
+			((Text) lastChild).appendData(new String(ch, start, length));
+		    } else {
+			parent.appendChild(doc.createTextNode(new String(ch, start, length)));
+		    }
+		}
+	    });
+	} catch (ParserConfigurationException e) {
+	    throw new SAXException("Xml parser cannot be configured.", e);
+	}
+
+	return doc;
+    }
+
+    /**
+     * Returns the line of an element in the source document.
+     * 
+     * @param node
+     *            the element of a document parsed by
+     *            {@link #parseWithLocations(InputStream)}.
+     * @return the line number or -1, if the location is not known.
+     */
+    public static int getLineNumber(Node node) {
+	int[] location = (node != null) ? (int[]) node.getUserData(LOCATION_KEY) : null;
+	return (location != null) ? location[0] : -1;
+    }
+
+    /**
+     * Returns the column of an element in the source document.
+     * 
+     * @param node
+     *            the element of a document parsed by
+     *            {@link #parseWithLocations(InputStream)}.
+     * @return the column number or -1, if the location is not known.
+     */
+    public static int getColumnNumber(Node node) {
+	int[] location = (node != null) ? (int[]) node.getUserData(LOCATION_KEY) : null;
+	return (location != null) ? location[1] : -1;
+    }
+
     /**
      * Private constructor disallowing instantiation of this class.
      */
@@ -0,0 +1,122 @@
+package net.acprog.builder.utils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Helper methods for creating and extracting zip archives. Created archives
+ * are deterministic, i.e., entries are ordered by their names and all entries
+ * have the same timestamp.
+ */
+public final class ZipUtils {
+
+    /**
+     * Timestamp of all entries in created archives (1 January 1980, the
+     * earliest time representable in zip archives).
+     */
+    public static final long ENTRY_TIME = new GregorianCalendar(1980, Calendar.JANUARY, 1).getTimeInMillis();
+
+    /**
+     * Creates an entry of a deterministic zip archive.
+     *
+     * @param name
+     *            the name of entry (with slash as the path separator and a
+     *            trailing slash for directories).
+     * @return the entry with the fixed timestamp.
+     */
+    public static ZipEntry createEntry(String name) {
+	ZipEntry entry = new ZipEntry(name);
+	entry.setTime(ENTRY_TIME);
+	return entry;
+    }
+
+    /**
+     * Writes files of a directory to a zip archive.
+     *
+     * @param baseDirectory
+     *            the directory.
+     * @param paths
+     *            the paths of files relative to the directory (with slash as
+     *            the path separator).
+     * @param out
+     *            the output stream where the archive is written.
+     * @throws IOException
+     *             if writing of the archive failed.
+     */
+    public static void zipFiles(File baseDirectory, Collection<String> paths, OutputStream out) throws IOException {
+	ZipOutputStream zipOut = new ZipOutputStream(out);
+	for (String path : new TreeSet<String>(paths)) {
+	    zipOut.putNextEntry(createEntry(path));
+	    Files.copy(new File(baseDirectory, path).toPath(), zipOut);
+	    zipOut.closeEntry();
+	}
+	zipOut.finish();
+    }
+
+    /**
+     * Extracts files from a zip archive to a directory. A file is written only
+     * if it does not exist or its content differs. A written file replaces the
+     * existing file, hence a link in the directory is never written through.
+     *
+     * @param in
+     *            the input stream with the archive.
+     * @param baseDirectory
+     *            the directory.
+     * @param extractedFiles
+     *            the collection where names of all files in the archive are
+     *            stored (null, if names are not collected).
+     * @return the number of written files.
+     * @throws IOException
+     *             if extraction failed.
+     */
+    public static int unzipFiles(InputStream in, File baseDirectory, Collection<String> extractedFiles)
+	    throws IOException {
+	int writtenFiles = 0;
+	File canonicalBase = baseDirectory.getCanonicalFile();
+	ZipInputStream zipIn = new ZipInputStream(in);
+	ZipEntry entry;
+	while ((entry = zipIn.getNextEntry()) != null) {
+	    File file = new File(baseDirectory, entry.getName());
+	    if (!file.getCanonicalPath().startsWith(canonicalBase.getPath() + File.separator)) {
+		throw new IOException("Invalid entry " + entry.getName() + " in zip archive.");
+	    }
+
+	    if (entry.isDirectory()) {
+		file.mkdirs();
+		continue;
+	    }
+
+	    ByteArrayOutputStream content = new ByteArrayOutputStream();
+	    byte[] buffer = new byte[8192];
+	    int read;
+	    while ((read = zipIn.read(buffer)) >= 0) {
+		content.write(buffer, 0, read);
+	    }
+
+	    byte[] fileContent = content.toByteArray();
+	    if (!FileUtils.hasContent(file, fileContent)) {
+		file.getParentFile().mkdirs();
+		Files.deleteIfExists(file.toPath());
+		Files.write(file.toPath(), fileContent);
+		writtenFiles++;
+	    }
+
+	    if (extractedFiles != null) {
+		extractedFiles.add(entry.getName());
+	    }
+	}
+
+	return writtenFiles;
+    }
+
+    /**
+     * Private constructor disallowing instantiation of this class.
+     */
+    private ZipUtils() {
+
+    }
+}